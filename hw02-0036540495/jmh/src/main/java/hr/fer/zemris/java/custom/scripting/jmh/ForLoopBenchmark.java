@@ -0,0 +1,81 @@
+package hr.fer.zemris.java.custom.scripting.jmh;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of FOR loops in the {@link SmartScriptEngine}: two nested loops of 100 iterations each,
+ * whose body is a single text node (so the loops themselves dominate), with the bounds given as integer constants,
+ * double constants, strings, or variables of an enclosing loop.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForLoopBenchmark {
+    /**
+     * Scripts by the kind of their loop bounds.
+     */
+    private static final Map<String, String> SCRIPTS = Map.of(
+            "int", "{$FOR i 1 100 1$}{$FOR j 1 100 1$}.{$END$}{$END$}",
+            "double", "{$FOR i 1.0 100.0 1.0$}{$FOR j 1.0 100.0 1.0$}.{$END$}{$END$}",
+            "string", "{$FOR i \"1\" \"100\" \"1\"$}{$FOR j \"1\" \"100\" \"1\"$}.{$END$}{$END$}",
+            "variable", "{$FOR n 100 100 1$}{$FOR i 1 n$}{$FOR j 1 n$}.{$END$}{$END$}{$END$}"
+    );
+
+    /**
+     * Kind of the loop bounds.
+     */
+    @Param({"int", "double", "string", "variable"})
+    public String bounds;
+
+    /**
+     * Document node of the parsed script.
+     */
+    private DocumentNode documentNode;
+
+    /**
+     * Parses the script.
+     */
+    @Setup
+    public void setup() {
+        documentNode = new SmartScriptParser(SCRIPTS.get(bounds)).getDocumentNode();
+    }
+
+    /**
+     * Executes the script with a new request context.
+     *
+     * @return request context the script was executed with
+     */
+    @Benchmark
+    public RequestContext execute() {
+        RequestContext context = new RequestContext(OutputStream.nullOutputStream(),
+                new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(documentNode, context).execute();
+        return context;
+    }
+}
@@ -0,0 +1,33 @@
+package hr.fer.zemris.java.custom.scripting.jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads the SmartScript scripts of the web root used by the benchmarks.
+ * The web root is given by the <code>webroot</code> system property and defaults to <code>../webroot</code>.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class Scripts {
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private Scripts() {
+    }
+
+    /**
+     * Reads the script with the given path relative to the web root.
+     *
+     * @param script path of the script relative to the web root
+     * @return text of the script
+     * @throws IOException if the script cannot be read
+     */
+    public static String read(String script) throws IOException {
+        Path webroot = Path.of(System.getProperty("webroot", "../webroot"));
+        return Files.readString(webroot.resolve(script), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,111 @@
+package hr.fer.zemris.java.custom.scripting.jmh;
+
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProgram;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the execution of the (already parsed) web root scripts by the {@link SmartScriptEngine}
+ * (a new engine for every execution) and by a shared {@link ScriptProgram} (the engine of the thread reused)
+ * against an in-memory {@link RequestContext} whose output is discarded.
+ * The request parameters <code>a=1</code> and <code>b=2</code> are given to every execution.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmartScriptEngineBenchmark {
+    /**
+     * Path of the script relative to the web root.
+     */
+    @Param({
+            "scripts/osnovni.smscr", "scripts/brojPoziva.smscr", "scripts/fibonacci.smscr",
+            "scripts/fibonaccih.smscr", "scripts/zbrajanje.smscr",
+            "private/pages/calc.smscr", "private/pages/home.smscr"
+    })
+    public String script;
+
+    /**
+     * Document node of the parsed script.
+     */
+    private DocumentNode documentNode;
+
+    /**
+     * Program executing the parsed script.
+     */
+    private ScriptProgram program;
+
+    /**
+     * Request parameters.
+     */
+    private final Map<String, String> parameters = new HashMap<>();
+
+    /**
+     * Persistent parameters, shared between executions like a session would be.
+     */
+    private final Map<String, String> persistentParameters = new HashMap<>();
+
+    /**
+     * Reads and parses the script.
+     *
+     * @throws IOException if the script cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        documentNode = new SmartScriptParser(Scripts.read(script)).getDocumentNode();
+        program = new ScriptProgram(documentNode);
+        parameters.put("a", "1");
+        parameters.put("b", "2");
+    }
+
+    /**
+     * Executes the script with a new request context.
+     *
+     * @return request context the script was executed with
+     */
+    @Benchmark
+    public RequestContext execute() {
+        RequestContext context = new RequestContext(OutputStream.nullOutputStream(),
+                parameters, persistentParameters, new ArrayList<>());
+        new SmartScriptEngine(documentNode, context).execute();
+        return context;
+    }
+
+    /**
+     * Executes the program of the script with a new request context.
+     *
+     * @return request context the script was executed with
+     */
+    @Benchmark
+    public RequestContext executeProgram() {
+        RequestContext context = new RequestContext(OutputStream.nullOutputStream(),
+                parameters, persistentParameters, new ArrayList<>());
+        program.execute(context);
+        return context;
+    }
+}
@@ -0,0 +1,84 @@
+package hr.fer.zemris.java.custom.scripting.jmh;
+
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexer;
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexerState;
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptToken;
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptTokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the tokenization of the web root scripts by the {@link SmartScriptLexer}.
+ * The lexer state is switched the same way the parser switches it, but no nodes are built.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmartScriptLexerBenchmark {
+    /**
+     * Path of the script relative to the web root.
+     */
+    @Param({
+            "scripts/osnovni.smscr", "scripts/brojPoziva.smscr", "scripts/fibonacci.smscr",
+            "scripts/fibonaccih.smscr", "scripts/zbrajanje.smscr",
+            "private/pages/calc.smscr", "private/pages/home.smscr"
+    })
+    public String script;
+
+    /**
+     * Text of the script.
+     */
+    private String text;
+
+    /**
+     * Reads the script.
+     *
+     * @throws IOException if the script cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        text = Scripts.read(script);
+    }
+
+    /**
+     * Tokenizes the whole script.
+     *
+     * @param blackhole sink for the tokens
+     */
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        SmartScriptLexer lexer = new SmartScriptLexer(text);
+        while (true) {
+            SmartScriptToken token = lexer.nextToken();
+            SmartScriptTokenType type = token.type();
+            if (type == SmartScriptTokenType.EOF) break;
+            if (type == SmartScriptTokenType.START_TAG_DEF) {
+                lexer.setState(SmartScriptLexerState.TAG_NAME);
+            } else if (type == SmartScriptTokenType.TAG_NAME) {
+                lexer.setState(SmartScriptLexerState.TAG_DEF);
+            } else if (type == SmartScriptTokenType.END_TAG_DEF) {
+                lexer.setState(SmartScriptLexerState.TEXT);
+            }
+            blackhole.consume(token);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package hr.fer.zemris.java.custom.scripting.jmh;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing of the web root scripts by the {@link SmartScriptParser}.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmartScriptParserBenchmark {
+    /**
+     * Path of the script relative to the web root.
+     */
+    @Param({
+            "scripts/osnovni.smscr", "scripts/brojPoziva.smscr", "scripts/fibonacci.smscr",
+            "scripts/fibonaccih.smscr", "scripts/zbrajanje.smscr",
+            "private/pages/calc.smscr", "private/pages/home.smscr"
+    })
+    public String script;
+
+    /**
+     * Text of the script.
+     */
+    private String text;
+
+    /**
+     * Reads the script.
+     *
+     * @throws IOException if the script cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        text = Scripts.read(script);
+    }
+
+    /**
+     * Parses the whole script.
+     *
+     * @return document node of the parsed script
+     */
+    @Benchmark
+    public DocumentNode parse() {
+        return new SmartScriptParser(text).getDocumentNode();
+    }
+}
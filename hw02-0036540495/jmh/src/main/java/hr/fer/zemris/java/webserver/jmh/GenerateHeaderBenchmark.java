@@ -0,0 +1,83 @@
+package hr.fer.zemris.java.webserver.jmh;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of the response header by the {@link RequestContext},
+ * which happens on the first write to a new context.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerateHeaderBenchmark {
+    /**
+     * Body of the response.
+     */
+    private final byte[] body = "<html><body>Hello</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Request parameters.
+     */
+    private final Map<String, String> parameters = new HashMap<>();
+
+    /**
+     * Persistent parameters.
+     */
+    private final Map<String, String> persistentParameters = new HashMap<>();
+
+    /**
+     * Writes a small body without cookies.
+     *
+     * @return request context that generated the header
+     * @throws IOException never, since the output is discarded
+     */
+    @Benchmark
+    public RequestContext plain() throws IOException {
+        RequestContext context = new RequestContext(OutputStream.nullOutputStream(),
+                parameters, persistentParameters, new ArrayList<>());
+        context.setContentLength((long) body.length);
+        return context.write(body);
+    }
+
+    /**
+     * Writes a small body with a session cookie and a regular cookie.
+     *
+     * @return request context that generated the header
+     * @throws IOException never, since the output is discarded
+     */
+    @Benchmark
+    public RequestContext withCookies() throws IOException {
+        List<RCCookie> cookies = new ArrayList<>();
+        cookies.add(new RCCookie("sid", "AbCdEfGhIjKlMnOpQrSt", "localhost", "/", null, true));
+        cookies.add(new RCCookie("theme", "dark", null, "/", 3600, false));
+        RequestContext context = new RequestContext(OutputStream.nullOutputStream(),
+                parameters, persistentParameters, cookies);
+        context.setContentLength((long) body.length);
+        return context.write(body);
+    }
+}
@@ -0,0 +1,74 @@
+package hr.fer.zemris.java.webserver.jmh;
+
+import hr.fer.zemris.java.webserver.http.RequestHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing of a typical browser request header, the way the server's client worker does it:
+ * the header (with carriage returns already removed) is split into lines,
+ * after which the headers needed to handle the request are looked up.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestHeadersBenchmark {
+    /**
+     * Request header, as read by the server.
+     */
+    private final byte[] header = ("""
+            GET /scripts/zbrajanje.smscr?a=1&b=2 HTTP/1.1
+            Host: localhost:5721
+            User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8
+            Accept-Language: hr,en-US;q=0.7,en;q=0.3
+            Accept-Encoding: gzip, deflate, br
+            Connection: keep-alive
+            Cookie: sid=AbCdEfGhIjKlMnOpQrSt; theme=dark
+            Upgrade-Insecure-Requests: 1
+            Sec-Fetch-Dest: document
+            Sec-Fetch-Mode: navigate
+            Sec-Fetch-Site: none
+
+            """).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * List of lines, reused between invocations like the server reuses it between requests.
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * Splits the header into lines and looks up the headers the server needs.
+     *
+     * @param blackhole sink for the header values
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        lines.clear();
+        RequestHeaders.split(header, header.length, lines);
+        blackhole.consume(lines.getFirst());
+        blackhole.consume(RequestHeaders.value(lines, "Host"));
+        blackhole.consume(RequestHeaders.value(lines, "Transfer-Encoding"));
+        blackhole.consume(RequestHeaders.value(lines, "Content-Length"));
+        blackhole.consume(RequestHeaders.value(lines, "Cookie"));
+    }
+}
@@ -0,0 +1,134 @@
+package hr.fer.zemris.java.webserver.jmh;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole requests to a {@link SmartHttpServer} started in the benchmark process: every invocation opens
+ * a connection, sends a request to the given path and reads the whole response.
+ * The server is configured by the project's <code>config/server.properties</code>, with rate limiting
+ * and access logging disabled; the project directory is given by the <code>project</code> system property
+ * and defaults to <code>..</code>.
+ * <p>
+ * Run with <code>-prof gc</code> to see how many bytes a request allocates: the allocation is measured across
+ * all the threads of the process, so it includes the server's threads (and the client side of the request).
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerRequestBenchmark {
+    /**
+     * Requested path.
+     */
+    @Param({"/osnovni.txt", "/hello", "/cw"})
+    public String path;
+
+    /**
+     * Server handling the requests.
+     */
+    private SmartHttpServer server;
+
+    /**
+     * Port the server listens on.
+     */
+    private int port;
+
+    /**
+     * Encoded request.
+     */
+    private byte[] request;
+
+    /**
+     * Buffer the responses are read into.
+     */
+    private final byte[] buffer = new byte[64 * 1024];
+
+    /**
+     * Starts the server with the project's configuration, its paths resolved against the project directory.
+     *
+     * @throws IOException if the configuration cannot be read
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path project = Path.of(System.getProperty("project", "..")).toAbsolutePath().normalize();
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(project.resolve("config/server.properties"))) {
+            properties.load(is);
+        }
+        properties.remove("server.rateLimit");
+        properties.remove("server.accessLog");
+        for (String key : new String[] {"server.documentRoot", "server.mimeConfig", "server.workers", "server.script.precompiled"}) {
+            String value = properties.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, project.resolve(value.strip()).toString());
+            }
+        }
+        Path config = Files.createTempFile("benchmark", ".properties");
+        try (OutputStream os = Files.newOutputStream(config)) {
+            properties.store(os, null);
+        }
+        try {
+            server = new SmartHttpServer(config.toString());
+        } finally {
+            Files.deleteIfExists(config);
+        }
+        port = Integer.parseInt(properties.getProperty("server.port").strip());
+        request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.shutdown(0);
+    }
+
+    /**
+     * Sends a single request on a new connection and reads the whole response.
+     *
+     * @return number of bytes of the response
+     * @throws IOException if an I/O error occurs
+     */
+    @Benchmark
+    public long request() throws IOException {
+        long length = 0;
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.getOutputStream().write(request);
+            InputStream in = socket.getInputStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                length += read;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,119 @@
+package hr.fer.zemris.java.webserver.jmh;
+
+import hr.fer.zemris.java.webserver.SessionIds;
+import hr.fer.zemris.java.webserver.http.RequestHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the server's session handling with the implementation it replaced:
+ * generating a session ID (a 20-letter ID from a shared {@link Random} under a global lock
+ * versus a 128-bit ID from a per-thread ChaCha20 keystream seeded from a SecureRandom), and finding the session cookie in the request header
+ * (splitting every cookie with <code>split</code> versus a single pass over the header).
+ * The state is shared between threads, so running with <code>-t</code> greater than 1 shows the contention
+ * of the global lock.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+    /**
+     * Lines of a typical browser request header carrying a session cookie among other cookies.
+     */
+    private final List<String> lines = List.of(
+            "GET /scripts/zbrajanje.smscr?a=1&b=2 HTTP/1.1",
+            "Host: localhost:5721",
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0",
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8",
+            "Accept-Language: hr,en-US;q=0.7,en;q=0.3",
+            "Cookie: theme=dark; _ga=GA1.1.1234567890.1700000000; lang=hr; sid=\"Qk9SbGd3c0Z6bVhQa2R0Yg\"",
+            "Upgrade-Insecure-Requests: 1"
+    );
+
+    /**
+     * Random number generator shared by all threads, as in the replaced implementation.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Global lock, standing in for the lock on the session map taken by the replaced implementation.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Generates a session ID the way the replaced implementation did.
+     *
+     * @return session ID
+     */
+    @Benchmark
+    public String sessionIdLegacy() {
+        synchronized (lock) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                sb.append((char) (random.nextInt('Z' - 'A' + 1) + 'A'));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Generates a session ID the way the server does.
+     *
+     * @return session ID
+     */
+    @Benchmark
+    public String sessionId() {
+        return SessionIds.next();
+    }
+
+    /**
+     * Finds the session cookie the way the replaced implementation did.
+     *
+     * @return value of the session cookie
+     */
+    @Benchmark
+    public String cookieLegacy() {
+        for (String line : lines) {
+            if (!line.startsWith("Cookie:")) {
+                continue;
+            }
+            String[] cookies = line.substring(7).split(";");
+            for (String cookie : cookies) {
+                if (cookie.split("=")[0].strip().equals("sid")) {
+                    if (cookie.split("=").length != 2) {
+                        throw new IllegalArgumentException("Invalid cookie format.");
+                    }
+                    return cookie.split("=")[1].replaceAll("\"", "").strip();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the session cookie the way the server does.
+     *
+     * @return value of the session cookie
+     */
+    @Benchmark
+    public String cookie() {
+        return RequestHeaders.cookie(lines, "sid");
+    }
+}
@@ -0,0 +1,276 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A minimal HTTP/1.1 client connection used by the {@link LoadGenerator}.
+ * Sends prepared requests and reads (and discards) complete responses, delimited by
+ * <code>Content-Length</code>, the chunked transfer coding or the end of the connection.
+ * With keep-alive, the connection is reused until the server closes it; otherwise a new
+ * connection is opened for every request.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class HttpConnection implements Closeable {
+    /**
+     * Host of the server.
+     */
+    private final String host;
+
+    /**
+     * Port of the server.
+     */
+    private final int port;
+
+    /**
+     * Whether the connection is kept open between requests.
+     */
+    private final boolean keepAlive;
+
+    /**
+     * Buffer responses are read into.
+     */
+    private final byte[] buffer = new byte[16 * 1024];
+
+    /**
+     * Position of the next unread byte in the buffer.
+     */
+    private int position;
+
+    /**
+     * Number of valid bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Builder used to read the status line and header lines.
+     */
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Currently open socket (null if none).
+     */
+    private Socket socket;
+
+    /**
+     * Input stream of the current socket.
+     */
+    private InputStream in;
+
+    /**
+     * Output stream of the current socket.
+     */
+    private OutputStream out;
+
+    /**
+     * Number of connections opened so far.
+     */
+    private long connects;
+
+    /**
+     * Constructs a new (not yet opened) connection.
+     *
+     * @param host host of the server
+     * @param port port of the server
+     * @param keepAlive whether the connection is kept open between requests
+     */
+    public HttpConnection(String host, int port, boolean keepAlive) {
+        this.host = host;
+        this.port = port;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Sends the given request and reads the whole response.
+     *
+     * @param request complete request (request line and header)
+     * @return status code of the response
+     * @throws IOException if an I/O error occurs or the response is malformed
+     */
+    public int send(byte[] request) throws IOException {
+        boolean reused = socket != null;
+        if (!reused) {
+            open();
+        }
+        try {
+            out.write(request);
+            out.flush();
+            return readResponse();
+        } catch (EOFException e) {
+            close();
+            if (!reused) {
+                throw e;
+            }
+            // the server closed the idle connection, retry once on a new one
+            open();
+            out.write(request);
+            out.flush();
+            return readResponse();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of connections opened so far.
+     *
+     * @return number of opened connections
+     */
+    public long getConnects() {
+        return connects;
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+        }
+    }
+
+    /**
+     * Opens a new connection to the server.
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    private void open() throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = socket.getInputStream();
+        out = socket.getOutputStream();
+        position = limit = 0;
+        connects++;
+    }
+
+    /**
+     * Reads a complete response, closing the connection if it cannot be reused.
+     *
+     * @return status code of the response
+     * @throws IOException if an I/O error occurs or the response is malformed
+     */
+    private int readResponse() throws IOException {
+        String statusLine = readLine();
+        int firstSpace = statusLine.indexOf(' ');
+        if (firstSpace == -1 || statusLine.length() < firstSpace + 4) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        int status = Integer.parseInt(statusLine, firstSpace + 1, firstSpace + 4, 10);
+
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean close = !keepAlive || statusLine.startsWith("HTTP/1.0");
+        for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+            int colon = header.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String name = header.substring(0, colon).strip();
+            String value = header.substring(colon + 1).strip();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.equalsIgnoreCase("chunked");
+            } else if (name.equalsIgnoreCase("Connection")) {
+                close |= value.equalsIgnoreCase("close");
+            }
+        }
+
+        if (chunked) {
+            for (long size = Long.parseLong(chunkSize(readLine()), 16); size > 0;
+                 size = Long.parseLong(chunkSize(readLine()), 16)) {
+                skip(size);
+                readLine();
+            }
+            while (!readLine().isEmpty()) {
+                // skip trailer fields
+            }
+        } else if (contentLength >= 0) {
+            skip(contentLength);
+        } else {
+            while (fill()) {
+                position = limit;
+            }
+            close = true;
+        }
+        if (close) {
+            close();
+        }
+        return status;
+    }
+
+    /**
+     * Extracts the chunk size from a chunk header line (without chunk extensions).
+     *
+     * @param header chunk header line
+     * @return hexadecimal chunk size
+     */
+    private static String chunkSize(String header) {
+        int semicolon = header.indexOf(';');
+        return (semicolon == -1 ? header : header.substring(0, semicolon)).strip();
+    }
+
+    /**
+     * Reads a single line (terminated by LF, with an optional CR before it).
+     *
+     * @return read line without the line break
+     * @throws IOException if the connection is closed or an I/O error occurs
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Connection closed in the middle of a response.");
+            }
+            byte b = buffer[position++];
+            if (b == '\n') {
+                return line.toString();
+            }
+            if (b != '\r') {
+                line.append((char) (b & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Skips the given number of bytes of the response.
+     *
+     * @param n number of bytes to skip
+     * @throws IOException if the connection is closed or an I/O error occurs
+     */
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Connection closed in the middle of a response body.");
+            }
+            int step = (int) Math.min(n, limit - position);
+            position += step;
+            n -= step;
+        }
+    }
+
+    /**
+     * Reads more data from the connection into the (empty) buffer.
+     *
+     * @return false if the connection has been closed by the server
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n == -1) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies of a single load generator thread (every sample is kept, so percentiles are exact).
+ * Recorders of all the threads are merged with {@link #merge(LatencyRecorder...)} once the run is over.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class LatencyRecorder {
+    /**
+     * Recorded latencies in nanoseconds.
+     */
+    private long[] samples = new long[1024];
+
+    /**
+     * Number of recorded latencies.
+     */
+    private int count;
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return number of recorded latencies
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Merges the given recorders into a new, sorted recorder.
+     *
+     * @param recorders recorders to merge
+     * @return merged recorder
+     */
+    public static LatencyRecorder merge(LatencyRecorder... recorders) {
+        LatencyRecorder merged = new LatencyRecorder();
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.count;
+        }
+        merged.samples = new long[Math.max(total, 1)];
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, merged.samples, merged.count, recorder.count);
+            merged.count += recorder.count;
+        }
+        Arrays.sort(merged.samples, 0, merged.count);
+        return merged;
+    }
+
+    /**
+     * Returns the latency at the given percentile (of a merged, sorted recorder).
+     *
+     * @param percentile percentile between 0 and 100
+     * @return latency in nanoseconds (0 if nothing was recorded)
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return samples[Math.min(Math.max(index, 0), count - 1)];
+    }
+}
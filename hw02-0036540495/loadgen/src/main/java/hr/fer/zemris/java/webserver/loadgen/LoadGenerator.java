@@ -0,0 +1,411 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * HTTP load generator for the {@link SmartHttpServer}.
+ * <p>
+ * Starts the server in-process (unless an external target is given), sends a weighted mix of requests
+ * for static files, workers and SmartScript pages, and reports the throughput and latency percentiles.
+ * Two load models are supported:
+ * <ul>
+ *     <li><b>closed</b> – every client thread sends its next request as soon as it receives a response,
+ *         so the offered load adapts to the server (measures maximum throughput);</li>
+ *     <li><b>open</b> – requests are scheduled at a fixed rate regardless of the responses; the latency
+ *         is measured from the scheduled time, so time a request waited because the server was behind
+ *         is included (avoids coordinated omission).</li>
+ * </ul>
+ * Options:
+ * <pre>
+ * --mode closed|open       load model (default closed)
+ * --concurrency N          number of client threads, i.e. maximum number of outstanding requests (default 16)
+ * --rate R                 requests per second in open mode (default 1000)
+ * --duration S             measured duration in seconds (default 10)
+ * --warmup S               warm-up duration in seconds, not measured (default 3)
+ * --keepalive              reuse connections (the server may still close them)
+ * --mix SPEC               request mix, weight:path,... (default {@value RequestMix#DEFAULT})
+ * --config FILE            server configuration for the in-process server (default ../config/server.properties)
+ * --set KEY=VALUE          overrides a server configuration property (may be repeated)
+ * --target HOST:PORT       use an already running server instead of starting one
+ * </pre>
+ * Rate limiting and access logging are disabled in the in-process server unless set with <code>--set</code>.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class LoadGenerator {
+    /**
+     * Load model.
+     */
+    private String mode = "closed";
+
+    /**
+     * Number of client threads.
+     */
+    private int concurrency = 16;
+
+    /**
+     * Requests per second in the open model.
+     */
+    private double rate = 1000;
+
+    /**
+     * Measured duration in seconds.
+     */
+    private double duration = 10;
+
+    /**
+     * Warm-up duration in seconds.
+     */
+    private double warmup = 3;
+
+    /**
+     * Whether connections are reused.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Request mix specification.
+     */
+    private String mix = RequestMix.DEFAULT;
+
+    /**
+     * Configuration of the in-process server.
+     */
+    private Path config = Path.of("../config/server.properties");
+
+    /**
+     * Overridden server configuration properties.
+     */
+    private final Map<String, String> overrides = new HashMap<>();
+
+    /**
+     * Host of the target server.
+     */
+    private String host = "127.0.0.1";
+
+    /**
+     * Port of the target server (-1 to start the server in-process).
+     */
+    private int port = -1;
+
+    /**
+     * Result of a single client thread.
+     *
+     * @param latencies latencies per path
+     * @param statuses number of responses per status code
+     * @param errors number of failed requests
+     * @param connects number of opened connections
+     */
+    private record ClientResult(LatencyRecorder[] latencies, Map<Integer, Long> statuses, long errors, long connects) {}
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args command line arguments
+     * @throws IllegalArgumentException if an argument is invalid
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--keepalive")) {
+                keepAlive = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + option + ".");
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--mode" -> {
+                    if (!value.equals("closed") && !value.equals("open")) {
+                        throw new IllegalArgumentException("Mode must be 'closed' or 'open'.");
+                    }
+                    mode = value;
+                }
+                case "--concurrency" -> concurrency = Integer.parseInt(value);
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--duration" -> duration = Double.parseDouble(value);
+                case "--warmup" -> warmup = Double.parseDouble(value);
+                case "--mix" -> mix = value;
+                case "--config" -> config = Path.of(value);
+                case "--set" -> {
+                    int equals = value.indexOf('=');
+                    if (equals <= 0) {
+                        throw new IllegalArgumentException("Expected KEY=VALUE but got '" + value + "'.");
+                    }
+                    overrides.put(value.substring(0, equals), value.substring(equals + 1));
+                }
+                case "--target" -> {
+                    int colon = value.lastIndexOf(':');
+                    if (colon <= 0) {
+                        throw new IllegalArgumentException("Expected HOST:PORT but got '" + value + "'.");
+                    }
+                    host = value.substring(0, colon);
+                    port = Integer.parseInt(value.substring(colon + 1));
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + option + ".");
+            }
+        }
+        if (concurrency <= 0 || rate <= 0 || duration <= 0 || warmup < 0) {
+            throw new IllegalArgumentException("Concurrency, rate and duration must be positive.");
+        }
+    }
+
+    /**
+     * Starts the server (if needed), runs the load and prints the report.
+     *
+     * @throws Exception if the server cannot be started or a client thread is interrupted
+     */
+    private void run() throws Exception {
+        if (port == -1) {
+            port = startServer();
+        }
+        RequestMix requestMix = new RequestMix(mix, host, keepAlive);
+
+        long start = System.nanoTime() + 100_000_000L;
+        long measureFrom = start + (long) (warmup * 1e9);
+        long end = measureFrom + (long) (duration * 1e9);
+        AtomicLong tickets = new AtomicLong();
+        long interval = (long) (1e9 / rate);
+
+        List<Thread> threads = new ArrayList<>();
+        ClientResult[] results = new ClientResult[concurrency];
+        for (int t = 0; t < concurrency; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> results[index] = mode.equals("open")
+                    ? runOpen(requestMix, start, measureFrom, end, tickets, interval)
+                    : runClosed(requestMix, start, measureFrom, end), "loadgen-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(requestMix, results);
+    }
+
+    /**
+     * Runs a client thread of the closed model.
+     *
+     * @param requestMix request mix
+     * @param start time (as given by {@link System#nanoTime()}) when the load starts
+     * @param measureFrom time when the measurement starts
+     * @param end time when the load ends
+     * @return result of the thread
+     */
+    private ClientResult runClosed(RequestMix requestMix, long start, long measureFrom, long end) {
+        ClientState state = new ClientState(requestMix.size());
+        LockSupport.parkNanos(start - System.nanoTime());
+        try (HttpConnection connection = new HttpConnection(host, port, keepAlive)) {
+            for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                state.send(connection, requestMix, now, now >= measureFrom);
+            }
+            return state.result(connection);
+        }
+    }
+
+    /**
+     * Runs a client thread of the open model: takes the next scheduled request,
+     * waits until its scheduled time and sends it.
+     *
+     * @param requestMix request mix
+     * @param start time (as given by {@link System#nanoTime()}) when the load starts
+     * @param measureFrom time when the measurement starts
+     * @param end time when the load ends
+     * @param tickets counter of scheduled requests shared by all threads
+     * @param interval time between two scheduled requests in nanoseconds
+     * @return result of the thread
+     */
+    private ClientResult runOpen(RequestMix requestMix, long start, long measureFrom, long end,
+                                 AtomicLong tickets, long interval) {
+        ClientState state = new ClientState(requestMix.size());
+        try (HttpConnection connection = new HttpConnection(host, port, keepAlive)) {
+            while (true) {
+                long scheduled = start + tickets.getAndIncrement() * interval;
+                if (scheduled >= end) {
+                    return state.result(connection);
+                }
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                state.send(connection, requestMix, scheduled, scheduled >= measureFrom);
+            }
+        }
+    }
+
+    /**
+     * Measurements of a single client thread.
+     */
+    private static class ClientState {
+        /**
+         * Latencies per path.
+         */
+        final LatencyRecorder[] latencies;
+
+        /**
+         * Number of responses per status code.
+         */
+        final Map<Integer, Long> statuses = new HashMap<>();
+
+        /**
+         * Number of failed requests.
+         */
+        long errors;
+
+        /**
+         * Constructs a new state for the given number of paths.
+         *
+         * @param paths number of paths in the mix
+         */
+        ClientState(int paths) {
+            latencies = new LatencyRecorder[paths];
+            for (int i = 0; i < paths; i++) {
+                latencies[i] = new LatencyRecorder();
+            }
+        }
+
+        /**
+         * Sends a random request from the mix and records its outcome.
+         *
+         * @param connection connection to send the request through
+         * @param requestMix request mix
+         * @param startedAt time (as given by {@link System#nanoTime()}) from which the latency is measured
+         * @param measured whether the outcome is recorded
+         */
+        void send(HttpConnection connection, RequestMix requestMix, long startedAt, boolean measured) {
+            int path = requestMix.next();
+            try {
+                int status = connection.send(requestMix.request(path));
+                if (measured) {
+                    latencies[path].record(System.nanoTime() - startedAt);
+                    statuses.merge(status, 1L, Long::sum);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (measured) {
+                    errors++;
+                }
+            }
+        }
+
+        /**
+         * Returns the result of the thread.
+         *
+         * @param connection connection used by the thread
+         * @return result of the thread
+         */
+        ClientResult result(HttpConnection connection) {
+            return new ClientResult(latencies, statuses, errors, connection.getConnects());
+        }
+    }
+
+    /**
+     * Prints the throughput, status codes and latency percentiles (in total and per path).
+     *
+     * @param requestMix request mix
+     * @param results results of the client threads
+     */
+    private void report(RequestMix requestMix, ClientResult[] results) {
+        Map<Integer, Long> statuses = new TreeMap<>();
+        long errors = 0;
+        long connects = 0;
+        LatencyRecorder[][] perPath = new LatencyRecorder[requestMix.size()][results.length];
+        LatencyRecorder[] all = new LatencyRecorder[results.length * requestMix.size()];
+        for (int t = 0; t < results.length; t++) {
+            results[t].statuses().forEach((status, count) -> statuses.merge(status, count, Long::sum));
+            errors += results[t].errors();
+            connects += results[t].connects();
+            for (int p = 0; p < requestMix.size(); p++) {
+                perPath[p][t] = results[t].latencies()[p];
+                all[t * requestMix.size() + p] = results[t].latencies()[p];
+            }
+        }
+        LatencyRecorder total = LatencyRecorder.merge(all);
+
+        System.out.printf("%n%s loop, concurrency %d%s, keep-alive %s, %.0f s measured after %.0f s warm-up%n",
+                mode, concurrency, mode.equals("open") ? String.format(", target %.0f req/s", rate) : "",
+                keepAlive ? "on" : "off", duration, warmup);
+        System.out.printf("requests   %d (%.1f req/s), errors %d, connections opened %d%n",
+                total.getCount(), total.getCount() / duration, errors, connects);
+        StringBuilder sb = new StringBuilder("status    ");
+        statuses.forEach((status, count) -> sb.append(' ').append(status).append(": ").append(count));
+        System.out.println(sb);
+        System.out.printf("%-30s %8s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        printLatencies("all", total);
+        for (int p = 0; p < requestMix.size(); p++) {
+            printLatencies(requestMix.path(p), LatencyRecorder.merge(perPath[p]));
+        }
+    }
+
+    /**
+     * Prints a single row of latency percentiles.
+     *
+     * @param label label of the row
+     * @param latencies merged latencies
+     */
+    private static void printLatencies(String label, LatencyRecorder latencies) {
+        System.out.printf("%-30s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n", label, latencies.getCount(),
+                latencies.percentile(50) / 1e6, latencies.percentile(90) / 1e6, latencies.percentile(99) / 1e6,
+                latencies.percentile(99.9) / 1e6, latencies.percentile(100) / 1e6);
+    }
+
+    /**
+     * Starts the server in-process. Relative paths in the configuration are resolved against the directory
+     * containing the configuration directory, rate limiting and access logging are disabled, and the overrides
+     * are applied.
+     *
+     * @return port the server listens on
+     * @throws IOException if the configuration cannot be read or written
+     */
+    private int startServer() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(config)) {
+            properties.load(is);
+        }
+        Path base = config.toAbsolutePath().normalize().getParent().getParent();
+        for (String key : List.of("server.documentRoot", "server.mimeConfig", "server.workers")) {
+            String value = properties.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, base.resolve(value.strip()).toString());
+            }
+        }
+        properties.remove("server.rateLimit");
+        properties.remove("server.accessLog");
+        overrides.forEach(properties::setProperty);
+
+        Path serverConfig = Files.createTempFile("loadgen", ".properties");
+        serverConfig.toFile().deleteOnExit();
+        try (OutputStream os = Files.newOutputStream(serverConfig)) {
+            properties.store(os, null);
+        }
+        new SmartHttpServer(serverConfig.toString());
+        return Integer.parseInt(properties.getProperty("server.port").strip());
+    }
+}
@@ -0,0 +1,117 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted mix of request paths sent by the {@link LoadGenerator}.
+ * The mix is given as a comma-separated list of <code>weight:path</code> entries,
+ * for example <code>4:/osnovni.txt,1:/hello</code>. Requests for all the paths are prepared in advance.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class RequestMix {
+    /**
+     * Default mix of static files, workers and SmartScript pages from the server's webroot.
+     */
+    public static final String DEFAULT = "4:/osnovni.txt,1:/images/bubica.jpg,2:/hello,1:/calc?a=1&b=2,"
+            + "1:/scripts/osnovni.smscr,1:/scripts/fibonaccih.smscr";
+
+    /**
+     * Paths in the mix.
+     */
+    private final String[] paths;
+
+    /**
+     * Prepared requests for the paths.
+     */
+    private final byte[][] requests;
+
+    /**
+     * Cumulative weights of the paths.
+     */
+    private final int[] cumulativeWeights;
+
+    /**
+     * Parses the given mix and prepares the requests.
+     *
+     * @param spec mix in the format <code>weight:path,weight:path,...</code>
+     * @param host value of the <code>Host</code> header
+     * @param keepAlive whether the requests ask for the connection to be kept open
+     * @throws IllegalArgumentException if the mix is invalid
+     */
+    public RequestMix(String spec, String host, boolean keepAlive) {
+        List<String> parsedPaths = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected 'weight:path' but got '" + entry + "'.");
+            }
+            int weight = Integer.parseInt(entry.substring(0, colon).strip());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight must be positive: " + entry);
+            }
+            parsedPaths.add(entry.substring(colon + 1).strip());
+            weights.add(weight);
+        }
+        paths = parsedPaths.toArray(new String[0]);
+        requests = new byte[paths.length][];
+        cumulativeWeights = new int[paths.length];
+        int total = 0;
+        for (int i = 0; i < paths.length; i++) {
+            requests[i] = ("GET " + paths[i] + " HTTP/1.1\r\n"
+                    + "Host: " + host + "\r\n"
+                    + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            total += weights.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * Picks the index of a random path according to the weights.
+     *
+     * @return index of the picked path
+     */
+    public int next() {
+        int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= r) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the number of paths in the mix.
+     *
+     * @return number of paths
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * Returns the path with the given index.
+     *
+     * @param index index of the path
+     * @return path
+     */
+    public String path(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Returns the prepared request for the path with the given index.
+     *
+     * @param index index of the path
+     * @return prepared request
+     */
+    public byte[] request(int index) {
+        return requests[index];
+    }
+}
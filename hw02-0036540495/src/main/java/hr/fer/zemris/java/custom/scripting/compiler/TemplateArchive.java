@@ -0,0 +1,512 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import hr.fer.zemris.java.custom.scripting.elems.*;
+import hr.fer.zemris.java.custom.scripting.nodes.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archive of precompiled SmartScript templates, written by the {@link TemplateCompiler} at build time
+ * and loaded by the server at startup, so the templates need not be parsed when they are first requested.
+ * <p>
+ * The archive is a flat binary file that is memory-mapped when it is opened: opening it reads only the index
+ * of the templates, and a template is decoded into a document tree only when it is loaded, so an archive
+ * of hundreds of templates takes almost no heap and no time until the templates are used.
+ * A loaded template keeps only its structure (nodes and elements) on the heap: its text nodes are not decoded,
+ * but refer to their UTF-8 encoded text in the mapped archive, which the engine writes to a UTF-8 response as it is.
+ * All the numbers are big-endian. The archive consists of:
+ * <ol>
+ *     <li>a header: the magic number <code>SMSC</code>, the version of the format, the number of templates,
+ *     strings, doubles and code words;</li>
+ *     <li>the index: for every template the string index of its path relative to the web root, the CRC-32 checksum
+ *     of its source (so a template whose source has changed since it was compiled is not used) and the position
+ *     of its code;</li>
+ *     <li>the text pool: the offsets of the strings followed by the strings themselves, UTF-8 encoded
+ *     (texts, string constants, names and paths, each stored once for the whole archive);</li>
+ *     <li>the constant pool of doubles;</li>
+ *     <li>the code: an array of 32-bit words with the nodes of all the templates in pre-order,
+ *     every node an opcode followed by its operands and, for nodes that have children, the number of children.</li>
+ * </ol>
+ * An element is stored as two words, its kind and its operand (the value of an integer constant,
+ * or the index of a double or a string).
+ *
+ * @see TemplateCompiler
+ *
+ * @version 2.0
+ * @author Marko Šelendić
+ */
+public class TemplateArchive {
+    /**
+     * A template to write to an archive.
+     *
+     * @param path path of the template relative to the web root (with <code>/</code> as the separator)
+     * @param checksum CRC-32 checksum of the source of the template
+     * @param document parsed document of the template
+     */
+    public record Template(String path, long checksum, DocumentNode document) {}
+
+    /**
+     * A template in an opened archive, not yet decoded.
+     *
+     * @param path path of the template relative to the web root (with <code>/</code> as the separator)
+     * @param checksum CRC-32 checksum of the source of the template
+     * @param code position of the code of the template
+     */
+    public record Entry(String path, long checksum, int code) {}
+
+    /**
+     * Magic number at the start of an archive.
+     */
+    private static final int MAGIC = 0x534D5343;
+
+    /**
+     * Version of the format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * Size of an index entry in bytes.
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * Opcodes of nodes.
+     */
+    private static final int DOCUMENT = 0, TEXT = 1, ECHO = 2, FOR = 3, PARALLEL = 4;
+
+    /**
+     * Kinds of elements.
+     */
+    private static final int NONE = 0, INTEGER = 1, DOUBLE = 2, STRING = 3, VARIABLE = 4, FUNCTION = 5, OPERATOR = 6;
+
+    /**
+     * Mapped content of the archive.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Templates in the archive.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Position of the string offsets.
+     */
+    private final int stringOffsets;
+
+    /**
+     * Number of strings.
+     */
+    private final int stringCount;
+
+    /**
+     * Position of the doubles.
+     */
+    private final int doubles;
+
+    /**
+     * Number of doubles.
+     */
+    private final int doubleCount;
+
+    /**
+     * Position of the code.
+     */
+    private final int code;
+
+    /**
+     * Number of code words.
+     */
+    private final int codeLength;
+
+    /**
+     * Position of the string data.
+     */
+    private final int strings;
+
+    /**
+     * Constructs an archive over the given content, reading its header and index.
+     *
+     * @param buffer content of the archive
+     * @param name name of the archive (for error messages)
+     * @throws IOException if the content is not a valid archive
+     */
+    private TemplateArchive(ByteBuffer buffer, String name) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a template archive: " + name + ".");
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported template archive version " + version + ": " + name + ".");
+            }
+            int templateCount = buffer.getInt(8);
+            stringCount = buffer.getInt(12);
+            doubleCount = buffer.getInt(16);
+            codeLength = buffer.getInt(20);
+            stringOffsets = HEADER_SIZE + templateCount * ENTRY_SIZE;
+            doubles = stringOffsets + (stringCount + 1) * 4;
+            code = doubles + doubleCount * 8;
+            strings = code + codeLength * 4;
+            if (templateCount < 0 || stringCount < 0 || doubleCount < 0 || codeLength < 0
+                    || strings < 0 || strings + buffer.getInt(stringOffsets + stringCount * 4) != buffer.limit()) {
+                throw new IOException("Template archive is corrupt: " + name + ".");
+            }
+            List<Entry> list = new ArrayList<>(templateCount);
+            for (int i = 0; i < templateCount; i++) {
+                int position = HEADER_SIZE + i * ENTRY_SIZE;
+                list.add(new Entry(string(buffer.getInt(position)), buffer.getLong(position + 4), buffer.getInt(position + 12)));
+            }
+            entries = Collections.unmodifiableList(list);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Template archive is corrupt: " + name + ".", e);
+        }
+    }
+
+    /**
+     * Opens an archive file by mapping it into memory and reading its index.
+     *
+     * @param file archive file
+     * @return opened archive
+     * @throws IOException if the file cannot be read or is not a valid archive
+     */
+    public static TemplateArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new TemplateArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    /**
+     * Returns the templates in the archive.
+     *
+     * @return templates in the archive, in the order in which they were written
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Decodes the document of the given template. Can be called concurrently.
+     *
+     * @param entry template from this archive
+     * @return decoded document of the template
+     * @throws IOException if the code of the template is invalid
+     */
+    public DocumentNode load(Entry entry) throws IOException {
+        try {
+            int[] position = {entry.code()};
+            if (!(readNode(position) instanceof DocumentNode document)) {
+                throw new IOException("Template " + entry.path() + " is not a document.");
+            }
+            return document;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Code of template " + entry.path() + " is corrupt.", e);
+        }
+    }
+
+    /**
+     * Decodes a node and its children.
+     *
+     * @param position position of the next code word, advanced past the node
+     * @return decoded node
+     * @throws IOException if the code is invalid
+     */
+    private Node readNode(int[] position) throws IOException {
+        int opcode = word(position);
+        if (opcode == TEXT) {
+            return new TextNode(encoded(word(position)));
+        }
+        if (opcode == ECHO) {
+            Element[] elements = new Element[word(position)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = readElement(position);
+            }
+            return new EchoNode(elements);
+        }
+        Node node = switch (opcode) {
+            case DOCUMENT -> new DocumentNode();
+            case FOR -> new ForLoopNode((ElementVariable) readElement(position),
+                    readElement(position), readElement(position), readElement(position));
+            case PARALLEL -> new ParallelNode();
+            default -> throw new IOException("Unknown opcode: " + opcode + ".");
+        };
+        int children = word(position);
+        for (int i = 0; i < children; i++) {
+            node.addChildNode(readNode(position));
+        }
+        return node;
+    }
+
+    /**
+     * Decodes an element.
+     *
+     * @param position position of the next code word, advanced past the element
+     * @return decoded element (null if none was written)
+     * @throws IOException if the code is invalid
+     */
+    private Element readElement(int[] position) throws IOException {
+        int kind = word(position);
+        int operand = word(position);
+        return switch (kind) {
+            case NONE -> null;
+            case INTEGER -> new ElementConstantInteger(operand);
+            case DOUBLE -> new ElementConstantDouble(Double.longBitsToDouble(buffer.getLong(doubles + checkIndex(operand, doubleCount) * 8)));
+            case STRING -> new ElementString(string(operand));
+            case VARIABLE -> new ElementVariable(string(operand));
+            case FUNCTION -> new ElementFunction(string(operand));
+            case OPERATOR -> new ElementOperator(string(operand));
+            default -> throw new IOException("Unknown element kind: " + kind + ".");
+        };
+    }
+
+    /**
+     * Reads the next code word.
+     *
+     * @param position position of the word, advanced past it
+     * @return code word
+     */
+    private int word(int[] position) {
+        int index = checkIndex(position[0]++, codeLength);
+        return buffer.getInt(code + index * 4);
+    }
+
+    /**
+     * Decodes the string with the given index from the text pool.
+     *
+     * @param index index of the string
+     * @return decoded string
+     */
+    private String string(int index) {
+        return StandardCharsets.UTF_8.decode(encoded(index)).toString();
+    }
+
+    /**
+     * Returns the UTF-8 encoded string with the given index in the text pool, without copying it.
+     *
+     * @param index index of the string
+     * @return buffer over the encoded string in the content of the archive
+     */
+    private ByteBuffer encoded(int index) {
+        checkIndex(index, stringCount);
+        int start = buffer.getInt(stringOffsets + index * 4);
+        int end = buffer.getInt(stringOffsets + index * 4 + 4);
+        return buffer.slice(strings + start, end - start);
+    }
+
+    /**
+     * Checks that the given index is within the given bound.
+     *
+     * @param index index to check
+     * @param bound number of valid indices
+     * @return the index
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    private static int checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound + ".");
+        }
+        return index;
+    }
+
+    /**
+     * Writes the given templates to an archive file.
+     *
+     * @param templates templates to write
+     * @param file archive file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(List<Template> templates, Path file) throws IOException {
+        Writer writer = new Writer();
+        int[] paths = new int[templates.size()];
+        int[] codes = new int[templates.size()];
+        for (int i = 0; i < templates.size(); i++) {
+            paths[i] = writer.string(templates.get(i).path());
+            codes[i] = writer.codeLength;
+            writer.writeNode(templates.get(i).document());
+        }
+
+        int stringBytes = writer.stringData.size();
+        int size = HEADER_SIZE + templates.size() * ENTRY_SIZE + (writer.strings.size() + 1) * 4
+                + writer.doubles.size() * 8 + writer.codeLength * 4 + stringBytes;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(templates.size())
+                .putInt(writer.strings.size()).putInt(writer.doubles.size()).putInt(writer.codeLength);
+        for (int i = 0; i < templates.size(); i++) {
+            buffer.putInt(paths[i]).putLong(templates.get(i).checksum()).putInt(codes[i]);
+        }
+        for (int offset : writer.stringOffsets) {
+            buffer.putInt(offset);
+        }
+        buffer.putInt(stringBytes);
+        for (double value : writer.doubles.keySet()) {
+            buffer.putLong(Double.doubleToRawLongBits(value));
+        }
+        for (int i = 0; i < writer.codeLength; i++) {
+            buffer.putInt(writer.code[i]);
+        }
+        buffer.put(writer.stringData.toByteArray());
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * Encodes documents into the code and the pools of an archive.
+     */
+    private static class Writer {
+        /**
+         * Indices of the strings in the text pool.
+         */
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        /**
+         * Offsets of the strings in the text pool.
+         */
+        private final List<Integer> stringOffsets = new ArrayList<>();
+
+        /**
+         * UTF-8 encoded strings of the text pool.
+         */
+        private final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+
+        /**
+         * Indices of the doubles in the constant pool (in the order in which they were added).
+         */
+        private final Map<Double, Integer> doubles = new LinkedHashMap<>();
+
+        /**
+         * Code words.
+         */
+        private int[] code = new int[256];
+
+        /**
+         * Number of code words.
+         */
+        private int codeLength;
+
+        /**
+         * Encodes the given node and its children.
+         *
+         * @param node node to encode
+         * @throws IOException if the node is of an unknown type
+         */
+        private void writeNode(Node node) throws IOException {
+            switch (node) {
+                case DocumentNode ignored -> word(DOCUMENT);
+                case TextNode text -> {
+                    word(TEXT);
+                    word(string(text.getText()));
+                    return;
+                }
+                case EchoNode echo -> {
+                    word(ECHO);
+                    word(echo.getElements().length);
+                    for (Element element : echo.getElements()) {
+                        writeElement(element);
+                    }
+                    return;
+                }
+                case ForLoopNode forLoop -> {
+                    word(FOR);
+                    writeElement(forLoop.getVariable());
+                    writeElement(forLoop.getStartExpression());
+                    writeElement(forLoop.getEndExpression());
+                    writeElement(forLoop.getStepExpression());
+                }
+                case ParallelNode ignored -> word(PARALLEL);
+                default -> throw new IOException("Unknown node type: " + node.getClass() + ".");
+            }
+            word(node.numberOfChildren());
+            for (int i = 0; i < node.numberOfChildren(); i++) {
+                writeNode(node.getChild(i));
+            }
+        }
+
+        /**
+         * Encodes the given element as its kind and its operand.
+         *
+         * @param element element to encode (may be null)
+         * @throws IOException if the element is of an unknown type
+         */
+        private void writeElement(Element element) throws IOException {
+            switch (element) {
+                case null -> {
+                    word(NONE);
+                    word(0);
+                }
+                case ElementConstantInteger constant -> {
+                    word(INTEGER);
+                    word(constant.getValue());
+                }
+                case ElementConstantDouble constant -> {
+                    word(DOUBLE);
+                    word(doubles.computeIfAbsent(constant.getValue(), value -> doubles.size()));
+                }
+                case ElementString string -> {
+                    word(STRING);
+                    word(string(string.getValue()));
+                }
+                case ElementVariable variable -> {
+                    word(VARIABLE);
+                    word(string(variable.getName()));
+                }
+                case ElementFunction function -> {
+                    word(FUNCTION);
+                    word(string(function.getName()));
+                }
+                case ElementOperator operator -> {
+                    word(OPERATOR);
+                    word(string(operator.getSymbol()));
+                }
+                default -> throw new IOException("Unknown element type: " + element.getClass() + ".");
+            }
+        }
+
+        /**
+         * Returns the index of the given string in the text pool, adding it if it is not there yet.
+         *
+         * @param string string
+         * @return index of the string
+         */
+        private int string(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+                stringOffsets.add(stringData.size());
+                stringData.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+
+        /**
+         * Appends a code word.
+         *
+         * @param word code word
+         */
+        private void word(int word) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[codeLength++] = word;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Program that precompiles all the SmartScript templates (<code>.smscr</code> files) under a web root
+ * into a {@link TemplateArchive}, run at build time by the <code>templates</code> module.
+ * A template that cannot be parsed fails the compilation (and the build), so parse errors are found before deployment.
+ * <p>
+ * Usage: <code>TemplateCompiler webroot archive</code>
+ *
+ * @see TemplateArchive
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class TemplateCompiler {
+    /**
+     * Extension of template files.
+     */
+    private static final String EXTENSION = ".smscr";
+
+    /**
+     * Utility class, not meant to be instantiated.
+     */
+    private TemplateCompiler() {
+    }
+
+    /**
+     * Precompiles the templates under the web root given as the first argument into the archive given as the second.
+     *
+     * @param args path to the web root and path to the archive
+     * @throws IOException if a template cannot be read or the archive cannot be written
+     * @throws IllegalStateException if any of the templates cannot be parsed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Expected 2 arguments: path to web root and path to template archive.");
+            return;
+        }
+        Path archive = Path.of(args[1]);
+        List<TemplateArchive.Template> templates = compile(Path.of(args[0]));
+        if (archive.getParent() != null) {
+            Files.createDirectories(archive.getParent());
+        }
+        TemplateArchive.write(templates, archive);
+        System.out.println("Precompiled " + templates.size() + " templates into " + archive + ".");
+    }
+
+    /**
+     * Parses all the templates under the given web root.
+     *
+     * @param webroot web root
+     * @return parsed templates, sorted by path
+     * @throws IOException if a template cannot be read
+     * @throws IllegalStateException if any of the templates cannot be parsed (all the errors are reported)
+     */
+    public static List<TemplateArchive.Template> compile(Path webroot) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(webroot)) {
+            files = paths.filter(path -> path.toString().endsWith(EXTENSION) && Files.isRegularFile(path)).sorted().toList();
+        }
+
+        List<TemplateArchive.Template> templates = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (Path file : files) {
+            String path = webroot.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            byte[] source = Files.readAllBytes(file);
+            try {
+                SmartScriptParser parser = new SmartScriptParser(Files.readString(file));
+                templates.add(new TemplateArchive.Template(path, checksum(source), parser.getDocumentNode()));
+            } catch (SmartScriptParserException e) {
+                errors.add(path + ": " + e.getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            errors.forEach(error -> System.err.println("Error while parsing template " + error));
+            throw new IllegalStateException(errors.size() + " of " + files.size() + " templates cannot be parsed.");
+        }
+        return templates;
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the given source of a template.
+     *
+     * @param source source of a template
+     * @return checksum of the source
+     */
+    public static long checksum(byte[] source) {
+        CRC32 crc = new CRC32();
+        crc.update(source);
+        return crc.getValue();
+    }
+}
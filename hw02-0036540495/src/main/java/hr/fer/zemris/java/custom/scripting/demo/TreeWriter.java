@@ -54,6 +54,15 @@ public class TreeWriter {
                 node.getChild(i).accept(this);
             }
         }
+
+        @Override
+        public void visitParallelNode(ParallelNode node) {
+            System.out.print("{$ PARALLEL $}");
+            for (int i = 0; i < node.numberOfChildren(); i++) {
+                node.getChild(i).accept(this);
+            }
+            System.out.print("{$ END $}");
+        }
     }
 
     public static void main(String[] args) {
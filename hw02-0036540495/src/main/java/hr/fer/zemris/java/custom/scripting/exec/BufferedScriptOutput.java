@@ -0,0 +1,90 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+import java.io.IOException;
+
+/**
+ * A {@link ScriptOutput} that gathers the output of a script in a buffer of a fixed size and writes it to the request
+ * context (and flushes it to the client) whenever the buffer fills up, so a script producing a large output streams it
+ * to the client with a bounded amount of memory and without a write for every node.
+ * <p>
+ * Optionally, the buffer is also flushed at the end of every iteration of an outermost FOR loop, so every row
+ * of a generated table reaches the client as soon as it is rendered (earlier first byte, at the cost of more writes).
+ * If the script fails, the output that is still buffered is not sent, so a script that fails before filling
+ * the buffer can still be answered with an error response.
+ *
+ * @see ScriptOutput
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class BufferedScriptOutput implements ScriptOutput {
+    /**
+     * Request context the output is written to.
+     */
+    private final RequestContext context;
+
+    /**
+     * Buffer of the output.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Flag that signals whether the buffer is flushed after every iteration of an outermost FOR loop.
+     */
+    private final boolean flushOnIteration;
+
+    /**
+     * Number of bytes in the buffer.
+     */
+    private int count;
+
+    /**
+     * Constructs a new buffered sink.
+     *
+     * @param context request context to write the output to
+     * @param bufferSize size of the buffer in bytes
+     * @param flushOnIteration if true, the buffer is flushed after every iteration of an outermost FOR loop
+     * @throws IllegalArgumentException if the size of the buffer is not positive
+     */
+    public BufferedScriptOutput(RequestContext context, int bufferSize, boolean flushOnIteration) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.context = context;
+        this.buffer = new byte[bufferSize];
+        this.flushOnIteration = flushOnIteration;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (length > buffer.length - count) {
+            flush();
+        }
+        if (length >= buffer.length) {
+            context.write(data, offset, length);
+            context.flush();
+            return;
+        }
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    public void iterationEnd(int depth) throws IOException {
+        if (flushOnIteration && depth == 1) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        context.write(buffer, 0, count);
+        count = 0;
+        context.flush();
+    }
+}
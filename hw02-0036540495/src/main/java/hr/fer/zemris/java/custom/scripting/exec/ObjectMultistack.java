@@ -81,6 +81,28 @@ public class ObjectMultistack {
         return map.get(keyName) == null;
     }
 
+    /**
+     * Removes all the values of all the keys.
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * Returns a new multistack that holds, for every key, a copy of the value on the top of its stack.
+     *
+     * @return copy of the top values
+     */
+    public ObjectMultistack copyTop() {
+        ObjectMultistack copy = new ObjectMultistack();
+        for (Map.Entry<String, MultistackEntry> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                copy.push(entry.getKey(), new ValueWrapper(entry.getValue().value.getValue()));
+            }
+        }
+        return copy;
+    }
+
     /**
      * A single entry in the multistack.
      */
@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * An exception that is thrown when a script executed with {@link SmartScriptEngine}
+ * exceeds one of the limits of its {@link ScriptLimits}.
+ *
+ * @see SmartScriptEngine
+ * @see ScriptLimits
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ScriptLimitException extends SmartScriptException {
+    /**
+     * Constructs a new exception with the given detail message.
+     *
+     * @param message the detail message
+     */
+    public ScriptLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,34 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Limits on the work a single execution of a script by the {@link SmartScriptEngine} may do,
+ * so that a script (for example one with a huge FOR range) cannot monopolize the thread executing it.
+ * A limit of 0 means that the work is not limited.
+ *
+ * @param maxInstructions maximum number of instructions (executed nodes and evaluated echo elements)
+ * @param maxIterations maximum number of iterations of all FOR loops together
+ * @param maxOutputBytes maximum number of bytes the script may write
+ *
+ * @see SmartScriptEngine
+ * @see ScriptLimitException
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public record ScriptLimits(long maxInstructions, long maxIterations, long maxOutputBytes) {
+    /**
+     * Limits that do not limit anything.
+     */
+    public static final ScriptLimits UNLIMITED = new ScriptLimits(0, 0, 0);
+
+    /**
+     * Constructs new limits.
+     *
+     * @throws IllegalArgumentException if any of the limits is negative
+     */
+    public ScriptLimits {
+        if (maxInstructions < 0 || maxIterations < 0 || maxOutputBytes < 0) {
+            throw new IllegalArgumentException("Script limits must not be negative.");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+import java.io.IOException;
+
+/**
+ * Sink the {@link SmartScriptEngine} writes the output of a script to. A sink decides when the output is sent on
+ * to the client: every write at once, or gathered in a buffer (see {@link BufferedScriptOutput}).
+ * Writes block while the client does not take the output, which holds the script back instead of letting
+ * its output pile up in memory.
+ *
+ * @see SmartScriptEngine
+ * @see BufferedScriptOutput
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public interface ScriptOutput {
+    /**
+     * Writes a part of the output.
+     *
+     * @param data array holding the output
+     * @param offset offset of the output in the array
+     * @param length length of the output
+     * @throws IOException if the output cannot be written
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Called by the engine when an iteration of a FOR loop ends.
+     *
+     * @param depth depth of the loop (1 for a loop that is not nested in another loop)
+     * @throws IOException if the output cannot be written
+     */
+    default void iterationEnd(int depth) throws IOException {
+    }
+
+    /**
+     * Sends all the output written so far on to the client. Called by the engine once the script is done.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Returns a sink that writes every part of the output directly to the given request context.
+     *
+     * @param context request context to write to
+     * @return unbuffered sink
+     */
+    static ScriptOutput of(RequestContext context) {
+        return new ScriptOutput() {
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                context.write(data, offset, length);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.ParallelNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution profile of a single parsed script: for every node of the script it records how many times
+ * the node was executed and the total time spent executing it (the time of its children included).
+ * A profile can be shared by concurrent executions of the same document by the {@link SmartScriptEngine}.
+ * <p>
+ * The nodes are numbered once, when the profile is created, so recording an execution of a node
+ * only needs a lookup in a map that is never modified afterwards and two atomic additions.
+ *
+ * @see SmartScriptEngine
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ScriptProfile {
+    /**
+     * Maximum length of the text shown for a text node in the report.
+     */
+    private static final int MAX_TEXT_LENGTH = 40;
+
+    /**
+     * Indices of the nodes (compared by identity, since nodes with the same content are equal).
+     */
+    private final Map<Node, Integer> indices = new IdentityHashMap<>();
+
+    /**
+     * Nodes in the order in which they appear in the script.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Depth of every node (0 for the document node).
+     */
+    private final List<Integer> depths = new ArrayList<>();
+
+    /**
+     * Number of executions of every node.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * Total time in nanoseconds spent executing every node.
+     */
+    private final AtomicLongArray nanos;
+
+    /**
+     * Constructs a new, empty profile of the given document.
+     *
+     * @param document document whose executions are profiled
+     */
+    public ScriptProfile(DocumentNode document) {
+        number(document, 0);
+        counts = new AtomicLongArray(nodes.size());
+        nanos = new AtomicLongArray(nodes.size());
+    }
+
+    /**
+     * Records an execution of the given node.
+     *
+     * @param node executed node
+     * @param elapsed time in nanoseconds spent executing the node
+     */
+    public void record(Node node, long elapsed) {
+        Integer index = indices.get(node);
+        if (index == null) {
+            return;
+        }
+        counts.incrementAndGet(index);
+        nanos.addAndGet(index, elapsed);
+    }
+
+    /**
+     * Returns the number of executions of the whole script.
+     *
+     * @return number of executions
+     */
+    public long getExecutions() {
+        return counts.get(0);
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent executing the whole script.
+     *
+     * @return total execution time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return nanos.get(0);
+    }
+
+    /**
+     * Writes a report of the profile: a line for every node, indented by its depth,
+     * with the number of executions, the total time and the average time of an execution.
+     *
+     * @param sb builder to write the report to
+     */
+    public void appendReport(StringBuilder sb) {
+        sb.append(String.format("%12s %12s %12s  %s%n", "count", "total ms", "avg us", "node"));
+        for (int i = 0; i < nodes.size(); i++) {
+            long count = counts.get(i);
+            long total = nanos.get(i);
+            sb.append(String.format("%12d %12.3f %12.3f  %s%s%n",
+                    count,
+                    total / 1e6,
+                    count == 0 ? 0.0 : total / 1e3 / count,
+                    "  ".repeat(depths.get(i)),
+                    describe(nodes.get(i))));
+        }
+    }
+
+    /**
+     * Numbers the given node and its descendants in pre-order.
+     *
+     * @param node node to number
+     * @param depth depth of the node
+     */
+    private void number(Node node, int depth) {
+        indices.put(node, nodes.size());
+        nodes.add(node);
+        depths.add(depth);
+        for (int i = 0; i < node.numberOfChildren(); i++) {
+            number(node.getChild(i), depth + 1);
+        }
+    }
+
+    /**
+     * Returns a short, single-line description of the given node.
+     *
+     * @param node node to describe
+     * @return description of the node
+     */
+    private static String describe(Node node) {
+        return switch (node) {
+            case DocumentNode ignored -> "DOCUMENT";
+            case ForLoopNode forLoop -> {
+                String description = "{$ FOR " + forLoop.getVariable().asText() + " "
+                        + forLoop.getStartExpression().asText() + " " + forLoop.getEndExpression().asText();
+                if (forLoop.getStepExpression() != null) {
+                    description += " " + forLoop.getStepExpression().asText();
+                }
+                yield description + " $}";
+            }
+            case TextNode text -> {
+                String value = text.getText();
+                if (value.length() > MAX_TEXT_LENGTH) {
+                    value = value.substring(0, MAX_TEXT_LENGTH) + "...";
+                }
+                yield "TEXT \"" + value.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t") + "\"";
+            }
+            case EchoNode echo -> echo.toString().replace("\r", "\\r").replace("\n", "\\n");
+            case ParallelNode ignored -> "{$ PARALLEL $}";
+            default -> node.getClass().getSimpleName();
+        };
+    }
+}
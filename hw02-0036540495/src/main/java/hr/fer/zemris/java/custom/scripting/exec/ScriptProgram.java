@@ -0,0 +1,105 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * An executable SmartScript script: a parsed document (and its profile, if the executions are profiled)
+ * that is never modified once the program is constructed, so a single program can be shared by all the threads
+ * that execute the script at the same time.
+ * <p>
+ * Everything an execution changes (variables, counters, the request context and the output) is kept
+ * in a {@link SmartScriptEngine}, one per thread, that is reset and reused for every execution of any program
+ * on that thread. An execution started from within another execution on the same thread gets an engine of its own.
+ *
+ * @see SmartScriptEngine
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public final class ScriptProgram {
+    /**
+     * Engines executing programs, one per thread.
+     */
+    private static final ThreadLocal<SmartScriptEngine> ENGINES = ThreadLocal.withInitial(SmartScriptEngine::new);
+
+    /**
+     * Document to execute.
+     */
+    private final DocumentNode document;
+
+    /**
+     * Profile the executions are recorded in (null if the executions are not profiled).
+     */
+    private final ScriptProfile profile;
+
+    /**
+     * Constructs a new program that executes the given document without profiling.
+     *
+     * @param document document to execute
+     * @throws NullPointerException if the document is null
+     */
+    public ScriptProgram(DocumentNode document) {
+        this(document, null);
+    }
+
+    /**
+     * Constructs a new program that executes the given document, recording the executions in the given profile.
+     *
+     * @param document document to execute
+     * @param profile profile to record the executions in (null if the executions are not profiled)
+     * @throws NullPointerException if the document is null
+     */
+    public ScriptProgram(DocumentNode document, ScriptProfile profile) {
+        if (document == null) {
+            throw new NullPointerException("Document must not be null.");
+        }
+        this.document = document;
+        this.profile = profile;
+    }
+
+    /**
+     * Returns the document the program executes.
+     *
+     * @return document of the program
+     */
+    public DocumentNode getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the profile the executions are recorded in.
+     *
+     * @return profile of the program, or null if the executions are not profiled
+     */
+    public ScriptProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Executes the program with the given request context, without limits, writing the output directly to the context.
+     *
+     * @param requestContext request context the script works with
+     * @throws SmartScriptException if an error occurs while executing the script
+     */
+    public void execute(RequestContext requestContext) {
+        execute(requestContext, ScriptLimits.UNLIMITED, ScriptOutput.of(requestContext));
+    }
+
+    /**
+     * Executes the program with the given request context and limits, writing the output to the given sink.
+     *
+     * @param requestContext request context the script works with
+     * @param limits limits of the execution
+     * @param output sink to write the output to
+     * @throws SmartScriptException if an error occurs while executing the script
+     * @throws ScriptLimitException if the script exceeds any of the limits
+     */
+    public void execute(RequestContext requestContext, ScriptLimits limits, ScriptOutput output) {
+        SmartScriptEngine engine = ENGINES.get();
+        if (engine.isRunning()) {
+            engine = new SmartScriptEngine();
+        }
+        engine.run(this, requestContext, limits, output);
+    }
+}
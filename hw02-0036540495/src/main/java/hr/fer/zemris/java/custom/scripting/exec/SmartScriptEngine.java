@@ -6,27 +6,162 @@ import hr.fer.zemris.java.custom.scripting.nodes.*;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.webserver.RequestContext;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Engine that executes a document node parsed with {@link SmartScriptParser}.
+ * The work of an execution can be bounded with {@link ScriptLimits}, and the executed nodes
+ * can be recorded in a {@link ScriptProfile}. Errors are reported with a {@link SmartScriptException}.
+ * The output is written to a {@link ScriptOutput}, which decides when it is sent on to the client.
+ * <p>
+ * The blocks of a <code>{$ PARALLEL $}</code> region are rendered concurrently on virtual threads, each by its own engine
+ * into its own buffer, with the current values of the loop variables and a copy of the temporary parameters,
+ * and their output is written in order once all of them are done. Changes a block makes to its temporary parameters
+ * or to the response header (such as the mime type) are not seen outside of the block.
+ * The blocks of a region (and of the regions nested in it) count their work against the same limits as the rest
+ * of the script, so a region fails as soon as all of its blocks together exceed a limit.
+ * <p>
+ * An engine holds the state of a single execution (variables, counters, the request context and the output),
+ * while the document node is only read, so one document can be executed by any number of engines at once.
+ * An engine constructed with a document node executes it once; a {@link ScriptProgram} instead reuses
+ * an engine of the current thread for every execution of its document, so concurrent requests to a cached script
+ * allocate no execution state of their own.
+ *
+ * @see ScriptProgram
  */
 public class SmartScriptEngine {
+    /**
+     * Executor that runs the blocks of parallel regions, a new virtual thread for every block.
+     */
+    private static final Executor PARALLEL_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("script-block-", 0).factory());
+
+    /**
+     * Size of the buffer pre-encoded texts are copied through.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
     /**
      * Document node to execute.
      */
-    private final DocumentNode documentNode;
+    private DocumentNode documentNode;
 
     /**
      * Request context to write output to.
      */
-    private final RequestContext requestContext;
+    private RequestContext requestContext;
 
     /**
      * Multistack to store variables while executing for loops.
      */
-    private final ObjectMultistack multistack = new ObjectMultistack();
+    private final ObjectMultistack multistack;
+
+    /**
+     * Stack the elements of an echo tag are evaluated on (reused by every echo tag).
+     */
+    private final ObjectStack evaluation = new ObjectStack();
+
+    /**
+     * Stack the results of an echo tag are reversed on before they are written (reused by every echo tag).
+     */
+    private final ObjectStack results = new ObjectStack();
+
+    /**
+     * Limits of the execution.
+     */
+    private ScriptLimits limits;
+
+    /**
+     * Profile the executed nodes are recorded in (null if the execution is not profiled).
+     */
+    private ScriptProfile profile;
+
+    /**
+     * Sink the output is written to.
+     */
+    private ScriptOutput output;
+
+    /**
+     * Flag that signals that the engine is executing a program (so it cannot be reused for another one until done).
+     */
+    private boolean running;
+
+    /**
+     * Number of FOR loops currently being executed, one inside the other.
+     */
+    private int loopDepth;
+
+    /**
+     * Number of instructions (executed nodes and evaluated echo elements) executed so far.
+     */
+    private long instructions;
+
+    /**
+     * Number of iterations of FOR loops executed so far.
+     */
+    private long iterations;
+
+    /**
+     * Number of bytes written so far.
+     */
+    private long outputBytes;
+
+    /**
+     * Work of the parallel region the engine renders a block of (null if the engine executes a whole script).
+     */
+    private final SharedWork shared;
+
+    /**
+     * Work done by all the blocks of a parallel region together (the work done before the region included),
+     * counted by the engines of the blocks as it is done.
+     */
+    private static final class SharedWork {
+        /**
+         * Number of instructions executed so far.
+         */
+        final AtomicLong instructions;
+
+        /**
+         * Number of iterations of FOR loops executed so far.
+         */
+        final AtomicLong iterations;
+
+        /**
+         * Number of bytes written so far.
+         */
+        final AtomicLong outputBytes;
+
+        /**
+         * Constructs the shared work of a region, starting with the work done by the given engine.
+         *
+         * @param engine engine executing the region
+         */
+        SharedWork(SmartScriptEngine engine) {
+            this.instructions = new AtomicLong(engine.instructions);
+            this.iterations = new AtomicLong(engine.iterations);
+            this.outputBytes = new AtomicLong(engine.outputBytes);
+        }
+    }
+
+    /**
+     * Charset the output is encoded with (resolved on the first write).
+     */
+    private Charset charset;
+
+    /**
+     * Buffer the pre-encoded texts are copied through on their way to the output (allocated on the first such text).
+     */
+    private byte[] chunk;
 
     /**
      * Visitor that visits all nodes in the document node and executes them.
@@ -35,44 +170,71 @@ public class SmartScriptEngine {
 
         @Override
         public void visitDocumentNode(DocumentNode node) {
-            for (int i = 0; i < node.numberOfChildren(); i++) {
-                node.getChild(i).accept(this);
-            }
-            //System.out.println("\n");
+            visitChildren(node);
         }
 
         @Override
         public void visitTextNode(TextNode node) {
-            try {
-                requestContext.write(node.getText());
-            } catch (IOException e) {
-                System.err.println("Error while visiting text node \"" + node.getText() + "\" and trying to write it.");
-                System.exit(1);
-            }
+            writeText(node);
         }
 
         @Override
         public void visitForLoopNode(ForLoopNode node) {
-            String variable = node.getVariable().asText();
-            String start = node.getStartExpression().asText();
-            String end = node.getEndExpression().asText();
-            String step = node.getStepExpression().asText();
-
-            multistack.push(variable, new ValueWrapper(Integer.parseInt(start)));
-            while (multistack.peek(variable).numCompare(Integer.parseInt(end)) <= 0) {
-                for (int i = 0; i < node.numberOfChildren(); i++) {
-                    node.getChild(i).accept(this);
+            String variable = node.getVariable().getName();
+            Number start = evaluateBound(node.getStartExpression());
+            Number end = evaluateBound(node.getEndExpression());
+            Number step = node.getStepExpression() == null ? 1 : evaluateBound(node.getStepExpression());
+            if (!(step.doubleValue() > 0)) {
+                // the loop only counts up, so it would never end
+                throw new SmartScriptException("Step of FOR loop must be positive, but was " + step + ".");
+            }
+
+            ValueWrapper value = new ValueWrapper(start);
+            multistack.push(variable, value);
+            loopDepth++;
+            if (start instanceof Integer && end instanceof Integer && step instanceof Integer) {
+                // the body cannot change the loop variable (echo tags push copies), so it is kept in a local
+                int last = end.intValue();
+                int increment = step.intValue();
+                for (long i = start.intValue(); i <= last; i += increment) {
+                    value.setValue((int) i);
+                    countIteration();
+                    visitChildren(node);
+                    endIteration();
+                }
+            } else {
+                double first = start.doubleValue();
+                double last = end.doubleValue();
+                double increment = step.doubleValue();
+                if (first <= last && first + increment == first) {
+                    // the step is below the precision of the bounds, so the loop variable would never change
+                    throw new SmartScriptException("Step of FOR loop " + step + " is too small for start " + start + ".");
+                }
+                // computed from the iteration count, so rounding errors of the steps do not add up
+                double d;
+                for (long k = 0; (d = first + k * increment) <= last; k++) {
+                    value.setValue(d);
+                    countIteration();
+                    visitChildren(node);
+                    endIteration();
                 }
-                multistack.peek(variable).add(Integer.parseInt(step));
             }
+            loopDepth--;
             multistack.pop(variable);
         }
 
+        @Override
+        public void visitParallelNode(ParallelNode node) {
+            executeParallel(node);
+        }
+
         @Override
         public void visitEchoNode(EchoNode node) {
-            ObjectStack stack = new ObjectStack();
+            ObjectStack stack = evaluation;
+            stack.clear();
             // Visit all elements
             for (Element element : node.getElements()) {
+                countInstruction();
                 switch (element) {
                     case ElementConstantInteger elementConstantInteger ->
                             stack.push(new ValueWrapper(elementConstantInteger.getValue()));
@@ -86,24 +248,17 @@ public class SmartScriptEngine {
                             doOperation(elementOperator, stack);
                     case ElementFunction elementFunction ->
                             callFunction(elementFunction, stack);
-                    default -> {
-                        System.err.println("Unknown element type: " + element.getClass());
-                        System.exit(1);
-                    }
+                    default -> throw new SmartScriptException("Unknown element type: " + element.getClass() + ".");
                 }
             }
             // Write all remaining elements out in appropriate order
-            ObjectStack stackInOrder = new ObjectStack();
+            ObjectStack stackInOrder = results;
+            stackInOrder.clear();
             while (!stack.isEmpty()) {
                 stackInOrder.push(stack.pop());
             }
             while (!stackInOrder.isEmpty()) {
-                try {
-                    requestContext.write(((ValueWrapper) stackInOrder.pop()).getValue().toString());
-                } catch (IOException e) {
-                    System.err.println("Error while visiting echo node and trying to write it.");
-                    System.exit(1);
-                }
+                write(((ValueWrapper) stackInOrder.pop()).getValue().toString());
             }
         }
     };
@@ -115,15 +270,392 @@ public class SmartScriptEngine {
      * @param requestContext request context to write output to
      */
     public SmartScriptEngine(DocumentNode documentNode, RequestContext requestContext) {
+        this(documentNode, requestContext, ScriptLimits.UNLIMITED, null);
+    }
+
+    /**
+     * Constructs a new {@link SmartScriptEngine} with the given document node, request context, limits and profile.
+     *
+     * @param documentNode document node to execute
+     * @param requestContext request context to write output to
+     * @param limits limits of the execution
+     * @param profile profile to record the executed nodes in (null if the execution is not profiled)
+     */
+    public SmartScriptEngine(DocumentNode documentNode, RequestContext requestContext, ScriptLimits limits, ScriptProfile profile) {
+        this(documentNode, requestContext, limits, profile, ScriptOutput.of(requestContext));
+    }
+
+    /**
+     * Constructs a new {@link SmartScriptEngine} with the given document node, request context, limits, profile
+     * and output sink.
+     *
+     * @param documentNode document node to execute
+     * @param requestContext request context the script works with
+     * @param limits limits of the execution
+     * @param profile profile to record the executed nodes in (null if the execution is not profiled)
+     * @param output sink to write the output to
+     */
+    public SmartScriptEngine(DocumentNode documentNode, RequestContext requestContext, ScriptLimits limits,
+                             ScriptProfile profile, ScriptOutput output) {
         this.documentNode = documentNode;
         this.requestContext = requestContext;
+        this.limits = limits;
+        this.profile = profile;
+        this.output = output;
+        this.multistack = new ObjectMultistack();
+        this.shared = null;
     }
 
     /**
-     * Starts executing the engine by starting with the document node.
+     * Constructs an engine with no execution, to be reused by {@link ScriptProgram} for executions of programs.
+     */
+    SmartScriptEngine() {
+        this.multistack = new ObjectMultistack();
+        this.shared = null;
+    }
+
+    /**
+     * Constructs an engine that renders a block of a parallel region executed by the given engine.
+     * The block counts its work as part of the given work of the region, and sees the current values
+     * of the loop variables of the given engine.
+     *
+     * @param parent engine executing the parallel region
+     * @param requestContext request context the block writes to
+     * @param shared work of the region
+     */
+    private SmartScriptEngine(SmartScriptEngine parent, RequestContext requestContext, SharedWork shared) {
+        this.documentNode = parent.documentNode;
+        this.requestContext = requestContext;
+        this.limits = parent.limits;
+        this.profile = parent.profile;
+        this.output = ScriptOutput.of(requestContext);
+        this.multistack = parent.multistack.copyTop();
+        this.shared = shared;
+    }
+
+    /**
+     * Starts executing the engine by starting with the document node, and flushes the output once the script is done.
+     *
+     * @throws SmartScriptException if an error occurs while executing the script
+     * @throws ScriptLimitException if the script exceeds any of the limits
      */
     public void execute() {
-        documentNode.accept(visitor);
+        visit(documentNode);
+        try {
+            output.flush();
+        } catch (IOException e) {
+            throw new SmartScriptException("Error while writing script output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks whether the engine is executing a program.
+     *
+     * @return true if the engine is in use
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Executes the given program with the given request context, limits and output sink, resetting the state
+     * of the previous execution first. Once done, the engine keeps no reference to the program or the request.
+     *
+     * @param program program to execute
+     * @param requestContext request context the script works with
+     * @param limits limits of the execution
+     * @param output sink to write the output to
+     * @throws SmartScriptException if an error occurs while executing the script
+     * @throws ScriptLimitException if the script exceeds any of the limits
+     */
+    void run(ScriptProgram program, RequestContext requestContext, ScriptLimits limits, ScriptOutput output) {
+        this.documentNode = program.getDocument();
+        this.profile = program.getProfile();
+        this.requestContext = requestContext;
+        this.limits = limits;
+        this.output = output;
+        instructions = 0;
+        iterations = 0;
+        outputBytes = 0;
+        loopDepth = 0;
+        charset = null;
+        running = true;
+        try {
+            execute();
+        } finally {
+            documentNode = null;
+            profile = null;
+            this.requestContext = null;
+            this.output = null;
+            multistack.clear();
+            evaluation.clear();
+            results.clear();
+            running = false;
+        }
+    }
+
+    /**
+     * Executes the given node, recording the execution in the profile (if any).
+     *
+     * @param node node to execute
+     */
+    private void visit(Node node) {
+        countInstruction();
+        if (profile == null) {
+            node.accept(visitor);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            node.accept(visitor);
+        } finally {
+            profile.record(node, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Executes all the children of the given node in order.
+     *
+     * @param node node whose children are executed
+     */
+    private void visitChildren(Node node) {
+        for (int i = 0; i < node.numberOfChildren(); i++) {
+            visit(node.getChild(i));
+        }
+    }
+
+    /**
+     * Executes a parallel region: every child that is not a text node is rendered as a block by its own engine
+     * into its own buffer (all but the last block on virtual threads, the last one on this thread), and once all
+     * the blocks are done, their output and the text nodes are written in order. The blocks count their work
+     * together (in the work of the enclosing region, if this engine renders a block itself), so a block fails
+     * as soon as the limits are exceeded by all of them; the first error of a block (in order) is rethrown.
+     *
+     * @param node parallel region to execute
+     */
+    private void executeParallel(ParallelNode node) {
+        int count = node.numberOfChildren();
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            if (!(node.getChild(i) instanceof TextNode)) {
+                last = i;
+            }
+        }
+        ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[count];
+        SharedWork work = shared != null ? shared : new SharedWork(this);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            Node child = node.getChild(i);
+            if (child instanceof TextNode) {
+                continue;
+            }
+            outputs[i] = new ByteArrayOutputStream();
+            SmartScriptEngine block = new SmartScriptEngine(this, requestContext.createBodyContext(outputs[i]), work);
+            futures[i] = CompletableFuture.runAsync(() -> block.visit(child), i == last ? Runnable::run : PARALLEL_EXECUTOR);
+        }
+
+        RuntimeException error = null;
+        for (int i = 0; i < count; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            try {
+                futures[i].join();
+            } catch (CompletionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException cause
+                            ? cause
+                            : new SmartScriptException("Error in parallel block: " + e.getCause(), e.getCause());
+                }
+            }
+        }
+        if (shared == null) {
+            instructions = work.instructions.get();
+            iterations = work.iterations.get();
+            outputBytes = work.outputBytes.get();
+        }
+        if (error != null) {
+            throw error;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (outputs[i] == null) {
+                writeText((TextNode) node.getChild(i));
+            } else {
+                // already counted by the block
+                emit(outputs[i].toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Tells the output sink that an iteration of the innermost FOR loop being executed has ended.
+     *
+     * @throws SmartScriptException if the output cannot be written
+     */
+    private void endIteration() {
+        try {
+            output.iterationEnd(loopDepth);
+        } catch (IOException e) {
+            throw new SmartScriptException("Error while writing script output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Evaluates a start, end or step expression of a FOR loop to a number: an integer or double constant is used as is,
+     * a string is parsed to an integer if possible and to a double if not, and a variable is replaced by the current
+     * value of the enclosing loop variable with that name.
+     *
+     * @param element expression to evaluate
+     * @return integer or double value of the expression
+     * @throws SmartScriptException if the expression cannot be evaluated to a number
+     */
+    private Number evaluateBound(Element element) {
+        Object value = switch (element) {
+            case ElementConstantInteger constant -> constant.getValue();
+            case ElementConstantDouble constant -> constant.getValue();
+            case ElementString string -> string.getValue();
+            case ElementVariable variable -> {
+                if (multistack.isEmpty(variable.getName())) {
+                    throw new SmartScriptException("Undefined variable in FOR loop: " + variable.getName() + ".");
+                }
+                yield multistack.peek(variable.getName()).getValue();
+            }
+            default -> throw new SmartScriptException("Invalid FOR loop expression: " + element.asText() + ".");
+        };
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Integer || value instanceof Double) {
+            return (Number) value;
+        }
+        String text = value.toString().strip();
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e2) {
+                throw new SmartScriptException("FOR loop expression is not a number: " + value + ".");
+            }
+        }
+    }
+
+    /**
+     * Counts an executed instruction.
+     *
+     * @throws ScriptLimitException if the limit of instructions is exceeded
+     */
+    private void countInstruction() {
+        long count = shared == null ? ++instructions : shared.instructions.incrementAndGet();
+        if (count > limits.maxInstructions() && limits.maxInstructions() > 0) {
+            throw new ScriptLimitException("Script exceeded the limit of " + limits.maxInstructions() + " instructions.");
+        }
+    }
+
+    /**
+     * Counts an iteration of a FOR loop.
+     *
+     * @throws ScriptLimitException if the limit of iterations is exceeded
+     */
+    private void countIteration() {
+        long count = shared == null ? ++iterations : shared.iterations.incrementAndGet();
+        if (count > limits.maxIterations() && limits.maxIterations() > 0) {
+            throw new ScriptLimitException("Script exceeded the limit of " + limits.maxIterations() + " loop iterations.");
+        }
+    }
+
+    /**
+     * Writes the text of the given text node to the request context. A text that is held UTF-8 encoded
+     * (as decoded from a template archive) is written as it is if the output is UTF-8 encoded too,
+     * without being decoded and encoded again.
+     *
+     * @param node text node to write
+     * @throws ScriptLimitException if the limit of output bytes is exceeded
+     * @throws SmartScriptException if the text cannot be written
+     */
+    private void writeText(TextNode node) {
+        ByteBuffer encoded = node.getEncodedText();
+        if (encoded == null || !charset().equals(StandardCharsets.UTF_8)) {
+            write(node.getText());
+            return;
+        }
+        int length = encoded.limit();
+        countOutput(length);
+        if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+        }
+        try {
+            for (int offset = 0; offset < length; offset += chunk.length) {
+                int n = Math.min(chunk.length, length - offset);
+                encoded.get(offset, chunk, 0, n);
+                output.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            throw new SmartScriptException("Error while writing script output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the given text to the request context, encoded with the encoding of the context.
+     *
+     * @param text text to write
+     * @throws ScriptLimitException if the limit of output bytes is exceeded
+     * @throws SmartScriptException if the text cannot be written
+     */
+    private void write(String text) {
+        write(text.getBytes(charset()));
+    }
+
+    /**
+     * Returns the charset the output is encoded with, resolving it from the encoding of the context on the first call.
+     *
+     * @return charset of the output
+     */
+    private Charset charset() {
+        if (charset == null) {
+            charset = Charset.forName(requestContext.getEncoding());
+        }
+        return charset;
+    }
+
+    /**
+     * Writes the given (already encoded) bytes to the request context.
+     *
+     * @param data bytes to write
+     * @throws ScriptLimitException if the limit of output bytes is exceeded
+     * @throws SmartScriptException if the bytes cannot be written
+     */
+    private void write(byte[] data) {
+        countOutput(data.length);
+        emit(data);
+    }
+
+    /**
+     * Counts the given number of output bytes.
+     *
+     * @param length number of bytes about to be written
+     * @throws ScriptLimitException if the limit of output bytes is exceeded
+     */
+    private void countOutput(int length) {
+        long count = shared == null ? outputBytes += length : shared.outputBytes.addAndGet(length);
+        if (count > limits.maxOutputBytes() && limits.maxOutputBytes() > 0) {
+            throw new ScriptLimitException("Script exceeded the limit of " + limits.maxOutputBytes() + " output bytes.");
+        }
+    }
+
+    /**
+     * Writes the given (already encoded and counted) bytes to the request context.
+     *
+     * @param data bytes to write
+     * @throws SmartScriptException if the bytes cannot be written
+     */
+    private void emit(byte[] data) {
+        try {
+            output.write(data, 0, data.length);
+        } catch (IOException e) {
+            throw new SmartScriptException("Error while writing script output: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -231,10 +763,7 @@ public class SmartScriptEngine {
                 String name = ((ValueWrapper) stack.pop()).getValue().toString();
                 requestContext.removeTemporaryParameter(name);
             }
-            default -> {
-                System.err.println("Unknown function: " + functionName);
-                System.exit(1);
-            }
+            default -> throw new SmartScriptException("Unknown function: " + functionName + ".");
         }
     }
 }
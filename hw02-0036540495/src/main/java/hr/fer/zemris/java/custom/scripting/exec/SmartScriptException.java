@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * An exception that is thrown when an error occurs while executing a script with {@link SmartScriptEngine}
+ * (an unknown function, an invalid operand, a failed write to the client, or an exceeded limit).
+ *
+ * @see SmartScriptEngine
+ * @see RuntimeException
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class SmartScriptException extends RuntimeException {
+    /**
+     * Constructs a new exception with the given detail message.
+     *
+     * @param message the detail message
+     */
+    public SmartScriptException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new exception with the given detail message and cause.
+     *
+     * @param message the detail message
+     * @param cause the cause of the exception
+     */
+    public SmartScriptException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
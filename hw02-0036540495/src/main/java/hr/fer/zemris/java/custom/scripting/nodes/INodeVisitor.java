@@ -11,4 +11,5 @@ public interface INodeVisitor {
     void visitForLoopNode(ForLoopNode node);
     void visitEchoNode(EchoNode node);
     void visitDocumentNode(DocumentNode node);
+    void visitParallelNode(ParallelNode node);
 }
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.custom.scripting.nodes;
+
+/**
+ * A node representing a parallel region: <code>{$ PARALLEL $} ... {$ END $}</code>.
+ * Every child of the region that is not a text node is an independent block, which may be rendered
+ * concurrently with the other blocks of the region; the output of the blocks is written in order.
+ *
+ * @see Node
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ParallelNode extends Node {
+    /**
+     * Constructs a new parallel node.
+     */
+    public ParallelNode() {
+    }
+
+    /**
+     * Returns a string representation of the parallel node.
+     * <p>
+     * Format: "{$ PARALLEL $} ... {$ END $}"
+     *
+     * @return a string representation of the parallel node
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{$ PARALLEL $}");
+        for (int i = 0; i < numberOfChildren(); i++) {
+            sb.append(getChild(i).toString());
+        }
+        sb.append("{$ END $}");
+        return sb.toString();
+    }
+
+    /**
+     * Checks if two parallel nodes are equal by comparing their children.
+     *
+     * @param o object to be compared to
+     * @return true if equal, false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParallelNode that)) return false;
+
+        if (numberOfChildren() != that.numberOfChildren()) return false;
+        for (int i = 0; i < numberOfChildren(); i++) {
+            if (!getChild(i).equals(that.getChild(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of the parallel node.
+     *
+     * @return hash code of the parallel node
+     */
+    @Override
+    public int hashCode() {
+        return 1;
+    }
+
+    /**
+     * Accepts the given visitor.
+     *
+     * @param visitor visitor
+     */
+    @Override
+    public void accept(INodeVisitor visitor) {
+        visitor.visitParallelNode(this);
+    }
+}
@@ -1,7 +1,12 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * A node representing a piece of textual data.
+ * The text is held either as a string or, for a node decoded from a template archive, as its UTF-8 encoding
+ * in a (memory-mapped) buffer, which is decoded only when the text is asked for as a string.
  *
  * @see Node
  *
@@ -10,10 +15,15 @@ package hr.fer.zemris.java.custom.scripting.nodes;
  */
 public class TextNode extends Node {
     /**
-     * Textual data stored in this node.
+     * Textual data stored in this node (null if the node holds the encoded text).
      */
     private final String text;
 
+    /**
+     * UTF-8 encoded textual data stored in this node (null if the node holds the text as a string).
+     */
+    private final ByteBuffer encodedText;
+
     /**
      * Constructs a new text node with given text.
      *
@@ -21,6 +31,18 @@ public class TextNode extends Node {
      */
     public TextNode(String text) {
         this.text = text;
+        this.encodedText = null;
+    }
+
+    /**
+     * Constructs a new text node with the given UTF-8 encoded text, which is not copied.
+     * The content of the buffer must not change while the node is used.
+     *
+     * @param encodedText UTF-8 encoded text (from the position to the limit of the buffer)
+     */
+    public TextNode(ByteBuffer encodedText) {
+        this.text = null;
+        this.encodedText = encodedText.slice().asReadOnlyBuffer();
     }
 
     /**
@@ -29,7 +51,17 @@ public class TextNode extends Node {
      * @return text stored in this node
      */
     public String getText() {
-        return text;
+        return text != null ? text : StandardCharsets.UTF_8.decode(encodedText.duplicate()).toString();
+    }
+
+    /**
+     * Returns the UTF-8 encoded text stored in this node, if the node was constructed with it.
+     * The buffer is shared by everyone using the node, so it must be read with the absolute methods only.
+     *
+     * @return read-only buffer with the encoded text (from 0 to its limit), or null if the node holds a string
+     */
+    public ByteBuffer getEncodedText() {
+        return encodedText;
     }
 
     /**
@@ -37,7 +69,7 @@ public class TextNode extends Node {
      */
     @Override
     public String toString() {
-        return text
+        return getText()
                 .replaceAll("\\\\", "\\\\\\\\")
                 .replaceAll("\\{", "\\\\{");
     }
@@ -54,7 +86,7 @@ public class TextNode extends Node {
         if (this == o) return true;
         if (!(o instanceof TextNode textNode)) return false;
 
-        return text.equals(textNode.text);
+        return getText().equals(textNode.getText());
     }
 
     /**
@@ -64,7 +96,8 @@ public class TextNode extends Node {
      */
     @Override
     public int hashCode() {
-        return text != null ? text.hashCode() : 0;
+        String value = getText();
+        return value != null ? value.hashCode() : 0;
     }
 
     /**
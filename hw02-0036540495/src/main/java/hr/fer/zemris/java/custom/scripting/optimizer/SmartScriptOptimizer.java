@@ -0,0 +1,321 @@
+package hr.fer.zemris.java.custom.scripting.optimizer;
+
+import hr.fer.zemris.java.custom.scripting.elems.*;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.*;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optimizer that rewrites a document node parsed with {@link SmartScriptParser} into an equivalent,
+ * cheaper document node before it is executed by the {@link SmartScriptEngine}. The optimizer:
+ * <ul>
+ *     <li>folds echo tags that use only constants, operators and pure functions into text nodes,</li>
+ *     <li>removes empty text nodes, empty echo tags and FOR loops that never iterate,</li>
+ *     <li>unrolls small FOR loops with constant integer bounds whose bodies have no side effects,</li>
+ *     <li>merges adjacent text nodes.</li>
+ * </ul>
+ * The blocks of a parallel region are optimized on their own; a region left with no block but text is inlined.
+ * Echo tags are folded by executing them with the engine itself, so a folded tag writes exactly what the engine
+ * would have written. Tags whose execution fails are left as they are, so the error is still reported at runtime.
+ * <p>
+ * The given document is not modified; nodes that need no change are shared by both documents.
+ *
+ * @see SmartScriptParser
+ * @see SmartScriptEngine
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class SmartScriptOptimizer {
+    /**
+     * Functions that have no side effects and depend on nothing but their arguments.
+     */
+    private static final Set<String> PURE_FUNCTIONS = Set.of("sin", "decfmt", "dup", "swap");
+
+    /**
+     * Functions that only read parameters of the request context.
+     */
+    private static final Set<String> READ_FUNCTIONS = Set.of("paramGet", "pparamGet", "tparamGet");
+
+    /**
+     * Maximum number of iterations of an unrolled FOR loop.
+     */
+    private static final int MAX_UNROLLED_ITERATIONS = 32;
+
+    /**
+     * Maximum number of nodes an unrolled FOR loop is replaced with.
+     */
+    private static final int MAX_UNROLLED_NODES = 256;
+
+    /**
+     * Utility class, not meant to be instantiated.
+     */
+    private SmartScriptOptimizer() {
+    }
+
+    /**
+     * Returns an optimized document node equivalent to the given document node.
+     *
+     * @param document document node to optimize
+     * @return optimized document node
+     */
+    public static DocumentNode optimize(DocumentNode document) {
+        DocumentNode optimized = new DocumentNode();
+        for (Node child : optimizeChildren(document)) {
+            optimized.addChildNode(child);
+        }
+        return optimized;
+    }
+
+    /**
+     * Optimizes the children of the given node, merging the adjacent text nodes.
+     *
+     * @param node node whose children are optimized
+     * @return optimized children
+     */
+    private static List<Node> optimizeChildren(Node node) {
+        List<Node> optimized = new ArrayList<>();
+        for (int i = 0; i < node.numberOfChildren(); i++) {
+            optimize(node.getChild(i), optimized);
+        }
+        return mergeText(optimized);
+    }
+
+    /**
+     * Optimizes the given node, adding the nodes it is replaced with to the given list.
+     *
+     * @param node node to optimize
+     * @param optimized list to add the optimized nodes to
+     */
+    private static void optimize(Node node, List<Node> optimized) {
+        switch (node) {
+            case TextNode text -> {
+                if (!text.getText().isEmpty()) {
+                    optimized.add(text);
+                }
+            }
+            case EchoNode echo -> {
+                if (echo.getElements().length == 0) {
+                    return;
+                }
+                String folded = isConstant(echo) ? evaluate(echo) : null;
+                if (folded == null) {
+                    optimized.add(echo);
+                } else if (!folded.isEmpty()) {
+                    optimized.add(new TextNode(folded));
+                }
+            }
+            case ForLoopNode forLoop -> optimizeForLoop(forLoop, optimized);
+            case ParallelNode parallel -> optimizeParallel(parallel, optimized);
+            default -> optimized.add(node);
+        }
+    }
+
+    /**
+     * Optimizes the given FOR loop: a loop that never iterates is removed, a small loop with constant integer bounds
+     * and a body without side effects is unrolled, and any other loop is kept with its body optimized.
+     *
+     * @param forLoop FOR loop to optimize
+     * @param optimized list to add the optimized nodes to
+     */
+    private static void optimizeForLoop(ForLoopNode forLoop, List<Node> optimized) {
+        List<Node> body = optimizeChildren(forLoop);
+        long iterations = constantIterations(forLoop);
+        if (iterations == 0) {
+            return;
+        }
+        if (iterations > 0 && iterations <= MAX_UNROLLED_ITERATIONS
+                && iterations * body.size() <= MAX_UNROLLED_NODES && isUnrollable(body)) {
+            String variable = forLoop.getVariable().getName();
+            int value = ((ElementConstantInteger) forLoop.getStartExpression()).getValue();
+            int step = forLoop.getStepExpression() == null ? 1 : ((ElementConstantInteger) forLoop.getStepExpression()).getValue();
+            for (long i = 0; i < iterations; i++, value += step) {
+                for (Node node : body) {
+                    optimize(substitute(node, variable, value), optimized);
+                }
+            }
+            return;
+        }
+        ForLoopNode copy = new ForLoopNode(forLoop.getVariable(), forLoop.getStartExpression(),
+                forLoop.getEndExpression(), forLoop.getStepExpression());
+        for (Node node : body) {
+            copy.addChildNode(node);
+        }
+        optimized.add(copy);
+    }
+
+    /**
+     * Optimizes the blocks of the given parallel region. A region whose blocks are all folded to text is inlined.
+     *
+     * @param parallel parallel region to optimize
+     * @param optimized list to add the optimized nodes to
+     */
+    private static void optimizeParallel(ParallelNode parallel, List<Node> optimized) {
+        List<Node> blocks = optimizeChildren(parallel);
+        if (blocks.stream().allMatch(block -> block instanceof TextNode)) {
+            optimized.addAll(blocks);
+            return;
+        }
+        ParallelNode copy = new ParallelNode();
+        for (Node block : blocks) {
+            copy.addChildNode(block);
+        }
+        optimized.add(copy);
+    }
+
+    /**
+     * Returns the number of iterations of the given FOR loop if its start, end and step (if given) are integer constants
+     * and the loop is known to end (the step is positive).
+     *
+     * @param forLoop FOR loop
+     * @return number of iterations, or -1 if it is not known
+     */
+    private static long constantIterations(ForLoopNode forLoop) {
+        if (!(forLoop.getStartExpression() instanceof ElementConstantInteger start)
+                || !(forLoop.getEndExpression() instanceof ElementConstantInteger end)
+                || forLoop.getStepExpression() != null && !(forLoop.getStepExpression() instanceof ElementConstantInteger)) {
+            return -1;
+        }
+        int step = forLoop.getStepExpression() == null ? 1 : ((ElementConstantInteger) forLoop.getStepExpression()).getValue();
+        if (step <= 0) {
+            // the loop fails when executed, so it is left to the engine
+            return -1;
+        }
+        if (start.getValue() > end.getValue()) {
+            return 0;
+        }
+        return ((long) end.getValue() - start.getValue()) / step + 1;
+    }
+
+    /**
+     * Checks whether the given (optimized) body of a FOR loop can be unrolled:
+     * it contains only text nodes and echo tags without side effects.
+     *
+     * @param body optimized body of a FOR loop
+     * @return true if the body can be unrolled
+     */
+    private static boolean isUnrollable(List<Node> body) {
+        for (Node node : body) {
+            if (node instanceof TextNode) {
+                continue;
+            }
+            if (!(node instanceof EchoNode echo)) {
+                return false;
+            }
+            for (Element element : echo.getElements()) {
+                if (element instanceof ElementFunction function && !PURE_FUNCTIONS.contains(function.getName())
+                        && !READ_FUNCTIONS.contains(function.getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given echo tag uses only constants, operators and pure functions.
+     *
+     * @param echo echo tag
+     * @return true if the output of the echo tag is constant
+     */
+    private static boolean isConstant(EchoNode echo) {
+        for (Element element : echo.getElements()) {
+            switch (element) {
+                case ElementConstantInteger ignored -> {}
+                case ElementConstantDouble ignored -> {}
+                case ElementString ignored -> {}
+                case ElementOperator ignored -> {}
+                case ElementFunction function -> {
+                    if (!PURE_FUNCTIONS.contains(function.getName())) {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the given constant echo tag with the engine and returns its output.
+     *
+     * @param echo constant echo tag
+     * @return output of the echo tag, or null if its execution fails
+     */
+    private static String evaluate(EchoNode echo) {
+        DocumentNode document = new DocumentNode();
+        document.addChildNode(echo);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, null, null, null).createBodyContext(output);
+        try {
+            new SmartScriptEngine(document, context).execute();
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a copy of the given node of an unrolled body in which the given variable is replaced
+     * with the given integer constant.
+     *
+     * @param node text node or echo tag
+     * @param variable name of the loop variable
+     * @param value value of the loop variable
+     * @return node with the variable replaced
+     */
+    private static Node substitute(Node node, String variable, int value) {
+        if (!(node instanceof EchoNode echo)) {
+            return node;
+        }
+        Element[] elements = echo.getElements().clone();
+        boolean replaced = false;
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] instanceof ElementVariable element && element.getName().equals(variable)) {
+                elements[i] = new ElementConstantInteger(value);
+                replaced = true;
+            }
+        }
+        return replaced ? new EchoNode(elements) : echo;
+    }
+
+    /**
+     * Merges the adjacent text nodes of the given list.
+     *
+     * @param nodes nodes to merge
+     * @return nodes with no two adjacent text nodes
+     */
+    private static List<Node> mergeText(List<Node> nodes) {
+        List<Node> merged = new ArrayList<>(nodes.size());
+        StringBuilder text = new StringBuilder();
+        int pending = 0;
+        TextNode single = null;
+        for (Node node : nodes) {
+            if (node instanceof TextNode textNode) {
+                text.append(textNode.getText());
+                single = textNode;
+                pending++;
+                continue;
+            }
+            if (pending > 0) {
+                merged.add(pending == 1 ? single : new TextNode(text.toString()));
+                text.setLength(0);
+                pending = 0;
+            }
+            merged.add(node);
+        }
+        if (pending > 0) {
+            merged.add(pending == 1 ? single : new TextNode(text.toString()));
+        }
+        return merged;
+    }
+}
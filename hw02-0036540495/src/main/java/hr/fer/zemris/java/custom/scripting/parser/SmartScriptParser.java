@@ -129,6 +129,15 @@ public class SmartScriptParser {
                     ForLoopNode forLoopNode = new ForLoopNode((ElementVariable) elementsArray[0], elementsArray[1], elementsArray[2], elementsArray[3]);
                     ((Node) stack.peek()).addChildNode(forLoopNode);
                     stack.push(forLoopNode);
+                } else if (token.value().toString().equalsIgnoreCase("PARALLEL")) {
+                    token = lexer.nextToken();
+                    if (token.type() != SmartScriptTokenType.END_TAG_DEF) {
+                        throw new SmartScriptParserException("PARALLEL tag takes no elements at position " + lexer.getCurrentIndex() + ".");
+                    }
+                    lexer.setState(SmartScriptLexerState.TEXT);
+                    ParallelNode parallelNode = new ParallelNode();
+                    ((Node) stack.peek()).addChildNode(parallelNode);
+                    stack.push(parallelNode);
                 } else if (token.value().toString().equalsIgnoreCase("END")) {
                     stack.pop();
                     if (stack.isEmpty()) {
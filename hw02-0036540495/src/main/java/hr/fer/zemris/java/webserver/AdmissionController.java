@@ -0,0 +1,175 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an accepted connection may be processed by the {@link SmartHttpServer}.
+ * A connection is admitted only if both the total number of open connections and the number
+ * of open connections from the same client address are below the configured limits.
+ * Rejected connections (including those that did not fit into the worker pool queue)
+ * are answered with a fast <code>503 Service Unavailable</code> response with
+ * a <code>Retry-After</code> header, written directly by the accepting thread.
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class AdmissionController {
+    /**
+     * Reasons for which a connection can be rejected.
+     */
+    public enum Rejection {
+        /**
+         * Maximum number of open connections is reached.
+         */
+        MAX_CONNECTIONS,
+        /**
+         * Maximum number of open connections from a single client address is reached.
+         */
+        MAX_CONNECTIONS_PER_IP,
+        /**
+         * The queue of the worker pool is full.
+         */
+        QUEUE_FULL
+    }
+
+    /**
+     * Maximum number of open connections (0 for unlimited).
+     */
+    private final int maxConnections;
+
+    /**
+     * Maximum number of open connections from a single client address (0 for unlimited).
+     */
+    private final int maxConnectionsPerIp;
+
+    /**
+     * Precomputed response sent to rejected clients.
+     */
+    private final byte[] rejectResponse;
+
+    /**
+     * Number of currently open (admitted) connections.
+     */
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    /**
+     * Number of currently open (admitted) connections per client address.
+     */
+    private final Map<InetAddress, Integer> openPerIp = new ConcurrentHashMap<>();
+
+    /**
+     * Number of rejected connections per reason.
+     */
+    private final LongAdder[] rejected = new LongAdder[Rejection.values().length];
+
+    /**
+     * Constructs a new admission controller.
+     *
+     * @param maxConnections maximum number of open connections (0 for unlimited)
+     * @param maxConnectionsPerIp maximum number of open connections from a single client address (0 for unlimited)
+     * @param retryAfter number of seconds after which rejected clients are advised to retry
+     */
+    public AdmissionController(int maxConnections, int maxConnectionsPerIp, int retryAfter) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.rejectResponse = ("HTTP/1.1 503 Service Unavailable\r\n" +
+                "Retry-After: " + retryAfter + "\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Tries to admit a connection from the given address.
+     * Every successful call must be paired with a call to {@link #release(InetAddress)}.
+     *
+     * @param address address of the client
+     * @return null if the connection is admitted, otherwise the reason for the rejection
+     */
+    public Rejection tryAdmit(InetAddress address) {
+        int open = openConnections.incrementAndGet();
+        if (maxConnections > 0 && open > maxConnections) {
+            openConnections.decrementAndGet();
+            return Rejection.MAX_CONNECTIONS;
+        }
+        if (maxConnectionsPerIp > 0) {
+            if (openPerIp.merge(address, 1, Integer::sum) > maxConnectionsPerIp) {
+                releasePerIp(address);
+                openConnections.decrementAndGet();
+                return Rejection.MAX_CONNECTIONS_PER_IP;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases a previously admitted connection from the given address.
+     *
+     * @param address address of the client
+     */
+    public void release(InetAddress address) {
+        openConnections.decrementAndGet();
+        if (maxConnectionsPerIp > 0) {
+            releasePerIp(address);
+        }
+    }
+
+    /**
+     * Rejects the given client by sending it a <code>503</code> response and closing the connection.
+     *
+     * @param client client socket
+     * @param reason reason for the rejection
+     */
+    public void reject(Socket client, Rejection reason) {
+        rejected[reason.ordinal()].increment();
+        try (client) {
+            OutputStream os = client.getOutputStream();
+            os.write(rejectResponse);
+            os.flush();
+            client.shutdownOutput();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Returns the number of currently open (admitted) connections.
+     *
+     * @return number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Returns the number of connections rejected for the given reason.
+     *
+     * @param reason reason for the rejection
+     * @return number of rejected connections
+     */
+    public long getRejected(Rejection reason) {
+        return rejected[reason.ordinal()].sum();
+    }
+
+    /**
+     * Decrements the number of open connections from the given address,
+     * removing the entry once it drops to zero so that the map does not grow indefinitely.
+     *
+     * @param address address of the client
+     */
+    private void releasePerIp(InetAddress address) {
+        openPerIp.computeIfPresent(address, (a, count) -> count <= 1 ? null : count - 1);
+    }
+}
@@ -0,0 +1,37 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that the responses of an {@link IWebWorker} may be cached by the {@link SmartHttpServer}.
+ * A worker may be declared cacheable only if its response depends solely on the requested path
+ * and the listed request parameters (and not on the session, temporary parameters or time).
+ * Successful responses of such workers are stored in the server's {@link ResponseCache}
+ * and served from it until they expire.
+ *
+ * @see CachingWebWorker
+ * @see ResponseCache
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+    /**
+     * Returns the number of seconds a cached response stays valid.
+     *
+     * @return time to live in seconds
+     */
+    long ttl() default 60;
+
+    /**
+     * Returns the names of the request parameters the response depends on.
+     *
+     * @return names of the request parameters that are part of the cache key
+     */
+    String[] parameters() default {};
+}
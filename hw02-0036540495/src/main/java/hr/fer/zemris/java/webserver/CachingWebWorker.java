@@ -0,0 +1,241 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A decorator of an {@link IWebWorker} whose responses are cached in a {@link ResponseCache}.
+ * On a miss, the decorated worker renders its response into a buffer through a body-only {@link RequestContext};
+ * the response is then sent to the client and, if it is a successful response that sets no cookies, cached.
+ * On a hit, the cached body is written directly, without invoking the decorated worker.
+ * <p>
+ * A decorated worker that dispatches the request hands the response over to the real context:
+ * what it has rendered so far is sent, its temporary parameters are passed on to the dispatched request,
+ * and the response (which is then written past the buffer) is not cached.
+ * <p>
+ * The cache key consists of the route and the (percent-encoded) values of the selected request parameters.
+ *
+ * @see Cacheable
+ * @see ResponseCache
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class CachingWebWorker implements IWebWorker {
+    /**
+     * Decorated worker.
+     */
+    private final IWebWorker delegate;
+
+    /**
+     * Cache in which the responses are stored.
+     */
+    private final ResponseCache cache;
+
+    /**
+     * Route on which the worker is available (first part of the cache key).
+     */
+    private final String route;
+
+    /**
+     * Time to live of the cached responses in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * Names of the request parameters that are part of the cache key.
+     */
+    private final String[] parameters;
+
+    /**
+     * Constructs a new caching decorator.
+     *
+     * @param delegate decorated worker
+     * @param cache cache in which the responses are stored
+     * @param route route on which the worker is available
+     * @param ttlSeconds time to live of the cached responses in seconds
+     * @param parameters names of the request parameters that are part of the cache key
+     */
+    public CachingWebWorker(IWebWorker delegate, ResponseCache cache, String route, long ttlSeconds, String[] parameters) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.route = route;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Constructs a new caching decorator configured by the {@link Cacheable} annotation of the given worker.
+     *
+     * @param delegate decorated worker (annotated with {@link Cacheable})
+     * @param cache cache in which the responses are stored
+     * @param route route on which the worker is available
+     * @throws IllegalArgumentException if the worker is not annotated with {@link Cacheable}
+     */
+    public CachingWebWorker(IWebWorker delegate, ResponseCache cache, String route) {
+        this(delegate, cache, route, annotationOf(delegate).ttl(), annotationOf(delegate).parameters());
+    }
+
+    @Override
+    public void processRequest(RequestContext context) throws Exception {
+        String key = cacheKey(context);
+        ResponseCache.CachedResponse cached = cache.get(key);
+        if (cached != null) {
+            writeResponse(context, cached);
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Handoff handoff = new Handoff(context, buffer);
+        RequestContext capture = context.createBodyContext(buffer, context.getDispatcher() == null ? null : handoff);
+        handoff.capture = capture;
+        delegate.processRequest(capture);
+        if (handoff.dispatched) {
+            context.write(buffer.toByteArray());
+            return;
+        }
+        ResponseCache.CachedResponse response = new ResponseCache.CachedResponse(
+                capture.getStatusCode(),
+                capture.getStatusText(),
+                capture.getMimeType(),
+                capture.getEncoding(),
+                Map.copyOf(capture.getAdditionalHeaders()),
+                buffer.toByteArray(),
+                System.currentTimeMillis() + ttlMillis
+        );
+        for (RequestContext.RCCookie cookie : capture.getOutputCookies()) {
+            context.addRCCookie(cookie);
+        }
+        if (response.statusCode() == 200 && capture.getOutputCookies().isEmpty()) {
+            cache.put(key, response);
+        }
+        writeResponse(context, response);
+    }
+
+    /**
+     * Writes the given (cached or just rendered) response, header fields included, to the given context.
+     *
+     * @param context context to write to
+     * @param response response to write
+     * @throws Exception if an error occurs while writing
+     */
+    private static void writeResponse(RequestContext context, ResponseCache.CachedResponse response) throws Exception {
+        context.setStatusCode(response.statusCode());
+        context.setStatusText(response.statusText());
+        context.setMimeType(response.mimeType());
+        context.setEncoding(response.encoding());
+        for (Map.Entry<String, String> field : response.headers().entrySet()) {
+            context.addHeader(field.getKey(), field.getValue());
+        }
+        context.setContentLength((long) response.body().length);
+        context.write(response.body());
+    }
+
+    /**
+     * Dispatcher of the capturing context, which hands the response over to the real context of the request
+     * before dispatching the request with the dispatcher of the real context.
+     */
+    private static class Handoff implements IDispatcher {
+        /**
+         * Real context of the request.
+         */
+        private final RequestContext context;
+
+        /**
+         * Buffer of the capturing context.
+         */
+        private final ByteArrayOutputStream buffer;
+
+        /**
+         * Capturing context.
+         */
+        private RequestContext capture;
+
+        /**
+         * True once the request has been dispatched.
+         */
+        private boolean dispatched;
+
+        /**
+         * Constructs a new handoff dispatcher.
+         *
+         * @param context real context of the request
+         * @param buffer buffer of the capturing context
+         */
+        private Handoff(RequestContext context, ByteArrayOutputStream buffer) {
+            this.context = context;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void dispatchRequest(String urlPath) throws Exception {
+            if (!dispatched) {
+                dispatched = true;
+                context.setStatusCode(capture.getStatusCode());
+                context.setStatusText(capture.getStatusText());
+                context.setMimeType(capture.getMimeType());
+                context.setEncoding(capture.getEncoding());
+                for (Map.Entry<String, String> field : capture.getAdditionalHeaders().entrySet()) {
+                    context.addHeader(field.getKey(), field.getValue());
+                }
+                for (RequestContext.RCCookie cookie : capture.getOutputCookies()) {
+                    context.addRCCookie(cookie);
+                }
+            }
+            if (buffer.size() > 0) {
+                context.write(buffer.toByteArray());
+                buffer.reset();
+            }
+            for (String name : Set.copyOf(context.getTemporaryParameterNames())) {
+                context.removeTemporaryParameter(name);
+            }
+            for (String name : capture.getTemporaryParameterNames()) {
+                context.setTemporaryParameter(name, capture.getTemporaryParameter(name));
+            }
+            context.getDispatcher().dispatchRequest(urlPath);
+        }
+    }
+
+    /**
+     * Builds the cache key of the given request from the route and the selected parameters.
+     * The values are percent-encoded, so that a value cannot contain the separators of the key
+     * (and pass for several parameters); a missing parameter has no <code>=</code>, unlike an empty one.
+     *
+     * @param context context of the request
+     * @return cache key
+     */
+    private String cacheKey(RequestContext context) {
+        if (parameters.length == 0) {
+            return route;
+        }
+        StringBuilder key = new StringBuilder(route);
+        char separator = '?';
+        for (String name : parameters) {
+            String value = context.getParameter(name);
+            key.append(separator).append(name);
+            if (value != null) {
+                key.append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the {@link Cacheable} annotation of the given worker.
+     *
+     * @param worker worker
+     * @return annotation of the worker
+     * @throws IllegalArgumentException if the worker is not annotated with {@link Cacheable}
+     */
+    private static Cacheable annotationOf(IWebWorker worker) {
+        Cacheable cacheable = worker.getClass().getAnnotation(Cacheable.class);
+        if (cacheable == null) {
+            throw new IllegalArgumentException(worker.getClass().getName() + " is not annotated with @Cacheable.");
+        }
+        return cacheable;
+    }
+}
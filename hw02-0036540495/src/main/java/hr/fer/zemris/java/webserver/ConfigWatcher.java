@@ -0,0 +1,161 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches configuration files for changes and runs a reload action when any of them changes.
+ * <p>
+ * The directories of the files are watched with a {@link WatchService} on a single background thread.
+ * Since editors usually save a file in several steps (truncate and write, or write a copy and rename it),
+ * the events are coalesced: the action runs only once no further change has been seen for the debounce period.
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ConfigWatcher {
+    /**
+     * Absolute, normalized paths of the watched files.
+     */
+    private final Set<Path> files = new HashSet<>();
+
+    /**
+     * Time in milliseconds that has to pass without changes before the action runs.
+     */
+    private final long debounceMillis;
+
+    /**
+     * Action that runs after the files change.
+     */
+    private final Runnable onChange;
+
+    /**
+     * Watch service (null if not running).
+     */
+    private WatchService watchService;
+
+    /**
+     * Watcher thread (null if not running).
+     */
+    private Thread watcher;
+
+    /**
+     * Constructs a new watcher of the given files.
+     *
+     * @param files files to watch
+     * @param debounceMillis time in milliseconds that has to pass without changes before the action runs
+     * @param onChange action that runs after the files change
+     */
+    public ConfigWatcher(List<Path> files, long debounceMillis, Runnable onChange) {
+        for (Path file : files) {
+            this.files.add(file.toAbsolutePath().normalize());
+        }
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching the files (if not watching already).
+     *
+     * @throws IOException if the directories of the files cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        WatchService service = FileSystems.getDefault().newWatchService();
+        try {
+            Set<Path> directories = new HashSet<>();
+            for (Path file : files) {
+                directories.add(file.getParent());
+            }
+            for (Path directory : directories) {
+                directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        watchService = service;
+        watcher = new Thread(() -> watchLoop(service), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the files.
+     */
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchService = null;
+        watcher = null;
+    }
+
+    /**
+     * Main loop of the watcher thread.
+     * Waits for a change of a watched file, then waits until the changes stop and runs the action.
+     *
+     * @param service watch service to take the events from
+     */
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                if (!changed(service.take())) {
+                    continue;
+                }
+                for (WatchKey key; (key = service.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null; ) {
+                    changed(key);
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error while reloading configuration: " + e.getMessage());
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Checks whether the events of the given key concern any of the watched files, and resets the key.
+     *
+     * @param key signalled key
+     * @return true if a watched file changed
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || files.contains(directory.resolve((Path) event.context()).toAbsolutePath().normalize())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
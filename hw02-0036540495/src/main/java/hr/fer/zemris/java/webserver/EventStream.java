@@ -0,0 +1,313 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A long-lived stream of server-sent events (<code>text/event-stream</code>) opened by a worker
+ * through {@link RequestContext#startEventStream()}.
+ * <p>
+ * Once the stream is opened, the connection no longer belongs to the worker thread that processed the request:
+ * events are put into a bounded queue and written by a writer thread of the stream, which also writes
+ * a heartbeat comment whenever no event was written for the heartbeat interval, so that proxies keep the
+ * connection open and a client that went away is noticed. Writer threads are virtual threads, so a stream
+ * that is idle holds no platform thread. A client that does not keep up with the events (its queue fills up)
+ * is disconnected, and is expected to reconnect.
+ * <p>
+ * Events may be sent from any thread, for example from a thread that publishes the same event to many streams.
+ *
+ * @see RequestContext
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class EventStream implements Closeable {
+    /**
+     * Comment written as a heartbeat.
+     */
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Marker put into the queue when the stream is closed, after the events that are still to be written.
+     */
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Output stream of the response.
+     */
+    private final OutputStream output;
+
+    /**
+     * Events (already encoded) waiting to be written.
+     */
+    private final BlockingQueue<byte[]> queue;
+
+    /**
+     * Time in milliseconds without events after which a heartbeat is written.
+     */
+    private final long heartbeatMillis;
+
+    /**
+     * Action that ends the response (and releases the connection) once the writer thread is done.
+     */
+    private final Runnable onEnd;
+
+    /**
+     * Actions run once the stream is closed (for example to unsubscribe it from a publisher).
+     */
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Flag that signals that no more events are accepted.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Flag that signals that the events still queued are not to be written.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Flag that signals that the writer thread is done and the response is ended.
+     */
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    /**
+     * Writer thread of the stream (null until the stream is started).
+     */
+    private volatile Thread writer;
+
+    /**
+     * Constructs a new event stream whose response header has already been written.
+     *
+     * @param output output stream of the response
+     * @param capacity maximum number of events waiting to be written
+     * @param heartbeatMillis time in milliseconds without events after which a heartbeat is written
+     * @param onEnd action that ends the response once the writer thread is done
+     */
+    EventStream(OutputStream output, int capacity, long heartbeatMillis, Runnable onEnd) {
+        this.output = output;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.heartbeatMillis = heartbeatMillis;
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * Starts the writer thread of the stream.
+     *
+     * @param threadFactory factory of the writer thread
+     */
+    void start(ThreadFactory threadFactory) {
+        writer = threadFactory.newThread(this::writeLoop);
+        writer.start();
+    }
+
+    /**
+     * Sends an event with the given data (the event type defaults to <code>message</code>).
+     *
+     * @param data data of the event (may span several lines)
+     * @return true if the event was queued, false if the stream is closed
+     */
+    public boolean send(String data) {
+        return send(null, null, data);
+    }
+
+    /**
+     * Sends an event of the given type with the given data.
+     *
+     * @param event type of the event (null for the default type)
+     * @param data data of the event (may span several lines)
+     * @return true if the event was queued, false if the stream is closed
+     */
+    public boolean send(String event, String data) {
+        return send(null, event, data);
+    }
+
+    /**
+     * Sends an event with the given ID, type and data.
+     * The ID is sent back by a reconnecting client in the <code>Last-Event-ID</code> request header.
+     *
+     * @param id ID of the event (null if the event has none)
+     * @param event type of the event (null for the default type)
+     * @param data data of the event (may span several lines)
+     * @return true if the event was queued, false if the stream is closed
+     * @throws IllegalArgumentException if the ID or the type contains a line break
+     */
+    public boolean send(String id, String event, String data) {
+        return enqueue(encode(id, event, data));
+    }
+
+    /**
+     * Tells the client how many milliseconds to wait before reconnecting once the stream is closed.
+     *
+     * @param millis reconnection time in milliseconds
+     * @return true if the field was queued, false if the stream is closed
+     */
+    public boolean retry(long millis) {
+        return enqueue(("retry: " + millis + "\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds an action that is run once the stream is closed, either by the server or because the client went away.
+     * If the stream is already closed, the action is run immediately.
+     *
+     * @param listener action to run
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+        if (ended.get() && closeListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Checks whether the stream still accepts events.
+     *
+     * @return true if the stream is open
+     */
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * Closes the stream: the events that are already queued are written, then the response is ended.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true) && !queue.offer(END)) {
+            abort();
+        }
+    }
+
+    /**
+     * Closes the stream without writing the events that are still queued.
+     */
+    void abort() {
+        closed.set(true);
+        aborted = true;
+        Thread thread = writer;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Queues the given encoded event. If the queue is full, the client is too slow and the stream is aborted.
+     *
+     * @param frame encoded event
+     * @return true if the event was queued
+     */
+    private boolean enqueue(byte[] frame) {
+        if (closed.get()) {
+            return false;
+        }
+        if (!queue.offer(frame)) {
+            abort();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Main loop of the writer thread. Writes the queued events (flushing once the queue is empty)
+     * and heartbeats, until the stream is closed or a write fails.
+     */
+    private void writeLoop() {
+        try {
+            while (!aborted) {
+                byte[] frame = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (frame == END) {
+                    break;
+                }
+                output.write(frame == null ? HEARTBEAT : frame);
+                if (queue.isEmpty()) {
+                    output.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client went away or the stream was aborted
+        } finally {
+            closed.set(true);
+            end();
+        }
+    }
+
+    /**
+     * Ends the response and runs the close listeners (at most once).
+     */
+    private void end() {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        queue.clear();
+        onEnd.run();
+        for (Runnable listener : closeListeners) {
+            if (closeListeners.remove(listener)) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in event stream close listener: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes an event in the <code>text/event-stream</code> format:
+     * optional <code>id</code> and <code>event</code> fields, a <code>data</code> field for every line of the data,
+     * and an empty line that dispatches the event.
+     *
+     * @param id ID of the event (null if the event has none)
+     * @param event type of the event (null for the default type)
+     * @param data data of the event (may span several lines)
+     * @return encoded event
+     * @throws IllegalArgumentException if the ID or the type contains a line break
+     */
+    static byte[] encode(String id, String event, String data) {
+        StringBuilder sb = new StringBuilder(data.length() + 16);
+        if (id != null) {
+            sb.append("id: ").append(checkField("id", id)).append('\n');
+        }
+        if (event != null) {
+            sb.append("event: ").append(checkField("event", event)).append('\n');
+        }
+        int start = 0;
+        for (int i = 0; i <= data.length(); i++) {
+            char c = i < data.length() ? data.charAt(i) : '\n';
+            if (c != '\n' && c != '\r') {
+                continue;
+            }
+            sb.append("data: ").append(data, start, i).append('\n');
+            if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') {
+                i++;
+            }
+            start = i + 1;
+        }
+        sb.append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that the value of a single-line field contains no line break.
+     *
+     * @param name name of the field
+     * @param value value of the field
+     * @return the value
+     * @throws IllegalArgumentException if the value contains a line break
+     */
+    private static String checkField(String name, String value) {
+        if (value.indexOf('\n') != -1 || value.indexOf('\r') != -1) {
+            throw new IllegalArgumentException("Event " + name + " must not contain a line break.");
+        }
+        return value;
+    }
+}
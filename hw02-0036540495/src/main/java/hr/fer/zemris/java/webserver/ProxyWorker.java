@@ -0,0 +1,858 @@
+package hr.fer.zemris.java.webserver;
+
+import hr.fer.zemris.java.webserver.http.ChunkedInputStream;
+import hr.fer.zemris.java.webserver.http.ContentLengthInputStream;
+import hr.fer.zemris.java.webserver.http.RequestHeaders;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A web worker that forwards the requests of a route to an upstream HTTP/1.1 server and streams the responses back.
+ * Requests to <code>/route/rest?query</code> are forwarded as <code>/rest?query</code>, together with the header fields
+ * of the request (apart from the hop-by-hop ones) and the unparsed request body.
+ * <p>
+ * Connections to the upstream server are kept alive and reused through a bounded pool of idle connections.
+ * A GET request that fails on a reused connection (because the upstream server has closed the idle connection
+ * in the meantime) is retried on the next idle connection, and finally on a new one.
+ * <p>
+ * Responses to GET requests are stored in the server's {@link ResponseCache} when the <code>Cache-Control</code>
+ * (or <code>Expires</code>) header field of the response gives them an explicit freshness lifetime,
+ * and they are not marked <code>no-store</code>, <code>no-cache</code> or <code>private</code>, set no cookies
+ * and do not vary on the request. Requests that carry credentials or ask for a fresh response
+ * (<code>Cache-Control: no-cache</code>) bypass the cache.
+ * <p>
+ * Proxied routes are configured in the workers configuration file as <code>proxy./route = host:port</code>.
+ *
+ * @see ResponseCache
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ProxyWorker implements IWebWorker {
+    /**
+     * Header fields of requests and responses that concern a single connection and are never forwarded.
+     */
+    private static final Set<String> HOP_BY_HOP = Set.of(
+            "connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "http2-settings"
+    );
+
+    /**
+     * Status codes of responses that may be cached.
+     */
+    private static final Set<Integer> CACHEABLE_STATUS_CODES = Set.of(200, 203, 301, 404, 410);
+
+    /**
+     * Maximum length of a line of the upstream response header.
+     */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Size of the buffers used to copy the bodies.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Route whose requests are forwarded.
+     */
+    private final String route;
+
+    /**
+     * Host name of the upstream server.
+     */
+    private final String host;
+
+    /**
+     * Port of the upstream server.
+     */
+    private final int port;
+
+    /**
+     * Value of the <code>Host</code> header field sent to the upstream server.
+     */
+    private final String upstreamHost;
+
+    /**
+     * Cache in which the cacheable responses are stored (null to disable caching).
+     */
+    private final ResponseCache cache;
+
+    /**
+     * Timeout in milliseconds for connecting to the upstream server and for every read from it.
+     */
+    private final int timeout;
+
+    /**
+     * Maximum number of idle connections kept in the pool.
+     */
+    private final int maxIdleConnections;
+
+    /**
+     * Time in milliseconds after which an idle connection is no longer reused.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Maximum size of a response body that is stored in the cache.
+     */
+    private final int maxCacheableSize;
+
+    /**
+     * Idle connections, the most recently used one first.
+     */
+    private final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Number of connections in {@link #idle}.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Flag that signals that the worker was closed, so connections are no longer returned to the pool.
+     */
+    private volatile boolean closed;
+
+    /**
+     * A keep-alive connection to the upstream server.
+     */
+    private static class Connection {
+        /**
+         * Socket of the connection.
+         */
+        final Socket socket;
+
+        /**
+         * Buffered input stream of the socket.
+         */
+        final InputStream in;
+
+        /**
+         * Buffered output stream of the socket.
+         */
+        final OutputStream out;
+
+        /**
+         * Time (as given by {@link System#nanoTime()}) when the connection was returned to the pool.
+         */
+        long idleSince;
+
+        /**
+         * Flag that signals that the connection has already been used for a request.
+         */
+        boolean reused;
+
+        /**
+         * Constructs a new connection over the given connected socket.
+         *
+         * @param socket connected socket
+         * @throws IOException if the streams of the socket cannot be obtained
+         */
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        }
+
+        /**
+         * Closes the connection.
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Parsed header of an upstream response.
+     *
+     * @param statusCode status code
+     * @param statusText status text
+     * @param keepAlive true if the upstream server keeps the connection open after the response
+     * @param fields header fields (names in lower case, repeated fields in order)
+     */
+    private record ResponseHeader(int statusCode, String statusText, boolean keepAlive, List<String[]> fields) {
+        /**
+         * Returns the value of the first field with the given name.
+         *
+         * @param name name of the field in lower case
+         * @return value of the field, or null if the response has no such field
+         */
+        String value(String name) {
+            for (String[] field : fields) {
+                if (field[0].equals(name)) {
+                    return field[1];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Constructs a new proxy worker.
+     *
+     * @param route route whose requests are forwarded
+     * @param host host name of the upstream server
+     * @param port port of the upstream server
+     * @param cache cache in which the cacheable responses are stored (null to disable caching)
+     * @param timeout timeout in milliseconds for connecting to the upstream server and for every read from it
+     * @param maxIdleConnections maximum number of idle connections kept in the pool
+     * @param idleTimeout time in milliseconds after which an idle connection is no longer reused
+     * @param maxCacheableSize maximum size of a response body that is stored in the cache
+     */
+    public ProxyWorker(String route, String host, int port, ResponseCache cache,
+                       int timeout, int maxIdleConnections, long idleTimeout, int maxCacheableSize) {
+        this.route = route.endsWith("/") ? route.substring(0, route.length() - 1) : route;
+        this.host = host;
+        this.port = port;
+        this.upstreamHost = port == 80 ? host : host + ":" + port;
+        this.cache = cache;
+        this.timeout = timeout;
+        this.maxIdleConnections = maxIdleConnections;
+        this.idleTimeout = idleTimeout;
+        this.maxCacheableSize = maxCacheableSize;
+    }
+
+    /**
+     * Parses the upstream address from the configuration value in the format <code>host:port</code>
+     * and constructs a proxy worker for it.
+     *
+     * @param route route whose requests are forwarded
+     * @param value configuration value
+     * @param cache cache in which the cacheable responses are stored (null to disable caching)
+     * @param timeout timeout in milliseconds for connecting to the upstream server and for every read from it
+     * @param maxIdleConnections maximum number of idle connections kept in the pool
+     * @param idleTimeout time in milliseconds after which an idle connection is no longer reused
+     * @param maxCacheableSize maximum size of a response body that is stored in the cache
+     * @return constructed proxy worker
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    public static ProxyWorker parse(String route, String value, ResponseCache cache,
+                                    int timeout, int maxIdleConnections, long idleTimeout, int maxCacheableSize) {
+        String address = value.strip();
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Expected 'host:port' but got '" + value + "'.");
+        }
+        int port = Integer.parseInt(address.substring(colon + 1));
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port in '" + value + "'.");
+        }
+        return new ProxyWorker(route, address.substring(0, colon), port, cache,
+                timeout, maxIdleConnections, idleTimeout, maxCacheableSize);
+    }
+
+    /**
+     * Returns the route whose requests are forwarded.
+     *
+     * @return route (without a trailing slash)
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Checks whether the given path belongs to the route of this worker.
+     *
+     * @param path requested path
+     * @return true if the path is the route itself or lies below it
+     */
+    public boolean matches(String path) {
+        return path.startsWith(route) && (path.length() == route.length() || path.charAt(route.length()) == '/');
+    }
+
+    /**
+     * Closes all idle connections to the upstream server.
+     * Connections of requests that are still in flight are closed once their responses have been read.
+     */
+    public void close() {
+        closed = true;
+        for (Connection connection; (connection = idle.pollFirst()) != null; ) {
+            idleCount.decrementAndGet();
+            connection.close();
+        }
+    }
+
+    @Override
+    public void processRequest(RequestContext context) throws Exception {
+        String path = context.getRequestPath();
+        String target = (path.length() == route.length() ? "/" : path.substring(route.length()))
+                + (context.getQueryString().isEmpty() ? "" : "?" + context.getQueryString());
+        List<String> requestHeaders = context.getRequestHeaders();
+        boolean get = context.getMethod().equals("GET");
+        // bodies of unknown length (chunked, or ended by an HTTP/2 stream) are forwarded in chunks
+        boolean chunked = !get && RequestHeaders.value(requestHeaders, "Content-Length") == null;
+
+        String key = null;
+        if (cache != null && get && isCacheableRequest(requestHeaders)) {
+            key = "http://" + upstreamHost + target;
+            ResponseCache.CachedResponse cached = cache.get(key);
+            if (cached != null) {
+                writeCached(context, cached);
+                return;
+            }
+        }
+
+        byte[] request = buildRequestHeader(context.getMethod(), target, requestHeaders, chunked);
+        Connection connection = null;
+        ResponseHeader response;
+        try {
+            while (true) {
+                connection = acquire();
+                try {
+                    response = exchange(connection, request, context.getRequestBody(), chunked);
+                    break;
+                } catch (IOException e) {
+                    // the upstream server may have closed the idle connection before the request arrived
+                    connection.close();
+                    if (!get || !connection.reused || e instanceof SocketTimeoutException) {
+                        throw e;
+                    }
+                    connection = null;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            sendError(context, 504, "Gateway Timeout");
+            return;
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            System.err.println("Error while forwarding request to " + upstreamHost + ": " + e.getMessage());
+            sendError(context, 502, "Bad Gateway");
+            return;
+        }
+
+        boolean keepAlive = response.keepAlive();
+        InputStream body;
+        String transferEncoding = response.value("transfer-encoding");
+        String contentLength = response.value("content-length");
+        long length = -1;
+        if (response.statusCode() == 204 || response.statusCode() == 304) {
+            body = InputStream.nullInputStream();
+        } else if (transferEncoding != null) {
+            body = new ChunkedInputStream(connection.in, Long.MAX_VALUE);
+        } else if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.strip());
+            } catch (NumberFormatException e) {
+                connection.close();
+                sendError(context, 502, "Bad Gateway");
+                return;
+            }
+            body = new ContentLengthInputStream(connection.in, length);
+        } else {
+            // the body ends when the upstream server closes the connection
+            body = connection.in;
+            keepAlive = false;
+        }
+
+        long ttl = key == null ? -1 : freshnessLifetime(response);
+        ByteArrayOutputStream copy = ttl > 0 && (length < 0 || length <= maxCacheableSize)
+                ? new ByteArrayOutputStream(length < 0 ? BUFFER_SIZE : (int) length)
+                : null;
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        try {
+            writeHeader(context, response, length, headers);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n; (n = body.read(buffer)) != -1; ) {
+                context.write(buffer, 0, n);
+                if (copy != null) {
+                    if (copy.size() + n > maxCacheableSize) {
+                        copy = null;
+                    } else {
+                        copy.write(buffer, 0, n);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+
+        if (keepAlive) {
+            release(connection);
+        } else {
+            connection.close();
+        }
+
+        if (copy != null) {
+            if (!headers.containsKey("Date")) {
+                headers.put("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+            }
+            cache.put(key, new ResponseCache.CachedResponse(
+                    context.getStatusCode(),
+                    context.getStatusText(),
+                    context.getMimeType(),
+                    context.getEncoding(),
+                    Map.copyOf(headers),
+                    copy.toByteArray(),
+                    System.currentTimeMillis() + ttl
+            ));
+        }
+    }
+
+    /**
+     * Takes an idle connection from the pool, or opens a new one if there is no usable idle connection.
+     *
+     * @return connection to the upstream server
+     * @throws IOException if a new connection cannot be opened
+     */
+    private Connection acquire() throws IOException {
+        long now = System.nanoTime();
+        for (Connection connection; (connection = idle.pollFirst()) != null; ) {
+            idleCount.decrementAndGet();
+            if (now - connection.idleSince < idleTimeout * 1_000_000 && !connection.socket.isInputShutdown()) {
+                connection.reused = true;
+                return connection;
+            }
+            connection.close();
+        }
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the given connection to the pool, or closes it if the pool is full.
+     *
+     * @param connection connection whose response has been read completely
+     */
+    private void release(Connection connection) {
+        if (closed || idleCount.incrementAndGet() > maxIdleConnections) {
+            if (!closed) {
+                idleCount.decrementAndGet();
+            }
+            connection.close();
+            return;
+        }
+        connection.idleSince = System.nanoTime();
+        idle.offerFirst(connection);
+        if (closed) {
+            close();
+        }
+    }
+
+    /**
+     * Sends the request over the given connection and reads the header of the response.
+     *
+     * @param connection connection to the upstream server
+     * @param header encoded request header
+     * @param body body of the request
+     * @param chunked true if the body is sent with the chunked transfer coding
+     * @return parsed header of the response
+     * @throws EOFException if the connection was closed before any part of the response arrived
+     * @throws IOException if an I/O error occurs or the response is invalid
+     */
+    private ResponseHeader exchange(Connection connection, byte[] header, InputStream body, boolean chunked)
+            throws IOException {
+        OutputStream out = connection.out;
+        out.write(header);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int n; (n = body.read(buffer)) != -1; ) {
+            if (chunked) {
+                out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(buffer, 0, n);
+                out.write('\r');
+                out.write('\n');
+            } else {
+                out.write(buffer, 0, n);
+            }
+        }
+        if (chunked) {
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        out.flush();
+
+        while (true) {
+            String statusLine = readLine(connection.in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before the response arrived.");
+            }
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/1.")) {
+                throw new IOException("Invalid status line '" + statusLine + "'.");
+            }
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid status line '" + statusLine + "'.");
+            }
+            boolean keepAlive = parts[0].equals("HTTP/1.1");
+            List<String[]> fields = new ArrayList<>();
+            for (String line; !(line = readHeaderLine(connection.in)).isEmpty(); ) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    throw new IOException("Invalid header field '" + line + "'.");
+                }
+                String name = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).strip();
+                if (name.equals("connection")) {
+                    keepAlive = keepAlive ? !value.toLowerCase(Locale.ROOT).contains("close")
+                            : value.toLowerCase(Locale.ROOT).contains("keep-alive");
+                }
+                fields.add(new String[] {name, value});
+            }
+            // interim responses (such as 100 Continue) are skipped
+            if (statusCode >= 100 && statusCode < 200) {
+                continue;
+            }
+            return new ResponseHeader(statusCode, parts.length == 3 ? parts[2] : "", keepAlive, fields);
+        }
+    }
+
+    /**
+     * Reads a line of the response header (terminated by a line feed, optionally preceded by a carriage return).
+     *
+     * @param in stream to read from
+     * @return line without the line terminator, or null if the stream ended before the first byte
+     * @throws IOException if the line is too long, the stream ends in the middle of it or an I/O error occurs
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                if (line.isEmpty()) {
+                    return null;
+                }
+                throw new IOException("Connection closed in the middle of the response header.");
+            }
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new IOException("Response header line is too long.");
+            }
+            line.append((char) b);
+        }
+    }
+
+    /**
+     * Reads a line of the response header that follows the status line.
+     *
+     * @param in stream to read from
+     * @return line without the line terminator
+     * @throws EOFException if the stream ended before the line (and the header) ended
+     * @throws IOException if the line is too long or an I/O error occurs
+     */
+    private static String readHeaderLine(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            throw new EOFException("Connection closed in the middle of the response header.");
+        }
+        return line;
+    }
+
+    /**
+     * Encodes the header of the request forwarded to the upstream server.
+     *
+     * @param method method of the request
+     * @param target request target on the upstream server
+     * @param requestHeaders lines of the client's request header
+     * @param chunked true if the body is sent with the chunked transfer coding
+     * @return encoded request header
+     */
+    private byte[] buildRequestHeader(String method, String target, List<String> requestHeaders, boolean chunked) {
+        StringBuilder header = new StringBuilder(512);
+        header.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+        header.append("Host: ").append(upstreamHost).append("\r\n");
+        Set<String> connectionOptions = connectionOptions(RequestHeaders.value(requestHeaders, "Connection"));
+        for (int i = 1; i < requestHeaders.size(); i++) {
+            String line = requestHeaders.get(i);
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            // the body is sent as it is decoded, and the cache stores only unencoded representations
+            if (HOP_BY_HOP.contains(name) || connectionOptions.contains(name) || name.equals("host")
+                    || name.equals("expect") || name.equals("accept-encoding")) {
+                continue;
+            }
+            header.append(line).append("\r\n");
+        }
+        String host = RequestHeaders.value(requestHeaders, "Host");
+        if (host != null) {
+            header.append("X-Forwarded-Host: ").append(host).append("\r\n");
+        }
+        if (chunked) {
+            header.append("Transfer-Encoding: chunked\r\n");
+        }
+        header.append("Connection: keep-alive\r\n\r\n");
+        return header.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Sets the status, the mime type, the content length and the header fields of the upstream response.
+     *
+     * @param context context of the request
+     * @param response parsed header of the upstream response
+     * @param length length of the response body (-1 if unknown)
+     * @param headers map into which the forwarded header fields are collected
+     */
+    private static void writeHeader(RequestContext context, ResponseHeader response, long length,
+                                    Map<String, String> headers) {
+        context.setStatusCode(response.statusCode());
+        context.setStatusText(response.statusText().isEmpty() ? String.valueOf(response.statusCode()) : response.statusText());
+        setContentType(context, response.value("content-type"));
+        if (length >= 0) {
+            context.setContentLength(length);
+        }
+        Set<String> connectionOptions = connectionOptions(response.value("connection"));
+        for (String[] field : response.fields()) {
+            String name = field[0];
+            if (HOP_BY_HOP.contains(name) || connectionOptions.contains(name)
+                    || name.equals("content-type") || name.equals("content-length")) {
+                continue;
+            }
+            String canonical = canonicalName(name);
+            context.appendHeader(canonical, field[1]);
+            if (!name.equals("age")) {
+                headers.merge(canonical, field[1], (previous, value) -> previous + "\n" + value);
+            }
+        }
+        context.addHeader("X-Cache", "MISS");
+    }
+
+    /**
+     * Writes a cached response.
+     *
+     * @param context context of the request
+     * @param cached cached response
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeCached(RequestContext context, ResponseCache.CachedResponse cached) throws IOException {
+        context.setStatusCode(cached.statusCode());
+        context.setStatusText(cached.statusText());
+        context.setMimeType(cached.mimeType());
+        context.setEncoding(cached.encoding());
+        for (Map.Entry<String, String> field : cached.headers().entrySet()) {
+            context.addHeader(field.getKey(), field.getValue());
+        }
+        long age = 0;
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(cached.headers().get("Date"), DateTimeFormatter.RFC_1123_DATE_TIME);
+            age = Math.max(0, System.currentTimeMillis() / 1000 - date.toEpochSecond());
+        } catch (DateTimeParseException ignored) {
+        }
+        context.addHeader("Age", String.valueOf(age));
+        context.addHeader("X-Cache", "HIT");
+        context.setContentLength((long) cached.body().length);
+        context.write(cached.body());
+    }
+
+    /**
+     * Sends an empty error response, unless the response header has already been sent.
+     *
+     * @param context context of the request
+     * @param statusCode status code
+     * @param statusText status text
+     * @throws IOException if an I/O error occurs
+     */
+    private static void sendError(RequestContext context, int statusCode, String statusText) throws IOException {
+        context.setStatusCode(statusCode);
+        context.setStatusText(statusText);
+        context.setMimeType("text/plain");
+        context.setContentLength(0L);
+        context.write(new byte[0]);
+    }
+
+    /**
+     * Sets the mime type and the encoding of the response from the upstream <code>Content-Type</code> field.
+     * The charset of a text type is moved into the encoding, since the context appends it to text types itself.
+     *
+     * @param context context of the request
+     * @param contentType value of the <code>Content-Type</code> field (null if the response has none)
+     */
+    private static void setContentType(RequestContext context, String contentType) {
+        if (contentType == null) {
+            context.setMimeType("application/octet-stream");
+            return;
+        }
+        if (contentType.regionMatches(true, 0, "text/", 0, 5)) {
+            int semicolon = contentType.indexOf(';');
+            if (semicolon != -1) {
+                int charset = contentType.toLowerCase(Locale.ROOT).indexOf("charset=", semicolon);
+                if (charset != -1) {
+                    String encoding = contentType.substring(charset + 8).split(";", 2)[0].strip().replace("\"", "");
+                    if (Charset.isSupported(encoding)) {
+                        context.setEncoding(encoding);
+                        context.setMimeType(contentType.substring(0, semicolon).strip());
+                        return;
+                    }
+                }
+            }
+        }
+        context.setMimeType(contentType);
+    }
+
+    /**
+     * Checks whether the response to the given GET request may be looked up in and stored into the cache.
+     *
+     * @param requestHeaders lines of the request header
+     * @return true if the cache may be used
+     */
+    private static boolean isCacheableRequest(List<String> requestHeaders) {
+        if (RequestHeaders.value(requestHeaders, "Authorization") != null) {
+            return false;
+        }
+        String cacheControl = RequestHeaders.value(requestHeaders, "Cache-Control");
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.ROOT);
+            if (directives.contains("no-cache") || directives.contains("no-store")) {
+                return false;
+            }
+        }
+        String pragma = RequestHeaders.value(requestHeaders, "Pragma");
+        return pragma == null || !pragma.toLowerCase(Locale.ROOT).contains("no-cache");
+    }
+
+    /**
+     * Returns the time for which the given response may be served from the cache.
+     * Only responses with an explicit freshness lifetime (<code>s-maxage</code>, <code>max-age</code>
+     * or <code>Expires</code>) are cached, reduced by the <code>Age</code> the response already has.
+     *
+     * @param response parsed header of the response
+     * @return freshness lifetime in milliseconds (0 or less if the response must not be cached)
+     */
+    private static long freshnessLifetime(ResponseHeader response) {
+        if (!CACHEABLE_STATUS_CODES.contains(response.statusCode()) || response.value("set-cookie") != null) {
+            return -1;
+        }
+        String vary = response.value("vary");
+        if (vary != null && !vary.equalsIgnoreCase("accept-encoding")) {
+            return -1;
+        }
+        long seconds = -1;
+        String cacheControl = response.value("cache-control");
+        if (cacheControl != null) {
+            long maxAge = -1;
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.strip();
+                if (directive.equals("no-store") || directive.equals("private") || directive.startsWith("no-cache")) {
+                    return -1;
+                }
+                if (directive.startsWith("s-maxage=")) {
+                    seconds = parseSeconds(directive.substring(9));
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring(8));
+                }
+            }
+            if (seconds < 0) {
+                seconds = maxAge;
+            }
+        }
+        if (seconds < 0 && response.value("expires") != null) {
+            try {
+                ZonedDateTime expires = ZonedDateTime.parse(response.value("expires"), DateTimeFormatter.RFC_1123_DATE_TIME);
+                String date = response.value("date");
+                ZonedDateTime now = date == null
+                        ? ZonedDateTime.now(ZoneOffset.UTC)
+                        : ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME);
+                seconds = expires.toEpochSecond() - now.toEpochSecond();
+            } catch (DateTimeParseException e) {
+                return -1;
+            }
+        }
+        String age = response.value("age");
+        if (age != null) {
+            seconds -= Math.max(0, parseSeconds(age));
+        }
+        return seconds * 1000;
+    }
+
+    /**
+     * Parses a number of seconds from a header field.
+     *
+     * @param value value to parse
+     * @return number of seconds, or -1 if the value is invalid
+     */
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.strip());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the names of the fields listed in a <code>Connection</code> header field,
+     * which apply only to the current connection.
+     *
+     * @param connection value of the <code>Connection</code> field (null if there is none)
+     * @return names of the listed fields in lower case
+     */
+    private static Set<String> connectionOptions(String connection) {
+        if (connection == null) {
+            return Set.of();
+        }
+        Set<String> options = new HashSet<>();
+        for (String option : connection.split(",")) {
+            options.add(option.strip().toLowerCase(Locale.ROOT));
+        }
+        return options;
+    }
+
+    /**
+     * Converts a lower-case field name into its usual capitalisation (for example <code>cache-control</code>
+     * into <code>Cache-Control</code>).
+     *
+     * @param name lower-case field name
+     * @return capitalised field name
+     */
+    private static String canonicalName(String name) {
+        char[] chars = name.toCharArray();
+        boolean start = true;
+        for (int i = 0; i < chars.length; i++) {
+            if (start) {
+                chars[i] = Character.toUpperCase(chars[i]);
+            }
+            start = chars[i] == '-';
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,187 @@
+package hr.fer.zemris.java.webserver;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token-bucket rate limiter used by the {@link SmartHttpServer}.
+ * <p>
+ * Every client address gets its own bucket holding at most <code>burst</code> tokens,
+ * which is refilled with <code>rate</code> tokens per second; every request takes one token.
+ * Buckets are refilled lazily (only when a request arrives), and the whole state of a bucket
+ * (time of the last refill and the number of milli-tokens) is packed into a single <code>long</code>,
+ * so a request only needs a table lookup and a compare-and-set.
+ * Buckets that are full again hold no information and are removed by {@link #evictIdle()}.
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class RateLimiter {
+    /**
+     * Number of bits of the packed state used for the number of milli-tokens.
+     */
+    private static final int TOKEN_BITS = 21;
+
+    /**
+     * Mask that extracts the number of milli-tokens from the packed state.
+     */
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    /**
+     * Number of milli-tokens taken by a single request.
+     */
+    private static final long REQUEST_COST = 1000;
+
+    /**
+     * Largest supported burst.
+     */
+    public static final int MAX_BURST = (int) (TOKEN_MASK / REQUEST_COST);
+
+    /**
+     * Refill rate in tokens per second (which equals milli-tokens per millisecond).
+     */
+    private final double rate;
+
+    /**
+     * Capacity of a bucket in milli-tokens.
+     */
+    private final long capacity;
+
+    /**
+     * Time (as given by {@link System#nanoTime()}) relative to which the refill times are stored.
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * Packed bucket state per client address.
+     */
+    private final Map<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Number of requests that were limited.
+     */
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * Constructs a new rate limiter.
+     *
+     * @param rate number of tokens added to each bucket per second
+     * @param burst maximum number of tokens in each bucket
+     * @throws IllegalArgumentException if the rate is not positive or the burst is not between 1 and {@link #MAX_BURST}
+     */
+    public RateLimiter(double rate, int burst) {
+        if (rate <= 0 || burst < 1 || burst > MAX_BURST) {
+            throw new IllegalArgumentException("Rate must be positive and burst must be between 1 and " + MAX_BURST + ".");
+        }
+        this.rate = rate;
+        this.capacity = burst * REQUEST_COST;
+    }
+
+    /**
+     * Parses a rate limiter from the configuration value in the format <code>rate [burst]</code>.
+     * If the burst is omitted, it equals the rate (rounded up).
+     *
+     * @param value configuration value
+     * @return parsed rate limiter
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    public static RateLimiter parse(String value) {
+        String[] parts = value.strip().split("\\s+");
+        if (parts.length < 1 || parts.length > 2) {
+            throw new IllegalArgumentException("Expected 'rate [burst]' but got '" + value + "'.");
+        }
+        double rate = Double.parseDouble(parts[0]);
+        int burst = parts.length == 2 ? Integer.parseInt(parts[1]) : (int) Math.ceil(rate);
+        return new RateLimiter(rate, burst);
+    }
+
+    /**
+     * Tries to take a token from the bucket of the given client.
+     *
+     * @param address address of the client
+     * @return 0 if the request is allowed, otherwise the number of milliseconds until a token is available
+     */
+    public long tryAcquire(InetAddress address) {
+        long now = now();
+        AtomicLong state = buckets.get(address);
+        if (state == null) {
+            state = buckets.computeIfAbsent(address, a -> new AtomicLong(pack(now, capacity)));
+        }
+        while (true) {
+            long current = state.get();
+            long tokens = refill(current, now);
+            if (tokens < REQUEST_COST) {
+                limited.increment();
+                return Math.max(1, (long) Math.ceil((REQUEST_COST - tokens) / rate));
+            }
+            if (state.compareAndSet(current, pack(now, tokens - REQUEST_COST))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets that have been refilled completely,
+     * since a full bucket behaves exactly like a missing one.
+     */
+    public void evictIdle() {
+        long now = now();
+        buckets.values().removeIf(state -> refill(state.get(), now) >= capacity);
+    }
+
+    /**
+     * Returns the number of requests that were limited.
+     *
+     * @return number of limited requests
+     */
+    public long getLimited() {
+        return limited.sum();
+    }
+
+    /**
+     * Returns the number of buckets currently held in the table.
+     *
+     * @return number of buckets
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Returns the number of milli-tokens in the bucket with the given state at the given time.
+     *
+     * @param state packed state of the bucket
+     * @param now current time in milliseconds relative to {@link #origin}
+     * @return number of milli-tokens
+     */
+    private long refill(long state, long now) {
+        long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+        double tokens = (state & TOKEN_MASK) + elapsed * rate;
+        return tokens >= capacity ? capacity : (long) tokens;
+    }
+
+    /**
+     * Packs the given time and number of milli-tokens into a single state value.
+     *
+     * @param time time in milliseconds relative to {@link #origin}
+     * @param tokens number of milli-tokens
+     * @return packed state
+     */
+    private static long pack(long time, long tokens) {
+        return (time << TOKEN_BITS) | tokens;
+    }
+
+    /**
+     * Returns the current time in milliseconds relative to {@link #origin}.
+     *
+     * @return current time in milliseconds
+     */
+    private long now() {
+        return (System.nanoTime() - origin) / 1_000_000;
+    }
+}
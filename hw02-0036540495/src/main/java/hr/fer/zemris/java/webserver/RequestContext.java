@@ -1,14 +1,18 @@
 package hr.fer.zemris.java.webserver;
 
+import hr.fer.zemris.java.webserver.http.RequestHeaders;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
- * Models the context of an HTTP (GET) request.
- * It is used to generate a response to the client:
+ * Models the context of an HTTP request.
+ * It gives access to the request parameters and (for POST and PUT requests) the streamed request body,
+ * and is used to generate a response to the client:
  * <ul>
      * <li>set encoding, status code, status text, mime type, content length</li>
      * <li>define parameters, persistent parameters, temporary parameters</li>
@@ -31,10 +35,39 @@ public class RequestContext {
      */
     public record RCCookie(String name, String value, String domain, String path, Integer maxAge, boolean httpOnly) {}
 
+    /**
+     * Writes the header of the response in place of the HTTP/1.1 header (for example as an HTTP/2 HEADERS frame).
+     */
+    @FunctionalInterface
+    interface HeaderWriter {
+        /**
+         * Writes the header of the response of the given context.
+         *
+         * @param context the context whose response header is written
+         * @throws IOException if an I/O error occurs
+         */
+        void writeHeader(RequestContext context) throws IOException;
+    }
+
+    /**
+     * Takes over the connection of a response whose header has been written, for a stream of server-sent events.
+     */
+    @FunctionalInterface
+    interface EventStreamOpener {
+        /**
+         * Opens an event stream that writes to the given output stream.
+         *
+         * @param outputStream the output stream of the response
+         * @return the opened event stream
+         * @throws IOException if the stream cannot be opened
+         */
+        EventStream open(OutputStream outputStream) throws IOException;
+    }
+
     /**
      * The output stream to write the response to.
      */
-    private final OutputStream outputStream;
+    private OutputStream outputStream;
 
     /**
      * The charset used to encode the response.
@@ -67,9 +100,9 @@ public class RequestContext {
     private Long contentLength;
 
     /**
-     * The parameters of the request (GET parameters).
+     * The parameters of the request (query string and form body parameters).
      */
-    private final Map<String, String> parameters;
+    private Map<String, String> parameters;
 
     /**
      * The temporary parameters of the request (set by workers).
@@ -79,18 +112,63 @@ public class RequestContext {
     /**
      * The persistent parameters of the request (from the session).
      */
-    private final Map<String, String> persistentParameters;
+    private Map<String, String> persistentParameters;
 
     /**
      * The cookies that will be sent to the client.
      */
-    private final List<RCCookie> outputCookies;
+    private List<RCCookie> outputCookies;
+
+    /**
+     * Additional header fields of the response (created on first use).
+     */
+    private Map<String, String> additionalHeaders;
 
     /**
      * Flag that indicates whether the header has been generated.
      */
     private boolean headerGenerated;
 
+    /**
+     * Flag that indicates that only the body of the response is written (the header is never generated).
+     */
+    private boolean bodyOnly;
+
+    /**
+     * Writer of the response header used instead of the HTTP/1.1 header (null for HTTP/1.1).
+     */
+    private HeaderWriter headerWriter;
+
+    /**
+     * Opener of event streams (null if this context does not support them).
+     */
+    private EventStreamOpener eventStreamOpener;
+
+    /**
+     * The method of the request (GET by default).
+     */
+    private String method = "GET";
+
+    /**
+     * The body of the request (empty by default).
+     */
+    private InputStream requestBody = InputStream.nullInputStream();
+
+    /**
+     * The requested path, without the query string (null if not available).
+     */
+    private String requestPath;
+
+    /**
+     * The query string of the request (empty if the request has none).
+     */
+    private String queryString = "";
+
+    /**
+     * The lines of the request header, request line first (empty if not available).
+     */
+    private List<String> requestHeaders = Collections.emptyList();
+
     /**
      * The dispatcher used to dispatch the request.
      */
@@ -101,6 +179,26 @@ public class RequestContext {
      */
     private String sid;
 
+    /**
+     * Total number of bytes written to the output stream (header included).
+     */
+    private long bytesWritten;
+
+    /**
+     * Total time in nanoseconds spent writing to the output stream.
+     */
+    private long writeNanos;
+
+    /**
+     * Builder of the response header (kept for reuse when the context is reset).
+     */
+    private StringBuilder headerBuilder;
+
+    /**
+     * Buffer holding the encoded response header (kept for reuse when the context is reset).
+     */
+    private byte[] headerBytes;
+
     /**
      * Constructs a new {@link RequestContext} with the given parameters.
      *
@@ -156,6 +254,111 @@ public class RequestContext {
         this.sid = sid;
     }
 
+    /**
+     * Resets this context so that it can be reused for a new request,
+     * as if it was constructed with the given arguments.
+     * Used by the server to avoid allocating a new context (and its buffers) for every request.
+     *
+     * @param outputStream the output stream to write the response to
+     * @param parameters the parameters of the request
+     * @param persistentParameters the persistent parameters of the request
+     * @param outputCookies the cookies that will be sent to the client
+     * @param temporaryParameters the temporary parameters of the request
+     * @param dispatcher the dispatcher used to dispatch the request (null if not available)
+     * @param sid the session ID (null if not available)
+     */
+    void reset(
+            OutputStream outputStream,
+            Map<String, String> parameters,
+            Map<String, String> persistentParameters,
+            List<RCCookie> outputCookies,
+            Map<String, String> temporaryParameters,
+            IDispatcher dispatcher,
+            String sid
+    ) {
+        this.outputStream = outputStream;
+        this.charset = null;
+        this.encoding = "UTF-8";
+        this.statusCode = 200;
+        this.statusText = "OK";
+        this.mimeType = "text/html";
+        this.contentLength = null;
+        this.parameters = parameters;
+        this.temporaryParameters = temporaryParameters;
+        this.persistentParameters = persistentParameters;
+        this.outputCookies = outputCookies;
+        if (additionalHeaders != null) {
+            additionalHeaders.clear();
+        }
+        this.headerGenerated = false;
+        this.bodyOnly = false;
+        this.headerWriter = null;
+        this.eventStreamOpener = null;
+        this.method = "GET";
+        this.requestBody = InputStream.nullInputStream();
+        this.requestPath = null;
+        this.queryString = "";
+        this.requestHeaders = Collections.emptyList();
+        this.dispatcher = dispatcher;
+        this.sid = sid;
+        this.bytesWritten = 0;
+        this.writeNanos = 0;
+    }
+
+    /**
+     * Creates a context that writes only the body of the response (no header) to the given output stream,
+     * for example to render a part of the response into a buffer.
+     * The created context shares the parameters, persistent parameters, dispatcher and session ID with this context,
+     * starts with the same encoding, status and mime type, and has its own output cookies,
+     * additional header fields and a copy of the temporary parameters of this context.
+     *
+     * @param outputStream the output stream to write the body to
+     * @return the created body-only context
+     */
+    public RequestContext createBodyContext(OutputStream outputStream) {
+        return createBodyContext(outputStream, dispatcher);
+    }
+
+    /**
+     * Creates a body-only context like {@link #createBodyContext(OutputStream)}, but with the given dispatcher
+     * instead of the dispatcher of this context.
+     *
+     * @param outputStream the output stream to write the body to
+     * @param dispatcher the dispatcher of the created context
+     * @return the created body-only context
+     */
+    RequestContext createBodyContext(OutputStream outputStream, IDispatcher dispatcher) {
+        RequestContext body = new RequestContext(
+                outputStream,
+                parameters,
+                persistentParameters,
+                new ArrayList<>(),
+                new HashMap<>(temporaryParameters),
+                dispatcher,
+                sid
+        );
+        body.bodyOnly = true;
+        body.method = method;
+        body.requestBody = requestBody;
+        body.requestPath = requestPath;
+        body.queryString = queryString;
+        body.requestHeaders = requestHeaders;
+        body.encoding = encoding;
+        body.statusCode = statusCode;
+        body.statusText = statusText;
+        body.mimeType = mimeType;
+        return body;
+    }
+
+    /**
+     * Returns the encoding of the response.
+     *
+     * @return the encoding of the response
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
     /**
      * Sets the encoding of the response.
      *
@@ -174,6 +377,24 @@ public class RequestContext {
         this.statusCode = statusCode;
     }
 
+    /**
+     * Returns the status code of the response.
+     *
+     * @return the status code of the response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the status text of the response.
+     *
+     * @return the status text of the response
+     */
+    public String getStatusText() {
+        return statusText;
+    }
+
     /**
      * Sets the status text of the response.
      *
@@ -183,6 +404,15 @@ public class RequestContext {
         this.statusText = statusText;
     }
 
+    /**
+     * Returns the mime type of the response.
+     *
+     * @return the mime type of the response
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
     /**
      * Sets the mime type of the response.
      *
@@ -201,6 +431,38 @@ public class RequestContext {
         this.contentLength = contentLength;
     }
 
+    /**
+     * Adds an additional header field to the response (for example <code>Retry-After</code>).
+     * If a field with the same name was already added, its value is replaced.
+     *
+     * @param name the name of the header field
+     * @param value the value of the header field
+     * @throws RuntimeException if the header has already been generated
+     */
+    public void addHeader(String name, String value) {
+        if (headerGenerated) {
+            throw new RuntimeException("Header has already been generated.");
+        }
+        if (additionalHeaders == null) {
+            additionalHeaders = new LinkedHashMap<>();
+        }
+        additionalHeaders.put(name, value);
+    }
+
+    /**
+     * Adds an additional header field to the response, keeping the fields with the same name that were already added
+     * (needed for fields such as <code>Set-Cookie</code>, which cannot be combined into a single field).
+     * The values are kept in a single map entry, separated by line feeds.
+     *
+     * @param name the name of the header field
+     * @param value the value of the header field
+     * @throws RuntimeException if the header has already been generated
+     */
+    void appendHeader(String name, String value) {
+        String previous = additionalHeaders == null ? null : additionalHeaders.get(name);
+        addHeader(name, previous == null ? value : previous + "\n" + value);
+    }
+
     /**
      * Returns the parameter with the given name.
      *
@@ -323,6 +585,88 @@ public class RequestContext {
         return sid;
     }
 
+    /**
+     * Returns the method of the request.
+     *
+     * @return the method of the request
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the body of the request, which is read from the connection as the stream is read.
+     * The stream is empty if the request has no body, or if the body was a form that has
+     * already been parsed into the parameters.
+     *
+     * @return the body of the request
+     */
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    /**
+     * Sets the method and the body of the request.
+     *
+     * @param method the method of the request
+     * @param requestBody the body of the request
+     */
+    void setRequest(String method, InputStream requestBody) {
+        this.method = method;
+        this.requestBody = requestBody;
+    }
+
+    /**
+     * Returns the requested path, without the query string.
+     *
+     * @return the requested path (null if not available)
+     */
+    String getRequestPath() {
+        return requestPath;
+    }
+
+    /**
+     * Returns the query string of the request, without the question mark.
+     *
+     * @return the query string (empty if the request has none)
+     */
+    String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     * Returns the value of the request header field with the given name (compared case-insensitively),
+     * for example <code>Last-Event-ID</code> sent by a client reconnecting to an event stream.
+     *
+     * @param name the name of the header field
+     * @return the value of the field, or null if the request has no such field
+     */
+    public String getRequestHeader(String name) {
+        return RequestHeaders.value(requestHeaders, name);
+    }
+
+    /**
+     * Returns the lines of the request header, request line first.
+     *
+     * @return the lines of the request header (empty if not available)
+     */
+    List<String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * Sets the requested path, the query string and the lines of the request header.
+     *
+     * @param requestPath the requested path, without the query string
+     * @param queryString the query string (empty if the request has none)
+     * @param requestHeaders the lines of the request header, request line first
+     */
+    void setRequestTarget(String requestPath, String queryString, List<String> requestHeaders) {
+        this.requestPath = requestPath;
+        this.queryString = queryString;
+        this.requestHeaders = requestHeaders;
+    }
+
     /**
      * Writes the given data to the output stream.
      * If any write method is called for the first time,
@@ -351,7 +695,7 @@ public class RequestContext {
         if (!headerGenerated) {
             generateHeader();
         }
-        outputStream.write(data, offset, len);
+        writeToStream(data, offset, len);
         return this;
     }
 
@@ -369,10 +713,153 @@ public class RequestContext {
         if (!headerGenerated) {
             generateHeader();
         }
-        outputStream.write(text.getBytes(charset));
+        byte[] data = text.getBytes(charset);
+        writeToStream(data, 0, data.length);
+        return this;
+    }
+
+    /**
+     * Sends everything written so far to the client, generating the header of the response first
+     * if nothing has been written yet. Used by workers that stream a response gradually.
+     *
+     * @return this request context
+     * @throws IOException if an I/O error occurs
+     */
+    public RequestContext flush() throws IOException {
+        if (!headerGenerated) {
+            generateHeader();
+        }
+        outputStream.flush();
         return this;
     }
 
+    /**
+     * Starts a stream of server-sent events as the response: the header of a <code>text/event-stream</code>
+     * response is sent, and the connection is handed over to the returned stream, which stays open after the worker
+     * returns, until it is closed or the client goes away. Nothing may be written to this context afterwards.
+     * <p>
+     * The stream must not keep a reference to this context, since the server reuses it once the worker returns.
+     *
+     * @return the started event stream
+     * @throws IOException if an I/O error occurs
+     * @throws RuntimeException if the header has already been generated, or this context does not support event streams
+     */
+    public EventStream startEventStream() throws IOException {
+        if (eventStreamOpener == null) {
+            throw new RuntimeException("Event streams are not supported by this context.");
+        }
+        if (headerGenerated) {
+            throw new RuntimeException("Header has already been generated.");
+        }
+        mimeType = "text/event-stream";
+        encoding = "UTF-8";
+        contentLength = null;
+        addHeader("Cache-Control", "no-cache");
+        flush();
+        EventStreamOpener opener = eventStreamOpener;
+        eventStreamOpener = null;
+        return opener.open(outputStream);
+    }
+
+    /**
+     * Sets the opener of event streams, which lets workers start a stream of server-sent events.
+     *
+     * @param eventStreamOpener the opener of event streams (null if not supported)
+     */
+    void setEventStreamOpener(EventStreamOpener eventStreamOpener) {
+        this.eventStreamOpener = eventStreamOpener;
+    }
+
+    /**
+     * Sets the writer of the response header, which is then used instead of the HTTP/1.1 header.
+     *
+     * @param headerWriter the writer of the response header (null for HTTP/1.1)
+     */
+    void setHeaderWriter(HeaderWriter headerWriter) {
+        this.headerWriter = headerWriter;
+    }
+
+    /**
+     * Passes every header field of the response (apart from the status line) to the given action:
+     * <code>Content-Type</code>, <code>Content-Length</code> (if set), the additional header fields
+     * and a <code>Set-Cookie</code> field for every output cookie.
+     *
+     * @param action the action that receives the name and the value of every field
+     */
+    void forEachHeaderField(BiConsumer<String, String> action) {
+        action.accept("Content-Type", mimeType.startsWith("text/") ? mimeType + "; charset=" + encoding : mimeType);
+        if (contentLength != null) {
+            action.accept("Content-Length", contentLength.toString());
+        }
+        if (additionalHeaders != null) {
+            for (Map.Entry<String, String> field : additionalHeaders.entrySet()) {
+                for (String value : field.getValue().split("\n")) {
+                    action.accept(field.getKey(), value);
+                }
+            }
+        }
+        for (RCCookie cookie : outputCookies) {
+            StringBuilder value = new StringBuilder();
+            appendCookie(value, cookie);
+            action.accept("Set-Cookie", value.toString());
+        }
+    }
+
+    /**
+     * Returns the cookies that will be sent to the client.
+     *
+     * @return the output cookies
+     */
+    List<RCCookie> getOutputCookies() {
+        return outputCookies;
+    }
+
+    /**
+     * Returns the additional header fields of the response.
+     *
+     * @return the additional header fields (empty if none were added)
+     */
+    Map<String, String> getAdditionalHeaders() {
+        return additionalHeaders == null ? Collections.emptyMap() : additionalHeaders;
+    }
+
+    /**
+     * Returns the total number of bytes written to the client so far (header included).
+     *
+     * @return the total number of bytes written
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent writing to the client so far.
+     *
+     * @return the total write time in nanoseconds
+     */
+    long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Writes the given data to the output stream, while keeping track of
+     * the number of written bytes and the time spent writing.
+     *
+     * @param data the data to write
+     * @param offset the offset in the data array
+     * @param len the length of the data to write
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeToStream(byte[] data, int offset, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+            outputStream.write(data, offset, len);
+            bytesWritten += len;
+        } finally {
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
     /**
      * Generates the header of the response.
      *
@@ -380,31 +867,75 @@ public class RequestContext {
      */
     private void generateHeader() throws IOException {
         charset = Charset.forName(encoding);
-        StringBuilder header = new StringBuilder();
+        if (bodyOnly) {
+            headerGenerated = true;
+            return;
+        }
+        if (headerWriter != null) {
+            headerWriter.writeHeader(this);
+            headerGenerated = true;
+            return;
+        }
+        if (headerBuilder == null) {
+            headerBuilder = new StringBuilder(256);
+        }
+        StringBuilder header = headerBuilder;
+        header.setLength(0);
         header.append("HTTP/1.1 ").append(statusCode).append(" ").append(statusText).append("\r\n");
-        header.append("Content-Type: ").append(mimeType).append(mimeType.startsWith("text/") ? ("; charset=" + encoding) : "").append("\r\n");
+        header.append("Content-Type: ").append(mimeType);
+        if (mimeType.startsWith("text/")) {
+            header.append("; charset=").append(encoding);
+        }
+        header.append("\r\n");
         if (contentLength != null) {
             header.append("Content-Length: ").append(contentLength).append("\r\n");
         }
-        for (RCCookie cookie : outputCookies) {
-            header.append("Set-Cookie: ").append(cookie.name()).append("=\"").append(cookie.value()).append("\"");
-            if (cookie.domain() != null) {
-                header.append("; Domain=").append(cookie.domain());
-            }
-            if (cookie.path() != null) {
-                header.append("; Path=").append(cookie.path());
-            }
-            if (cookie.maxAge() != null) {
-                header.append("; Max-Age=").append(cookie.maxAge());
-            }
-            if (cookie.httpOnly()) {
-                header.append("; HttpOnly");
+        if (additionalHeaders != null) {
+            for (Map.Entry<String, String> field : additionalHeaders.entrySet()) {
+                for (String value : field.getValue().split("\n")) {
+                    header.append(field.getKey()).append(": ").append(value).append("\r\n");
+                }
             }
+        }
+        for (RCCookie cookie : outputCookies) {
+            header.append("Set-Cookie: ");
+            appendCookie(header, cookie);
             header.append("\r\n");
         }
         header.append("Connection: close\r\n");
         header.append("\r\n");
-        outputStream.write(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+        int length = header.length();
+        if (headerBytes == null || headerBytes.length < length) {
+            headerBytes = new byte[Math.max(length, 256)];
+        }
+        for (int i = 0; i < length; i++) {
+            // ISO-8859-1, with '?' for characters it cannot encode (a cast would turn U+010D into CR)
+            char c = header.charAt(i);
+            headerBytes[i] = c > 0xFF ? (byte) '?' : (byte) c;
+        }
+        writeToStream(headerBytes, 0, length);
         headerGenerated = true;
     }
+
+    /**
+     * Appends the value of the <code>Set-Cookie</code> header field for the given cookie.
+     *
+     * @param sb the builder to append to
+     * @param cookie the cookie
+     */
+    private static void appendCookie(StringBuilder sb, RCCookie cookie) {
+        sb.append(cookie.name()).append("=\"").append(cookie.value()).append("\"");
+        if (cookie.domain() != null) {
+            sb.append("; Domain=").append(cookie.domain());
+        }
+        if (cookie.path() != null) {
+            sb.append("; Path=").append(cookie.path());
+        }
+        if (cookie.maxAge() != null) {
+            sb.append("; Max-Age=").append(cookie.maxAge());
+        }
+        if (cookie.httpOnly()) {
+            sb.append("; HttpOnly");
+        }
+    }
 }
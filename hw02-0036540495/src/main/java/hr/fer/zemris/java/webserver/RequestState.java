@@ -0,0 +1,105 @@
+package hr.fer.zemris.java.webserver;
+
+import hr.fer.zemris.java.webserver.http.FormUrlEncodedParser;
+import hr.fer.zemris.java.webserver.http.ReusableBufferedInputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-request state of the {@link SmartHttpServer} that is reused across requests.
+ * <p>
+ * Every worker thread owns a single instance, which is attached to the connection the thread is processing
+ * and cleared once the connection is closed. This way the input buffer, the header buffer, the parameter maps,
+ * the cookie list and the {@link RequestContext} are allocated once per thread instead of once per request.
+ * Nothing held by the state may be referenced after the request is completed.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+class RequestState {
+    /**
+     * Maximum size of a request header in bytes.
+     */
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    /**
+     * Buffered input stream of the connection.
+     */
+    final ReusableBufferedInputStream input = new ReusableBufferedInputStream(8192);
+
+    /**
+     * Buffer the request header is read into.
+     */
+    byte[] header = new byte[1024];
+
+    /**
+     * Lines of the request header.
+     */
+    final List<String> headers = new ArrayList<>();
+
+    /**
+     * Parameters of the request.
+     */
+    final Map<String, String> params = new HashMap<>();
+
+    /**
+     * Temporary parameters of the request.
+     */
+    final Map<String, String> tempParams = new HashMap<>();
+
+    /**
+     * Persistent parameters used until the request is attached to a session.
+     */
+    final Map<String, String> noSessionParams = new HashMap<>();
+
+    /**
+     * Cookies that will be sent to the client.
+     */
+    final List<RequestContext.RCCookie> outputCookies = new ArrayList<>();
+
+    /**
+     * Parser of the query string and form bodies, which puts the parsed parameters into {@link #params}.
+     */
+    final FormUrlEncodedParser formParser = new FormUrlEncodedParser(params::put);
+
+    /**
+     * Buffer form bodies are read through.
+     */
+    final byte[] bodyBuffer = new byte[4096];
+
+    /**
+     * Context of the request.
+     */
+    final RequestContext context = new RequestContext(null, params, noSessionParams, outputCookies);
+
+    /**
+     * Doubles the size of the header buffer.
+     *
+     * @return false if the buffer has already reached {@link #MAX_HEADER_SIZE}
+     */
+    boolean growHeader() {
+        if (header.length >= MAX_HEADER_SIZE) {
+            return false;
+        }
+        header = Arrays.copyOf(header, Math.min(header.length * 2, MAX_HEADER_SIZE));
+        return true;
+    }
+
+    /**
+     * Clears the state after a request, so that it holds no references to the finished request.
+     */
+    void clear() {
+        input.detach();
+        formParser.reset();
+        headers.clear();
+        params.clear();
+        tempParams.clear();
+        noSessionParams.clear();
+        outputCookies.clear();
+        context.reset(null, params, noSessionParams, outputCookies, tempParams, null, null);
+    }
+}
@@ -0,0 +1,184 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded in-memory cache of fully rendered responses, shared by all {@link CachingWebWorker}s of a server.
+ * Entries expire after their time to live, and the total size of the cached bodies never exceeds the byte budget:
+ * when a new entry does not fit, expired entries are removed first, and then the entries closest to expiry.
+ *
+ * @see CachingWebWorker
+ * @see Cacheable
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ResponseCache {
+    /**
+     * A cached response.
+     *
+     * @param statusCode status code of the response
+     * @param statusText status text of the response
+     * @param mimeType mime type of the response
+     * @param encoding encoding of the response
+     * @param headers additional header fields of the response
+     * @param body encoded body of the response
+     * @param expiresAt time (in milliseconds since the epoch) after which the response is no longer valid
+     */
+    public record CachedResponse(int statusCode, String statusText, String mimeType, String encoding,
+                                 Map<String, String> headers, byte[] body, long expiresAt) {}
+
+    /**
+     * Maximum total size of the cached bodies in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Cached responses by key.
+     */
+    private final Map<String, CachedResponse> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Current total size of the cached bodies in bytes.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Number of lookups that found a valid response.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of lookups that did not find a valid response.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new cache with the given byte budget.
+     *
+     * @param maxBytes maximum total size of the cached bodies in bytes
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the valid cached response stored under the given key.
+     *
+     * @param key cache key
+     * @return cached response, or null if there is no valid response under the key
+     */
+    public CachedResponse get(String key) {
+        CachedResponse response = entries.get(key);
+        if (response != null && response.expiresAt() < System.currentTimeMillis()) {
+            remove(key, response);
+            response = null;
+        }
+        if (response == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return response;
+    }
+
+    /**
+     * Stores the given response under the given key, unless its body alone exceeds the byte budget.
+     *
+     * @param key cache key
+     * @param response response to store
+     */
+    public void put(String key, CachedResponse response) {
+        long size = response.body().length;
+        if (size > maxBytes) {
+            return;
+        }
+        CachedResponse previous = entries.put(key, response);
+        bytes.addAndGet(size - (previous == null ? 0 : previous.body().length));
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes all responses cached for the given route (under the route itself, or the route followed by parameters).
+     *
+     * @param route route whose responses are removed
+     */
+    public void invalidate(String route) {
+        for (Map.Entry<String, CachedResponse> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(route) && (key.length() == route.length() || key.charAt(route.length()) == '?')) {
+                remove(key, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a valid response.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a valid response.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the current total size of the cached bodies in bytes.
+     *
+     * @return size of the cached bodies in bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Removes expired entries, and then the entries closest to expiry, until the cache fits into the byte budget.
+     */
+    private synchronized void evict() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, CachedResponse>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, CachedResponse> entry = it.next();
+            if (entry.getValue().expiresAt() < now) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+        while (bytes.get() > maxBytes) {
+            Map.Entry<String, CachedResponse> victim = null;
+            for (Map.Entry<String, CachedResponse> entry : entries.entrySet()) {
+                if (victim == null || entry.getValue().expiresAt() < victim.getValue().expiresAt()) {
+                    victim = entry;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            remove(victim.getKey(), victim.getValue());
+        }
+    }
+
+    /**
+     * Removes the given response stored under the given key (if it is still stored under it).
+     *
+     * @param key cache key
+     * @param response response to remove
+     */
+    private void remove(String key, CachedResponse response) {
+        if (entries.remove(key, response)) {
+            bytes.addAndGet(-response.body().length);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the configuration the {@link SmartHttpServer} dispatches requests by,
+ * built from the workers and mime configuration files.
+ * <p>
+ * The server keeps the current snapshot in a volatile field and every request reads it once, so a reloaded
+ * configuration is swapped in atomically: requests in flight keep using the snapshot they started with,
+ * and dispatching needs no locking.
+ *
+ * @param sources entries of the workers configuration file (key -> value), used to tell which routes changed
+ * @param workers workers by route
+ * @param mimeTypes mime types by file extension
+ * @param rateLimiters rate limiters by route
+ * @param proxies proxy workers by configured route
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public record RoutingTable(Map<String, String> sources, Map<String, IWebWorker> workers, Map<String, String> mimeTypes,
+                           Map<String, RateLimiter> rateLimiters, Map<String, ProxyWorker> proxies) {
+    /**
+     * Constructs a new snapshot, copying the given maps into immutable ones.
+     */
+    public RoutingTable {
+        sources = Map.copyOf(sources);
+        workers = Map.copyOf(workers);
+        mimeTypes = Map.copyOf(mimeTypes);
+        rateLimiters = Map.copyOf(rateLimiters);
+        proxies = Map.copyOf(proxies);
+    }
+
+    /**
+     * Returns the mime type of files with the given extension.
+     *
+     * @param extension file extension (without the dot)
+     * @return mime type, or <code>application/octet-stream</code> if the extension is unknown
+     */
+    public String mimeType(String extension) {
+        return mimeTypes.getOrDefault(extension, "application/octet-stream");
+    }
+
+    /**
+     * Returns the proxy worker whose route the given path lies on.
+     * If the path lies on several proxied routes, the longest (most specific) route wins.
+     *
+     * @param path requested path
+     * @return proxy worker, or null if the path does not lie on any proxied route
+     */
+    public ProxyWorker findProxy(String path) {
+        ProxyWorker match = null;
+        for (ProxyWorker proxy : proxies.values()) {
+            if (proxy.matches(path) && (match == null || proxy.getRoute().length() > match.getRoute().length())) {
+                match = proxy;
+            }
+        }
+        return match;
+    }
+}
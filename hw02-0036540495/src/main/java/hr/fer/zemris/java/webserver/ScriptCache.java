@@ -0,0 +1,220 @@
+package hr.fer.zemris.java.webserver;
+
+import hr.fer.zemris.java.custom.scripting.compiler.TemplateArchive;
+import hr.fer.zemris.java.custom.scripting.compiler.TemplateCompiler;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProfile;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProgram;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.optimizer.SmartScriptOptimizer;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of parsed SmartScript scripts used by the {@link SmartHttpServer}, so a script is parsed
+ * only when it is requested for the first time or after its file has changed (its modification time or size differs).
+ * A cached script is an immutable {@link ScriptProgram}, so a single cached script serves all concurrent requests.
+ * If optimization is enabled, every parsed document is first optimized with the {@link SmartScriptOptimizer}.
+ * Templates precompiled at build time can be registered at startup (see {@link #preload}); such a template is decoded
+ * from its (memory-mapped) archive instead of being parsed when it is first requested, if its source has not changed,
+ * and its texts stay in the archive instead of being copied to the heap.
+ * <p>
+ * If profiling is enabled, every cached script gets its own {@link ScriptProfile}, which collects the executions
+ * of all the requests to the script (and starts over when the script is parsed again).
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ScriptCache {
+    /**
+     * A parsed script.
+     *
+     * @param name name the script is reported under (its path in the web root)
+     * @param program program executing the parsed document
+     * @param modified modification time of the file the script was parsed from
+     * @param size size of the file the script was parsed from
+     */
+    public record Script(String name, ScriptProgram program, FileTime modified, long size) {
+        /**
+         * Returns the parsed document of the script.
+         *
+         * @return parsed document
+         */
+        public DocumentNode document() {
+            return program.getDocument();
+        }
+
+        /**
+         * Returns the execution profile of the script.
+         *
+         * @return execution profile, or null if profiling is disabled
+         */
+        public ScriptProfile profile() {
+            return program.getProfile();
+        }
+    }
+
+    /**
+     * Parsed scripts by file.
+     */
+    private final Map<Path, Script> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * A precompiled template registered for a file.
+     *
+     * @param archive archive holding the template
+     * @param entry template in the archive
+     */
+    private record Precompiled(TemplateArchive archive, TemplateArchive.Entry entry) {}
+
+    /**
+     * Precompiled templates by file, until they are first requested.
+     */
+    private final Map<Path, Precompiled> precompiled = new ConcurrentHashMap<>();
+
+    /**
+     * Flag that signals whether the executions of scripts are profiled.
+     */
+    private final boolean profiling;
+
+    /**
+     * Flag that signals whether parsed scripts are optimized.
+     */
+    private final boolean optimizing;
+
+    /**
+     * Number of scripts parsed.
+     */
+    private final LongAdder parses = new LongAdder();
+
+    /**
+     * Number of scripts decoded from precompiled templates.
+     */
+    private final LongAdder precompiledLoads = new LongAdder();
+
+    /**
+     * Constructs a new, empty cache.
+     *
+     * @param profiling if true, every cached script gets an execution profile
+     * @param optimizing if true, parsed scripts are optimized
+     */
+    public ScriptCache(boolean profiling, boolean optimizing) {
+        this.profiling = profiling;
+        this.optimizing = optimizing;
+    }
+
+    /**
+     * Returns the parsed script from the given file, parsing it if it is not cached or the file has changed.
+     * Concurrent requests to a changed script may parse it more than once, in which case the last parse is kept.
+     *
+     * @param name name the script is reported under
+     * @param file file of the script
+     * @return parsed script
+     * @throws IOException if the file cannot be read
+     * @throws hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException if the script is invalid
+     */
+    public Script get(String name, Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Script script = scripts.get(file);
+        if (script != null && script.modified().equals(attributes.lastModifiedTime()) && script.size() == attributes.size()) {
+            return script;
+        }
+        DocumentNode document = loadPrecompiled(file);
+        if (document == null) {
+            document = new SmartScriptParser(Files.readString(file)).getDocumentNode();
+            parses.increment();
+        }
+        if (optimizing) {
+            document = SmartScriptOptimizer.optimize(document);
+        }
+        script = new Script(name, new ScriptProgram(document, profiling ? new ScriptProfile(document) : null),
+                attributes.lastModifiedTime(), attributes.size());
+        scripts.put(file, script);
+        return script;
+    }
+
+    /**
+     * Registers a precompiled template for the script from the given file. Nothing is read until the script
+     * is first requested, when the template is used if the file has not changed since it was compiled.
+     *
+     * @param file file of the script
+     * @param archive archive holding the template
+     * @param entry template in the archive
+     */
+    public void preload(Path file, TemplateArchive archive, TemplateArchive.Entry entry) {
+        precompiled.put(file, new Precompiled(archive, entry));
+    }
+
+    /**
+     * Decodes the precompiled template registered for the given file (once), if the checksum of the file
+     * still matches the checksum of the source the template was compiled from.
+     *
+     * @param file file of the script
+     * @return decoded document, or null if no usable template is registered
+     * @throws IOException if the file cannot be read
+     */
+    private DocumentNode loadPrecompiled(Path file) throws IOException {
+        Precompiled template = precompiled.remove(file);
+        if (template == null || TemplateCompiler.checksum(Files.readAllBytes(file)) != template.entry().checksum()) {
+            return null;
+        }
+        try {
+            DocumentNode document = template.archive().load(template.entry());
+            precompiledLoads.increment();
+            return document;
+        } catch (IOException e) {
+            System.err.println("Error while loading precompiled script " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the executions of scripts are profiled.
+     *
+     * @return true if profiling is enabled
+     */
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Returns the cached scripts by name.
+     *
+     * @return cached scripts, sorted by name
+     */
+    public Map<String, Script> getScripts() {
+        Map<String, Script> byName = new TreeMap<>();
+        for (Script script : scripts.values()) {
+            byName.put(script.name(), script);
+        }
+        return byName;
+    }
+
+    /**
+     * Returns the number of scripts parsed.
+     *
+     * @return number of parses
+     */
+    public long getParses() {
+        return parses.sum();
+    }
+
+    /**
+     * Returns the number of scripts decoded from precompiled templates.
+     *
+     * @return number of precompiled templates used
+     */
+    public long getPrecompiledLoads() {
+        return precompiledLoads.sum();
+    }
+}
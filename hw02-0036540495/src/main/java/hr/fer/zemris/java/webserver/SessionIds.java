@@ -0,0 +1,152 @@
+package hr.fer.zemris.java.webserver;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Generator of session IDs used by the {@link SmartHttpServer}.
+ * <p>
+ * A session ID consists of 128 random bits encoded in URL-safe Base64 without padding (22 characters,
+ * all of them allowed in a cookie value). Every thread has its own generator, so threads creating sessions
+ * concurrently never contend for a shared one: the bits are taken from a ChaCha20 keystream whose key and nonce
+ * are drawn from a {@link SecureRandom}, which keeps the IDs unpredictable while the keystream is produced
+ * a block of IDs at a time. The key is replaced after every {@link #REKEY_INTERVAL} blocks.
+ *
+ * @see SmartHttpServer
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class SessionIds {
+    /**
+     * Number of random bytes in a session ID.
+     */
+    private static final int BYTES = 16;
+
+    /**
+     * Number of characters in a session ID.
+     */
+    public static final int LENGTH = 22;
+
+    /**
+     * Number of keystream bytes produced at a time.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Number of blocks produced with a single key.
+     */
+    private static final int REKEY_INTERVAL = 65536;
+
+    /**
+     * Source of the keys and nonces of the generators.
+     */
+    private static final SecureRandom SEED = new SecureRandom();
+
+    /**
+     * Encoder of the random bytes.
+     */
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * Generator of every thread.
+     */
+    private static final ThreadLocal<SessionIds> GENERATORS = ThreadLocal.withInitial(SessionIds::new);
+
+    /**
+     * Cipher producing the keystream.
+     */
+    private final Cipher cipher;
+
+    /**
+     * Input of the cipher (the keystream is the encryption of zeros).
+     */
+    private final byte[] zeros = new byte[BLOCK_SIZE];
+
+    /**
+     * Current block of the keystream.
+     */
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    /**
+     * Position of the first unused byte in the current block.
+     */
+    private int position = BLOCK_SIZE;
+
+    /**
+     * Number of blocks produced with the current key.
+     */
+    private int blocks;
+
+    /**
+     * Constructs the generator of the calling thread.
+     */
+    private SessionIds() {
+        try {
+            cipher = Cipher.getInstance("ChaCha20");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("ChaCha20 is not available.", e);
+        }
+        rekey();
+    }
+
+    /**
+     * Generates a new session ID.
+     *
+     * @return new session ID
+     */
+    public static String next() {
+        byte[] bytes = new byte[BYTES];
+        GENERATORS.get().nextBytes(bytes);
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * Fills the given array with the next bytes of the keystream.
+     *
+     * @param bytes array to fill (not longer than a block)
+     */
+    private void nextBytes(byte[] bytes) {
+        if (position + bytes.length > BLOCK_SIZE) {
+            refill();
+        }
+        System.arraycopy(block, position, bytes, 0, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Produces the next block of the keystream, replacing the key first if it has been used long enough.
+     */
+    private void refill() {
+        if (blocks == REKEY_INTERVAL) {
+            rekey();
+        }
+        blocks++;
+        try {
+            cipher.update(zeros, 0, BLOCK_SIZE, block, 0);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error while generating session IDs.", e);
+        }
+        position = 0;
+    }
+
+    /**
+     * Initializes the cipher with a new random key and nonce.
+     */
+    private void rekey() {
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[12];
+        SEED.nextBytes(key);
+        SEED.nextBytes(nonce);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ChaCha20"), new ChaCha20ParameterSpec(nonce, 0));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error while generating session IDs.", e);
+        }
+        blocks = 0;
+    }
+}
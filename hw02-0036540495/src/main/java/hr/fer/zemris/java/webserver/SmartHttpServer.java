@@ -1,21 +1,44 @@
 package hr.fer.zemris.java.webserver;
 
+import hr.fer.zemris.java.custom.scripting.compiler.TemplateArchive;
+import hr.fer.zemris.java.custom.scripting.exec.BufferedScriptOutput;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptLimitException;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptLimits;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptOutput;
 import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+import hr.fer.zemris.java.webserver.http.ChunkedInputStream;
+import hr.fer.zemris.java.webserver.http.ContentLengthInputStream;
+import hr.fer.zemris.java.webserver.http.FormUrlEncodedParser;
+import hr.fer.zemris.java.webserver.http.RequestBodyTooLargeException;
+import hr.fer.zemris.java.webserver.http.RequestHeaders;
+import hr.fer.zemris.java.webserver.http2.HeaderField;
+import hr.fer.zemris.java.webserver.http2.Http2Connection;
+import hr.fer.zemris.java.webserver.http2.Http2Stream;
+import hr.fer.zemris.java.webserver.log.AccessLog;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics;
+import hr.fer.zemris.java.webserver.workers.MetricsWorker;
+import hr.fer.zemris.java.webserver.workers.ScriptProfileWorker;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.URLDecoder;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 /**
  * A simple HTTP server that can serve static files and execute SmartScript scripts and workers in general.
@@ -60,19 +83,130 @@ public class SmartHttpServer {
     private int sessionTimeout;
 
     /**
-     * Map of supported mime types (extension -> mime type tag for the header).
+     * Maximum number of accepted connections waiting for a worker thread.
      */
-    private final Map<String,String> mimeTypes = new HashMap<>();
+    private int queueCapacity;
 
     /**
-     * Server thread that listens for incoming requests and dispatches them to worker threads.
+     * Maximum size of a request body in bytes.
      */
-    private ServerThread serverThread;
+    private long maxBodySize;
+
+    /**
+     * Interim response sent to clients that wait for it before sending the request body.
+     */
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Empty array, written to make sure the response header is sent.
+     */
+    private static final byte[] NO_BYTES = new byte[0];
+
+    /**
+     * Options of HTTP/2 connections (null if HTTP/2 is disabled).
+     */
+    private Http2Connection.Options http2Options;
+
+    /**
+     * Number of threads processing the streams of HTTP/2 connections.
+     */
+    private int http2StreamThreads;
+
+    /**
+     * Thread pool processing the streams of HTTP/2 connections
+     * (separate from the worker pool, whose threads are occupied by reading the connections).
+     */
+    private ThreadPoolExecutor http2StreamPool;
+
+    /**
+     * Number of connections switched to HTTP/2.
+     */
+    private final LongAdder http2Connections = new LongAdder();
+
+    /**
+     * Number of HTTP/2 streams handed to the stream pool.
+     */
+    private final LongAdder http2Streams = new LongAdder();
+
+    /**
+     * Maximum time in milliseconds a single read from the client may block.
+     */
+    private int readTimeout;
+
+    /**
+     * Maximum time in milliseconds the client may take to send the complete request header.
+     */
+    private int headerTimeout;
+
+    /**
+     * Maximum time in milliseconds the processing of a single request may take (writing the response included).
+     */
+    private int requestTimeout;
+
+    /**
+     * Scheduler that closes connections whose request deadline has passed.
+     */
+    private ScheduledThreadPoolExecutor requestWatchdog;
+
+    /**
+     * Maximum time in milliseconds in-flight requests are given to finish when the server is stopped.
+     */
+    private int drainTimeout;
+
+    /**
+     * Flag that signals that the server is shutting down and draining in-flight requests.
+     */
+    private volatile boolean draining;
+
+    /**
+     * Client workers that are queued or running.
+     */
+    private final Set<ClientWorker> activeWorkers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of requests that were completed while the server was draining.
+     */
+    private final LongAdder drainedRequests = new LongAdder();
+
+    /**
+     * Number of connections closed because the request header was not received in time.
+     */
+    private final LongAdder headerTimeouts = new LongAdder();
+
+    /**
+     * Number of connections closed because the request deadline has passed.
+     */
+    private final LongAdder requestTimeouts = new LongAdder();
+
+    /**
+     * Decides which accepted connections are processed and which are rejected.
+     */
+    private AdmissionController admissionController;
+
+    /**
+     * Number of acceptor threads that accept connections on the server port.
+     */
+    private int acceptors;
+
+    /**
+     * Acceptor threads that listen for incoming requests and dispatch them to worker threads (empty if not running).
+     */
+    private final List<ServerThread> serverThreads = new ArrayList<>();
+
+    /**
+     * Listening socket shared by all acceptor threads when <code>SO_REUSEPORT</code> is not used (null otherwise).
+     */
+    private ServerSocket sharedServerSocket;
+
+    /**
+     * Reusable per-request state of each worker thread.
+     */
+    private final ThreadLocal<RequestState> requestStates = ThreadLocal.withInitial(RequestState::new);
 
     /**
      * Pool of worker threads.
      */
-    private ExecutorService serverWorkerthreadPool;
+    private ThreadPoolExecutor serverWorkerthreadPool;
 
     /**
      * Pool of threads that clean up expired sessions.
@@ -87,9 +221,115 @@ public class SmartHttpServer {
     private Path documentRoot;
 
     /**
-     * Map of workers that can be executed.
+     * Current routing table: workers, mime types, route rate limiters and proxied routes.
+     * Replaced as a whole when the configuration is reloaded, and read once by every request.
+     */
+    private volatile RoutingTable routing;
+
+    /**
+     * Path of the workers configuration file.
+     */
+    private Path workersConfig;
+
+    /**
+     * Path of the mime configuration file.
+     */
+    private Path mimeConfig;
+
+    /**
+     * Time in milliseconds without further changes after which changed configuration files are reloaded.
+     */
+    private static final long CONFIG_RELOAD_DEBOUNCE = 200;
+
+    /**
+     * Watcher that reloads the workers and mime configuration files when they change (null if reloading is disabled).
+     */
+    private ConfigWatcher configWatcher;
+
+    /**
+     * Number of successful configuration reloads.
+     */
+    private final LongAdder configReloads = new LongAdder();
+
+    /**
+     * Number of configuration reloads that failed (and kept the previous configuration).
+     */
+    private final LongAdder configReloadErrors = new LongAdder();
+
+    /**
+     * Prefix of the keys in the workers configuration file that define per-route rate limits.
+     */
+    private static final String RATE_LIMIT_PREFIX = "ratelimit.";
+
+    /**
+     * Rate limiter applied to all requests of a client (null if not configured).
+     */
+    private RateLimiter globalRateLimiter;
+
+    /**
+     * Number of requests limited by route rate limiters that were removed or replaced by a configuration reload.
+     */
+    private final LongAdder retiredRateLimited = new LongAdder();
+
+    /**
+     * Prefix of the keys in the workers configuration file that enable response caching for a route.
+     */
+    private static final String CACHE_PREFIX = "cache.";
+
+    /**
+     * Cache of rendered responses of cacheable workers.
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * Prefix of the keys in the workers configuration file that forward a route to an upstream server.
+     */
+    private static final String PROXY_PREFIX = "proxy.";
+
+    /**
+     * Timeout in milliseconds for connecting to and reading from the upstream servers of proxied routes.
+     */
+    private int proxyTimeout;
+
+    /**
+     * Maximum number of idle upstream connections kept per proxied route.
+     */
+    private int proxyMaxIdleConnections;
+
+    /**
+     * Time in milliseconds after which an idle upstream connection is no longer reused.
+     */
+    private long proxyIdleTimeout;
+
+    /**
+     * Maximum size of an upstream response body that is stored in the response cache.
+     */
+    private int proxyMaxCacheableSize;
+
+    /**
+     * Time in milliseconds without events after which a heartbeat is written to an event stream.
+     */
+    private long eventStreamHeartbeat;
+
+    /**
+     * Maximum number of events waiting to be written to a single event stream before its client is disconnected.
+     */
+    private int eventStreamQueueCapacity;
+
+    /**
+     * Factory of the writer threads of event streams (virtual threads, so idle streams hold no platform thread).
+     */
+    private static final ThreadFactory EVENT_STREAM_THREADS = Thread.ofVirtual().name("event-stream-", 0).factory();
+
+    /**
+     * Currently open event streams.
+     */
+    private final Set<EventStream> eventStreams = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of event streams opened.
      */
-    private final Map<String,IWebWorker> workersMap = new HashMap<>();
+    private final LongAdder eventStreamsOpened = new LongAdder();
 
     /**
      * Map of active sessions.
@@ -97,9 +337,54 @@ public class SmartHttpServer {
     private final Map<String, SessionMapEntry> sessions = new ConcurrentHashMap<>();
 
     /**
-     * Random number generator for session IDs.
+     * Path on which the built-in metrics worker is available.
      */
-    private final Random sessionRandom = new Random();
+    private static final String METRICS_PATH = "/metrics";
+
+    /**
+     * Runtime metrics of the server (exposed by the built-in worker on {@link #METRICS_PATH}).
+     */
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    /**
+     * Path on which the built-in worker reporting the execution profiles of scripts is available (if profiling is enabled).
+     */
+    private static final String SCRIPT_PROFILE_PATH = "/profile";
+
+    /**
+     * Cache of parsed scripts.
+     */
+    private ScriptCache scriptCache;
+
+    /**
+     * Limits of a single execution of a script.
+     */
+    private ScriptLimits scriptLimits;
+
+    /**
+     * Size in bytes of the buffer the output of a script is gathered in (0 to write every node directly).
+     */
+    private int scriptOutputBuffer;
+
+    /**
+     * Flag that signals whether the output of a script is flushed after every iteration of an outermost FOR loop.
+     */
+    private boolean scriptFlushOnIteration;
+
+    /**
+     * Number of script executions that failed (scripts that could not be parsed included).
+     */
+    private final LongAdder scriptErrors = new LongAdder();
+
+    /**
+     * Number of script executions stopped because they exceeded a limit.
+     */
+    private final LongAdder scriptLimitsExceeded = new LongAdder();
+
+    /**
+     * Asynchronous access log (null if access logging is not configured).
+     */
+    private AccessLog accessLog;
 
     /**
      * Creates and starts a new server with the specified configuration file.
@@ -120,36 +405,194 @@ public class SmartHttpServer {
         domainName = properties.getProperty("server.domainName");
         port = Integer.parseInt(properties.getProperty("server.port"));
         workerThreads = Integer.parseInt(properties.getProperty("server.workerThreads"));
+        acceptors = Math.max(1, Integer.parseInt(properties.getProperty("server.acceptors", "1")));
         documentRoot = Path.of(properties.getProperty("server.documentRoot"));
-        Path mimeConfig = Path.of(properties.getProperty("server.mimeConfig"));
+        mimeConfig = Path.of(properties.getProperty("server.mimeConfig"));
         sessionTimeout = Integer.parseInt(properties.getProperty("session.timeout"));
-        Path workers = Path.of(properties.getProperty("server.workers"));
+        workersConfig = Path.of(properties.getProperty("server.workers"));
+        queueCapacity = Integer.parseInt(properties.getProperty("server.queueCapacity", "100"));
+        maxBodySize = Long.parseLong(properties.getProperty("server.maxBodySize", "1048576"));
+        readTimeout = Integer.parseInt(properties.getProperty("server.readTimeout", "5000"));
+        headerTimeout = Integer.parseInt(properties.getProperty("server.headerTimeout", "10000"));
+        requestTimeout = Integer.parseInt(properties.getProperty("server.requestTimeout", "60000"));
+        drainTimeout = Integer.parseInt(properties.getProperty("server.drainTimeout", "10000"));
+        if (Boolean.parseBoolean(properties.getProperty("server.http2", "false").strip())) {
+            http2Options = new Http2Connection.Options(
+                    Integer.parseInt(properties.getProperty("server.http2.maxConcurrentStreams", "100")),
+                    Integer.parseInt(properties.getProperty("server.http2.initialWindowSize", "65535")),
+                    Integer.parseInt(properties.getProperty("server.http2.idleTimeout", "30000")),
+                    maxBodySize
+            );
+            http2StreamThreads = Integer.parseInt(
+                    properties.getProperty("server.http2.streamThreads", String.valueOf(workerThreads))
+            );
+        }
+        String rateLimit = properties.getProperty("server.rateLimit");
+        if (rateLimit != null && !rateLimit.isBlank()) {
+            globalRateLimiter = RateLimiter.parse(rateLimit);
+        }
+        responseCache = new ResponseCache(
+                Long.parseLong(properties.getProperty("server.responseCache.maxBytes", "16777216"))
+        );
+        proxyTimeout = Integer.parseInt(properties.getProperty("server.proxy.timeout", "10000"));
+        proxyMaxIdleConnections = Integer.parseInt(properties.getProperty("server.proxy.maxIdleConnections", "16"));
+        proxyIdleTimeout = Long.parseLong(properties.getProperty("server.proxy.idleTimeout", "30000"));
+        proxyMaxCacheableSize = Integer.parseInt(properties.getProperty("server.proxy.maxCacheableSize", "1048576"));
+        eventStreamHeartbeat = Long.parseLong(properties.getProperty("server.eventStream.heartbeat", "15000"));
+        eventStreamQueueCapacity = Integer.parseInt(properties.getProperty("server.eventStream.queueCapacity", "64"));
+        scriptLimits = new ScriptLimits(
+                Long.parseLong(properties.getProperty("server.script.maxInstructions", "0")),
+                Long.parseLong(properties.getProperty("server.script.maxIterations", "0")),
+                Long.parseLong(properties.getProperty("server.script.maxOutputBytes", "0"))
+        );
+        scriptOutputBuffer = Integer.parseInt(properties.getProperty("server.script.outputBuffer", "0"));
+        scriptFlushOnIteration = Boolean.parseBoolean(properties.getProperty("server.script.flushOnIteration", "false").strip());
+        scriptCache = new ScriptCache(
+                Boolean.parseBoolean(properties.getProperty("server.script.profile", "false").strip()),
+                Boolean.parseBoolean(properties.getProperty("server.script.optimize", "false").strip())
+        );
+        String precompiledScripts = properties.getProperty("server.script.precompiled");
+        if (precompiledScripts != null && !precompiledScripts.isBlank()) {
+            loadPrecompiledScripts(Path.of(precompiledScripts.strip()));
+        }
+        admissionController = new AdmissionController(
+                Integer.parseInt(properties.getProperty("server.maxConnections", "0")),
+                Integer.parseInt(properties.getProperty("server.maxConnectionsPerIp", "0")),
+                Integer.parseInt(properties.getProperty("server.retryAfter", "1"))
+        );
+
+        String accessLogFile = properties.getProperty("server.accessLog");
+        if (accessLogFile != null && !accessLogFile.isBlank()) {
+            accessLog = new AccessLog(
+                    Path.of(accessLogFile.strip()),
+                    Integer.parseInt(properties.getProperty("server.accessLog.bufferSize", "8192")),
+                    Long.parseLong(properties.getProperty("server.accessLog.maxFileSize", "10485760")),
+                    Integer.parseInt(properties.getProperty("server.accessLog.maxFiles", "5"))
+            );
+        }
+
+        try {
+            routing = loadRouting(null);
+        } catch (IOException e) {
+            System.err.println("Error while reading workers or mime configuration file: " + e.getMessage());
+            return;
+        }
+        if (Boolean.parseBoolean(properties.getProperty("server.configReload", "false").strip())) {
+            configWatcher = new ConfigWatcher(List.of(workersConfig, mimeConfig), CONFIG_RELOAD_DEBOUNCE, this::reloadRouting);
+        }
+
+        start();
+        System.out.println("Server started at http://" + domainName + ":" + port);
 
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop();
+            System.out.println("Server stopped.");
+        }));
+    }
+
+    /**
+     * Registers the templates precompiled at build time (by the templates module) with the script cache,
+     * if the archive exists. The archive is only mapped into memory and its index read; a template is decoded
+     * when its script is first requested, unless its source has changed since it was compiled (then it is parsed).
+     *
+     * @param file template archive
+     */
+    private void loadPrecompiledScripts(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        TemplateArchive archive;
+        try {
+            archive = TemplateArchive.open(file);
+        } catch (IOException e) {
+            System.err.println("Error while loading precompiled scripts from " + file + ": " + e.getMessage());
+            return;
+        }
+        for (TemplateArchive.Entry entry : archive.getEntries()) {
+            scriptCache.preload(documentRoot.resolve(entry.path()).normalize(), archive, entry);
+        }
+        System.out.println("Mapped " + archive.getEntries().size() + " precompiled scripts from " + file + ".");
+    }
+
+    /**
+     * Builds a routing table from the workers and mime configuration files.
+     * Workers, rate limiters and proxy workers whose configuration did not change are taken over
+     * from the previous table, so their state (cached responses, token buckets, pooled connections) survives a reload.
+     *
+     * @param previous previous routing table (null when the server is being constructed)
+     * @return new routing table
+     * @throws IOException if a configuration file cannot be read
+     */
+    private RoutingTable loadRouting(RoutingTable previous) throws IOException {
         Properties mimeProperties = new Properties();
         try (InputStream is = Files.newInputStream(mimeConfig)) {
             mimeProperties.load(is);
-        } catch (IOException e) {
-            System.err.println("Error while reading mime configuration file.");
-            return;
         }
+        Map<String, String> mimeTypes = new HashMap<>();
         for (String key : mimeProperties.stringPropertyNames()) {
             mimeTypes.put(key, mimeProperties.getProperty(key));
         }
 
         Properties workersProperties = new Properties();
-        try (InputStream is = Files.newInputStream(workers)) {
+        try (InputStream is = Files.newInputStream(workersConfig)) {
             workersProperties.load(is);
-        } catch (IOException e) {
-            System.err.println("Error while reading workers configuration file.");
-            return;
         }
-        for (String path : workersProperties.stringPropertyNames()) {
-            String fqcn = workersProperties.getProperty(path);
+        Map<String, String> sources = new HashMap<>();
+        for (String key : workersProperties.stringPropertyNames()) {
+            sources.put(key, workersProperties.getProperty(key).strip());
+        }
+
+        Map<String, IWebWorker> workers = new HashMap<>();
+        Map<String, RateLimiter> rateLimiters = new HashMap<>();
+        Map<String, ProxyWorker> proxies = new HashMap<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            String path = source.getKey();
+            String value = source.getValue();
+            if (path.startsWith(CACHE_PREFIX)) {
+                // cache options are applied to the worker of the route
+                continue;
+            }
+            boolean unchanged = previous != null && value.equals(previous.sources().get(path));
+            if (path.startsWith(PROXY_PREFIX)) {
+                String route = path.substring(PROXY_PREFIX.length());
+                ProxyWorker proxy = unchanged ? previous.proxies().get(route) : null;
+                if (proxy == null) {
+                    try {
+                        proxy = ProxyWorker.parse(route, value, responseCache, proxyTimeout,
+                                proxyMaxIdleConnections, proxyIdleTimeout, proxyMaxCacheableSize);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid proxy for " + path + ": " + e.getMessage());
+                        continue;
+                    }
+                }
+                proxies.put(route, proxy);
+                continue;
+            }
+            if (path.startsWith(RATE_LIMIT_PREFIX)) {
+                String route = path.substring(RATE_LIMIT_PREFIX.length());
+                RateLimiter limiter = unchanged ? previous.rateLimiters().get(route) : null;
+                if (limiter == null) {
+                    try {
+                        limiter = RateLimiter.parse(value);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid rate limit for " + path + ": " + e.getMessage());
+                        continue;
+                    }
+                }
+                rateLimiters.put(route, limiter);
+                continue;
+            }
+            String cacheOption = sources.get(CACHE_PREFIX + path);
+            if (unchanged && previous.workers().containsKey(path)
+                    && Objects.equals(cacheOption, previous.sources().get(CACHE_PREFIX + path))) {
+                workers.put(path, previous.workers().get(path));
+                continue;
+            }
+            IWebWorker iww;
             try {
-                Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
+                Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(value);
                 Object newObject = referenceToClass.getDeclaredConstructor().newInstance();
-                IWebWorker iww = (IWebWorker) newObject;
-                workersMap.put(path, iww);
+                iww = (IWebWorker) newObject;
             } catch (ClassNotFoundException |
                      NoSuchMethodException |
                      SecurityException |
@@ -158,16 +601,99 @@ public class SmartHttpServer {
                      IllegalArgumentException |
                      InvocationTargetException e) {
                 System.err.println("Error while creating non-ext worker instance.");
+                continue;
+            }
+            if (cacheOption != null) {
+                try {
+                    iww = createCachingWorker(iww, path, cacheOption);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid cache option for " + path + ": " + e.getMessage());
+                }
+            } else if (iww.getClass().isAnnotationPresent(Cacheable.class)) {
+                iww = new CachingWebWorker(iww, responseCache, path);
             }
+            workers.put(path, iww);
+        }
+        workers.putIfAbsent(METRICS_PATH, previous == null ? new MetricsWorker(metrics) : previous.workers().get(METRICS_PATH));
+        if (scriptCache.isProfiling()) {
+            workers.putIfAbsent(SCRIPT_PROFILE_PATH,
+                    previous == null ? new ScriptProfileWorker(scriptCache) : previous.workers().get(SCRIPT_PROFILE_PATH));
         }
+        return new RoutingTable(sources, workers, mimeTypes, rateLimiters, proxies);
+    }
 
-        start();
-        System.out.println("Server started at http://" + domainName + ":" + port);
+    /**
+     * Closes the given worker if it holds resources (implements {@link AutoCloseable}).
+     *
+     * @param worker worker to close
+     */
+    private static void closeWorker(IWebWorker worker) {
+        if (worker instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                System.err.println("Error while closing worker " + worker.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            stop();
-            System.out.println("Server stopped.");
-        }));
+    /**
+     * Reloads the workers and mime configuration files and swaps the new routing table in.
+     * If a file cannot be read, the current routing table stays in place.
+     * Cached responses of routes whose worker was replaced or removed are invalidated, replaced or removed workers
+     * that hold resources are closed, and the connections of removed proxy workers are closed.
+     */
+    private synchronized void reloadRouting() {
+        RoutingTable previous = routing;
+        RoutingTable next;
+        try {
+            next = loadRouting(previous);
+        } catch (IOException e) {
+            configReloadErrors.increment();
+            System.err.println("Error while reloading configuration, keeping the previous one: " + e.getMessage());
+            return;
+        }
+        routing = next;
+        configReloads.increment();
+
+        for (Map.Entry<String, IWebWorker> entry : previous.workers().entrySet()) {
+            if (next.workers().get(entry.getKey()) != entry.getValue()) {
+                responseCache.invalidate(entry.getKey());
+                closeWorker(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, RateLimiter> entry : previous.rateLimiters().entrySet()) {
+            if (next.rateLimiters().get(entry.getKey()) != entry.getValue()) {
+                retiredRateLimited.add(entry.getValue().getLimited());
+            }
+        }
+        for (Map.Entry<String, ProxyWorker> entry : previous.proxies().entrySet()) {
+            if (next.proxies().get(entry.getKey()) != entry.getValue()) {
+                entry.getValue().close();
+            }
+        }
+        System.out.println("Configuration reloaded: " + next.workers().size() + " workers, "
+                + next.proxies().size() + " proxied routes, " + next.mimeTypes().size() + " mime types.");
+    }
+
+    /**
+     * Wraps the given worker into a {@link CachingWebWorker} configured by the given option
+     * in the format <code>ttl [parameter1,parameter2,...]</code>.
+     *
+     * @param worker worker to wrap
+     * @param route route on which the worker is available
+     * @param option cache option from the workers configuration file
+     * @return caching worker
+     * @throws IllegalArgumentException if the option is invalid
+     */
+    private IWebWorker createCachingWorker(IWebWorker worker, String route, String option) {
+        String[] parts = option.split("\\s+");
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("Expected 'ttl [parameters]' but got '" + option + "'.");
+        }
+        long ttl = Long.parseLong(parts[0]);
+        String[] parameters = parts.length == 2 ? parts[1].split(",") : new String[0];
+        return new CachingWebWorker(worker, responseCache, route, ttl, parameters);
     }
 
     /**
@@ -175,14 +701,70 @@ public class SmartHttpServer {
      * and initializes the thread pool (if one does not already exist).
      */
     protected synchronized void start() {
+        draining = false;
+
+        if (accessLog != null) {
+            try {
+                AccessLog log = accessLog;
+                log.start();
+                metrics.registerCounter("access_log_written_total", "Number of records written to the access log.",
+                        accessLog::getWritten);
+                metrics.registerCounter("access_log_dropped_total",
+                        "Number of access log records dropped on overflow or write errors.", accessLog::getDropped);
+                metrics.registerCounter("access_log_errors_total", "Number of errors while writing the access log.",
+                        accessLog::getErrors);
+                metrics.registerGauge("access_log_failing", "1 if the last write to the access log failed, 0 otherwise.",
+                        () -> log.isFailing() ? 1 : 0);
+            } catch (IOException e) {
+                System.err.println("Error while opening access log, access logging is disabled.");
+                accessLog = null;
+            }
+        }
 
-        if (serverThread == null) {
-            serverThread = new ServerThread();
-            serverThread.start();
+        if (requestWatchdog == null) {
+            requestWatchdog = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "request-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            requestWatchdog.setRemoveOnCancelPolicy(true);
+            metrics.registerCounter("header_timeouts_total", "Number of connections closed because the request header was not received in time.",
+                    headerTimeouts::sum);
+            metrics.registerCounter("request_timeouts_total", "Number of connections closed because the request deadline has passed.",
+                    requestTimeouts::sum);
         }
 
         if (serverWorkerthreadPool == null) {
-            serverWorkerthreadPool = Executors.newFixedThreadPool(workerThreads);
+            serverWorkerthreadPool = new ThreadPoolExecutor(
+                    workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity)
+            );
+            metrics.registerGauge("worker_queue_depth", "Number of accepted connections waiting for a worker thread.",
+                    () -> serverWorkerthreadPool.getQueue().size());
+            metrics.registerGauge("worker_threads_busy", "Number of worker threads currently processing a connection.",
+                    () -> serverWorkerthreadPool.getActiveCount());
+            metrics.registerGauge("active_sessions", "Number of sessions currently stored by the server.",
+                    sessions::size);
+            metrics.registerGauge("admitted_connections", "Number of admitted connections that are not yet closed.",
+                    admissionController::getOpenConnections);
+            for (AdmissionController.Rejection reason : AdmissionController.Rejection.values()) {
+                metrics.registerCounter(
+                        "rejected_" + reason.name().toLowerCase() + "_total",
+                        "Number of connections rejected with 503 because of " + reason.name().toLowerCase() + ".",
+                        () -> admissionController.getRejected(reason)
+                );
+            }
+        }
+
+        if (http2Options != null && http2StreamPool == null) {
+            http2StreamPool = new ThreadPoolExecutor(
+                    http2StreamThreads, http2StreamThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity)
+            );
+            metrics.registerCounter("http2_connections_total", "Number of connections switched to HTTP/2.",
+                    http2Connections::sum);
+            metrics.registerCounter("http2_streams_total", "Number of HTTP/2 streams handed to the stream threads.",
+                    http2Streams::sum);
+            metrics.registerGauge("http2_stream_threads_busy", "Number of threads currently processing an HTTP/2 stream.",
+                    () -> http2StreamPool.getActiveCount());
         }
 
         if (sessionCleanerThreadPool == null) {
@@ -194,34 +776,313 @@ public class SmartHttpServer {
                     );
                 }
             }, 0, 5, TimeUnit.MINUTES);
+            sessionCleanerThreadPool.scheduleAtFixedRate(() -> {
+                if (globalRateLimiter != null) {
+                    globalRateLimiter.evictIdle();
+                }
+                routing.rateLimiters().values().forEach(RateLimiter::evictIdle);
+            }, 1, 1, TimeUnit.MINUTES);
+            metrics.registerCounter("response_cache_hits_total", "Number of responses served from the response cache.",
+                    responseCache::getHits);
+            metrics.registerCounter("response_cache_misses_total", "Number of cacheable responses that had to be rendered.",
+                    responseCache::getMisses);
+            metrics.registerGauge("response_cache_bytes", "Total size of the responses stored in the response cache.",
+                    responseCache::getBytes);
+            metrics.registerCounter("rate_limited_total", "Number of requests rejected with 429 by a rate limiter.", () -> {
+                long limited = retiredRateLimited.sum() + (globalRateLimiter == null ? 0 : globalRateLimiter.getLimited());
+                for (RateLimiter limiter : routing.rateLimiters().values()) {
+                    limited += limiter.getLimited();
+                }
+                return limited;
+            });
+            metrics.registerCounter("config_reloads_total", "Number of successful reloads of the workers and mime configuration.",
+                    configReloads::sum);
+            metrics.registerCounter("config_reload_errors_total", "Number of configuration reloads that failed and kept the previous configuration.",
+                    configReloadErrors::sum);
+            metrics.registerCounter("script_parses_total", "Number of scripts parsed (on the first request or after a change).",
+                    scriptCache::getParses);
+            metrics.registerCounter("script_precompiled_loads_total", "Number of scripts decoded from precompiled templates instead of parsed.",
+                    scriptCache::getPrecompiledLoads);
+            metrics.registerCounter("script_errors_total", "Number of script executions that failed.",
+                    scriptErrors::sum);
+            metrics.registerCounter("script_limits_exceeded_total", "Number of script executions stopped because they exceeded a limit.",
+                    scriptLimitsExceeded::sum);
+            metrics.registerGauge("event_streams_open", "Number of event streams currently open.",
+                    eventStreams::size);
+            metrics.registerCounter("event_streams_total", "Number of event streams opened.",
+                    eventStreamsOpened::sum);
+        }
+
+        if (configWatcher != null) {
+            try {
+                configWatcher.start();
+            } catch (IOException e) {
+                System.err.println("Error while watching configuration files: " + e.getMessage());
+            }
         }
+
+        if (serverThreads.isEmpty()) {
+            boolean reusePort = acceptors > 1 && supportsReusePort();
+            if (acceptors > 1 && !reusePort) {
+                System.out.println("SO_REUSEPORT is not supported, " + acceptors + " acceptors share a single listening socket.");
+            }
+            Map<String, LongSupplier> accepted = new LinkedHashMap<>();
+            Map<String, LongSupplier> rejected = new LinkedHashMap<>();
+            for (int i = 0; i < acceptors; i++) {
+                ServerThread serverThread = new ServerThread(i, reusePort);
+                serverThreads.add(serverThread);
+                accepted.put(Integer.toString(i), serverThread.accepted::sum);
+                rejected.put(Integer.toString(i), serverThread.rejected::sum);
+            }
+            metrics.registerCounterFamily("acceptor_accepted_total", "Number of connections accepted by each acceptor thread.",
+                    "acceptor", accepted);
+            metrics.registerCounterFamily("acceptor_rejected_total", "Number of accepted connections each acceptor thread rejected with 503.",
+                    "acceptor", rejected);
+            serverThreads.forEach(Thread::start);
+        }
+    }
+
+    /**
+     * Checks whether listening sockets on this platform support the <code>SO_REUSEPORT</code> option,
+     * which lets every acceptor thread bind its own socket to the server port
+     * (and lets the kernel balance incoming connections between them).
+     *
+     * @return true if <code>SO_REUSEPORT</code> is supported, false otherwise
+     */
+    private static boolean supportsReusePort() {
+        try (ServerSocket socket = new ServerSocket()) {
+            return socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the listening socket shared by all acceptor threads, opening it on the first call.
+     *
+     * @return shared listening socket
+     * @throws IOException if the socket cannot be opened
+     */
+    private synchronized ServerSocket sharedServerSocket() throws IOException {
+        if (sharedServerSocket == null || sharedServerSocket.isClosed()) {
+            sharedServerSocket = new ServerSocket(port);
+        }
+        return sharedServerSocket;
     }
 
     /**
-     * Stops the server and shuts down the thread pool.
+     * Stops the server by draining in-flight requests for at most the configured drain timeout.
+     *
+     * @see #shutdown(long)
      */
     protected synchronized void stop() {
-        serverThread.interrupt();
+        DrainReport report = shutdown(drainTimeout);
+        if (report != null) {
+            System.out.println("Drained " + report.drained() + " requests, closed " + report.idleClosed()
+                    + " idle connections and aborted " + report.aborted() + " requests.");
+        }
+    }
+
+    /**
+     * Outcome of a graceful shutdown.
+     *
+     * @param drained number of requests completed while the server was draining
+     * @param idleClosed number of connections closed because they did not start sending a request
+     * @param aborted number of requests (queued or running) that did not complete before the deadline
+     */
+    public record DrainReport(int drained, int idleClosed, int aborted) {}
+
+    /**
+     * Gracefully shuts the server down:
+     * <ol>
+     *     <li>closes the listening socket, so no new connections are accepted,</li>
+     *     <li>lets queued and running requests complete, while closing connections
+     *         on which the client has not started sending a request, and closes the open event streams,</li>
+     *     <li>once the deadline passes, aborts all the remaining requests by closing their connections,</li>
+     *     <li>stops the background threads, flushes the access log and clears the (in-memory) session store.</li>
+     * </ol>
+     *
+     * @param timeoutMillis maximum time in milliseconds in-flight requests are given to finish
+     * @return report of the shutdown, or null if the server is not running
+     */
+    public synchronized DrainReport shutdown(long timeoutMillis) {
+        if (serverThreads.isEmpty() || draining) {
+            return null;
+        }
+        draining = true;
+        drainedRequests.reset();
+        serverThreads.forEach(ServerThread::close);
         serverWorkerthreadPool.shutdown();
+        eventStreams.forEach(EventStream::close);
+
+        int idleClosed = 0;
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        try {
+            while ((!serverWorkerthreadPool.awaitTermination(50, TimeUnit.MILLISECONDS) || !eventStreams.isEmpty())
+                    && System.nanoTime() < deadline) {
+                for (ClientWorker worker : activeWorkers) {
+                    if (worker.closeIfIdle()) {
+                        idleClosed++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int aborted = 0;
+        for (Runnable queued : serverWorkerthreadPool.shutdownNow()) {
+            ((ClientWorker) queued).abortQueued();
+            aborted++;
+        }
+        for (ClientWorker worker : activeWorkers) {
+            if (worker.abort()) {
+                aborted++;
+            }
+        }
+        if (http2StreamPool != null) {
+            for (Runnable queued : http2StreamPool.shutdownNow()) {
+                ((ClientWorker) queued).abortQueued();
+                aborted++;
+            }
+        }
+        routing.proxies().values().forEach(ProxyWorker::close);
+        routing.workers().values().forEach(SmartHttpServer::closeWorker);
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+
         sessionCleanerThreadPool.shutdown();
+        requestWatchdog.shutdown();
+        if (accessLog != null) {
+            accessLog.close();
+        }
+        synchronized (sessions) {
+            sessions.clear();
+        }
+        serverThreads.clear();
+        sharedServerSocket = null;
+        serverWorkerthreadPool = null;
+        http2StreamPool = null;
+        sessionCleanerThreadPool = null;
+        requestWatchdog = null;
+        return new DrainReport(drainedRequests.intValue(), idleClosed, aborted);
     }
 
     /**
-     * Server thread that listens for incoming requests and dispatches them to worker threads.
+     * Acceptor thread that listens for incoming requests and dispatches them to worker threads.
+     * Connections that are not admitted by the {@link AdmissionController},
+     * or that do not fit into the worker pool queue, are rejected immediately.
+     * <p>
+     * When <code>SO_REUSEPORT</code> is used, every acceptor binds its own listening socket to the server port;
+     * otherwise all acceptors accept connections from a single shared listening socket.
      */
     protected class ServerThread extends Thread {
+        /**
+         * Flag that signals that this acceptor binds its own listening socket with <code>SO_REUSEPORT</code>.
+         */
+        private final boolean reusePort;
+
+        /**
+         * Number of connections accepted by this acceptor.
+         */
+        private final LongAdder accepted = new LongAdder();
+
+        /**
+         * Number of accepted connections this acceptor rejected.
+         */
+        private final LongAdder rejected = new LongAdder();
+
+        /**
+         * Listening socket (null until opened).
+         */
+        private volatile ServerSocket serverSocket;
+
+        /**
+         * Flag that signals that the listening socket was closed on purpose.
+         */
+        private volatile boolean closed;
+
+        /**
+         * Constructs a new acceptor thread.
+         *
+         * @param index index of the acceptor (used in the thread name)
+         * @param reusePort whether the acceptor binds its own listening socket with <code>SO_REUSEPORT</code>
+         */
+        public ServerThread(int index, boolean reusePort) {
+            super("acceptor-" + index);
+            this.reusePort = reusePort;
+        }
+
+        /**
+         * Closes the listening socket, which unblocks {@link ServerSocket#accept()} and ends this thread.
+         */
+        public void close() {
+            closed = true;
+            ServerSocket socket = serverSocket;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
         @Override
         public void run() {
             // Open serverSocket on specified port
-            try (ServerSocket serverSocket = new ServerSocket(port)) {
-                while (true) {
+            try (ServerSocket serverSocket = openServerSocket()) {
+                this.serverSocket = serverSocket;
+                if (closed) {
+                    return;
+                }
+                while (!closed) {
                     Socket client = serverSocket.accept();
+                    accepted.increment();
+                    AdmissionController.Rejection rejection = admissionController.tryAdmit(client.getInetAddress());
+                    if (rejection != null) {
+                        rejected.increment();
+                        admissionController.reject(client, rejection);
+                        continue;
+                    }
                     ClientWorker cw = new ClientWorker(client);
-                    serverWorkerthreadPool.submit(cw);
+                    try {
+                        serverWorkerthreadPool.execute(cw);
+                    } catch (RejectedExecutionException e) {
+                        // the worker never runs, so it is not active
+                        activeWorkers.remove(cw);
+                        rejected.increment();
+                        admissionController.release(client.getInetAddress());
+                        admissionController.reject(client, AdmissionController.Rejection.QUEUE_FULL);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error while opening server socket.");
                 }
+            }
+        }
+
+        /**
+         * Opens the listening socket of this acceptor: either its own socket bound with <code>SO_REUSEPORT</code>,
+         * or the socket shared by all acceptors.
+         *
+         * @return listening socket
+         * @throws IOException if the socket cannot be opened
+         */
+        private ServerSocket openServerSocket() throws IOException {
+            if (!reusePort) {
+                return sharedServerSocket();
+            }
+            ServerSocket socket = new ServerSocket();
+            try {
+                socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                socket.bind(new InetSocketAddress(port));
             } catch (IOException e) {
-                System.err.println("Error while opening server socket.");
+                socket.close();
+                throw e;
             }
+            return socket;
         }
     }
 
@@ -234,6 +1095,21 @@ public class SmartHttpServer {
          */
         private final Socket csocket;
 
+        /**
+         * HTTP/2 stream whose request this worker processes (null if the worker processes a connection).
+         */
+        private final Http2Stream stream;
+
+        /**
+         * HTTP/2 connection this worker serves once the connection is switched to HTTP/2 (null until then).
+         */
+        private volatile Http2Connection http2;
+
+        /**
+         * Scheduled task that aborts the request once its deadline passes.
+         */
+        private ScheduledFuture<?> deadline;
+
         /**
          * Input stream from the client socket.
          */
@@ -245,12 +1121,12 @@ public class SmartHttpServer {
         private OutputStream ostream;
 
         /**
-         * HTTP version (only HTTP/1.1 supported).
+         * HTTP version (HTTP/1.0, HTTP/1.1, or HTTP/2.0 for HTTP/2 streams).
          */
         private String version;
 
         /**
-         * HTTP method (only GET supported).
+         * HTTP method (GET, POST or PUT).
          */
         private String method;
 
@@ -259,44 +1135,178 @@ public class SmartHttpServer {
          */
         private String host;
 
+        /**
+         * First line of the request (method, requested path and version).
+         */
+        private String requestLine;
+
+        /**
+         * Reusable state of the worker thread processing this connection (null until the worker starts running).
+         */
+        private RequestState state;
+
         /**
          * Map of normal parameters (request parameters).
          */
-        private final Map<String,String> params = new HashMap<>();
+        private Map<String,String> params;
 
         /**
          * Map of temporary parameters (for example set by workers).
          */
-        private final Map<String,String> tempParams = new HashMap<>();
+        private Map<String,String> tempParams;
+
+        /**
+         * Map of persistent parameters (from session).
+         */
+        private Map<String,String> permParams;
+
+        /**
+         * List of output cookies.
+         */
+        private List<RequestContext.RCCookie> outputCookies;
+
+        /**
+         * Session ID.
+         */
+        private String SID;
+
+        /**
+         * Routing table the request is dispatched by (null until the request header is read).
+         */
+        private RoutingTable routing;
+
+        /**
+         * Requested path, without the query string (null until the request line is parsed).
+         */
+        private String requestPath;
+
+        /**
+         * Query string of the request (empty if the request has none).
+         */
+        private String queryString = "";
+
+        /**
+         * Body of the request (empty unless the request is a POST or PUT request with a body).
+         */
+        private InputStream requestBody = InputStream.nullInputStream();
+
+        /**
+         * Request context.
+         */
+        private RequestContext context = null;
+
+        /**
+         * Time (as given by {@link System#nanoTime()}) when the connection was accepted.
+         */
+        private final long acceptedAt;
+
+        /**
+         * Route the request was dispatched to (used as a metrics label).
+         */
+        private String route = "unmatched";
+
+        /**
+         * Time in nanoseconds spent reading and parsing the request.
+         */
+        private long parseNanos = -1;
+
+        /**
+         * Time in nanoseconds spent dispatching the request (writes included).
+         */
+        private long dispatchNanos = -1;
+
+        /**
+         * Flag that signals that the worker started running but has not received any byte of the request yet.
+         */
+        private volatile boolean idle;
+
+        /**
+         * Flag that signals that the connection was closed by the server while shutting down.
+         */
+        private final AtomicBoolean closedOnShutdown = new AtomicBoolean();
+
+        /**
+         * Event stream the connection was handed over to (null unless the worker started one).
+         */
+        private EventStream eventStream;
+
+        /**
+         * Creates a new client worker with the specified socket.
+         *
+         * @param csocket client socket
+         */
+        public ClientWorker(Socket csocket) {
+            super();
+            this.csocket = csocket;
+            this.stream = null;
+            this.acceptedAt = System.nanoTime();
+            activeWorkers.add(this);
+        }
 
         /**
-         * Map of persistent parameters (from session).
+         * Creates a new client worker that processes the request of an HTTP/2 stream.
+         * The connection itself stays with the worker that reads its frames.
+         *
+         * @param csocket client socket of the HTTP/2 connection
+         * @param stream HTTP/2 stream whose request is processed
          */
-        private Map<String,String> permParams = new HashMap<>();
+        public ClientWorker(Socket csocket, Http2Stream stream) {
+            super();
+            this.csocket = csocket;
+            this.stream = stream;
+            this.acceptedAt = System.nanoTime();
+        }
 
         /**
-         * List of output cookies.
+         * Closes the connection if the client has not started sending a request.
+         * An HTTP/2 connection is sent GOAWAY instead, and shuts down by itself once its open streams are closed.
+         *
+         * @return true if the connection was closed (for HTTP/2, if it had no open streams)
          */
-        private final List<RequestContext.RCCookie> outputCookies = new ArrayList<>();
+        private boolean closeIfIdle() {
+            Http2Connection connection = http2;
+            if (connection != null) {
+                return connection.goAway();
+            }
+            return idle && closeOnShutdown();
+        }
 
         /**
-         * Session ID.
+         * Closes the connection of a running worker because the drain deadline has passed.
+         *
+         * @return true if the connection was closed (and was not closed before)
          */
-        private String SID;
+        private boolean abort() {
+            return closeOnShutdown();
+        }
 
         /**
-         * Request context.
+         * Closes the connection of a worker that never started running and releases its resources.
          */
-        private RequestContext context = null;
+        private void abortQueued() {
+            if (stream != null) {
+                stream.cancel();
+                return;
+            }
+            closeOnShutdown();
+            activeWorkers.remove(this);
+            admissionController.release(csocket.getInetAddress());
+        }
 
         /**
-         * Creates a new client worker with the specified socket.
+         * Closes the connection while the server is shutting down (at most once).
          *
-         * @param csocket client socket
+         * @return true if the connection was closed by this call
          */
-        public ClientWorker(Socket csocket) {
-            super();
-            this.csocket = csocket;
+        private boolean closeOnShutdown() {
+            if (!closedOnShutdown.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                csocket.close();
+            } catch (IOException ignored) {
+            }
+            return true;
         }
 
         /**
@@ -304,58 +1314,276 @@ public class SmartHttpServer {
          * Reads it, extracts headers, checks and sets up the session,
          * fills the map of normal parameters with parameters from the parameter string,
          * and dispatches the request.
-         * There are three ways in which the request can be dispatched:
+         * There are four ways in which the request can be dispatched:
          * <ul>
          *     <li>Execute a worker XXX if the requested path starts with /ext/XXX</li>
          *     <li>Execute a worker if the requested path is mapped to a worker</li>
+         *     <li>Forward the request to an upstream server if the requested path lies on a proxied route</li>
          *     <li>Return the requested file if it exists and is readable
          *         (if the file is a SmartScript script, then execute it and show the result)</li>
          * </ul>
+         * Time spent in each of the phases, as well as the total latency of the request, is recorded in the server metrics.
          */
         @Override
         public void run() {
+            long start = System.nanoTime();
+            state = requestStates.get();
+            params = state.params;
+            tempParams = state.tempParams;
+            permParams = state.noSessionParams;
+            outputCookies = state.outputCookies;
+            metrics.recordPhase(ServerMetrics.Phase.QUEUE, start - acceptedAt);
+            if (stream == null) {
+                metrics.connectionOpened();
+            }
+            deadline = requestWatchdog.schedule(this::abortOnDeadline, requestTimeout, TimeUnit.MILLISECONDS);
+            try {
+                if (stream == null) {
+                    serve(start);
+                } else {
+                    serveStream(start);
+                }
+            } finally {
+                deadline.cancel(false);
+                if (draining && context != null && !closedOnShutdown.get()) {
+                    drainedRequests.increment();
+                }
+                // a connection handed over to an event stream is released once the stream ends
+                if (eventStream == null) {
+                    releaseConnection();
+                }
+                recordMetrics(start);
+                context = null;
+                state.clear();
+            }
+        }
+
+        /**
+         * Releases the connection of this worker: removes the worker from the active workers
+         * and releases its admission (for connections, not HTTP/2 streams).
+         */
+        private void releaseConnection() {
+            activeWorkers.remove(this);
+            if (stream == null) {
+                admissionController.release(csocket.getInetAddress());
+                metrics.connectionClosed();
+            }
+        }
+
+        /**
+         * Closes the connection (or resets the HTTP/2 stream) because the request deadline has passed,
+         * which unblocks any read or write the worker thread is currently blocked in.
+         */
+        private void abortOnDeadline() {
+            if (stream != null) {
+                if (stream.cancel()) {
+                    requestTimeouts.increment();
+                }
+                return;
+            }
+            if (csocket.isClosed()) {
+                return;
+            }
+            requestTimeouts.increment();
+            try {
+                csocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * Records the metrics of the processed request (if any request was processed).
+         *
+         * @param start time (as given by {@link System#nanoTime()}) when the processing started
+         */
+        private void recordMetrics(long start) {
+            if (context == null) {
+                return;
+            }
+            long writeNanos = context.getWriteNanos();
+            if (parseNanos >= 0) {
+                metrics.recordPhase(ServerMetrics.Phase.PARSE, parseNanos);
+            }
+            if (dispatchNanos >= 0) {
+                metrics.recordPhase(ServerMetrics.Phase.DISPATCH, dispatchNanos - writeNanos);
+            }
+            metrics.recordPhase(ServerMetrics.Phase.WRITE, writeNanos);
+            long totalNanos = System.nanoTime() - start;
+            metrics.recordRequest(route, context.getStatusCode(), context.getBytesWritten(), totalNanos);
+            if (accessLog != null) {
+                accessLog.log(
+                        csocket.getInetAddress().getHostAddress(),
+                        requestLine == null ? "-" : requestLine,
+                        context.getStatusCode(),
+                        context.getBytesWritten(),
+                        totalNanos
+                );
+            }
+        }
+
+        /**
+         * Reads, parses and dispatches the client request.
+         *
+         * @param start time (as given by {@link System#nanoTime()}) when the processing started
+         */
+        private void serve(long start) {
             // Obtain input stream and output stream from socket
             try {
-                istream = csocket.getInputStream();
+                csocket.setSoTimeout(readTimeout);
+                istream = state.input.attach(csocket.getInputStream());
                 ostream = csocket.getOutputStream();
+                idle = true;
             } catch (IOException e) {
                 System.err.println("Error while obtaining input/output stream from socket.");
                 return;
             }
 
             // Then read complete request header from your client in separate method...
-            Optional<byte[]> request;
+            int headerLength;
             try {
-                request = readGetRequest();
+                headerLength = readRequestHeader(start + headerTimeout * 1_000_000L);
+            } catch (SocketTimeoutException e) {
+                headerTimeouts.increment();
+                sendEmptyResponse(ostream, 408, "Request Timeout");
+                return;
             } catch (IOException e) {
-                System.err.println("Error while reading request from client.");
+                if (!closedOnShutdown.get()) {
+                    System.err.println("Error while reading request from client.");
+                }
                 return;
             }
-            if (request.isEmpty()) {
+            if (headerLength == -1) {
                 return;
             }
-            String requestStr = new String(request.get(), StandardCharsets.US_ASCII);
 
             // Extract headers from request
-            List<String> headers = extractHeaders(requestStr);
+            List<String> headers = state.headers;
+            RequestHeaders.split(state.header, headerLength, headers);
+
+            // A client with prior knowledge of HTTP/2 starts with the connection preface,
+            // whose first part looks like a request header of a single line
+            if (http2Options != null && headers.size() == 1 && headers.getFirst().equals(Http2Connection.PREFACE_REQUEST_LINE)) {
+                serveHttp2(null);
+                return;
+            }
+
+            handleRequest(headers, start);
+        }
+
+        /**
+         * Processes the request of an HTTP/2 stream. The request header is converted into the lines
+         * of an HTTP/1.1 request header, so the request is handled exactly like a request received over HTTP/1.1,
+         * and the response header is sent as a HEADERS frame of the stream.
+         *
+         * @param start time (as given by {@link System#nanoTime()}) when the processing started
+         */
+        private void serveStream(long start) {
+            istream = stream.getInputStream();
+            ostream = stream.getOutputStream();
+            List<String> headers = state.headers;
+            stream.toRequestHeaderLines(headers);
+            handleRequest(headers, start);
+        }
+
+        /**
+         * Switches the connection to HTTP/2 and serves it until it is closed. Requests of the connection's streams
+         * are processed by separate workers in the HTTP/2 stream pool, while this worker reads the frames.
+         *
+         * @param upgradeRequest lines of the HTTP/1.1 request header that asked for the upgrade
+         *                       (answered on stream 1), or null if the client started with prior knowledge
+         */
+        private void serveHttp2(List<String> upgradeRequest) {
+            // the connection lives as long as the client uses it, while every stream has its own deadline
+            deadline.cancel(false);
+            http2Connections.increment();
+            Http2Connection connection = new Http2Connection(csocket, istream, ostream, http2Options, this::dispatchStream);
+            http2 = connection;
+            try {
+                if (upgradeRequest == null) {
+                    connection.servePriorKnowledge();
+                } else {
+                    connection.serveUpgrade(upgradeRequest, RequestHeaders.value(upgradeRequest, "HTTP2-Settings"));
+                }
+            } catch (IOException e) {
+                if (!closedOnShutdown.get()) {
+                    System.err.println("Error while serving HTTP/2 connection: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Hands a new HTTP/2 stream to the stream pool.
+         *
+         * @param stream new stream
+         * @throws RejectedExecutionException if the stream pool is full (the stream is then refused)
+         */
+        private void dispatchStream(Http2Stream stream) {
+            http2StreamPool.execute(new ClientWorker(csocket, stream));
+            http2Streams.increment();
+        }
+
+        /**
+         * Checks whether an HTTP/1.1 request asks for an upgrade to HTTP/2 that can be made.
+         * Requests with a body are served over HTTP/1.1, since the body would have to be read before switching.
+         *
+         * @param headers list of headers
+         * @return true if the connection should be switched to HTTP/2
+         */
+        private boolean isHttp2Upgrade(List<String> headers) {
+            String upgrade = RequestHeaders.value(headers, "Upgrade");
+            String connection = RequestHeaders.value(headers, "Connection");
+            String contentLength = RequestHeaders.value(headers, "Content-Length");
+            return upgrade != null && upgrade.toLowerCase().contains("h2c")
+                    && connection != null && connection.toLowerCase().contains("upgrade")
+                    && RequestHeaders.value(headers, "HTTP2-Settings") != null
+                    && RequestHeaders.value(headers, "Transfer-Encoding") == null
+                    && (contentLength == null || contentLength.equals("0"));
+        }
 
-            // If header is invalid (less then a line at least) return response status 400
-            String[] firstLine = headers.getFirst().split(" ");
-            if(headers.isEmpty() || firstLine.length != 3 ) {
+        /**
+         * Handles a request whose header has been split into lines: validates the request line,
+         * sets up the session, parameters and body, and dispatches the request.
+         *
+         * @param headers list of headers (request line first)
+         * @param start time (as given by {@link System#nanoTime()}) when the processing started
+         */
+        private void handleRequest(List<String> headers, long start) {
+            // The whole request is dispatched by the routing table that is current when it arrives
+            routing = SmartHttpServer.this.routing;
+
+            // If header is invalid (less then a line at least, or not a request line of three parts)
+            // return response status 400
+            int firstSpace = headers.isEmpty() ? -1 : headers.getFirst().indexOf(' ');
+            int lastSpace = firstSpace == -1 ? -1 : headers.getFirst().lastIndexOf(' ');
+            if (firstSpace <= 0 || lastSpace == firstSpace || headers.getFirst().indexOf(' ', firstSpace + 1) != lastSpace) {
                 sendEmptyResponse(ostream, 400, "Bad request");
                 return;
             }
+            requestLine = headers.getFirst();
 
             // Extract (method, requestedPath, version) from firstLine
-            method = firstLine[0].toUpperCase();
-            String requestedPath = firstLine[1];
-            version = firstLine[2].toUpperCase();
+            method = requestLine.substring(0, firstSpace).toUpperCase();
+            String requestedPath = requestLine.substring(firstSpace + 1, lastSpace);
+            version = requestLine.substring(lastSpace + 1).toUpperCase();
+
+            // If version is not HTTP/1.0 or HTTP/1.1 (or HTTP/2.0 for HTTP/2 streams) return response status 505,
+            // and if method is not GET, POST or PUT return response status 405
+            if (stream == null && !version.equals("HTTP/1.0") && !version.equals("HTTP/1.1")) {
+                sendEmptyResponse(ostream, 505, "HTTP Version Not Supported");
+                return;
+            }
+            if (!method.equals("GET") && !method.equals("POST") && !method.equals("PUT")) {
+                createContext(false);
+                context.addHeader("Allow", "GET, POST, PUT");
+                sendEmptyResponse(ostream, 405, "Method Not Allowed");
+                return;
+            }
 
-            // If method is not GET or version not HTTP/1.0 or HTTP/1.1 return response status 400
-            if (!method.equals("GET") || (!version.equals("HTTP/1.0") && !version.equals("HTTP/1.1"))) {
-                sendEmptyResponse(ostream, 400, "Bad request");
+            // Switch to HTTP/2 if the client asks for it, answering this request on stream 1
+            if (stream == null && http2Options != null && version.equals("HTTP/1.1") && isHttp2Upgrade(headers)) {
+                serveHttp2(headers);
+                return;
             }
-            // Wouldn't it be better to return 405 Method Not Allowed and 505 HTTP Version Not Supported accordingly?
 
             // Go through headers, and if there is header “Host: xxx”, assign host property
             // to trimmed value after “Host:”; else, set it to server’s domainName.
@@ -363,8 +1591,9 @@ public class SmartHttpServer {
             for (String line : headers) {
                 if (line.startsWith("Host:")) {
                     host = line.substring(5).strip();
-                    if (host.contains(":")) {
-                        host = host.split(":")[0];
+                    int colon = host.indexOf(':');
+                    if (colon != -1) {
+                        host = host.substring(0, colon);
                     }
                     break;
                 }
@@ -375,108 +1604,147 @@ public class SmartHttpServer {
 
             // Split requestedPath to path and parameterString
             String paramString = "";
-            if (requestedPath.contains("?")) {
-                String[] parts = requestedPath.split("\\?");
-                requestedPath = parts[0];
-                paramString = parts[1];
+            int questionMark = requestedPath.indexOf('?');
+            if (questionMark != -1) {
+                paramString = requestedPath.substring(questionMark + 1);
+                requestedPath = requestedPath.substring(0, questionMark);
             }
+            requestPath = requestedPath;
+            queryString = paramString;
 
             // Check and set up session
             checkSession(headers);
 
+            // Requests to proxied routes are forwarded as they are, so their parameters are not parsed
+            boolean proxied = !routing.workers().containsKey(requestedPath) && routing.findProxy(requestedPath) != null;
+
             // Fill the map of normal parameters with parameters from paramString
             try {
-                parseParameters(paramString);
+                if (!proxied) {
+                    parseParameters(paramString);
+                }
             } catch (IllegalArgumentException e) {
                 System.err.println("Invalid parameter format.");
                 sendEmptyResponse(ostream, 400, "Bad request");
                 return;
             }
 
+            // Set up the request body (form bodies are parsed into the map of normal parameters)
+            if (!prepareRequestBody(headers, !proxied)) {
+                return;
+            }
+
             // Dispatch the request
+            long dispatchStart = System.nanoTime();
+            parseNanos = dispatchStart - start;
             try {
                 internalDispatchRequest(requestedPath, true);
             } catch (Exception e) {
                 System.err.println("Error while dispatching request.");
             }
+            dispatchNanos = System.nanoTime() - dispatchStart;
 
-            // Flush and close the streams
+            // Flush and close the streams, unless the connection was handed over to an event stream
+            if (eventStream != null) {
+                return;
+            }
             try {
-                ostream.flush();
-                ostream.close();
-                istream.close();
-                csocket.close();
+                closeConnection();
             } catch (IOException e) {
                 System.err.println("Error while flushing and closing streams.");
             }
         }
 
         /**
-         * Reads the request from the input stream via implemented state machine.
+         * Flushes the response and closes the connection.
+         * For an HTTP/2 stream only the stream is ended, after the response header is sent
+         * (in case the worker did not write anything).
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        private void closeConnection() throws IOException {
+            if (stream != null) {
+                if (context != null) {
+                    context.write(NO_BYTES);
+                }
+                ostream.close();
+                return;
+            }
+            ostream.flush();
+            ostream.close();
+            istream.close();
+            csocket.close();
+        }
+
+        /**
+         * Reads the request header from the input stream via implemented state machine.
+         * The header must be received completely before the given deadline;
+         * as the deadline approaches, the socket timeout is shortened so that no read blocks past it
+         * (and is restored once the header is read).
+         * The header (without carriage returns) is read into the header buffer of the request state.
          *
-         * @return list of lines in the request
-         * @throws IOException if an error occurs while reading the request
+         * @param deadline time (as given by {@link System#nanoTime()}) until which the header must be received
+         * @return length of the request header (-1 if the connection was closed before a request was sent)
+         * @throws SocketTimeoutException if the header is not received before the deadline
+         * @throws IOException if an error occurs while reading the request or the header is too large
          *
          * @author izv. prof. dr. sc. Marko Čupić
          */
-        private Optional<byte[]> readGetRequest() throws IOException {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int state = 0;
-            l: while (true) {
-                int b = istream.read();
-                if (b == -1) {
-                    if(bos.size() != 0) {
-                        throw new IOException("Incomplete header received.");
+        private int readRequestHeader(long deadline) throws IOException {
+            int length = 0;
+            int phase = 0;
+            int timeout = readTimeout;
+            try {
+                l: while (true) {
+                    long remaining = (deadline - System.nanoTime()) / 1_000_000;
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException("Request header not received in time.");
                     }
-                    return Optional.empty();
-                }
-                if (b != 13) {
-                    bos.write(b);
-                }
-                switch (state) {
-                    case 0 -> {
-                        if (b == 13)      state = 1;
-                        else if (b == 10) state = 3;
+                    if (remaining < timeout) {
+                        timeout = (int) remaining;
+                        csocket.setSoTimeout(timeout);
                     }
-                    case 1 -> {
-                        if (b == 10)      state = 2;
-                        else              state = 0;
+                    int b = istream.read();
+                    idle = false;
+                    if (b == -1) {
+                        if(length != 0) {
+                            throw new IOException("Incomplete header received.");
+                        }
+                        return -1;
                     }
-                    case 2 -> {
-                        if (b == 13)      state = 3;
-                        else              state = 0;
+                    if (b != 13) {
+                        if (length == state.header.length && !state.growHeader()) {
+                            throw new IOException("Request header too large.");
+                        }
+                        state.header[length++] = (byte) b;
                     }
-                    case 3 -> {
-                        if (b == 10)      break l;
-                        else              state = 0;
+                    switch (phase) {
+                        case 0 -> {
+                            if (b == 13)      phase = 1;
+                            else if (b == 10) phase = 3;
+                        }
+                        case 1 -> {
+                            if (b == 10)      phase = 2;
+                            else              phase = 0;
+                        }
+                        case 2 -> {
+                            if (b == 13)      phase = 3;
+                            else              phase = 0;
+                        }
+                        case 3 -> {
+                            if (b == 10)      break l;
+                            else              phase = 0;
+                        }
+                        default -> throw new IllegalStateException("Unexpected value: " + phase);
                     }
-                    default -> throw new IllegalStateException("Unexpected value: " + state);
                 }
-            }
-            return Optional.of(bos.toByteArray());
-        }
-
-        /**
-         * Extracts headers from the GET request.
-         *
-         * @param requestHeader request header
-         * @return list of headers
-         */
-        private List<String> extractHeaders(String requestHeader) {
-            List<String> headers = new ArrayList<>();
-            String[] lines = requestHeader.split("\n");
-
-            for (String line : lines) {
-                if (line.isEmpty()) break;
-                char c = line.charAt(0);
-                if (c == 9 || c == 32) { // tab or space
-                    headers.set(headers.size() - 1, headers.getLast() + line);
-                } else {
-                    headers.add(line);
+            } finally {
+                // the shortened timeout applies only to the header, not to the body or the next request
+                if (timeout != readTimeout && !csocket.isClosed()) {
+                    csocket.setSoTimeout(readTimeout);
                 }
             }
-
-            return headers;
+            return length;
         }
 
         /**
@@ -487,70 +1755,51 @@ public class SmartHttpServer {
          * and the session ID is set as a cookie.
          * If the session is valid, the persistent parameters are set to the session parameters.
          *
+         * The session map is concurrent, so no lock is taken: a session that expires (or is removed by the cleaner)
+         * while the request is being checked is simply replaced by a new one.
+         *
          * @param headers list of headers
-         * @throws IllegalArgumentException if the cookie format is invalid
          */
         private void checkSession(List<String> headers) {
-            synchronized (sessions) {
-                String sidCandidate = null;
-                x:
-                for (String line : headers) {
-                    if (!line.startsWith("Cookie:")) {
-                        continue;
-                    }
-                    String[] cookies = line.substring(7).split(";");
-                    for (String cookie : cookies) {
-                        if (cookie.split("=")[0].strip().equals("sid")) {
-                            if (cookie.split("=").length != 2) {
-                                throw new IllegalArgumentException("Invalid cookie format.");
-                            }
-                            sidCandidate = cookie.split("=")[1].replaceAll("\"", "").strip();
-                            break x;
-                        }
-                    }
-                }
-                if (sidCandidate == null) {
-                    createNewSession();
-                    return;
-                }
-                SessionMapEntry session = sessions.get(sidCandidate);
-                if (session == null || !session.host.equals(host)) {
-                    createNewSession();
-                    return;
-                }
-                if (session.validUntil * 1000 < System.currentTimeMillis()) {
-                    sessions.remove(sidCandidate);
-                    createNewSession();
-                    return;
-                }
-                session.validUntil = System.currentTimeMillis() / 1000 + sessionTimeout;
-                permParams = session.map;
-                SID = sidCandidate;
+            String sidCandidate = RequestHeaders.cookie(headers, "sid");
+            if (sidCandidate == null) {
+                createNewSession();
+                return;
+            }
+            SessionMapEntry session = sessions.get(sidCandidate);
+            if (session == null || !session.host.equals(host)) {
+                createNewSession();
+                return;
+            }
+            if (session.validUntil * 1000 < System.currentTimeMillis()) {
+                sessions.remove(sidCandidate, session);
+                createNewSession();
+                return;
             }
+            session.validUntil = System.currentTimeMillis() / 1000 + sessionTimeout;
+            permParams = session.map;
+            SID = sidCandidate;
         }
 
         /**
          * Creates a new session with a random session ID and adds it to the session map.
-         * The session lasts for 5 minutes after the last request.
-         * The session ID is a 20-character string consisting of ASCII uppercase letters
+         * The session lasts for the session timeout after the last request.
+         * The session ID is generated by {@link SessionIds} (128 random bits, 22 URL-safe characters)
          * and is set as a cookie.
          */
         private void createNewSession() {
-            synchronized (sessions) {
-                StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < 20; i++) {
-                    sb.append((char) (sessionRandom.nextInt('Z' - 'A' + 1) + 'A'));
-                }
-                SID = sb.toString();
-                SessionMapEntry session = new SessionMapEntry(
+            SessionMapEntry session;
+            do {
+                SID = SessionIds.next();
+                session = new SessionMapEntry(
                         SID,
                         host,
                         System.currentTimeMillis() / 1000 + sessionTimeout,
                         new ConcurrentHashMap<>()
                 );
-                sessions.put(SID, session);
-                outputCookies.add(new RequestContext.RCCookie("sid", SID, host, "/", null, true));
-            }
+            } while (sessions.putIfAbsent(SID, session) != null);
+            permParams = session.map;
+            outputCookies.add(new RequestContext.RCCookie("sid", SID, host, "/", null, true));
         }
 
         /**
@@ -563,17 +1812,161 @@ public class SmartHttpServer {
             if (paramString.isEmpty()) {
                 return;
             }
-            if (!paramString.matches("[^=&]+=[^=&]+(&[^=&]+=[^=&]+)*")) {
-                throw new IllegalArgumentException("Invalid parameter format.");
+            state.formParser.feed(paramString);
+            state.formParser.finish();
+        }
+
+        /**
+         * Sets up the body of a POST or PUT request, which is delimited either by the <code>Content-Length</code> header
+         * or by the chunked transfer coding. Bodies larger than the configured maximum are rejected with status 413.
+         * Form bodies (<code>application/x-www-form-urlencoded</code>) are parsed into the map of normal parameters
+         * as they are read; other bodies are streamed to the workers through {@link RequestContext#getRequestBody()}.
+         * If the client expects it, <code>100 Continue</code> is sent before the body is read.
+         *
+         * @param headers list of headers
+         * @param parseForm if false, form bodies are streamed like other bodies (for requests forwarded upstream)
+         * @return true if the request may be dispatched, false if an error response was sent
+         */
+        private boolean prepareRequestBody(List<String> headers, boolean parseForm) {
+            if (method.equals("GET")) {
+                return true;
+            }
+            String transferEncoding = RequestHeaders.value(headers, "Transfer-Encoding");
+            String contentLength = RequestHeaders.value(headers, "Content-Length");
+            InputStream body;
+            if (transferEncoding != null) {
+                if (!transferEncoding.equalsIgnoreCase("chunked")) {
+                    sendEmptyResponse(ostream, 501, "Not Implemented");
+                    return false;
+                }
+                body = new ChunkedInputStream(istream, maxBodySize);
+            } else if (contentLength != null) {
+                long length;
+                try {
+                    length = Long.parseLong(contentLength);
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+                if (length < 0) {
+                    sendEmptyResponse(ostream, 400, "Bad request");
+                    return false;
+                }
+                if (length > maxBodySize) {
+                    sendEmptyResponse(ostream, 413, "Payload Too Large");
+                    return false;
+                }
+                body = new ContentLengthInputStream(istream, length);
+            } else if (stream != null) {
+                // the body of an HTTP/2 request ends with the stream
+                body = istream;
+            } else {
+                body = InputStream.nullInputStream();
             }
-            String[] pairs = paramString.split("&");
-            for (String pair : pairs) {
-                String[] split = pair.split("=");
-                params.put(
-                        URLDecoder.decode(split[0], StandardCharsets.UTF_8),
-                        URLDecoder.decode(split[1], StandardCharsets.UTF_8)
-                );
+
+            try {
+                // HTTP/2 clients send the body without waiting for 100 Continue
+                if (stream == null && "100-continue".equalsIgnoreCase(RequestHeaders.value(headers, "Expect"))) {
+                    ostream.write(CONTINUE_RESPONSE);
+                    ostream.flush();
+                }
+                String contentType = RequestHeaders.value(headers, "Content-Type");
+                if (parseForm && contentType != null
+                        && contentType.toLowerCase().startsWith("application/x-www-form-urlencoded")) {
+                    FormUrlEncodedParser parser = state.formParser;
+                    byte[] buffer = state.bodyBuffer;
+                    for (int n; (n = body.read(buffer)) != -1; ) {
+                        parser.feed(buffer, 0, n);
+                    }
+                    parser.finish();
+                    body = InputStream.nullInputStream();
+                }
+            } catch (RequestBodyTooLargeException e) {
+                sendEmptyResponse(ostream, 413, "Payload Too Large");
+                return false;
+            } catch (SocketTimeoutException e) {
+                sendEmptyResponse(ostream, 408, "Request Timeout");
+                return false;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid parameter format.");
+                sendEmptyResponse(ostream, 400, "Bad request");
+                return false;
+            } catch (IOException e) {
+                if (!closedOnShutdown.get()) {
+                    System.err.println("Error while reading request body from client.");
+                }
+                return false;
+            }
+            requestBody = body;
+            return true;
+        }
+
+        /**
+         * Creates the context of the request (if not created already).
+         *
+         * @param dispatching if true, the context gets temporary parameters, the dispatcher and the session ID,
+         *                    as needed by workers and scripts
+         */
+        private void createContext(boolean dispatching) {
+            if (context != null) {
+                return;
+            }
+            context = state.context;
+            context.reset(ostream, params, permParams, outputCookies, tempParams, dispatching ? this : null, SID);
+            context.setRequest(method == null ? "GET" : method, requestBody);
+            context.setRequestTarget(requestPath, queryString, state.headers);
+            if (stream != null) {
+                context.setHeaderWriter(this::writeHttp2Header);
+            }
+            if (dispatching) {
+                context.setEventStreamOpener(this::openEventStream);
+            }
+        }
+
+        /**
+         * Hands the connection over to a new event stream, whose writer thread serves it from then on.
+         * The response header has already been sent.
+         *
+         * @param output output stream of the response
+         * @return opened event stream
+         */
+        private EventStream openEventStream(OutputStream output) {
+            EventStream events = new EventStream(output, eventStreamQueueCapacity, eventStreamHeartbeat, this::endEventStream);
+            eventStream = events;
+            eventStreams.add(events);
+            eventStreamsOpened.increment();
+            events.start(EVENT_STREAM_THREADS);
+            if (draining) {
+                events.close();
+            }
+            return events;
+        }
+
+        /**
+         * Ends the response of the event stream (closing the connection, or ending the HTTP/2 stream)
+         * and releases the connection. Runs on the writer thread of the stream once it is done.
+         */
+        private void endEventStream() {
+            eventStreams.remove(eventStream);
+            try {
+                ostream.close();
+                if (stream == null) {
+                    csocket.close();
+                }
+            } catch (IOException ignored) {
             }
+            releaseConnection();
+        }
+
+        /**
+         * Sends the response header of an HTTP/2 stream as a HEADERS frame.
+         *
+         * @param context context whose response header is sent
+         * @throws IOException if the stream was reset or the header cannot be written
+         */
+        private void writeHttp2Header(RequestContext context) throws IOException {
+            List<HeaderField> fields = new ArrayList<>();
+            context.forEachHeaderField((name, value) -> fields.add(new HeaderField(name, value)));
+            stream.writeHeaders(context.getStatusCode(), fields);
         }
 
         /**
@@ -584,21 +1977,41 @@ public class SmartHttpServer {
          * @param statusText status text
          */
         private void sendEmptyResponse(OutputStream ostream, int statusCode, String statusText) {
-            if (context == null) {
-                context = new RequestContext(ostream, params, permParams, outputCookies);
-            }
+            createContext(false);
             context.setStatusCode(statusCode);
             context.setStatusText(statusText);
 
             try {
                 context.write("");
-                ostream.flush();
-                ostream.close();
-                csocket.close();
+                closeConnection();
             } catch (IOException ignored) {
             }
         }
 
+        /**
+         * Takes a token from the client's global bucket and from the client's bucket for the requested route
+         * (for the rate limiters that are configured). If any of the buckets is empty,
+         * a <code>429 Too Many Requests</code> response with a <code>Retry-After</code> header is sent.
+         *
+         * @param urlPath requested path
+         * @return true if the request may be dispatched, false if it was rejected
+         */
+        private boolean checkRateLimit(String urlPath) {
+            InetAddress address = csocket.getInetAddress();
+            long waitMillis = globalRateLimiter == null ? 0 : globalRateLimiter.tryAcquire(address);
+            RateLimiter routeRateLimiter = routing.rateLimiters().get(urlPath);
+            if (waitMillis == 0 && routeRateLimiter != null) {
+                waitMillis = routeRateLimiter.tryAcquire(address);
+            }
+            if (waitMillis == 0) {
+                return true;
+            }
+            createContext(false);
+            context.addHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+            sendEmptyResponse(ostream, 429, "Too Many Requests");
+            return false;
+        }
+
         @Override
         public void dispatchRequest(String urlPath) throws Exception {
             internalDispatchRequest(urlPath, false);
@@ -606,10 +2019,11 @@ public class SmartHttpServer {
 
         /**
          * Dispatches the request.
-         * There are three ways in which the request can be dispatched:
+         * There are four ways in which the request can be dispatched:
          * <ul>
          *     <li>Execute a worker XXX if the requested path starts with /ext/XXX</li>
          *     <li>Execute a worker if the requested path is mapped to a worker</li>
+         *     <li>Forward the request to an upstream server if the requested path lies on a proxied route</li>
          *     <li>Return the requested file if it exists and is readable
          *         (if the file is a SmartScript script, then execute it and show the result)</li>
          * </ul>
@@ -627,6 +2041,11 @@ public class SmartHttpServer {
                 return;
             }
 
+            // Do not let clients over their rate limit through
+            if (directCall && !checkRateLimit(urlPath)) {
+                return;
+            }
+
             // If requestedPath starts with /ext/XXX, assume XXX is the name of an existing worker class,
             // then load it and execute it
             if (urlPath.startsWith("/ext/")) {
@@ -635,9 +2054,10 @@ public class SmartHttpServer {
                     Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
                     Object newObject = referenceToClass.getDeclaredConstructor().newInstance();
                     IWebWorker iww = (IWebWorker) newObject;
-                    if (context == null) {
-                        context = new RequestContext(ostream, params, permParams, outputCookies, tempParams, this, SID);
+                    if (directCall) {
+                        route = urlPath;
                     }
+                    createContext(true);
                     iww.processRequest(context);
                     return;
                 } catch (ClassNotFoundException e) {
@@ -657,11 +2077,22 @@ public class SmartHttpServer {
             }
 
             // Otherwise, is requestedPath is mapped to a worker, execute the worker
-            if (workersMap.containsKey(urlPath)) {
-                if (context == null) {
-                    context = new RequestContext(ostream, params, permParams, outputCookies, tempParams, this, SID);
+            IWebWorker worker = routing.workers().get(urlPath);
+            if (worker != null) {
+                if (directCall) {
+                    route = urlPath;
                 }
-                workersMap.get(urlPath).processRequest(context);
+                createContext(true);
+                worker.processRequest(context);
+                return;
+            }
+
+            // Otherwise, if requestedPath lies on a proxied route, forward the request to the upstream server
+            ProxyWorker proxy = directCall ? routing.findProxy(urlPath) : null;
+            if (proxy != null) {
+                route = proxy.getRoute();
+                createContext(true);
+                proxy.processRequest(context);
                 return;
             }
 
@@ -686,24 +2117,23 @@ public class SmartHttpServer {
 
             // Check if extension is .smscr, and if so, execute the script
             if (extension.equals("smscr")) {
-                if (context == null) {
-                    context = new RequestContext(ostream, params, permParams, outputCookies, tempParams, this, SID);
+                if (directCall) {
+                    route = urlPath;
                 }
-                new SmartScriptEngine(
-                        new SmartScriptParser(Files.readString(normalizedRequestedPath)).getDocumentNode(),
-                        context
-                ).execute();
+                createContext(true);
+                executeScript(urlPath, normalizedRequestedPath);
                 return;
             }
 
-            // Else, find in mimeTypes map appropriate mimeType for current file extension
+            // Else, find in mime types of the routing table appropriate mimeType for current file extension
             // (if no mime type found, assume application/octet-stream)
-            String mimeType = mimeTypes.getOrDefault(extension, "application/octet-stream");
+            String mimeType = routing.mimeType(extension);
+            if (directCall) {
+                route = "static";
+            }
 
             // Set mime-type, set status to 200 OK
-            if (context == null) {
-                context = new RequestContext(ostream, params, permParams, outputCookies);
-            }
+            createContext(false);
             context.setStatusCode(200);
             context.setStatusText("OK");
             context.setMimeType(mimeType);
@@ -716,6 +2146,35 @@ public class SmartHttpServer {
                 System.err.println("Error while reading file content.");
             }
         }
+
+        /**
+         * Executes the script from the given file (parsed once and cached) within the limits of the server,
+         * recording the execution in the profile of the script if profiling is enabled.
+         * If the script cannot be parsed or fails before writing anything, the client gets a 500 response;
+         * a script that fails after starting its response has its response cut short.
+         *
+         * @param urlPath path of the script in the web root
+         * @param file file of the script
+         */
+        private void executeScript(String urlPath, Path file) {
+            try {
+                ScriptCache.Script script = scriptCache.get(urlPath, file);
+                script.program().execute(context, scriptLimits, scriptOutputBuffer > 0
+                        ? new BufferedScriptOutput(context, scriptOutputBuffer, scriptFlushOnIteration)
+                        : ScriptOutput.of(context));
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof ScriptLimitException) {
+                    scriptLimitsExceeded.increment();
+                } else {
+                    scriptErrors.increment();
+                }
+                String phase = e instanceof SmartScriptParserException || e instanceof IOException ? "parsing" : "executing";
+                System.err.println("Error while " + phase + " script " + urlPath + ": " + e.getMessage());
+                if (context.getBytesWritten() == 0) {
+                    sendEmptyResponse(ostream, 500, "Internal Server Error");
+                }
+            }
+        }
     }
 
     /**
@@ -733,9 +2192,9 @@ public class SmartHttpServer {
         String host;
 
         /**
-         * Time until the session is valid.
+         * Time until the session is valid (updated by every request of the session).
          */
-        long validUntil;
+        volatile long validUntil;
 
         /**
          * Map of session parameters.
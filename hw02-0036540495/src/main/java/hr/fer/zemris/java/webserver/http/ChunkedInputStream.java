@@ -0,0 +1,175 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream of a request body sent with <code>Transfer-Encoding: chunked</code>.
+ * Decodes the chunks as they are read (chunk extensions and trailer fields are skipped),
+ * so the body is never buffered as a whole, and stops with a {@link RequestBodyTooLargeException}
+ * as soon as the announced chunks exceed the maximum body size.
+ * Closing the stream does not close the connection.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ChunkedInputStream extends InputStream {
+    /**
+     * Maximum length of a chunk size line or a trailer line.
+     */
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    /**
+     * Input stream of the connection.
+     */
+    private final InputStream in;
+
+    /**
+     * Maximum size of the decoded body in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Total size of the chunks announced so far.
+     */
+    private long total;
+
+    /**
+     * Number of bytes of the current chunk that are not read yet.
+     */
+    private long remaining;
+
+    /**
+     * Flag that signals that the last chunk has been read.
+     */
+    private boolean eof;
+
+    /**
+     * Builder used to read chunk size and trailer lines.
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Constructs a new chunked body stream.
+     *
+     * @param in input stream of the connection, positioned at the start of the body
+     * @param maxSize maximum size of the decoded body in bytes
+     */
+    public ChunkedInputStream(InputStream in, long maxSize) {
+        this.in = in;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Connection closed in the middle of a chunk.");
+        }
+        consumed(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n == -1) {
+            throw new EOFException("Connection closed in the middle of a chunk.");
+        }
+        consumed(n);
+        return n;
+    }
+
+    @Override
+    public void close() {
+        // the connection is closed by the server
+    }
+
+    /**
+     * Makes sure there are unread bytes in the current chunk, reading the next chunk header if needed.
+     *
+     * @return true if there are bytes to read, false if the body has ended
+     * @throws IOException if the chunk header is invalid or an I/O error occurs
+     */
+    private boolean nextChunk() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (remaining > 0) {
+            return true;
+        }
+        String header = readLine();
+        int end = header.indexOf(';');
+        String size = (end == -1 ? header : header.substring(0, end)).strip();
+        try {
+            remaining = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        if (remaining < 0) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        if (remaining == 0) {
+            while (!readLine().isEmpty()) {
+                // skip trailer fields
+            }
+            eof = true;
+            return false;
+        }
+        total += remaining;
+        if (total > maxSize) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the given number of bytes of the current chunk as read,
+     * and reads the line break that ends the chunk once the whole chunk has been read.
+     *
+     * @param n number of bytes read
+     * @throws IOException if the chunk is not followed by a line break or an I/O error occurs
+     */
+    private void consumed(int n) throws IOException {
+        remaining -= n;
+        if (remaining == 0 && !readLine().isEmpty()) {
+            throw new IOException("Chunk is not followed by a line break.");
+        }
+    }
+
+    /**
+     * Reads a single line (terminated by LF, with an optional CR before it).
+     *
+     * @return read line without the line break
+     * @throws IOException if the line is too long, the connection is closed or an I/O error occurs
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed in the middle of a chunked body.");
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                if (line.length() == MAX_LINE_LENGTH) {
+                    throw new IOException("Chunk header line is too long.");
+                }
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream of a request body whose length is given by the <code>Content-Length</code> header.
+ * Reads exactly that many bytes from the connection and then reports the end of the stream,
+ * so that the rest of the connection is never read as a part of the body.
+ * Closing the stream does not close the connection.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ContentLengthInputStream extends InputStream {
+    /**
+     * Input stream of the connection.
+     */
+    private final InputStream in;
+
+    /**
+     * Number of bytes of the body that are not read yet.
+     */
+    private long remaining;
+
+    /**
+     * Constructs a new stream of a body with the given length.
+     *
+     * @param in input stream of the connection, positioned at the start of the body
+     * @param length length of the body in bytes
+     */
+    public ContentLengthInputStream(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Connection closed before the whole request body was received.");
+        }
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining == 0) {
+            return -1;
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n == -1) {
+            throw new EOFException("Connection closed before the whole request body was received.");
+        }
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() {
+        // the connection is closed by the server
+    }
+}
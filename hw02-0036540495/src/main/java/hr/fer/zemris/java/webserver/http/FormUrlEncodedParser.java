@@ -0,0 +1,245 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Incremental parser of <code>application/x-www-form-urlencoded</code> data
+ * (query strings and form request bodies).
+ * <p>
+ * Data can be fed in arbitrary pieces (for example as it arrives from the connection),
+ * even if a piece ends in the middle of a name, value or percent-encoded sequence.
+ * Names and values are percent-decoded (and <code>+</code> is decoded to a space) byte by byte
+ * into a single reusable buffer, so the only objects allocated per parameter are the resulting strings.
+ * Decoded bytes are interpreted as UTF-8.
+ * <p>
+ * Empty pairs (as in <code>a=1&amp;&amp;b=2</code>) are skipped and values may be empty,
+ * but every pair must have a non-empty name followed by <code>=</code>.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class FormUrlEncodedParser {
+    /**
+     * Consumer of the parsed parameters (name, value).
+     */
+    private final BiConsumer<String, String> consumer;
+
+    /**
+     * Buffer holding the decoded bytes of the current name (and, after it, the current value).
+     */
+    private byte[] buffer = new byte[64];
+
+    /**
+     * Number of decoded bytes in the buffer.
+     */
+    private int length;
+
+    /**
+     * Length of the current name in the buffer (-1 while the name is still being read).
+     */
+    private int nameLength = -1;
+
+    /**
+     * Number of hexadecimal digits of the current percent-encoded sequence read so far (-1 if not in a sequence).
+     */
+    private int escapeDigits = -1;
+
+    /**
+     * Value of the hexadecimal digits of the current percent-encoded sequence read so far.
+     */
+    private int escapeValue;
+
+    /**
+     * High surrogate that ended the last piece of character data, waiting for its low surrogate (0 if none).
+     */
+    private char highSurrogate;
+
+    /**
+     * Constructs a new parser that passes the parsed parameters to the given consumer.
+     *
+     * @param consumer consumer of the parsed parameters (name, value)
+     */
+    public FormUrlEncodedParser(BiConsumer<String, String> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parses the given data completely.
+     *
+     * @param data data to parse
+     * @param consumer consumer of the parsed parameters (name, value)
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    public static void parse(CharSequence data, BiConsumer<String, String> consumer) {
+        FormUrlEncodedParser parser = new FormUrlEncodedParser(consumer);
+        parser.feed(data);
+        parser.finish();
+    }
+
+    /**
+     * Feeds the next piece of the data to the parser.
+     *
+     * @param data array containing the data
+     * @param offset offset of the piece in the array
+     * @param length length of the piece
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    public void feed(byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            accept(data[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Feeds the next piece of the data to the parser.
+     * Characters outside of US-ASCII (which should have been percent-encoded) are taken as UTF-8.
+     * A surrogate pair may be split between two pieces; a lone surrogate is taken as <code>?</code>.
+     *
+     * @param data the data
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    public void feed(CharSequence data) {
+        for (int i = 0, n = data.length(); i < n; i++) {
+            char c = data.charAt(i);
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    acceptCodePoint(Character.toCodePoint(high, c));
+                    continue;
+                }
+                accept('?');
+            }
+            if (c < 0x80) {
+                accept(c);
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else {
+                acceptCodePoint(Character.isLowSurrogate(c) ? '?' : c);
+            }
+        }
+    }
+
+    /**
+     * Signals the end of the data, passing the last parameter to the consumer.
+     * The parser can then be reused for new data.
+     *
+     * @throws IllegalArgumentException if the data ends in an incomplete parameter
+     */
+    public void finish() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            accept('?');
+        }
+        if (escapeDigits != -1) {
+            reset();
+            throw new IllegalArgumentException("Incomplete percent-encoded sequence.");
+        }
+        endPair();
+    }
+
+    /**
+     * Processes the UTF-8 encoding of a single code point of the data.
+     *
+     * @param codePoint code point to process
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    private void acceptCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            accept(codePoint);
+        } else if (codePoint < 0x800) {
+            accept(0xC0 | (codePoint >> 6));
+            accept(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            accept(0xE0 | (codePoint >> 12));
+            accept(0x80 | ((codePoint >> 6) & 0x3F));
+            accept(0x80 | (codePoint & 0x3F));
+        } else {
+            accept(0xF0 | (codePoint >> 18));
+            accept(0x80 | ((codePoint >> 12) & 0x3F));
+            accept(0x80 | ((codePoint >> 6) & 0x3F));
+            accept(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Processes a single byte of the data.
+     *
+     * @param b byte to process
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    private void accept(int b) {
+        if (escapeDigits != -1) {
+            int digit = Character.digit(b, 16);
+            if (digit == -1) {
+                reset();
+                throw new IllegalArgumentException("Invalid percent-encoded sequence.");
+            }
+            escapeValue = (escapeValue << 4) | digit;
+            if (++escapeDigits == 2) {
+                append(escapeValue);
+                escapeDigits = -1;
+            }
+            return;
+        }
+        switch (b) {
+            case '%' -> {
+                escapeDigits = 0;
+                escapeValue = 0;
+            }
+            case '+' -> append(' ');
+            case '&' -> endPair();
+            case '=' -> {
+                if (nameLength == -1) {
+                    nameLength = length;
+                } else {
+                    append(b);
+                }
+            }
+            default -> append(b);
+        }
+    }
+
+    /**
+     * Ends the current pair, passing it to the consumer (unless it is empty).
+     *
+     * @throws IllegalArgumentException if the pair has no name or no <code>=</code>
+     */
+    private void endPair() {
+        if (nameLength == -1 && length == 0) {
+            return;
+        }
+        if (nameLength <= 0) {
+            reset();
+            throw new IllegalArgumentException("Invalid parameter format.");
+        }
+        String name = new String(buffer, 0, nameLength, StandardCharsets.UTF_8);
+        String value = new String(buffer, nameLength, length - nameLength, StandardCharsets.UTF_8);
+        reset();
+        consumer.accept(name, value);
+    }
+
+    /**
+     * Appends a decoded byte to the buffer.
+     *
+     * @param b decoded byte
+     */
+    private void append(int b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Discards any partially parsed parameter, so that the parser can be reused for new data.
+     */
+    public void reset() {
+        length = 0;
+        nameLength = -1;
+        escapeDigits = -1;
+        highSurrogate = 0;
+    }
+}
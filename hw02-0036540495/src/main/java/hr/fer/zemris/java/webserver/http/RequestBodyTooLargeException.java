@@ -0,0 +1,21 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request body turns out to be larger than the limit configured for the server.
+ * The server answers such requests with <code>413 Payload Too Large</code>.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class RequestBodyTooLargeException extends IOException {
+    /**
+     * Constructs a new exception for the given limit.
+     *
+     * @param limit maximum size of a request body in bytes
+     */
+    public RequestBodyTooLargeException(long limit) {
+        super("Request body exceeds the limit of " + limit + " bytes.");
+    }
+}
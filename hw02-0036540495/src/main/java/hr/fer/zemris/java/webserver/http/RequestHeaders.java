@@ -0,0 +1,147 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Utility methods for parsing the header of an HTTP request.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class RequestHeaders {
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private RequestHeaders() {
+    }
+
+    /**
+     * Splits the request header (lines separated by line feeds, without carriage returns) into lines,
+     * stopping at the first empty line. Lines starting with a tab or a space continue the previous line.
+     *
+     * @param header buffer holding the request header
+     * @param length length of the request header
+     * @param lines list to add the lines to
+     */
+    public static void split(byte[] header, int length, List<String> lines) {
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && header[end] != '\n') {
+                end++;
+            }
+            if (end == start) break;
+            String line = new String(header, start, end - start, StandardCharsets.US_ASCII);
+            char c = line.charAt(0);
+            if ((c == 9 || c == 32) && !lines.isEmpty()) { // tab or space
+                lines.set(lines.size() - 1, lines.getLast() + line);
+            } else {
+                lines.add(line);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns the value of the header with the given name (compared case-insensitively),
+     * skipping the first line (the request line).
+     *
+     * @param lines lines of the request header
+     * @param name name of the header
+     * @return stripped value of the header, or null if there is no such header
+     */
+    public static String value(List<String> lines, String name) {
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.length() > name.length() && line.charAt(name.length()) == ':'
+                    && line.regionMatches(true, 0, name, 0, name.length())) {
+                return line.substring(name.length() + 1).strip();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the cookie with the given name (compared case-sensitively)
+     * from the <code>Cookie</code> headers of the request, skipping the first line (the request line).
+     * If the cookie is sent more than once, the first value is returned.
+     *
+     * @param lines lines of the request header
+     * @param name name of the cookie
+     * @return value of the cookie (without enclosing quotes), or null if there is no such cookie
+     */
+    public static String cookie(List<String> lines, String name) {
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.length() > 7 && line.charAt(6) == ':' && line.regionMatches(true, 0, "Cookie", 0, 6)) {
+                String value = cookie(line, 7, name);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the cookie with the given name in the value of a <code>Cookie</code> header
+     * (<code>name=value</code> pairs separated by semicolons) in a single pass, without splitting the value.
+     * Pairs without an equals sign are skipped.
+     *
+     * @param line line of the header
+     * @param start index at which the value of the header starts
+     * @param name name of the cookie
+     * @return value of the cookie (without enclosing quotes), or null if there is no such cookie
+     */
+    public static String cookie(String line, int start, String name) {
+        int length = line.length();
+        int i = start;
+        while (i < length) {
+            while (i < length && (isWhitespace(line.charAt(i)) || line.charAt(i) == ';')) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && line.charAt(i) != '=' && line.charAt(i) != ';') {
+                i++;
+            }
+            if (i == length || line.charAt(i) == ';') {
+                continue;
+            }
+            int nameEnd = i;
+            while (nameEnd > nameStart && isWhitespace(line.charAt(nameEnd - 1))) {
+                nameEnd--;
+            }
+            int valueStart = ++i;
+            while (i < length && line.charAt(i) != ';') {
+                i++;
+            }
+            if (nameEnd - nameStart != name.length() || !line.startsWith(name, nameStart)) {
+                continue;
+            }
+            int valueEnd = i;
+            while (valueStart < valueEnd && isWhitespace(line.charAt(valueStart))) {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && isWhitespace(line.charAt(valueEnd - 1))) {
+                valueEnd--;
+            }
+            if (valueEnd - valueStart >= 2 && line.charAt(valueStart) == '"' && line.charAt(valueEnd - 1) == '"') {
+                valueStart++;
+                valueEnd--;
+            }
+            return line.substring(valueStart, valueEnd);
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the given character is a space or a tab.
+     *
+     * @param c character
+     * @return true if the character is a space or a tab
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
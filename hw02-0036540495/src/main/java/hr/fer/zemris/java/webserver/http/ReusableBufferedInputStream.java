@@ -0,0 +1,51 @@
+package hr.fer.zemris.java.webserver.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link BufferedInputStream} that can be attached to a new underlying stream,
+ * so that a single buffer can serve many connections one after another.
+ * Closing the stream closes the underlying stream but keeps the buffer for reuse.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ReusableBufferedInputStream extends BufferedInputStream {
+    /**
+     * Constructs a new stream that is not attached to any underlying stream.
+     *
+     * @param size size of the buffer
+     */
+    public ReusableBufferedInputStream(int size) {
+        super(InputStream.nullInputStream(), size);
+    }
+
+    /**
+     * Attaches this stream to the given underlying stream, discarding any buffered data.
+     *
+     * @param in new underlying stream
+     * @return this stream
+     */
+    public ReusableBufferedInputStream attach(InputStream in) {
+        this.in = in;
+        this.count = 0;
+        this.pos = 0;
+        this.markpos = -1;
+        this.marklimit = 0;
+        return this;
+    }
+
+    /**
+     * Detaches this stream from its underlying stream (without closing it), discarding any buffered data.
+     */
+    public void detach() {
+        attach(InputStream.nullInputStream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
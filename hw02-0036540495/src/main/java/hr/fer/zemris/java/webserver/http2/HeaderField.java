@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.webserver.http2;
+
+/**
+ * A single header field (name and value) of an HTTP/2 header block.
+ *
+ * @param name name of the field (lowercase; pseudo-header fields start with a colon)
+ * @param value value of the field
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public record HeaderField(String name, String value) {
+    /**
+     * Returns the size of the field as counted by HPACK: the length of the name and the value in octets,
+     * plus an overhead of 32 octets.
+     *
+     * @return size of the field
+     */
+    public int size() {
+        return name.length() + value.length() + 32;
+    }
+}
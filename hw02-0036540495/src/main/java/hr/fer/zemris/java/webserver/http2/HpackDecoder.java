@@ -0,0 +1,204 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder of HPACK header blocks (RFC 7541).
+ * The decoder keeps the dynamic table between header blocks, so all the header blocks
+ * received on a connection must be decoded by the same decoder, in the order they were received.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class HpackDecoder {
+    /**
+     * Indexing table.
+     */
+    private final HpackTable table;
+
+    /**
+     * Maximum size of the dynamic table the peer may use (the value of our SETTINGS_HEADER_TABLE_SIZE).
+     */
+    private final int maxTableSize;
+
+    /**
+     * Maximum size of a decoded header list (as counted by HPACK).
+     */
+    private final int maxHeaderListSize;
+
+    /**
+     * Header block being decoded.
+     */
+    private byte[] data;
+
+    /**
+     * Position in the header block being decoded.
+     */
+    private int position;
+
+    /**
+     * End of the header block being decoded.
+     */
+    private int limit;
+
+    /**
+     * Constructs a new decoder.
+     *
+     * @param maxTableSize maximum size of the dynamic table
+     * @param maxHeaderListSize maximum size of a decoded header list
+     */
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+        this.table = new HpackTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * Decodes a complete header block.
+     *
+     * @param block buffer holding the header block
+     * @param offset offset of the header block
+     * @param length length of the header block
+     * @return decoded header fields, in order
+     * @throws Http2Exception if the header block is invalid (connection error of type COMPRESSION_ERROR),
+     *                        or the header list is too large (connection error of type ENHANCE_YOUR_CALM)
+     */
+    public List<HeaderField> decode(byte[] block, int offset, int length) throws Http2Exception {
+        data = block;
+        position = offset;
+        limit = offset + length;
+        List<HeaderField> fields = new ArrayList<>();
+        int listSize = 0;
+        boolean fieldSeen = false;
+        while (position < limit) {
+            int b = data[position] & 0xff;
+            HeaderField field;
+            if ((b & 0x80) != 0) {
+                // indexed header field
+                field = lookup(readInteger(7));
+            } else if ((b & 0x40) != 0) {
+                // literal header field with incremental indexing
+                field = readLiteral(6);
+                table.add(field);
+            } else if ((b & 0x20) != 0) {
+                // dynamic table size update
+                if (fieldSeen) {
+                    throw compressionError("Dynamic table size update after a header field.");
+                }
+                int size = readInteger(5);
+                if (size > maxTableSize) {
+                    throw compressionError("Dynamic table size update over the limit.");
+                }
+                table.setMaxSize(size);
+                continue;
+            } else {
+                // literal header field without indexing or never indexed
+                field = readLiteral(4);
+            }
+            fieldSeen = true;
+            listSize += field.size();
+            if (listSize > maxHeaderListSize) {
+                throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Header list is too large.");
+            }
+            fields.add(field);
+        }
+        data = null;
+        return fields;
+    }
+
+    /**
+     * Reads a literal header field whose name index has the given prefix length.
+     *
+     * @param prefixBits number of bits of the name index prefix
+     * @return read header field
+     * @throws Http2Exception if the field is invalid
+     */
+    private HeaderField readLiteral(int prefixBits) throws Http2Exception {
+        int nameIndex = readInteger(prefixBits);
+        String name = nameIndex == 0 ? readString() : lookup(nameIndex).name();
+        return new HeaderField(name, readString());
+    }
+
+    /**
+     * Returns the table entry with the given index.
+     *
+     * @param index index of the entry
+     * @return table entry
+     * @throws Http2Exception if there is no such entry
+     */
+    private HeaderField lookup(int index) throws Http2Exception {
+        HeaderField field = table.get(index);
+        if (field == null) {
+            throw compressionError("Invalid table index " + index + ".");
+        }
+        return field;
+    }
+
+    /**
+     * Reads an integer with the given prefix length (RFC 7541, section 5.1).
+     *
+     * @param prefixBits number of bits of the prefix
+     * @return read integer
+     * @throws Http2Exception if the integer is truncated or too large
+     */
+    private int readInteger(int prefixBits) throws Http2Exception {
+        int max = (1 << prefixBits) - 1;
+        int value = data[position++] & max;
+        if (value < max) {
+            return value;
+        }
+        for (int shift = 0; ; shift += 7) {
+            if (position >= limit) {
+                throw compressionError("Truncated integer.");
+            }
+            if (shift > 21) {
+                throw compressionError("Integer is too large.");
+            }
+            int b = data[position++] & 0xff;
+            value += (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Reads a (possibly Huffman-encoded) string literal (RFC 7541, section 5.2).
+     *
+     * @return read string
+     * @throws Http2Exception if the string is truncated or invalid
+     */
+    private String readString() throws Http2Exception {
+        if (position >= limit) {
+            throw compressionError("Truncated string.");
+        }
+        boolean huffman = (data[position] & 0x80) != 0;
+        int length = readInteger(7);
+        if (length > limit - position) {
+            throw compressionError("Truncated string.");
+        }
+        String s;
+        if (huffman) {
+            s = Huffman.decode(data, position, length);
+        } else {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (data[position + i] & 0xff);
+            }
+            s = new String(chars);
+        }
+        position += length;
+        return s;
+    }
+
+    /**
+     * Creates a connection error of type COMPRESSION_ERROR.
+     *
+     * @param message description of the error
+     * @return created exception
+     */
+    private static Http2Exception compressionError(String message) {
+        return new Http2Exception(Http2ErrorCode.COMPRESSION_ERROR, message);
+    }
+}
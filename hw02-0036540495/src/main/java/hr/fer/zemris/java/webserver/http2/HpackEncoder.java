@@ -0,0 +1,160 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Encoder of HPACK header blocks (RFC 7541).
+ * Fields found in the indexing table are sent as an index; other fields are sent as literals and
+ * added to the dynamic table, except for values that change with every response (which would only evict
+ * useful entries) and sensitive values (which are sent as never-indexed literals).
+ * String literals are Huffman-encoded when that makes them shorter.
+ * <p>
+ * The encoder keeps the dynamic table between header blocks, so the encoded header blocks
+ * must be sent in the order they were encoded.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class HpackEncoder {
+    /**
+     * Fields whose values usually change with every response, so they are not added to the dynamic table.
+     */
+    private static final Set<String> NOT_INDEXED = Set.of(
+            ":path", "content-length", "date", "etag", "last-modified", "age", "expires", "retry-after"
+    );
+
+    /**
+     * Fields whose values are sensitive, so they are sent as never-indexed literals.
+     */
+    private static final Set<String> NEVER_INDEXED = Set.of("set-cookie", "cookie", "authorization");
+
+    /**
+     * Largest value that is still added to the dynamic table.
+     */
+    private static final int MAX_INDEXED_VALUE = 256;
+
+    /**
+     * Indexing table.
+     */
+    private final HpackTable table;
+
+    /**
+     * Smallest maximum table size set since the last header block (-1 if the size did not change).
+     */
+    private int minPendingSize = -1;
+
+    /**
+     * Constructs a new encoder.
+     *
+     * @param maxTableSize maximum size of the dynamic table
+     */
+    public HpackEncoder(int maxTableSize) {
+        this.table = new HpackTable(maxTableSize);
+    }
+
+    /**
+     * Changes the maximum size of the dynamic table (for example when the peer changes SETTINGS_HEADER_TABLE_SIZE).
+     * The change is announced to the peer at the start of the next header block.
+     *
+     * @param maxTableSize new maximum size of the dynamic table
+     */
+    public void setMaxTableSize(int maxTableSize) {
+        if (maxTableSize == table.getMaxSize() && minPendingSize == -1) {
+            return;
+        }
+        minPendingSize = minPendingSize == -1 ? maxTableSize : Math.min(minPendingSize, maxTableSize);
+        table.setMaxSize(maxTableSize);
+    }
+
+    /**
+     * Encodes the given fields into a header block.
+     *
+     * @param fields fields to encode
+     * @param out stream to write the header block to
+     */
+    public void encode(List<HeaderField> fields, ByteArrayOutputStream out) {
+        if (minPendingSize != -1) {
+            if (minPendingSize < table.getMaxSize()) {
+                writeInteger(out, 0x20, 5, minPendingSize);
+            }
+            writeInteger(out, 0x20, 5, table.getMaxSize());
+            minPendingSize = -1;
+        }
+        for (HeaderField field : fields) {
+            if (NEVER_INDEXED.contains(field.name())) {
+                writeLiteral(out, 0x10, 4, field);
+                continue;
+            }
+            int index = table.indexOf(field);
+            if (index != 0) {
+                writeInteger(out, 0x80, 7, index);
+            } else if (NOT_INDEXED.contains(field.name()) || field.value().length() > MAX_INDEXED_VALUE) {
+                writeLiteral(out, 0x00, 4, field);
+            } else {
+                writeLiteral(out, 0x40, 6, field);
+                table.add(field);
+            }
+        }
+    }
+
+    /**
+     * Writes a literal header field, referring to the name by its index if it is in the table.
+     *
+     * @param out stream to write to
+     * @param pattern bit pattern of the representation
+     * @param prefixBits number of bits of the name index prefix
+     * @param field field to write
+     */
+    private void writeLiteral(ByteArrayOutputStream out, int pattern, int prefixBits, HeaderField field) {
+        int nameIndex = table.indexOfName(field.name());
+        writeInteger(out, pattern, prefixBits, nameIndex);
+        if (nameIndex == 0) {
+            writeString(out, field.name());
+        }
+        writeString(out, field.value());
+    }
+
+    /**
+     * Writes a string literal, Huffman-encoded if that makes it shorter.
+     *
+     * @param out stream to write to
+     * @param s string to write
+     */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        int huffmanLength = Huffman.encodedLength(s);
+        if (huffmanLength < s.length()) {
+            writeInteger(out, 0x80, 7, huffmanLength);
+            Huffman.encode(s, out);
+        } else {
+            writeInteger(out, 0x00, 7, s.length());
+            for (int i = 0; i < s.length(); i++) {
+                out.write(s.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Writes an integer with the given prefix length (RFC 7541, section 5.1).
+     *
+     * @param out stream to write to
+     * @param pattern bits of the first octet above the prefix
+     * @param prefixBits number of bits of the prefix
+     * @param value integer to write
+     */
+    private static void writeInteger(ByteArrayOutputStream out, int pattern, int prefixBits, int value) {
+        int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(pattern | value);
+            return;
+        }
+        out.write(pattern | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
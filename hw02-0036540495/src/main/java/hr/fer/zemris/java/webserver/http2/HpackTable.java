@@ -0,0 +1,227 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexing table of HPACK (RFC 7541, section 2.3): the static table followed by a dynamic table
+ * of bounded size, in which the most recently added field has the lowest index.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+class HpackTable {
+    /**
+     * Static table (RFC 7541, appendix A); index 1 is at position 0.
+     */
+    private static final HeaderField[] STATIC_TABLE = {
+            new HeaderField(":authority", ""),
+            new HeaderField(":method", "GET"),
+            new HeaderField(":method", "POST"),
+            new HeaderField(":path", "/"),
+            new HeaderField(":path", "/index.html"),
+            new HeaderField(":scheme", "http"),
+            new HeaderField(":scheme", "https"),
+            new HeaderField(":status", "200"),
+            new HeaderField(":status", "204"),
+            new HeaderField(":status", "206"),
+            new HeaderField(":status", "304"),
+            new HeaderField(":status", "400"),
+            new HeaderField(":status", "404"),
+            new HeaderField(":status", "500"),
+            new HeaderField("accept-charset", ""),
+            new HeaderField("accept-encoding", "gzip, deflate"),
+            new HeaderField("accept-language", ""),
+            new HeaderField("accept-ranges", ""),
+            new HeaderField("accept", ""),
+            new HeaderField("access-control-allow-origin", ""),
+            new HeaderField("age", ""),
+            new HeaderField("allow", ""),
+            new HeaderField("authorization", ""),
+            new HeaderField("cache-control", ""),
+            new HeaderField("content-disposition", ""),
+            new HeaderField("content-encoding", ""),
+            new HeaderField("content-language", ""),
+            new HeaderField("content-length", ""),
+            new HeaderField("content-location", ""),
+            new HeaderField("content-range", ""),
+            new HeaderField("content-type", ""),
+            new HeaderField("cookie", ""),
+            new HeaderField("date", ""),
+            new HeaderField("etag", ""),
+            new HeaderField("expect", ""),
+            new HeaderField("expires", ""),
+            new HeaderField("from", ""),
+            new HeaderField("host", ""),
+            new HeaderField("if-match", ""),
+            new HeaderField("if-modified-since", ""),
+            new HeaderField("if-none-match", ""),
+            new HeaderField("if-range", ""),
+            new HeaderField("if-unmodified-since", ""),
+            new HeaderField("last-modified", ""),
+            new HeaderField("link", ""),
+            new HeaderField("location", ""),
+            new HeaderField("max-forwards", ""),
+            new HeaderField("proxy-authenticate", ""),
+            new HeaderField("proxy-authorization", ""),
+            new HeaderField("range", ""),
+            new HeaderField("referer", ""),
+            new HeaderField("refresh", ""),
+            new HeaderField("retry-after", ""),
+            new HeaderField("server", ""),
+            new HeaderField("set-cookie", ""),
+            new HeaderField("strict-transport-security", ""),
+            new HeaderField("transfer-encoding", ""),
+            new HeaderField("user-agent", ""),
+            new HeaderField("vary", ""),
+            new HeaderField("via", ""),
+            new HeaderField("www-authenticate", "")
+    };
+
+    /**
+     * Index of the first static table entry with the given name.
+     */
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+
+    /**
+     * Index of the static table entry with the given name and value.
+     */
+    private static final Map<HeaderField, Integer> STATIC_FIELDS = new HashMap<>();
+
+    static {
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+            STATIC_NAMES.put(STATIC_TABLE[i].name(), i + 1);
+            STATIC_FIELDS.put(STATIC_TABLE[i], i + 1);
+        }
+    }
+
+    /**
+     * Entries of the dynamic table, the most recently added one last.
+     */
+    private final List<HeaderField> dynamicTable = new ArrayList<>();
+
+    /**
+     * Current size of the dynamic table.
+     */
+    private int size;
+
+    /**
+     * Maximum size of the dynamic table.
+     */
+    private int maxSize;
+
+    /**
+     * Constructs a new table.
+     *
+     * @param maxSize maximum size of the dynamic table
+     */
+    HpackTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the entry with the given index.
+     *
+     * @param index index of the entry (starting from 1)
+     * @return entry with the given index, or null if there is no such entry
+     */
+    HeaderField get(int index) {
+        if (index >= 1 && index <= STATIC_TABLE.length) {
+            return STATIC_TABLE[index - 1];
+        }
+        int dynamicIndex = index - STATIC_TABLE.length - 1;
+        if (dynamicIndex < 0 || dynamicIndex >= dynamicTable.size()) {
+            return null;
+        }
+        return dynamicTable.get(dynamicTable.size() - 1 - dynamicIndex);
+    }
+
+    /**
+     * Returns the index of the entry with the given name and value.
+     *
+     * @param field field to look for
+     * @return index of the entry, or 0 if there is no such entry
+     */
+    int indexOf(HeaderField field) {
+        Integer index = STATIC_FIELDS.get(field);
+        if (index != null) {
+            return index;
+        }
+        for (int i = dynamicTable.size() - 1; i >= 0; i--) {
+            if (dynamicTable.get(i).equals(field)) {
+                return STATIC_TABLE.length + dynamicTable.size() - i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the index of an entry with the given name.
+     *
+     * @param name name to look for
+     * @return index of the entry, or 0 if there is no such entry
+     */
+    int indexOfName(String name) {
+        Integer index = STATIC_NAMES.get(name);
+        if (index != null) {
+            return index;
+        }
+        for (int i = dynamicTable.size() - 1; i >= 0; i--) {
+            if (dynamicTable.get(i).name().equals(name)) {
+                return STATIC_TABLE.length + dynamicTable.size() - i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the given field to the dynamic table, evicting the oldest entries to make room for it.
+     * A field larger than the maximum size empties the table.
+     *
+     * @param field field to add
+     */
+    void add(HeaderField field) {
+        if (field.size() > maxSize) {
+            dynamicTable.clear();
+            size = 0;
+            return;
+        }
+        evict(maxSize - field.size());
+        dynamicTable.add(field);
+        size += field.size();
+    }
+
+    /**
+     * Changes the maximum size of the dynamic table, evicting the oldest entries if needed.
+     *
+     * @param maxSize new maximum size of the dynamic table
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    /**
+     * Returns the maximum size of the dynamic table.
+     *
+     * @return maximum size of the dynamic table
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Evicts the oldest entries until the size of the dynamic table is at most the given size.
+     *
+     * @param targetSize size to evict down to
+     */
+    private void evict(int targetSize) {
+        int evicted = 0;
+        while (size > targetSize) {
+            size -= dynamicTable.get(evicted++).size();
+        }
+        dynamicTable.subList(0, evicted).clear();
+    }
+}
@@ -0,0 +1,1222 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Server side of an HTTP/2 connection over cleartext TCP (h2c), started either with prior knowledge
+ * (the client starts with the connection preface) or by upgrading an HTTP/1.1 request with <code>Upgrade: h2c</code>.
+ * <p>
+ * The thread that calls one of the serve methods reads and handles all the frames of the connection.
+ * Every request is handed to the stream handler as an {@link Http2Stream} as soon as its header is complete,
+ * and is processed on another thread, so any number of requests (up to the advertised limit of concurrent streams)
+ * share the connection. Frames are written by the threads processing the streams; a single lock keeps frames
+ * (and the HPACK encoder state) in order. DATA frames are subject to flow control in both directions:
+ * a stream writing its response waits while its send window or the connection's send window is exhausted,
+ * and a stream's receive window is only reopened as its request body is read.
+ *
+ * @see Http2Stream
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class Http2Connection {
+    /**
+     * First line of the connection preface, which HTTP/1.1 parsing sees as a request line.
+     */
+    public static final String PREFACE_REQUEST_LINE = "PRI * HTTP/2.0";
+
+    /**
+     * Connection preface sent by the client.
+     */
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Length of the part of the preface that follows the (HTTP/1.1-like) request header.
+     */
+    private static final int PREFACE_TAIL_LENGTH = 6;
+
+    /**
+     * Response that switches an upgraded HTTP/1.1 connection to HTTP/2.
+     */
+    private static final byte[] SWITCHING_PROTOCOLS = ("HTTP/1.1 101 Switching Protocols\r\n" +
+            "Connection: Upgrade\r\n" +
+            "Upgrade: h2c\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Maximum size of a frame payload, in both directions.
+     */
+    static final int MAX_FRAME_SIZE = 16384;
+
+    /**
+     * Initial size of flow-control windows defined by the protocol.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+
+    /**
+     * Maximum size of the HPACK dynamic tables.
+     */
+    private static final int HEADER_TABLE_SIZE = 4096;
+
+    /**
+     * Maximum size of a request header block, and of the decoded header list.
+     */
+    private static final int MAX_HEADER_LIST_SIZE = 65536;
+
+    /**
+     * Frame types.
+     */
+    private static final int DATA = 0x0, HEADERS = 0x1, PRIORITY = 0x2, RST_STREAM = 0x3, SETTINGS = 0x4,
+            PUSH_PROMISE = 0x5, PING = 0x6, GOAWAY = 0x7, WINDOW_UPDATE = 0x8, CONTINUATION = 0x9;
+
+    /**
+     * Frame flags.
+     */
+    private static final int FLAG_END_STREAM = 0x1, FLAG_ACK = 0x1, FLAG_END_HEADERS = 0x4,
+            FLAG_PADDED = 0x8, FLAG_PRIORITY = 0x20;
+
+    /**
+     * Identifiers of settings.
+     */
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1, SETTINGS_ENABLE_PUSH = 0x2,
+            SETTINGS_MAX_CONCURRENT_STREAMS = 0x3, SETTINGS_INITIAL_WINDOW_SIZE = 0x4,
+            SETTINGS_MAX_FRAME_SIZE = 0x5, SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    /**
+     * Options of HTTP/2 connections.
+     *
+     * @param maxConcurrentStreams maximum number of streams a client may have open at once
+     * @param initialWindowSize size of the receive window of every stream (at least 65535)
+     * @param idleTimeout time in milliseconds after which a connection without open streams is closed
+     * @param maxBodySize maximum size of a request body in bytes
+     */
+    public record Options(int maxConcurrentStreams, int initialWindowSize, int idleTimeout, long maxBodySize) {
+        /**
+         * Validates the options.
+         *
+         * @throws IllegalArgumentException if any of the options is invalid
+         */
+        public Options {
+            if (maxConcurrentStreams < 1 || initialWindowSize < DEFAULT_WINDOW_SIZE || idleTimeout < 0) {
+                throw new IllegalArgumentException("Invalid HTTP/2 options.");
+            }
+        }
+    }
+
+    /**
+     * Socket of the connection.
+     */
+    private final Socket socket;
+
+    /**
+     * Stream from which frames are read.
+     */
+    private final InputStream in;
+
+    /**
+     * Stream to which frames are written (guarded by {@link #writeLock}).
+     */
+    private final OutputStream out;
+
+    /**
+     * Options of the connection.
+     */
+    private final Options options;
+
+    /**
+     * Handler to which new streams are handed (may throw {@link RejectedExecutionException} to refuse a stream).
+     */
+    private final Consumer<Http2Stream> handler;
+
+    /**
+     * Lock that serializes writing frames.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Encoder of response header blocks (guarded by {@link #writeLock}).
+     */
+    private final HpackEncoder encoder = new HpackEncoder(HEADER_TABLE_SIZE);
+
+    /**
+     * Buffer into which header blocks are encoded (guarded by {@link #writeLock}).
+     */
+    private final ByteArrayOutputStream encodedHeaders = new ByteArrayOutputStream(256);
+
+    /**
+     * Buffer for frame headers being written (guarded by {@link #writeLock}).
+     */
+    private final byte[] writeHeader = new byte[9];
+
+    /**
+     * Decoder of request header blocks (used by the reading thread only).
+     */
+    private final HpackDecoder decoder = new HpackDecoder(HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+
+    /**
+     * Buffer for frame headers being read.
+     */
+    private final byte[] readHeader = new byte[9];
+
+    /**
+     * Buffer for frame payloads being read.
+     */
+    private final byte[] payload = new byte[MAX_FRAME_SIZE];
+
+    /**
+     * Header block being received (in a HEADERS frame followed by CONTINUATION frames).
+     */
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream(256);
+
+    /**
+     * Identifier of the stream whose header block is being received (0 if none).
+     */
+    private int headerBlockStream;
+
+    /**
+     * Flag that signals that the header block being received ends its stream.
+     */
+    private boolean headerBlockEndsStream;
+
+    /**
+     * Open streams by their identifiers.
+     */
+    private final Map<Integer, Http2Stream> streams = new HashMap<>();
+
+    /**
+     * Highest identifier of a stream opened by the client.
+     */
+    private int lastStreamId;
+
+    /**
+     * Number of bytes the server may still send on the connection (over all streams).
+     */
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Number of bytes received on the connection since the connection receive window was last reopened.
+     */
+    private int connectionUnacknowledged;
+
+    /**
+     * Initial send window of new streams, as set by the client.
+     */
+    private long peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Flag that signals that one of the sides sent GOAWAY, so no new streams are accepted.
+     */
+    private boolean goingAway;
+
+    /**
+     * Flag that signals that the output of the connection was shut down after the last stream was closed.
+     */
+    private boolean outputShutdown;
+
+    /**
+     * Flag that signals that the connection is being closed.
+     */
+    private volatile boolean closing;
+
+    /**
+     * Constructs a new connection.
+     *
+     * @param socket socket of the connection
+     * @param in stream from which frames are read (possibly holding bytes already read from the socket)
+     * @param out stream to which frames are written
+     * @param options options of the connection
+     * @param handler handler to which new streams are handed; it may throw {@link RejectedExecutionException}
+     *                to refuse a stream
+     */
+    public Http2Connection(Socket socket, InputStream in, OutputStream out, Options options, Consumer<Http2Stream> handler) {
+        this.socket = socket;
+        this.in = in;
+        this.out = new BufferedOutputStream(out, MAX_FRAME_SIZE + 9);
+        this.options = options;
+        this.handler = handler;
+    }
+
+    /**
+     * Serves a connection started with prior knowledge, whose first line (the request line of the preface)
+     * and the following empty line have already been read.
+     * Returns when the connection is closed.
+     *
+     * @throws IOException if an I/O error occurs or the client violates the protocol
+     */
+    public void servePriorKnowledge() throws IOException {
+        try {
+            writeSettings();
+            readPreface(PREFACE.length - PREFACE_TAIL_LENGTH);
+            readFrames();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Serves a connection upgraded from HTTP/1.1: sends <code>101 Switching Protocols</code>,
+     * applies the client's settings from the <code>HTTP2-Settings</code> header and answers the upgraded request
+     * on stream 1, while reading the client's connection preface and further frames.
+     * The upgraded request must not have a body. Returns when the connection is closed.
+     *
+     * @param requestLines lines of the upgraded HTTP/1.1 request header (request line first)
+     * @param settings value of the <code>HTTP2-Settings</code> header
+     * @throws IOException if an I/O error occurs or the client violates the protocol
+     */
+    public void serveUpgrade(List<String> requestLines, String settings) throws IOException {
+        try {
+            byte[] decodedSettings;
+            try {
+                decodedSettings = Base64.getUrlDecoder().decode(settings.strip());
+            } catch (IllegalArgumentException e) {
+                throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid HTTP2-Settings header.");
+            }
+            synchronized (writeLock) {
+                out.write(SWITCHING_PROTOCOLS);
+            }
+            applySettings(decodedSettings, decodedSettings.length);
+            writeSettings();
+            openStream(1, fromHttp1(requestLines), true);
+            readPreface(0);
+            readFrames();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Sends GOAWAY, so the client opens no new streams on this connection,
+     * and shuts the connection down once the open streams are closed.
+     *
+     * @return true if there were no open streams, so the connection is shutting down immediately
+     */
+    public boolean goAway() {
+        synchronized (this) {
+            if (goingAway || closing) {
+                return false;
+            }
+            goingAway = true;
+        }
+        try {
+            writeGoAway(Http2ErrorCode.NO_ERROR);
+        } catch (IOException ignored) {
+        }
+        return shutdownIfDone();
+    }
+
+    /**
+     * Returns the number of open streams.
+     *
+     * @return number of open streams
+     */
+    public synchronized int getOpenStreams() {
+        return streams.size();
+    }
+
+    /**
+     * Checks whether the connection is being closed.
+     *
+     * @return true if the connection is being closed
+     */
+    boolean isClosing() {
+        return closing;
+    }
+
+    /**
+     * Reads the rest of the client's connection preface.
+     *
+     * @param offset number of bytes of the preface that have already been read
+     * @throws IOException if an I/O error occurs or the preface is invalid
+     */
+    private void readPreface(int offset) throws IOException {
+        byte[] preface = new byte[PREFACE.length - offset];
+        readFully(preface, preface.length);
+        if (!Arrays.equals(preface, 0, preface.length, PREFACE, offset, PREFACE.length)) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid connection preface.");
+        }
+    }
+
+    /**
+     * Reads and handles frames until the client closes the connection, the connection stays idle for too long,
+     * or the connection is shut down after GOAWAY.
+     *
+     * @throws IOException if an I/O error occurs or the client violates the protocol
+     */
+    private void readFrames() throws IOException {
+        socket.setSoTimeout(options.idleTimeout());
+        try {
+            while (true) {
+                int first;
+                try {
+                    first = in.read();
+                } catch (SocketTimeoutException e) {
+                    synchronized (this) {
+                        if (!streams.isEmpty()) {
+                            continue;
+                        }
+                        if (goingAway) {
+                            return;
+                        }
+                    }
+                    goAway();
+                    continue;
+                }
+                if (first == -1) {
+                    return;
+                }
+                readHeader[0] = (byte) first;
+                readFully(readHeader, 1, 8);
+                int length = ((readHeader[0] & 0xff) << 16) | ((readHeader[1] & 0xff) << 8) | (readHeader[2] & 0xff);
+                int type = readHeader[3] & 0xff;
+                int flags = readHeader[4] & 0xff;
+                int streamId = readInt(readHeader, 5) & 0x7fffffff;
+                if (length > MAX_FRAME_SIZE) {
+                    throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Frame is too large.");
+                }
+                readFully(payload, length);
+                try {
+                    handleFrame(type, flags, streamId, length);
+                } catch (Http2Exception e) {
+                    if (e.getStreamId() == 0) {
+                        throw e;
+                    }
+                    resetStream(e.getStreamId(), e.getError());
+                }
+            }
+        } catch (Http2Exception e) {
+            writeGoAway(e.getError());
+            throw e;
+        } catch (IOException e) {
+            if (!closing && !outputShutdown()) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Handles a single frame.
+     *
+     * @param type type of the frame
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws IOException if an I/O error occurs or the frame violates the protocol
+     */
+    private void handleFrame(int type, int flags, int streamId, int length) throws IOException {
+        if (headerBlockStream != 0 && type != CONTINUATION) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Expected a CONTINUATION frame.");
+        }
+        switch (type) {
+            case DATA -> handleData(flags, streamId, length);
+            case HEADERS -> handleHeaders(flags, streamId, length);
+            case PRIORITY -> {
+                if (streamId == 0) {
+                    throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PRIORITY frame on stream 0.");
+                }
+                if (length != 5) {
+                    throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, streamId, "Invalid PRIORITY frame size.");
+                }
+            }
+            case RST_STREAM -> handleRstStream(streamId, length);
+            case SETTINGS -> handleSettings(flags, streamId, length);
+            case PUSH_PROMISE -> throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Clients must not push.");
+            case PING -> {
+                if (streamId != 0) {
+                    throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PING frame on a stream.");
+                }
+                if (length != 8) {
+                    throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid PING frame size.");
+                }
+                if ((flags & FLAG_ACK) == 0) {
+                    writeFrame(PING, FLAG_ACK, 0, payload, 0, 8, true);
+                }
+            }
+            case GOAWAY -> {
+                if (streamId != 0) {
+                    throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "GOAWAY frame on a stream.");
+                }
+                synchronized (this) {
+                    goingAway = true;
+                }
+                shutdownIfDone();
+            }
+            case WINDOW_UPDATE -> handleWindowUpdate(streamId, length);
+            case CONTINUATION -> {
+                if (streamId == 0 || streamId != headerBlockStream) {
+                    throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Unexpected CONTINUATION frame.");
+                }
+                appendHeaderBlock(0, length, flags);
+            }
+            default -> {
+                // unknown frame types are ignored
+            }
+        }
+    }
+
+    /**
+     * Handles a DATA frame.
+     *
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws IOException if an I/O error occurs or the frame violates the protocol
+     */
+    private void handleData(int flags, int streamId, int length) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA frame on stream 0.");
+        }
+        int offset = 0;
+        int dataLength = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1) {
+                throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid DATA frame size.");
+            }
+            offset = 1;
+            dataLength = length - 1 - (payload[0] & 0xff);
+            if (dataLength < 0) {
+                throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Padding exceeds the DATA frame.");
+            }
+        }
+        int update = 0;
+        try {
+            synchronized (this) {
+                // the connection window is reopened as soon as the data is buffered,
+                // since the buffers of the streams are bounded by their own windows
+                connectionUnacknowledged += length;
+                if (connectionUnacknowledged >= DEFAULT_WINDOW_SIZE / 2) {
+                    update = connectionUnacknowledged;
+                    connectionUnacknowledged = 0;
+                }
+                Http2Stream stream = streams.get(streamId);
+                if (stream == null) {
+                    if (streamId > lastStreamId) {
+                        throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA frame on an idle stream.");
+                    }
+                    // data of a stream that is already closed is discarded
+                    return;
+                }
+                stream.receiveData(payload, offset, dataLength, length, (flags & FLAG_END_STREAM) != 0);
+                notifyAll();
+            }
+        } finally {
+            if (update > 0) {
+                writeWindowUpdate(0, update);
+            }
+        }
+    }
+
+    /**
+     * Handles a HEADERS frame.
+     *
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws IOException if an I/O error occurs or the frame violates the protocol
+     */
+    private void handleHeaders(int flags, int streamId, int length) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "HEADERS frame on stream 0.");
+        }
+        int offset = 0;
+        int end = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1) {
+                throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid HEADERS frame size.");
+            }
+            offset = 1;
+            end = length - (payload[0] & 0xff);
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            offset += 5;
+        }
+        if (end < offset) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Padding exceeds the HEADERS frame.");
+        }
+        headerBlock.reset();
+        headerBlockStream = streamId;
+        headerBlockEndsStream = (flags & FLAG_END_STREAM) != 0;
+        appendHeaderBlock(offset, end - offset, flags);
+    }
+
+    /**
+     * Appends a fragment of a header block, and handles the header block once it is complete.
+     *
+     * @param offset offset of the fragment in the payload
+     * @param length length of the fragment
+     * @param flags flags of the frame
+     * @throws IOException if an I/O error occurs or the header block violates the protocol
+     */
+    private void appendHeaderBlock(int offset, int length, int flags) throws IOException {
+        if (headerBlock.size() + length > MAX_HEADER_LIST_SIZE) {
+            throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Header block is too large.");
+        }
+        headerBlock.write(payload, offset, length);
+        if ((flags & FLAG_END_HEADERS) == 0) {
+            return;
+        }
+        int streamId = headerBlockStream;
+        headerBlockStream = 0;
+        byte[] block = headerBlock.toByteArray();
+        List<HeaderField> fields = decoder.decode(block, 0, block.length);
+
+        Http2Stream existing;
+        synchronized (this) {
+            existing = streams.get(streamId);
+            if (existing != null) {
+                // trailers, which are ignored apart from ending the stream
+                if (!headerBlockEndsStream) {
+                    throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Trailers must end the stream.");
+                }
+                existing.receiveEnd();
+                notifyAll();
+                return;
+            }
+            if (streamId <= lastStreamId) {
+                throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, "HEADERS frame on a closed stream.");
+            }
+            if (streamId % 2 == 0) {
+                throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Clients must use odd stream identifiers.");
+            }
+            lastStreamId = streamId;
+            if (goingAway || streams.size() >= options.maxConcurrentStreams()) {
+                throw new Http2Exception(Http2ErrorCode.REFUSED_STREAM, streamId, "Stream refused.");
+            }
+        }
+        String malformed = validateRequest(fields);
+        if (malformed != null) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, malformed);
+        }
+        openStream(streamId, fields, headerBlockEndsStream);
+    }
+
+    /**
+     * Opens a new stream and hands it to the handler (refusing it if the handler rejects it).
+     *
+     * @param streamId identifier of the stream
+     * @param fields header fields of the request
+     * @param endStream true if the request has no body
+     */
+    private void openStream(int streamId, List<HeaderField> fields, boolean endStream) {
+        Http2Stream stream;
+        synchronized (this) {
+            stream = new Http2Stream(this, streamId, fields, options.initialWindowSize(),
+                    peerInitialWindowSize, options.maxBodySize());
+            if (endStream) {
+                stream.receiveEnd();
+            }
+            streams.put(streamId, stream);
+            lastStreamId = Math.max(lastStreamId, streamId);
+        }
+        try {
+            handler.accept(stream);
+        } catch (RejectedExecutionException e) {
+            resetStream(stream, Http2ErrorCode.REFUSED_STREAM);
+        }
+    }
+
+    /**
+     * Handles a RST_STREAM frame.
+     *
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws Http2Exception if the frame violates the protocol
+     */
+    private void handleRstStream(int streamId, int length) throws Http2Exception {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "RST_STREAM frame on stream 0.");
+        }
+        if (length != 4) {
+            throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid RST_STREAM frame size.");
+        }
+        synchronized (this) {
+            if (streamId > lastStreamId) {
+                throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "RST_STREAM frame on an idle stream.");
+            }
+            Http2Stream stream = streams.remove(streamId);
+            if (stream == null) {
+                return;
+            }
+            stream.reset(Http2ErrorCode.CANCEL);
+            notifyAll();
+        }
+        shutdownIfDone();
+    }
+
+    /**
+     * Handles a SETTINGS frame.
+     *
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws IOException if an I/O error occurs or the frame violates the protocol
+     */
+    private void handleSettings(int flags, int streamId, int length) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "SETTINGS frame on a stream.");
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) {
+                throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload.");
+            }
+            return;
+        }
+        applySettings(payload, length);
+        writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0, 0, true);
+    }
+
+    /**
+     * Applies the settings sent by the client.
+     *
+     * @param settings buffer holding the settings
+     * @param length length of the settings
+     * @throws Http2Exception if the settings are invalid
+     */
+    private void applySettings(byte[] settings, int length) throws Http2Exception {
+        if (length % 6 != 0) {
+            throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid SETTINGS frame size.");
+        }
+        for (int i = 0; i < length; i += 6) {
+            int id = ((settings[i] & 0xff) << 8) | (settings[i + 1] & 0xff);
+            long value = readInt(settings, i + 2) & 0xffffffffL;
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE -> {
+                    synchronized (writeLock) {
+                        encoder.setMaxTableSize((int) Math.min(value, HEADER_TABLE_SIZE));
+                    }
+                }
+                case SETTINGS_ENABLE_PUSH -> {
+                    if (value > 1) {
+                        throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH.");
+                    }
+                }
+                case SETTINGS_INITIAL_WINDOW_SIZE -> {
+                    if (value > Integer.MAX_VALUE) {
+                        throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE.");
+                    }
+                    synchronized (this) {
+                        long delta = value - peerInitialWindowSize;
+                        peerInitialWindowSize = value;
+                        for (Http2Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        notifyAll();
+                    }
+                }
+                case SETTINGS_MAX_FRAME_SIZE -> {
+                    if (value < MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE.");
+                    }
+                    // frames larger than the default maximum are never sent, so a larger limit changes nothing
+                }
+                default -> {
+                    // SETTINGS_MAX_CONCURRENT_STREAMS and SETTINGS_MAX_HEADER_LIST_SIZE do not restrict
+                    // a server that does not push, and unknown settings are ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a WINDOW_UPDATE frame.
+     *
+     * @param streamId stream identifier of the frame
+     * @param length length of the frame payload
+     * @throws Http2Exception if the frame violates the protocol
+     */
+    private void handleWindowUpdate(int streamId, int length) throws Http2Exception {
+        if (length != 4) {
+            throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame size.");
+        }
+        int increment = readInt(payload, 0) & 0x7fffffff;
+        if (increment == 0) {
+            throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Window increment of 0.");
+        }
+        synchronized (this) {
+            if (streamId == 0) {
+                connectionSendWindow += increment;
+                if (connectionSendWindow > Integer.MAX_VALUE) {
+                    throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Connection window overflow.");
+                }
+            } else {
+                Http2Stream stream = streams.get(streamId);
+                if (stream == null) {
+                    return;
+                }
+                stream.sendWindow += increment;
+                if (stream.sendWindow > Integer.MAX_VALUE) {
+                    throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, streamId, "Stream window overflow.");
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes the response header block of a stream, split into HEADERS and CONTINUATION frames as needed.
+     * The frames are not flushed, since the response body (or the end of the stream) follows.
+     *
+     * @param stream stream of the response
+     * @param fields header fields of the response (status first)
+     * @throws IOException if the stream was reset or the frames cannot be written
+     */
+    void writeHeaders(Http2Stream stream, List<HeaderField> fields) throws IOException {
+        synchronized (this) {
+            stream.checkUsable();
+        }
+        synchronized (writeLock) {
+            encodedHeaders.reset();
+            encoder.encode(fields, encodedHeaders);
+            byte[] block = encodedHeaders.toByteArray();
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                int length = Math.min(block.length - offset, MAX_FRAME_SIZE);
+                int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+                writeFrameHeader(length, type, flags, stream.getId());
+                out.write(block, offset, length);
+                offset += length;
+                type = CONTINUATION;
+            } while (offset < block.length);
+        }
+    }
+
+    /**
+     * Writes response body data of a stream in DATA frames, waiting for the flow-control windows to open as needed.
+     *
+     * @param stream stream of the response
+     * @param data buffer holding the data
+     * @param offset offset of the data
+     * @param length length of the data
+     * @param endStream true if the data ends the stream
+     * @throws IOException if the stream was reset, the connection was closed or the frames cannot be written
+     */
+    void writeData(Http2Stream stream, byte[] data, int offset, int length, boolean endStream) throws IOException {
+        do {
+            int n = acquireSendWindow(stream, length);
+            boolean last = n == length;
+            writeFrame(DATA, last && endStream ? FLAG_END_STREAM : 0, stream.getId(), data, offset, n, true);
+            offset += n;
+            length -= n;
+        } while (length > 0);
+    }
+
+    /**
+     * Waits until both the send window of the stream and of the connection are open,
+     * and takes as much of them as can be sent in a single frame.
+     *
+     * @param stream stream that sends the data
+     * @param length number of bytes waiting to be sent
+     * @return number of bytes that may be sent now
+     * @throws IOException if the stream was reset, the connection was closed or the thread was interrupted
+     */
+    private synchronized int acquireSendWindow(Http2Stream stream, int length) throws IOException {
+        while (true) {
+            stream.checkUsable();
+            if (length == 0) {
+                return 0;
+            }
+            long window = Math.min(stream.sendWindow, connectionSendWindow);
+            if (window > 0) {
+                int n = (int) Math.min(Math.min(window, length), MAX_FRAME_SIZE);
+                stream.sendWindow -= n;
+                connectionSendWindow -= n;
+                return n;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the flow-control window.");
+            }
+        }
+    }
+
+    /**
+     * Reopens the receive window of a stream (or of the connection for stream identifier 0).
+     *
+     * @param streamId identifier of the stream
+     * @param increment number of bytes by which the window is reopened
+     * @throws IOException if the frame cannot be written
+     */
+    void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] frame = new byte[4];
+        writeInt(frame, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, frame, 0, 4, true);
+    }
+
+    /**
+     * Closes a stream whose response has been completely sent.
+     * If the client has not finished sending the request body, the stream is reset with NO_ERROR,
+     * so the client stops sending it.
+     *
+     * @param stream stream to close
+     */
+    void closeStream(Http2Stream stream) {
+        boolean remoteOpen;
+        synchronized (this) {
+            if (streams.remove(stream.getId()) == null) {
+                return;
+            }
+            remoteOpen = !stream.isRemoteClosed();
+            stream.reset(Http2ErrorCode.NO_ERROR);
+            notifyAll();
+        }
+        if (remoteOpen) {
+            writeRstStream(stream.getId(), Http2ErrorCode.NO_ERROR);
+        }
+        shutdownIfDone();
+    }
+
+    /**
+     * Resets an open stream.
+     *
+     * @param stream stream to reset
+     * @param error error code of the reset
+     * @return true if the stream was reset, false if it was already closed
+     */
+    boolean resetStream(Http2Stream stream, Http2ErrorCode error) {
+        synchronized (this) {
+            if (streams.get(stream.getId()) != stream) {
+                return false;
+            }
+            streams.remove(stream.getId());
+            stream.reset(error);
+            notifyAll();
+        }
+        writeRstStream(stream.getId(), error);
+        shutdownIfDone();
+        return true;
+    }
+
+    /**
+     * Resets the stream with the given identifier (whether it is open or not).
+     *
+     * @param streamId identifier of the stream
+     * @param error error code of the reset
+     */
+    private void resetStream(int streamId, Http2ErrorCode error) {
+        Http2Stream stream;
+        synchronized (this) {
+            stream = streams.get(streamId);
+        }
+        if (stream == null || !resetStream(stream, error)) {
+            writeRstStream(streamId, error);
+        }
+    }
+
+    /**
+     * Writes a RST_STREAM frame, ignoring errors (the connection is closing if it cannot be written).
+     *
+     * @param streamId identifier of the stream
+     * @param error error code of the reset
+     */
+    private void writeRstStream(int streamId, Http2ErrorCode error) {
+        byte[] frame = new byte[4];
+        writeInt(frame, 0, error.getCode());
+        try {
+            writeFrame(RST_STREAM, 0, streamId, frame, 0, 4, true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes a GOAWAY frame with the highest stream identifier processed so far.
+     *
+     * @param error error code of the frame
+     * @throws IOException if the frame cannot be written
+     */
+    private void writeGoAway(Http2ErrorCode error) throws IOException {
+        byte[] frame = new byte[8];
+        synchronized (this) {
+            writeInt(frame, 0, lastStreamId);
+        }
+        writeInt(frame, 4, error.getCode());
+        try {
+            writeFrame(GOAWAY, 0, 0, frame, 0, 8, true);
+        } catch (IOException e) {
+            if (!closing) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the server's SETTINGS frame (the server connection preface).
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    private void writeSettings() throws IOException {
+        byte[] frame = new byte[18];
+        writeSetting(frame, 0, SETTINGS_MAX_CONCURRENT_STREAMS, options.maxConcurrentStreams());
+        writeSetting(frame, 6, SETTINGS_INITIAL_WINDOW_SIZE, options.initialWindowSize());
+        writeSetting(frame, 12, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+        writeFrame(SETTINGS, 0, 0, frame, 0, frame.length, true);
+    }
+
+    /**
+     * Writes a single setting into a SETTINGS frame payload.
+     *
+     * @param frame payload of the frame
+     * @param offset offset of the setting
+     * @param id identifier of the setting
+     * @param value value of the setting
+     */
+    private static void writeSetting(byte[] frame, int offset, int id, int value) {
+        frame[offset] = (byte) (id >>> 8);
+        frame[offset + 1] = (byte) id;
+        writeInt(frame, offset + 2, value);
+    }
+
+    /**
+     * Writes a complete frame.
+     *
+     * @param type type of the frame
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @param data buffer holding the payload
+     * @param offset offset of the payload
+     * @param length length of the payload
+     * @param flush true if the connection should be flushed after the frame
+     * @throws IOException if the frame cannot be written
+     */
+    private void writeFrame(int type, int flags, int streamId, byte[] data, int offset, int length, boolean flush) throws IOException {
+        synchronized (writeLock) {
+            writeFrameHeader(length, type, flags, streamId);
+            if (length > 0) {
+                out.write(data, offset, length);
+            }
+            if (flush) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes a frame header. Must be called while holding {@link #writeLock}.
+     *
+     * @param length length of the frame payload
+     * @param type type of the frame
+     * @param flags flags of the frame
+     * @param streamId stream identifier of the frame
+     * @throws IOException if the header cannot be written
+     */
+    private void writeFrameHeader(int length, int type, int flags, int streamId) throws IOException {
+        writeHeader[0] = (byte) (length >>> 16);
+        writeHeader[1] = (byte) (length >>> 8);
+        writeHeader[2] = (byte) length;
+        writeHeader[3] = (byte) type;
+        writeHeader[4] = (byte) flags;
+        writeInt(writeHeader, 5, streamId);
+        out.write(writeHeader);
+    }
+
+    /**
+     * Shuts the output of the connection down if GOAWAY was sent or received and the last stream was closed,
+     * so that the client closes the connection.
+     *
+     * @return true if the output was shut down by this call
+     */
+    private boolean shutdownIfDone() {
+        synchronized (this) {
+            if (!goingAway || !streams.isEmpty() || outputShutdown || closing) {
+                return false;
+            }
+            outputShutdown = true;
+        }
+        synchronized (writeLock) {
+            try {
+                out.flush();
+                socket.shutdownOutput();
+            } catch (IOException ignored) {
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the output of the connection was shut down.
+     *
+     * @return true if the output was shut down
+     */
+    private synchronized boolean outputShutdown() {
+        return outputShutdown;
+    }
+
+    /**
+     * Closes the connection, failing all the streams that are still open.
+     */
+    private void close() {
+        synchronized (this) {
+            closing = true;
+            for (Http2Stream stream : streams.values()) {
+                stream.reset(Http2ErrorCode.CANCEL);
+            }
+            streams.clear();
+            notifyAll();
+        }
+        synchronized (writeLock) {
+            try {
+                out.flush();
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Converts the lines of an HTTP/1.1 request header into HTTP/2 request header fields.
+     *
+     * @param lines lines of the request header (request line first)
+     * @return request header fields
+     */
+    private static List<HeaderField> fromHttp1(List<String> lines) {
+        String requestLine = lines.getFirst();
+        int firstSpace = requestLine.indexOf(' ');
+        int lastSpace = requestLine.lastIndexOf(' ');
+        List<HeaderField> fields = new ArrayList<>();
+        fields.add(new HeaderField(":method", requestLine.substring(0, firstSpace)));
+        fields.add(new HeaderField(":scheme", "http"));
+        fields.add(new HeaderField(":path", requestLine.substring(firstSpace + 1, lastSpace)));
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).strip();
+            if (name.equals("host")) {
+                fields.add(new HeaderField(":authority", value));
+            } else if (!Http2Stream.CONNECTION_SPECIFIC.contains(name) && !name.equals("http2-settings")) {
+                fields.add(new HeaderField(name, value));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Checks that the header fields form a well-formed request (RFC 9113, section 8.3.1).
+     *
+     * @param fields header fields of the request
+     * @return description of the problem, or null if the request is well-formed
+     */
+    private static String validateRequest(List<HeaderField> fields) {
+        boolean regularSeen = false;
+        int method = 0, scheme = 0, path = 0, authority = 0;
+        for (HeaderField field : fields) {
+            String name = field.name();
+            if (name.startsWith(":")) {
+                if (regularSeen) {
+                    return "Pseudo-header field after a regular field.";
+                }
+                switch (name) {
+                    case ":method" -> method++;
+                    case ":scheme" -> scheme++;
+                    case ":path" -> {
+                        path++;
+                        if (field.value().isEmpty()) {
+                            return "Empty :path pseudo-header field.";
+                        }
+                    }
+                    case ":authority" -> authority++;
+                    default -> {
+                        return "Unknown pseudo-header field " + name + ".";
+                    }
+                }
+                continue;
+            }
+            regularSeen = true;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    return "Uppercase header field name.";
+                }
+            }
+            if (Http2Stream.CONNECTION_SPECIFIC.contains(name)
+                    || (name.equals("te") && !field.value().equals("trailers"))) {
+                return "Connection-specific header field " + name + ".";
+            }
+        }
+        if (method != 1 || scheme != 1 || path != 1 || authority > 1) {
+            return "Missing or duplicate pseudo-header fields.";
+        }
+        return null;
+    }
+
+    /**
+     * Reads exactly the given number of bytes into the beginning of the buffer.
+     *
+     * @param buffer buffer to read into
+     * @param length number of bytes to read
+     * @throws IOException if an I/O error occurs or the stream ends first
+     */
+    private void readFully(byte[] buffer, int length) throws IOException {
+        readFully(buffer, 0, length);
+    }
+
+    /**
+     * Reads exactly the given number of bytes into the buffer.
+     *
+     * @param buffer buffer to read into
+     * @param offset offset in the buffer
+     * @param length number of bytes to read
+     * @throws IOException if an I/O error occurs or the stream ends first
+     */
+    private void readFully(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = in.read(buffer, offset, length);
+            if (n == -1) {
+                throw new EOFException("Connection closed in the middle of a frame.");
+            }
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Reads a 32-bit big-endian integer.
+     *
+     * @param buffer buffer to read from
+     * @param offset offset of the integer
+     * @return read integer
+     */
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    /**
+     * Writes a 32-bit big-endian integer.
+     *
+     * @param buffer buffer to write to
+     * @param offset offset of the integer
+     * @param value integer to write
+     */
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
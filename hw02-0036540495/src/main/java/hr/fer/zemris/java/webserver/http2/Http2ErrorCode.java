@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.webserver.http2;
+
+/**
+ * Error codes used in <code>RST_STREAM</code> and <code>GOAWAY</code> frames (RFC 9113, section 7).
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public enum Http2ErrorCode {
+    /**
+     * Graceful shutdown or a stream that is no longer needed.
+     */
+    NO_ERROR(0x0),
+    /**
+     * Unspecific protocol error.
+     */
+    PROTOCOL_ERROR(0x1),
+    /**
+     * Unexpected internal error.
+     */
+    INTERNAL_ERROR(0x2),
+    /**
+     * Violation of the flow-control protocol.
+     */
+    FLOW_CONTROL_ERROR(0x3),
+    /**
+     * Settings were not acknowledged in time.
+     */
+    SETTINGS_TIMEOUT(0x4),
+    /**
+     * Frame received for a stream that is already half-closed.
+     */
+    STREAM_CLOSED(0x5),
+    /**
+     * Frame with an invalid size.
+     */
+    FRAME_SIZE_ERROR(0x6),
+    /**
+     * Stream refused before any processing was done.
+     */
+    REFUSED_STREAM(0x7),
+    /**
+     * Stream is no longer needed.
+     */
+    CANCEL(0x8),
+    /**
+     * Header compression context cannot be maintained.
+     */
+    COMPRESSION_ERROR(0x9),
+    /**
+     * Connection established for a CONNECT request was reset.
+     */
+    CONNECT_ERROR(0xa),
+    /**
+     * Peer is generating excessive load.
+     */
+    ENHANCE_YOUR_CALM(0xb),
+    /**
+     * Transport does not meet the minimum security requirements.
+     */
+    INADEQUATE_SECURITY(0xc),
+    /**
+     * HTTP/1.1 must be used instead of HTTP/2.
+     */
+    HTTP_1_1_REQUIRED(0xd);
+
+    /**
+     * Code sent in the frames.
+     */
+    private final int code;
+
+    /**
+     * Constructs a new error code.
+     *
+     * @param code code sent in the frames
+     */
+    Http2ErrorCode(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Returns the code sent in the frames.
+     *
+     * @return code of the error
+     */
+    public int getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the peer violates the HTTP/2 protocol.
+ * A stream error only resets the affected stream, while a connection error closes the whole connection.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class Http2Exception extends IOException {
+    /**
+     * Code of the error sent to the peer.
+     */
+    private final Http2ErrorCode error;
+
+    /**
+     * Identifier of the affected stream (0 for a connection error).
+     */
+    private final int streamId;
+
+    /**
+     * Constructs a new connection error.
+     *
+     * @param error code of the error
+     * @param message description of the error
+     */
+    public Http2Exception(Http2ErrorCode error, String message) {
+        this(error, 0, message);
+    }
+
+    /**
+     * Constructs a new stream error (or a connection error if the stream identifier is 0).
+     *
+     * @param error code of the error
+     * @param streamId identifier of the affected stream
+     * @param message description of the error
+     */
+    public Http2Exception(Http2ErrorCode error, int streamId, String message) {
+        super(message);
+        this.error = error;
+        this.streamId = streamId;
+    }
+
+    /**
+     * Returns the code of the error.
+     *
+     * @return code of the error
+     */
+    public Http2ErrorCode getError() {
+        return error;
+    }
+
+    /**
+     * Returns the identifier of the affected stream.
+     *
+     * @return identifier of the stream, or 0 for a connection error
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+}
@@ -0,0 +1,492 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import hr.fer.zemris.java.webserver.http.RequestBodyTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A single request/response exchange multiplexed onto an {@link Http2Connection}.
+ * <p>
+ * The request header is available as a list of header fields, or converted into the lines of an
+ * HTTP/1.1 request header (see {@link #toRequestHeaderLines(List)}), so the request can be processed
+ * like any other request. The request body is read through {@link #getInputStream()}: received DATA frames
+ * are buffered, and the stream's receive window is reopened as the body is read, so a slow reader
+ * makes the client wait instead of filling the server's memory.
+ * <p>
+ * The response header is written by {@link #writeHeaders(int, List)}, and the response body through
+ * {@link #getOutputStream()}, which collects the body into DATA frames; closing the output stream ends the stream.
+ * All the state of the stream is guarded by the monitor of its connection.
+ *
+ * @see Http2Connection
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class Http2Stream {
+    /**
+     * Header fields that are specific to an HTTP/1.1 connection and must not be sent over HTTP/2.
+     */
+    static final Set<String> CONNECTION_SPECIFIC = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"
+    );
+
+    /**
+     * Connection the stream belongs to.
+     */
+    private final Http2Connection connection;
+
+    /**
+     * Identifier of the stream.
+     */
+    private final int id;
+
+    /**
+     * Header fields of the request.
+     */
+    private final List<HeaderField> requestHeaders;
+
+    /**
+     * Maximum size of the request body in bytes.
+     */
+    private final long maxBodySize;
+
+    /**
+     * Received DATA frame payloads that have not been read yet.
+     */
+    private final ArrayDeque<byte[]> received = new ArrayDeque<>();
+
+    /**
+     * Number of bytes of the first received payload that have already been read.
+     */
+    private int receivedOffset;
+
+    /**
+     * Number of bytes the client may still send before the receive window is reopened.
+     */
+    private int receiveWindow;
+
+    /**
+     * Number of bytes read (or discarded as padding) since the receive window was last reopened.
+     */
+    private int unacknowledged;
+
+    /**
+     * Size of the receive window the stream starts with.
+     */
+    private final int initialReceiveWindow;
+
+    /**
+     * Number of bytes of the request body read so far.
+     */
+    private long bodyRead;
+
+    /**
+     * Flag that signals that the client has ended the stream (sent END_STREAM).
+     */
+    private boolean remoteClosed;
+
+    /**
+     * Number of bytes the server may still send on this stream.
+     */
+    long sendWindow;
+
+    /**
+     * Error code with which the stream was reset (null if it was not reset).
+     */
+    private Http2ErrorCode resetCode;
+
+    /**
+     * Flag that signals that the response header was sent.
+     */
+    private boolean headersSent;
+
+    /**
+     * Stream from which the request body is read.
+     */
+    private final InputStream input = new BodyInputStream();
+
+    /**
+     * Stream to which the response body is written.
+     */
+    private final OutputStream output = new BodyOutputStream();
+
+    /**
+     * Constructs a new stream.
+     *
+     * @param connection connection the stream belongs to
+     * @param id identifier of the stream
+     * @param requestHeaders header fields of the request
+     * @param receiveWindow initial size of the receive window
+     * @param sendWindow initial size of the send window
+     * @param maxBodySize maximum size of the request body in bytes
+     */
+    Http2Stream(Http2Connection connection, int id, List<HeaderField> requestHeaders,
+                int receiveWindow, long sendWindow, long maxBodySize) {
+        this.connection = connection;
+        this.id = id;
+        this.requestHeaders = Collections.unmodifiableList(requestHeaders);
+        this.receiveWindow = receiveWindow;
+        this.initialReceiveWindow = receiveWindow;
+        this.sendWindow = sendWindow;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Returns the identifier of the stream.
+     *
+     * @return identifier of the stream
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the header fields of the request.
+     *
+     * @return unmodifiable list of the request header fields
+     */
+    public List<HeaderField> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * Returns the value of the request header field with the given name.
+     *
+     * @param name name of the field (lowercase)
+     * @return value of the field, or null if there is no such field
+     */
+    public String getRequestHeader(String name) {
+        for (HeaderField field : requestHeaders) {
+            if (field.name().equals(name)) {
+                return field.value();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the request header to the given list in the form of an HTTP/1.1 request header (without line terminators):
+     * a request line with the version <code>HTTP/2.0</code>, followed by a line for every regular field,
+     * with the name capitalized as in HTTP/1.1. The <code>:authority</code> pseudo-header becomes the
+     * <code>Host</code> header, and the <code>cookie</code> fields are joined into a single <code>Cookie</code> header.
+     *
+     * @param lines list to add the lines to
+     */
+    public void toRequestHeaderLines(List<String> lines) {
+        lines.add(getRequestHeader(":method") + " " + getRequestHeader(":path") + " HTTP/2.0");
+        String authority = getRequestHeader(":authority");
+        if (authority != null) {
+            lines.add("Host: " + authority);
+        }
+        StringBuilder cookie = null;
+        for (HeaderField field : requestHeaders) {
+            String name = field.name();
+            if (name.startsWith(":") || (authority != null && name.equals("host"))) {
+                continue;
+            }
+            if (name.equals("cookie")) {
+                cookie = cookie == null ? new StringBuilder(field.value()) : cookie.append("; ").append(field.value());
+                continue;
+            }
+            lines.add(capitalize(name) + ": " + field.value());
+        }
+        if (cookie != null) {
+            lines.add("Cookie: " + cookie);
+        }
+    }
+
+    /**
+     * Returns the stream from which the request body is read.
+     * The stream ends when the client ends the stream, and throws an exception if the stream is reset.
+     *
+     * @return input stream of the request body
+     */
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    /**
+     * Returns the stream to which the response body is written, after the response header.
+     * Closing the stream ends the stream (and resets it if no response header was written).
+     *
+     * @return output stream of the response body
+     */
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    /**
+     * Writes the response header. Connection-specific fields are left out, and field names are sent in lowercase.
+     *
+     * @param statusCode status code of the response
+     * @param fields header fields of the response
+     * @throws IOException if the stream was reset or the header cannot be written
+     * @throws IllegalStateException if the response header was already written
+     */
+    public void writeHeaders(int statusCode, List<HeaderField> fields) throws IOException {
+        if (headersSent) {
+            throw new IllegalStateException("Response header was already written.");
+        }
+        List<HeaderField> block = new ArrayList<>(fields.size() + 1);
+        block.add(new HeaderField(":status", Integer.toString(statusCode)));
+        for (HeaderField field : fields) {
+            String name = field.name().toLowerCase(Locale.ROOT);
+            if (!CONNECTION_SPECIFIC.contains(name)) {
+                block.add(name.equals(field.name()) ? field : new HeaderField(name, field.value()));
+            }
+        }
+        connection.writeHeaders(this, block);
+        headersSent = true;
+    }
+
+    /**
+     * Resets the stream with the error code CANCEL, for example because the request took too long.
+     *
+     * @return true if the stream was reset, false if it was already closed or reset
+     */
+    public boolean cancel() {
+        return connection.resetStream(this, Http2ErrorCode.CANCEL);
+    }
+
+    /**
+     * Buffers the payload of a received DATA frame. Must be called while holding the monitor of the connection.
+     *
+     * @param data buffer holding the payload
+     * @param offset offset of the data in the payload
+     * @param length length of the data (without padding)
+     * @param frameLength length of the whole payload (counted against the receive window)
+     * @param endStream true if the frame ends the stream
+     * @throws Http2Exception if the stream was already ended or the receive window was exceeded (stream errors)
+     */
+    void receiveData(byte[] data, int offset, int length, int frameLength, boolean endStream) throws Http2Exception {
+        if (remoteClosed) {
+            throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, id, "DATA frame after the end of the stream.");
+        }
+        receiveWindow -= frameLength;
+        if (receiveWindow < 0) {
+            throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, id, "Stream receive window exceeded.");
+        }
+        if (length > 0) {
+            byte[] payload = new byte[length];
+            System.arraycopy(data, offset, payload, 0, length);
+            received.addLast(payload);
+        }
+        unacknowledged += frameLength - length;
+        if (endStream) {
+            remoteClosed = true;
+        }
+    }
+
+    /**
+     * Marks the stream as ended by the client. Must be called while holding the monitor of the connection.
+     */
+    void receiveEnd() {
+        remoteClosed = true;
+    }
+
+    /**
+     * Checks whether the client has ended the stream. Must be called while holding the monitor of the connection.
+     *
+     * @return true if the client has ended the stream
+     */
+    boolean isRemoteClosed() {
+        return remoteClosed;
+    }
+
+    /**
+     * Marks the stream as reset. Must be called while holding the monitor of the connection.
+     *
+     * @param code error code with which the stream was reset
+     */
+    void reset(Http2ErrorCode code) {
+        if (resetCode == null) {
+            resetCode = code;
+        }
+    }
+
+    /**
+     * Checks that the stream can still be used. Must be called while holding the monitor of the connection.
+     *
+     * @throws IOException if the stream was reset or the connection was closed
+     */
+    void checkUsable() throws IOException {
+        if (resetCode != null) {
+            throw new IOException("Stream " + id + " was reset (" + resetCode + ").");
+        }
+        if (connection.isClosing()) {
+            throw new IOException("Connection was closed.");
+        }
+    }
+
+    /**
+     * Capitalizes the given lowercase header field name as in HTTP/1.1 (for example <code>Content-Type</code>).
+     *
+     * @param name lowercase name
+     * @return capitalized name
+     */
+    private static String capitalize(String name) {
+        char[] chars = name.toCharArray();
+        boolean start = true;
+        for (int i = 0; i < chars.length; i++) {
+            if (start) {
+                chars[i] = Character.toUpperCase(chars[i]);
+            }
+            start = chars[i] == '-';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Input stream of the request body.
+     */
+    private class BodyInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            int update = 0;
+            synchronized (connection) {
+                while (received.isEmpty() && !remoteClosed) {
+                    checkUsable();
+                    try {
+                        connection.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for the request body.");
+                    }
+                }
+                checkUsable();
+                if (received.isEmpty()) {
+                    return -1;
+                }
+                byte[] chunk = received.peekFirst();
+                n = Math.min(len, chunk.length - receivedOffset);
+                System.arraycopy(chunk, receivedOffset, b, off, n);
+                receivedOffset += n;
+                if (receivedOffset == chunk.length) {
+                    received.pollFirst();
+                    receivedOffset = 0;
+                }
+                unacknowledged += n;
+                if (!remoteClosed && unacknowledged >= initialReceiveWindow / 2) {
+                    update = unacknowledged;
+                    receiveWindow += update;
+                    unacknowledged = 0;
+                }
+            }
+            if (update > 0) {
+                connection.writeWindowUpdate(id, update);
+            }
+            bodyRead += n;
+            if (bodyRead > maxBodySize) {
+                throw new RequestBodyTooLargeException(maxBodySize);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            synchronized (connection) {
+                byte[] chunk = received.peekFirst();
+                return chunk == null ? 0 : chunk.length - receivedOffset;
+            }
+        }
+    }
+
+    /**
+     * Output stream of the response body, which collects the body into DATA frames.
+     */
+    private class BodyOutputStream extends OutputStream {
+        /**
+         * Buffer of the next DATA frame (allocated on first use).
+         */
+        private byte[] buffer;
+
+        /**
+         * Number of bytes in the buffer.
+         */
+        private int count;
+
+        /**
+         * Flag that signals that the stream was closed.
+         */
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (closed) {
+                throw new IOException("Stream " + id + " is closed.");
+            }
+            if (buffer == null) {
+                buffer = new byte[Http2Connection.MAX_FRAME_SIZE];
+            }
+            if (len >= buffer.length - count) {
+                // send large writes directly instead of copying them through the buffer
+                flushBuffer();
+                connection.writeData(Http2Stream.this, b, off, len, false);
+                return;
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed) {
+                flushBuffer();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!headersSent) {
+                connection.resetStream(Http2Stream.this, Http2ErrorCode.INTERNAL_ERROR);
+                return;
+            }
+            connection.writeData(Http2Stream.this, buffer, 0, count, true);
+            count = 0;
+            connection.closeStream(Http2Stream.this);
+        }
+
+        /**
+         * Sends the buffered bytes (if any) in a DATA frame.
+         *
+         * @throws IOException if the stream was reset or the frame cannot be written
+         */
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                connection.writeData(Http2Stream.this, buffer, 0, count, false);
+                count = 0;
+            }
+        }
+    }
+}
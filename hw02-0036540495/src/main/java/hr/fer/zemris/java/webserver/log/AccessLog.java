@@ -0,0 +1,512 @@
+package hr.fer.zemris.java.webserver.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log of the {@link hr.fer.zemris.java.webserver.SmartHttpServer}.
+ * <p>
+ * Request threads never touch the file: {@link #log} only claims a slot of a preallocated,
+ * lock-free ring buffer and fills in the fields of the record.
+ * A single writer thread drains the buffer, formats the records (in the common log format,
+ * extended with the request duration) and writes them in batches through a {@link FileChannel}.
+ * When the file grows over the configured size, it is rotated (<code>access.log</code> becomes
+ * <code>access.log.1</code>, <code>access.log.1</code> becomes <code>access.log.2</code> and so on).
+ * <p>
+ * If the writer cannot keep up and the buffer is full, records are dropped instead of blocking
+ * the request threads; the number of dropped records is available through {@link #getDropped()}.
+ * <p>
+ * If writing fails (for example because the disk is full), the records of the failed batch are dropped
+ * and the writer keeps retrying, reopening the file with an increasing delay, until writing succeeds again;
+ * meanwhile the log is reported as failing (see {@link #isFailing()}) and new records wait in the buffer.
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class AccessLog {
+    /**
+     * Formatter of the record timestamps.
+     */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+    /**
+     * Time the writer thread sleeps for when there is nothing to write.
+     */
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    /**
+     * Delay before the first retry after a write error (doubled after every further error, up to the maximum).
+     */
+    private static final long MIN_RETRY_NANOS = 100_000_000;
+
+    /**
+     * Maximum delay between retries after write errors.
+     */
+    private static final long MAX_RETRY_NANOS = 10_000_000_000L;
+
+    /**
+     * Path of the current log file.
+     */
+    private final Path file;
+
+    /**
+     * Maximum size of a single log file in bytes.
+     */
+    private final long maxFileSize;
+
+    /**
+     * Maximum number of rotated files that are kept.
+     */
+    private final int maxFiles;
+
+    /**
+     * Preallocated records of the ring buffer.
+     */
+    private final Record[] records;
+
+    /**
+     * Mask used to map a sequence number to an index in {@link #records}.
+     */
+    private final int mask;
+
+    /**
+     * Sequence number of the next record to be claimed by a request thread.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence number of the next record to be written by the writer thread.
+     */
+    private volatile long head;
+
+    /**
+     * Number of records dropped because the buffer was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Number of records written to the file.
+     */
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * Number of errors while writing to the file (or reopening it).
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Flag that signals that the last attempt to write to the file failed.
+     */
+    private volatile boolean failing;
+
+    /**
+     * Number of records in the batch buffer.
+     */
+    private int batchRecords;
+
+    /**
+     * Buffer in which a batch of formatted records is collected.
+     */
+    private final ByteBuffer batch = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * Builder used to format a single record.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Channel of the current log file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Size of the current log file.
+     */
+    private long fileSize;
+
+    /**
+     * Writer thread.
+     */
+    private Thread writer;
+
+    /**
+     * Flag that signals the writer thread to stop.
+     */
+    private volatile boolean running;
+
+    /**
+     * A single, reusable record of the ring buffer.
+     */
+    private static class Record {
+        /**
+         * Sequence number under which the record was published (-1 if never published).
+         */
+        volatile long published = -1;
+
+        /**
+         * Time of the request in milliseconds since the epoch.
+         */
+        long timestamp;
+
+        /**
+         * Address of the client.
+         */
+        String remoteAddress;
+
+        /**
+         * Request line (method, target and version).
+         */
+        String requestLine;
+
+        /**
+         * Status code of the response.
+         */
+        int statusCode;
+
+        /**
+         * Number of bytes sent to the client.
+         */
+        long bytes;
+
+        /**
+         * Duration of the request in microseconds.
+         */
+        long durationMicros;
+    }
+
+    /**
+     * Constructs a new access log.
+     *
+     * @param file path of the log file
+     * @param capacity capacity of the ring buffer (rounded up to the nearest power of two)
+     * @param maxFileSize maximum size of a single log file in bytes
+     * @param maxFiles maximum number of rotated files that are kept
+     * @throws IllegalArgumentException if capacity, maximum file size or maximum number of files are not positive
+     */
+    public AccessLog(Path file, int capacity, long maxFileSize, int maxFiles) {
+        if (capacity <= 0 || maxFileSize <= 0 || maxFiles <= 0) {
+            throw new IllegalArgumentException("Capacity, maximum file size and maximum number of files must be positive.");
+        }
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.records = new Record[Math.max(size, 2)];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new Record();
+        }
+        this.mask = records.length - 1;
+    }
+
+    /**
+     * Opens the log file and starts the writer thread.
+     *
+     * @throws IOException if the log file cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        openFile();
+        running = true;
+        writer = new Thread(this::drainLoop, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread after writing all the records that were logged until now and closes the file.
+     */
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Logs a single request. Never blocks: if the buffer is full, the record is dropped.
+     *
+     * @param remoteAddress address of the client
+     * @param requestLine request line (method, target and version)
+     * @param statusCode status code of the response
+     * @param bytes number of bytes sent to the client
+     * @param durationNanos duration of the request in nanoseconds
+     * @return true if the record was accepted, false if it was dropped
+     */
+    public boolean log(String remoteAddress, String requestLine, int statusCode, long bytes, long durationNanos) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= records.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        Record record = records[(int) (sequence & mask)];
+        record.timestamp = System.currentTimeMillis();
+        record.remoteAddress = remoteAddress;
+        record.requestLine = requestLine;
+        record.statusCode = statusCode;
+        record.bytes = bytes;
+        record.durationMicros = durationNanos / 1000;
+        record.published = sequence;
+        return true;
+    }
+
+    /**
+     * Returns the number of records dropped because the buffer was full or they could not be written.
+     *
+     * @return number of dropped records
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of records written to the file.
+     *
+     * @return number of written records
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the number of errors while writing to the file.
+     *
+     * @return number of write errors
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Checks whether the last attempt to write to the file failed (records are not being written).
+     *
+     * @return true if the log is failing
+     */
+    public boolean isFailing() {
+        return failing;
+    }
+
+    /**
+     * Main loop of the writer thread.
+     * Writes batches of published records until stopped, and then writes the remaining ones.
+     * After a write error, the file is reopened and writing is retried with an increasing delay.
+     */
+    private void drainLoop() {
+        long retryNanos = MIN_RETRY_NANOS;
+        while (running) {
+            try {
+                if (failing) {
+                    reopenFile();
+                }
+                int count = drain();
+                if (failing) {
+                    failing = false;
+                    retryNanos = MIN_RETRY_NANOS;
+                    System.err.println("Access log " + file + " is written again.");
+                }
+                if (count == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                if (!failing) {
+                    System.err.println("Error while writing access log " + file + ", retrying: " + e.getMessage());
+                }
+                failed();
+                LockSupport.parkNanos(retryNanos);
+                retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+            }
+        }
+        try {
+            if (failing) {
+                reopenFile();
+            }
+            while (drain() > 0) {
+                // write everything logged before the log was closed
+            }
+        } catch (IOException e) {
+            System.err.println("Error while writing access log " + file + ": " + e.getMessage());
+            failed();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Records a write error: the records of the current batch are dropped and the log is marked as failing.
+     */
+    private void failed() {
+        errors.increment();
+        dropped.add(batchRecords);
+        batchRecords = 0;
+        batch.clear();
+        failing = true;
+    }
+
+    /**
+     * Closes the current log file (if open) and opens it again.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void reopenFile() throws IOException {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        openFile();
+    }
+
+    /**
+     * Formats all currently published records and writes them to the file.
+     *
+     * @return number of written records
+     * @throws IOException if an I/O error occurs
+     */
+    private int drain() throws IOException {
+        int count = 0;
+        long next = head;
+        while (true) {
+            Record record = records[(int) (next & mask)];
+            if (record.published != next) {
+                break;
+            }
+            byte[] formatted = format(record);
+            head = ++next;
+            if (formatted.length > batch.remaining()) {
+                flushBatch();
+            }
+            if (formatted.length <= batch.remaining()) {
+                batch.put(formatted);
+                batchRecords++;
+            } else {
+                // a record larger than the whole batch (a very long request line) is written on its own
+                try {
+                    write(ByteBuffer.wrap(formatted));
+                } catch (IOException e) {
+                    dropped.increment();
+                    throw e;
+                }
+                written.increment();
+            }
+            count++;
+        }
+        flushBatch();
+        return count;
+    }
+
+    /**
+     * Formats the given record as a single log line.
+     *
+     * @param record record to format
+     * @return formatted line as UTF-8 bytes
+     */
+    private byte[] format(Record record) {
+        line.setLength(0);
+        line.append(record.remoteAddress).append(" - - [");
+        TIMESTAMP_FORMAT.formatTo(Instant.ofEpochMilli(record.timestamp), line);
+        line.append("] \"").append(record.requestLine).append("\" ")
+                .append(record.statusCode).append(' ')
+                .append(record.bytes).append(' ')
+                .append(record.durationMicros).append("us\n");
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the collected batch to the file, rotating the file if it would grow over the maximum size.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void flushBatch() throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        write(batch);
+        batch.clear();
+        written.add(batchRecords);
+        batchRecords = 0;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the file, rotating the file if it would grow over the maximum size.
+     *
+     * @param buffer buffer to write
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        if (fileSize > 0 && fileSize + buffer.remaining() > maxFileSize) {
+            rotate();
+        }
+        while (buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+    }
+
+    /**
+     * Rotates the log files and opens a new, empty log file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path older = rotatedFile(i);
+            if (Files.exists(older)) {
+                Files.move(older, rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+        openFile();
+    }
+
+    /**
+     * Returns the path of the rotated file with the given index.
+     *
+     * @param index index of the rotated file
+     * @return path of the rotated file
+     */
+    private Path rotatedFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    /**
+     * Opens (or creates) the current log file for appending.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void openFile() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+}
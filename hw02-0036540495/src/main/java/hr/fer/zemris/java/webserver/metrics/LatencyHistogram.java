@@ -0,0 +1,144 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with logarithmic (HDR-style) bucketing.
+ * Latencies are recorded with microsecond resolution into buckets whose width
+ * doubles every {@value #SUB_BUCKETS} buckets, which keeps the relative error
+ * below 12.5% for any recorded value while using a fixed, small amount of memory.
+ * <p>
+ * Recording is a single atomic increment plus two {@link LongAdder} updates,
+ * so it is cheap enough to be called on every request from many threads.
+ *
+ * @see ServerMetrics
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class LatencyHistogram {
+    /**
+     * Number of bits used to linearly subdivide every power-of-two range.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of linear sub-buckets in every power-of-two range.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Total number of buckets (enough to cover every non-negative long value).
+     */
+    private static final int BUCKET_COUNT = (65 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Bucket boundaries (in seconds) used when the histogram is exported.
+     */
+    static final double[] EXPORT_BOUNDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01,
+            0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    /**
+     * Counters of recorded values per bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Total number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of all recorded values in microseconds.
+     */
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * Records a single latency given in nanoseconds.
+     *
+     * @param nanos latency in nanoseconds (negative values are treated as zero)
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    /**
+     * Returns the total number of recorded values.
+     *
+     * @return total number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded values in seconds.
+     *
+     * @return sum of all recorded values in seconds
+     */
+    public double getSumSeconds() {
+        return sumMicros.sum() / 1_000_000.0;
+    }
+
+    /**
+     * Returns the cumulative counts for each of the {@link #EXPORT_BOUNDS}.
+     * A recorded value is counted below a bound if the whole bucket it was recorded into is below that bound.
+     *
+     * @return array of cumulative counts, one for each export bound
+     */
+    long[] cumulativeCounts() {
+        long[] result = new long[EXPORT_BOUNDS.length];
+        int bound = 0;
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT && bound < EXPORT_BOUNDS.length; i++) {
+            long highestMicros = lowestEquivalentValue(i + 1) - 1;
+            while (bound < EXPORT_BOUNDS.length && highestMicros > EXPORT_BOUNDS[bound] * 1_000_000) {
+                result[bound++] = cumulative;
+            }
+            cumulative += buckets.get(i);
+        }
+        while (bound < EXPORT_BOUNDS.length) {
+            result[bound++] = cumulative;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the bucket the given value belongs to.
+     *
+     * @param value non-negative value
+     * @return index of the bucket
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the lowest value that belongs to the bucket with the given index.
+     *
+     * @param index index of the bucket
+     * @return lowest value of the bucket ({@link Long#MAX_VALUE} for indexes past the last bucket)
+     */
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,322 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects runtime metrics of the {@link hr.fer.zemris.java.webserver.SmartHttpServer}
+ * and renders them in the Prometheus text exposition format.
+ * <p>
+ * All counters are {@link LongAdder}s and all latencies are kept in {@link LatencyHistogram}s,
+ * so recording never blocks the request threads.
+ * Values that are owned by someone else (for example the queue depth of the worker pool
+ * or the number of active sessions) are registered as gauges and only read when exported.
+ *
+ * @see LatencyHistogram
+ * @see hr.fer.zemris.java.webserver.workers.MetricsWorker
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ServerMetrics {
+    /**
+     * Prefix of all exported metric names.
+     */
+    private static final String PREFIX = "smarthttp_";
+
+    /**
+     * Phases of request processing that are timed separately.
+     */
+    public enum Phase {
+        /**
+         * Time a connection spent waiting in the worker pool queue.
+         */
+        QUEUE,
+        /**
+         * Time spent reading and parsing the request header and parameters.
+         */
+        PARSE,
+        /**
+         * Time spent in workers, scripts and file lookups (excluding writes).
+         */
+        DISPATCH,
+        /**
+         * Time spent writing the response to the client.
+         */
+        WRITE
+    }
+
+    /**
+     * Total number of processed requests.
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Total number of accepted connections.
+     */
+    private final LongAdder connections = new LongAdder();
+
+    /**
+     * Number of connections currently being processed.
+     */
+    private final LongAdder activeConnections = new LongAdder();
+
+    /**
+     * Total number of bytes sent to clients (headers included).
+     */
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Latency histograms per request processing phase.
+     */
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+    /**
+     * Total request latency per route.
+     */
+    private final Map<String, LatencyHistogram> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Total request latency per response status code.
+     */
+    private final Map<Integer, LatencyHistogram> statuses = new ConcurrentHashMap<>();
+
+    /**
+     * Registered gauges (metric name -> help text and value supplier).
+     */
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Registered counters that are owned by other subsystems (metric name -> help text and value supplier).
+     */
+    private final Map<String, Gauge> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Registered families of labelled counters that are owned by other subsystems (metric name -> family).
+     */
+    private final Map<String, CounterFamily> counterFamilies = new ConcurrentHashMap<>();
+
+    /**
+     * A value that is read only when the metrics are exported.
+     *
+     * @param help help text of the metric
+     * @param supplier supplier of the current value
+     */
+    private record Gauge(String help, LongSupplier supplier) {}
+
+    /**
+     * A family of counters that share a name and differ in the value of a single label.
+     *
+     * @param help help text of the metric
+     * @param label name of the label
+     * @param suppliers suppliers of the current values by label value
+     */
+    private record CounterFamily(String help, String label, Map<String, LongSupplier> suppliers) {}
+
+    /**
+     * Constructs a new, empty metrics registry.
+     */
+    public ServerMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Registers a gauge whose value is read from the given supplier on every export.
+     *
+     * @param name name of the metric (without the common prefix)
+     * @param help help text of the metric
+     * @param supplier supplier of the current value
+     */
+    public void registerGauge(String name, String help, LongSupplier supplier) {
+        gauges.put(name, new Gauge(help, supplier));
+    }
+
+    /**
+     * Registers a monotonically increasing counter kept by another subsystem,
+     * whose value is read from the given supplier on every export.
+     *
+     * @param name name of the metric (without the common prefix, ending with <code>_total</code>)
+     * @param help help text of the metric
+     * @param supplier supplier of the current value
+     */
+    public void registerCounter(String name, String help, LongSupplier supplier) {
+        counters.put(name, new Gauge(help, supplier));
+    }
+
+    /**
+     * Registers a family of monotonically increasing counters kept by another subsystem,
+     * one for each value of the given label, whose values are read from the given suppliers on every export.
+     *
+     * @param name name of the metric (without the common prefix, ending with <code>_total</code>)
+     * @param help help text of the metric
+     * @param label name of the label
+     * @param suppliers suppliers of the current values by label value
+     */
+    public void registerCounterFamily(String name, String help, String label, Map<String, LongSupplier> suppliers) {
+        counterFamilies.put(name, new CounterFamily(help, label, new LinkedHashMap<>(suppliers)));
+    }
+
+    /**
+     * Marks the start of processing of an accepted connection.
+     */
+    public void connectionOpened() {
+        connections.increment();
+        activeConnections.increment();
+    }
+
+    /**
+     * Marks the end of processing of an accepted connection.
+     */
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    /**
+     * Records the duration of a single request processing phase.
+     *
+     * @param phase processed phase
+     * @param nanos duration in nanoseconds
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phases[phase.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param route route the request was dispatched to
+     * @param statusCode status code of the response
+     * @param bytes number of bytes sent to the client
+     * @param nanos total duration of the request in nanoseconds
+     */
+    public void recordRequest(String route, int statusCode, long bytes, long nanos) {
+        requests.increment();
+        bytesSent.add(bytes);
+        routes.computeIfAbsent(route, r -> new LatencyHistogram()).recordNanos(nanos);
+        statuses.computeIfAbsent(statusCode, s -> new LatencyHistogram()).recordNanos(nanos);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return rendered metrics
+     */
+    public String toPrometheusText() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        appendCounter(sb, "requests_total", "Total number of processed requests.", requests.sum());
+        appendCounter(sb, "connections_total", "Total number of accepted connections.", connections.sum());
+        appendCounter(sb, "sent_bytes_total", "Total number of bytes sent to clients.", bytesSent.sum());
+        for (Map.Entry<String, Gauge> counter : counters.entrySet()) {
+            appendCounter(sb, counter.getKey(), counter.getValue().help(), counter.getValue().supplier().getAsLong());
+        }
+        for (Map.Entry<String, CounterFamily> family : counterFamilies.entrySet()) {
+            String name = PREFIX + family.getKey();
+            appendHeader(sb, name, family.getValue().help(), "counter");
+            for (Map.Entry<String, LongSupplier> counter : family.getValue().suppliers().entrySet()) {
+                sb.append(name).append('{').append(family.getValue().label()).append("=\"")
+                        .append(escapeLabel(counter.getKey())).append("\"} ")
+                        .append(counter.getValue().getAsLong()).append('\n');
+            }
+        }
+
+        appendGauge(sb, "active_connections", "Number of connections currently being processed.", activeConnections.sum());
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            appendGauge(sb, gauge.getKey(), gauge.getValue().help(), gauge.getValue().supplier().getAsLong());
+        }
+
+        String name = PREFIX + "phase_duration_seconds";
+        appendHeader(sb, name, "Time spent in each request processing phase.", "histogram");
+        for (Phase phase : Phase.values()) {
+            appendHistogram(sb, name, "phase=\"" + phase.name().toLowerCase() + "\"", phases[phase.ordinal()]);
+        }
+
+        name = PREFIX + "request_duration_seconds";
+        appendHeader(sb, name, "Total request latency per route.", "histogram");
+        for (Map.Entry<String, LatencyHistogram> route : routes.entrySet()) {
+            appendHistogram(sb, name, "route=\"" + escapeLabel(route.getKey()) + "\"", route.getValue());
+        }
+
+        name = PREFIX + "response_duration_seconds";
+        appendHeader(sb, name, "Total request latency per response status code.", "histogram");
+        for (Map.Entry<Integer, LatencyHistogram> status : statuses.entrySet()) {
+            appendHistogram(sb, name, "code=\"" + status.getKey() + "\"", status.getValue());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Appends a counter to the given builder.
+     *
+     * @param sb builder to append to
+     * @param name name of the metric (without the common prefix)
+     * @param help help text
+     * @param value value of the counter
+     */
+    private static void appendCounter(StringBuilder sb, String name, String help, long value) {
+        appendHeader(sb, PREFIX + name, help, "counter");
+        sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends a gauge to the given builder.
+     *
+     * @param sb builder to append to
+     * @param name name of the metric (without the common prefix)
+     * @param help help text
+     * @param value value of the gauge
+     */
+    private static void appendGauge(StringBuilder sb, String name, String help, long value) {
+        appendHeader(sb, PREFIX + name, help, "gauge");
+        sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends the <code># HELP</code> and <code># TYPE</code> lines of a metric to the given builder.
+     *
+     * @param sb builder to append to
+     * @param name full name of the metric
+     * @param help help text
+     * @param type type of the metric
+     */
+    private static void appendHeader(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends the buckets, sum and count of a single labelled histogram to the given builder.
+     *
+     * @param sb builder to append to
+     * @param name full name of the metric
+     * @param labels rendered labels (without braces)
+     * @param histogram histogram to append
+     */
+    private static void appendHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        long[] cumulative = histogram.cumulativeCounts();
+        for (int i = 0; i < cumulative.length; i++) {
+            sb.append(name).append("_bucket{").append(labels).append(",le=\"")
+                    .append(LatencyHistogram.EXPORT_BOUNDS[i]).append("\"} ").append(cumulative[i]).append('\n');
+        }
+        sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        sb.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSumSeconds()).append('\n');
+        sb.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    /**
+     * Escapes the given label value as required by the exposition format.
+     *
+     * @param value label value
+     * @return escaped label value
+     */
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -1,5 +1,6 @@
 package hr.fer.zemris.java.webserver.workers;
 
+import hr.fer.zemris.java.webserver.Cacheable;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
 
@@ -18,6 +19,7 @@ import java.io.IOException;
  * @version 1.0
  * @author Marko Šelendić
  */
+@Cacheable(ttl = 3600)
 public class CircleWorker implements IWebWorker {
     @Override
     public void processRequest(RequestContext context) {
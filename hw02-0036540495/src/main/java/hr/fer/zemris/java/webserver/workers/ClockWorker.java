@@ -0,0 +1,111 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.EventStream;
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A web worker that streams the current time to the client as server-sent events, once every second.
+ * All the subscribed clients are served by a single scheduler thread, which publishes every tick
+ * to the event streams of all of them; the streams are removed once their clients go away,
+ * and the scheduler is stopped once the last of them is gone (or the worker is closed by the server).
+ *
+ * @see IWebWorker
+ * @see EventStream
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ClockWorker implements IWebWorker, AutoCloseable {
+    /**
+     * Event streams of the subscribed clients.
+     */
+    private final Set<EventStream> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Scheduler that publishes the ticks (null while no client is subscribed).
+     */
+    private ScheduledExecutorService ticker;
+
+    @Override
+    public void processRequest(RequestContext context) {
+        try {
+            EventStream events = context.startEventStream();
+            subscribe(events);
+            // registered after subscribing, so a stream closed in the meantime is unsubscribed right away
+            events.onClose(() -> unsubscribe(events));
+        } catch (IOException ex) {
+            System.err.println("ClockWorker stumbled upon an I/O error while trying to start the event stream: "
+                    + ex.getMessage());
+        }
+    }
+
+    /**
+     * Closes the event streams of all the subscribed clients and stops the scheduler.
+     */
+    @Override
+    public void close() {
+        for (EventStream events : subscribers) {
+            events.close();
+        }
+        synchronized (this) {
+            subscribers.clear();
+            stopTicker();
+        }
+    }
+
+    /**
+     * Adds the given event stream to the subscribers and starts the scheduler (if not started already).
+     *
+     * @param events event stream of the client
+     */
+    private synchronized void subscribe(EventStream events) {
+        subscribers.add(events);
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "clock-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            Date now = new Date();
+            String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(now);
+            String id = Long.toString(now.getTime() / 1000);
+            for (EventStream subscriber : subscribers) {
+                subscriber.send(id, "tick", time);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes the given event stream from the subscribers, stopping the scheduler if it was the last one.
+     *
+     * @param events event stream of the client
+     */
+    private synchronized void unsubscribe(EventStream events) {
+        if (subscribers.remove(events) && subscribers.isEmpty()) {
+            stopTicker();
+        }
+    }
+
+    /**
+     * Stops the scheduler (if running).
+     */
+    private synchronized void stopTicker() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A built-in web worker that exposes the server metrics in the Prometheus text exposition format.
+ * Unlike other workers, it is not configured in workers.properties,
+ * but registered by the server itself, since it needs a reference to the server's {@link ServerMetrics}.
+ *
+ * @see ServerMetrics
+ * @see IWebWorker
+ * @see RequestContext
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class MetricsWorker implements IWebWorker {
+    /**
+     * Metrics to expose.
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * Constructs a new worker that exposes the given metrics.
+     *
+     * @param metrics metrics to expose
+     */
+    public MetricsWorker(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void processRequest(RequestContext context) throws Exception {
+        byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+        context.setStatusCode(200);
+        context.setStatusText("OK");
+        context.setMimeType("text/plain; version=0.0.4");
+        context.setContentLength((long) body.length);
+        context.write(body);
+    }
+}
@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProfile;
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.ScriptCache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A built-in web worker that reports the execution profiles of the SmartScript scripts served by the server,
+ * scripts that took the most time first, so the scripts (and their nodes) that burn the most CPU can be found.
+ * Like the {@link MetricsWorker}, it is not configured in workers.properties, but registered by the server itself
+ * (only if profiling of scripts is enabled).
+ *
+ * @see ScriptCache
+ * @see ScriptProfile
+ *
+ * @version 1.0
+ * @author Marko Šelendić
+ */
+public class ScriptProfileWorker implements IWebWorker {
+    /**
+     * Cache holding the scripts and their profiles.
+     */
+    private final ScriptCache scripts;
+
+    /**
+     * Constructs a new worker that reports the profiles of the scripts in the given cache.
+     *
+     * @param scripts cache holding the scripts and their profiles
+     */
+    public ScriptProfileWorker(ScriptCache scripts) {
+        this.scripts = scripts;
+    }
+
+    @Override
+    public void processRequest(RequestContext context) throws Exception {
+        List<ScriptCache.Script> profiled = new ArrayList<>();
+        for (ScriptCache.Script script : scripts.getScripts().values()) {
+            if (script.profile() != null) {
+                profiled.add(script);
+            }
+        }
+        profiled.sort(Comparator.comparingLong((ScriptCache.Script script) -> script.profile().getTotalNanos()).reversed());
+
+        StringBuilder sb = new StringBuilder();
+        for (ScriptCache.Script script : profiled) {
+            ScriptProfile profile = script.profile();
+            sb.append(String.format("%s: %d executions, %.3f ms total%n",
+                    script.name(), profile.getExecutions(), profile.getTotalNanos() / 1e6));
+            profile.appendReport(sb);
+            sb.append(System.lineSeparator());
+        }
+
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        context.setStatusCode(200);
+        context.setStatusText("OK");
+        context.setMimeType("text/plain");
+        context.setContentLength((long) body.length);
+        context.write(body);
+    }
+}
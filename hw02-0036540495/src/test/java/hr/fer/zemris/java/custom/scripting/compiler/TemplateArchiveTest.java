@@ -0,0 +1,88 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProgram;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateArchiveTest {
+    @Test
+    public void testRoundTrip(@TempDir Path directory) throws IOException {
+        String source = "Zbroj: {$= \"a\" 0 @paramGet 2.5 + $}\r\n{$FOR i 1 n 2$}{$PARALLEL$}č{$= i \"0.0\" @decfmt -1.5 $}{$END$}{$END$}";
+        DocumentNode first = new SmartScriptParser(source).getDocumentNode();
+        DocumentNode second = new SmartScriptParser("Zbroj: {$FOR i 1 3$}{$= i 2.5 $}{$END$}").getDocumentNode();
+        Path file = directory.resolve("templates.smsc");
+        TemplateArchive.write(List.of(
+                new TemplateArchive.Template("scripts/a.smscr", 42, first),
+                new TemplateArchive.Template("b.smscr", 0xFFFFFFFFL, second)
+        ), file);
+
+        TemplateArchive archive = TemplateArchive.open(file);
+        List<TemplateArchive.Entry> entries = archive.getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("scripts/a.smscr", entries.get(0).path());
+        assertEquals(42, entries.get(0).checksum());
+        assertEquals(0xFFFFFFFFL, entries.get(1).checksum());
+        assertEquals(first.toString(), archive.load(entries.get(0)).toString());
+        assertEquals(second.toString(), archive.load(entries.get(1)).toString());
+    }
+
+    @Test
+    public void testTextIsWrittenFromArchive(@TempDir Path directory) throws IOException {
+        String source = "Šećer: {$FOR i 1 2$}ž{$= i $}{$END$}{$PARALLEL$}đ{$= 3 $}{$END$}";
+        Path file = directory.resolve("templates.smsc");
+        TemplateArchive.write(List.of(
+                new TemplateArchive.Template("a.smscr", 0, new SmartScriptParser(source).getDocumentNode())
+        ), file);
+        TemplateArchive archive = TemplateArchive.open(file);
+        DocumentNode document = archive.load(archive.getEntries().get(0));
+        TextNode text = (TextNode) document.getChild(0);
+        assertNotNull(text.getEncodedText());
+        assertEquals("Šećer: ", text.getText());
+
+        assertEquals("Šećer: ž1ž2đ3", execute(document, "UTF-8"));
+        assertEquals("?e?er: ?1?2?3", execute(document, "US-ASCII"));
+    }
+
+    private static String execute(DocumentNode document, String encoding) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>())
+                .createBodyContext(output);
+        context.setEncoding(encoding);
+        new ScriptProgram(document).execute(context);
+        return output.toString(Charset.forName(encoding));
+    }
+
+    @Test
+    public void testCorruptArchive(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("templates.smsc");
+        Files.write(file, new byte[] {'S', 'M', 'S', 'C', 0, 0, 0, 2, 0, 0, 0, 1});
+        assertThrows(IOException.class, () -> TemplateArchive.open(file));
+        Files.writeString(file, "not an archive");
+        assertThrows(IOException.class, () -> TemplateArchive.open(file));
+    }
+
+    @Test
+    public void testCompileFailsOnInvalidTemplate(@TempDir Path webroot) throws IOException {
+        Files.createDirectories(webroot.resolve("scripts"));
+        Files.writeString(webroot.resolve("scripts/good.smscr"), "{$= 1 $}");
+        assertEquals("scripts/good.smscr", TemplateCompiler.compile(webroot).get(0).path());
+
+        Files.writeString(webroot.resolve("scripts/bad.smscr"), "{$FOR i 1$}");
+        assertThrows(IllegalStateException.class, () -> TemplateCompiler.compile(webroot));
+    }
+}
@@ -0,0 +1,57 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferedScriptOutputTest {
+    @Test
+    public void testBufferSize() {
+        FlushRecorder output = new FlushRecorder();
+        assertEquals("a".repeat(25), execute("{$FOR i 1 5$}aaaaa{$END$}", output, 8, false));
+        assertEquals(List.of(5, 10, 15, 20, 25), output.flushes);
+
+        output = new FlushRecorder();
+        execute("{$FOR i 1 5$}a{$END$}{$= \"bbbbbbbbbb\" $}c", output, 8, false);
+        assertEquals(List.of(5, 15, 16), output.flushes);
+    }
+
+    @Test
+    public void testFlushOnIteration() {
+        FlushRecorder output = new FlushRecorder();
+        assertEquals("<1:12><2:12>", execute("{$FOR i 1 2$}<{$= i $}:{$FOR j 1 2$}{$= j $}{$END$}>{$END$}", output, 1024, true));
+        assertEquals(List.of(6, 12), output.flushes);
+    }
+
+    @Test
+    public void testFailedScriptIsNotFlushed() {
+        FlushRecorder output = new FlushRecorder();
+        assertThrows(SmartScriptException.class, () -> execute("text{$= 1 @unknown $}", output, 1024, false));
+        assertEquals(0, output.size());
+    }
+
+    private static String execute(String script, FlushRecorder output, int bufferSize, boolean flushOnIteration) {
+        RequestContext context = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>())
+                .createBodyContext(output);
+        new SmartScriptEngine(new SmartScriptParser(script).getDocumentNode(), context, ScriptLimits.UNLIMITED, null,
+                new BufferedScriptOutput(context, bufferSize, flushOnIteration)).execute();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static class FlushRecorder extends ByteArrayOutputStream {
+        private final List<Integer> flushes = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            flushes.add(size());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptProgramTest {
+    private static final String SCRIPT = "{$FOR i 1 3$}{$= \"name\" \"none\" @paramGet i $},{$END$}";
+
+    @Test
+    public void testConcurrentExecutions() throws Exception {
+        ScriptProgram program = new ScriptProgram(new SmartScriptParser(SCRIPT).getDocumentNode());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String name = "n" + i;
+                results.add(pool.submit(() -> execute(program, Map.of("name", name))));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("n%d1,n%d2,n%d3,".formatted(i, i, i), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReuseAfterFailure() {
+        ScriptProgram failing = new ScriptProgram(new SmartScriptParser("{$FOR i 1 3$}{$= i 1 @unknown $}{$END$}").getDocumentNode());
+        assertThrows(SmartScriptException.class, () -> execute(failing, Map.of()));
+        ScriptProgram program = new ScriptProgram(new SmartScriptParser(SCRIPT).getDocumentNode());
+        assertEquals("none1,none2,none3,", execute(program, Map.of()));
+    }
+
+    private static String execute(ScriptProgram program, Map<String, String> parameters) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(parameters), new HashMap<>(), new ArrayList<>())
+                .createBodyContext(output);
+        program.execute(context);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SmartScriptEngineTest {
+    @Test
+    public void testLimits() {
+        DocumentNode loop = parse("{$FOR i 1 1000000000 1$}x{$END$}");
+        Exception e = assertThrows(ScriptLimitException.class, () -> execute(loop, new ScriptLimits(0, 100, 0), null));
+        assertTrue(e.getMessage().contains("100 loop iterations"));
+        assertThrows(ScriptLimitException.class, () -> execute(loop, new ScriptLimits(50, 0, 0), null));
+        assertThrows(ScriptLimitException.class, () -> execute(loop, new ScriptLimits(0, 0, 10), null));
+        assertEquals("xxx", execute(parse("{$FOR i 1 3 1$}x{$END$}"), new ScriptLimits(8, 3, 3), null));
+    }
+
+    @Test
+    public void testErrorsAreThrown() {
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$= 1 @unknown $}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 1 n$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 1 \"ten\"$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+    }
+
+    @Test
+    public void testForLoopBounds() {
+        assertEquals("1 2 3 ", execute(parse("{$FOR i 1 3$}{$= i \" \" $}{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("0.5 1.0 1.5 ", execute(parse("{$FOR i 0.5 1.6 0.5$}{$= i \" \" $}{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("x".repeat(11), execute(parse("{$FOR i 0.0 1.0 0.1$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("2 4 ", execute(parse("{$FOR i \"2\" \"5\" \"2\"$}{$= i \" \" $}{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("1;12;123;", execute(parse("{$FOR n 1 3$}{$FOR i 1 n$}{$= i $}{$END$};{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("2147483646 2147483647 ",
+                execute(parse("{$FOR i 2147483646 2147483647$}{$= i \" \" $}{$END$}"), ScriptLimits.UNLIMITED, null));
+    }
+
+    @Test
+    public void testNonPositiveStep() {
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 1 3 0$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 3 1 -1$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 1 3 0.0$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i 1 3 \"-0.5\"$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR s 0 0$}{$FOR i 1 3 s$}x{$END$}{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertThrows(SmartScriptException.class, () -> execute(parse("{$FOR i \"1e17\" \"2e17\" 1$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+        assertEquals("", execute(parse("{$FOR i \"2e17\" \"1e17\" 1$}x{$END$}"), ScriptLimits.UNLIMITED, null));
+    }
+
+    @Test
+    public void testProfile() {
+        DocumentNode document = parse("a{$FOR i 1 4 1$}{$= i $}{$END$}");
+        ScriptProfile profile = new ScriptProfile(document);
+        assertEquals("a1234", execute(document, ScriptLimits.UNLIMITED, profile));
+        assertEquals("a1234", execute(document, ScriptLimits.UNLIMITED, profile));
+        assertEquals(2, profile.getExecutions());
+        StringBuilder report = new StringBuilder();
+        profile.appendReport(report);
+        assertTrue(report.toString().matches("(?s).*\\s8\\s.*\\{\\$= i \\$}.*"));
+    }
+
+    @Test
+    public void testParallel() {
+        String script = "{$= \"1\" \"t\" @tparamSet $}{$FOR i 1 2$}<{$PARALLEL$}"
+                + "a{$FOR j 1 3$}{$= i j * $}{$END$}-{$= \"2\" \"t\" @tparamSet \"t\" 0 @tparamGet $}-{$= \"t\" 0 @tparamGet $}"
+                + "{$END$}>{$END$}{$= \"t\" 0 @tparamGet $}";
+        assertEquals("<a123-2-1><a246-2-1>1", execute(parse(script), ScriptLimits.UNLIMITED, null));
+        assertThrows(ScriptLimitException.class, () -> execute(
+                parse("{$PARALLEL$}{$FOR i 1 60$}x{$END$}{$FOR i 1 60$}x{$END$}{$END$}"), new ScriptLimits(0, 100, 0), null));
+        assertThrows(SmartScriptException.class, () -> execute(
+                parse("{$PARALLEL$}{$= 1 $}{$= 1 @unknown $}{$END$}"), ScriptLimits.UNLIMITED, null));
+    }
+
+    @Test
+    public void testParallelBlocksShareLimits() {
+        String block = "{$FOR i 1 100$}x{$END$}";
+        DocumentNode document = parse("{$PARALLEL$}" + block + block + "{$PARALLEL$}" + block + block + "{$END$}{$END$}");
+        ScriptProfile profile = new ScriptProfile(document);
+        assertThrows(ScriptLimitException.class, () -> execute(document, new ScriptLimits(0, 100, 0), profile));
+        StringBuilder report = new StringBuilder();
+        profile.appendReport(report);
+        long iterations = report.toString().lines()
+                .filter(line -> line.endsWith("TEXT \"x\""))
+                .mapToLong(line -> Long.parseLong(line.trim().split("\\s+")[0]))
+                .sum();
+        assertTrue(iterations <= 100, "blocks executed " + iterations + " iterations");
+
+        assertThrows(ScriptLimitException.class, () -> execute(
+                parse("{$PARALLEL$}{$= \"abcdef\" $}{$= \"abcdef\" $}{$END$}"), new ScriptLimits(0, 0, 10), null));
+        assertEquals("abcdefabcdef", execute(
+                parse("{$PARALLEL$}{$= \"abcdef\" $}{$= \"abcdef\" $}{$END$}"), new ScriptLimits(0, 0, 12), null));
+    }
+
+    private static DocumentNode parse(String text) {
+        return new SmartScriptParser(text).getDocumentNode();
+    }
+
+    private static String execute(DocumentNode document, ScriptLimits limits, ScriptProfile profile) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(document, context.createBodyContext(output), limits, profile).execute();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
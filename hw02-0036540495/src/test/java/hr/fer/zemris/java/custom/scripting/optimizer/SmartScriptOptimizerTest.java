@@ -0,0 +1,79 @@
+package hr.fer.zemris.java.custom.scripting.optimizer;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptException;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SmartScriptOptimizerTest {
+    @Test
+    public void testConstantEchoIsFolded() {
+        DocumentNode document = optimize("a{$= 1 2 + \"x\" 0.5 @sin 3 @dup * $}b{$= 1.25 \"0.0\" @decfmt $}c");
+        assertEquals(1, document.numberOfChildren());
+        assertEquals(execute(parse("a{$= 1 2 + \"x\" 0.5 @sin 3 @dup * $}b{$= 1.25 \"0.0\" @decfmt $}c")),
+                ((TextNode) document.getChild(0)).getText());
+    }
+
+    @Test
+    public void testFailingAndImpureEchoIsKept() {
+        assertEquals(2, optimize("a{$= 1 @unknown $}").numberOfChildren());
+        assertEquals(3, optimize("a{$= \"text/plain\" @setMimeType $}b").numberOfChildren());
+        assertEquals(2, optimize("a{$= \"a\" 1 @paramGet $}").numberOfChildren());
+    }
+
+    @Test
+    public void testLoops() {
+        DocumentNode unrolled = optimize("{$FOR i 1 3 1$}[{$FOR j 1 2 1$}{$= i j * $} {$END$}]{$END$}{$FOR k 5 1 1$}x{$END$}");
+        assertEquals(1, unrolled.numberOfChildren());
+        assertEquals("[1 2 ][2 4 ][3 6 ]", ((TextNode) unrolled.getChild(0)).getText());
+
+        DocumentNode kept = optimize("{$FOR i 1 1000 1$}{$= i $}{$END$}{$FOR i 1 2 1$}{$= i \"a\" @tparamSet $}{$END$}");
+        assertEquals(2, kept.numberOfChildren());
+        assertInstanceOf(ForLoopNode.class, kept.getChild(0));
+        assertInstanceOf(ForLoopNode.class, kept.getChild(1));
+    }
+
+    @Test
+    public void testLoopWithNonPositiveStepIsKept() {
+        DocumentNode document = optimize("a{$FOR i 5 1 0$}x{$END$}{$FOR i 1 5 -1$}x{$END$}");
+        assertEquals(3, document.numberOfChildren());
+        assertInstanceOf(ForLoopNode.class, document.getChild(1));
+        assertInstanceOf(ForLoopNode.class, document.getChild(2));
+        assertThrows(SmartScriptException.class, () -> execute(document));
+    }
+
+    @Test
+    public void testOutputIsUnchanged() {
+        String script = "<p>{$= \"a\" \"b\" @swap $}</p>{$FOR i 0 4 2$}{$= i 1.5 * \"0.00\" @decfmt $};{$= \"n\" 7 @paramGet $}{$END$}"
+                + "{$FOR i 1 100 1$}{$= i \"s\" @tparamSet $}{$= \"s\" 0 @tparamGet $}{$END$}";
+        assertEquals(execute(parse(script)), execute(SmartScriptOptimizer.optimize(parse(script))));
+    }
+
+    private static DocumentNode parse(String text) {
+        return new SmartScriptParser(text).getDocumentNode();
+    }
+
+    private static DocumentNode optimize(String text) {
+        return SmartScriptOptimizer.optimize(parse(text));
+    }
+
+    private static String execute(DocumentNode document) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Map<String, String> parameters = new HashMap<>(Map.of("n", "42"));
+        RequestContext context = new RequestContext(output, parameters, new HashMap<>(), new ArrayList<>());
+        new SmartScriptEngine(document, context.createBodyContext(output)).execute();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package hr.fer.zemris.java.webserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingWebWorkerTest {
+    @Test
+    public void testCacheHit() throws Exception {
+        CachingWebWorker worker = new CachingWebWorker(new EchoWorker(), new ResponseCache(1 << 20), "/echo", 60, new String[] {"a", "b"});
+        assertTrue(execute(worker, Map.of("a", "1", "b", "2")).endsWith("1:a=1;b=2"));
+        assertTrue(execute(worker, Map.of("a", "1", "b", "2", "c", "3")).endsWith("1:a=1;b=2"));
+    }
+
+    @Test
+    public void testValuesDoNotCollide() throws Exception {
+        CachingWebWorker worker = new CachingWebWorker(new EchoWorker(), new ResponseCache(1 << 20), "/echo", 60, new String[] {"a", "b"});
+        assertTrue(execute(worker, Map.of("a", "1&b=2", "b", "3")).endsWith("1:a=1&b=2;b=3"));
+        assertTrue(execute(worker, Map.of("a", "1", "b", "2&b=3")).endsWith("2:a=1;b=2&b=3"));
+        assertTrue(execute(worker, Map.of("a", "1")).endsWith("3:a=1;b=null"));
+        assertTrue(execute(worker, Map.of("a", "1", "b", "")).endsWith("4:a=1;b="));
+    }
+
+    @Test
+    public void testDispatchingWorkerHandsResponseOver() throws Exception {
+        CachingWebWorker worker = new CachingWebWorker(new DispatchingWorker(), new ResponseCache(1 << 20), "/calc", 60, new String[0]);
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            RequestContext[] context = new RequestContext[1];
+            IDispatcher dispatcher = urlPath -> context[0].write(urlPath + ":" + context[0].getTemporaryParameter("sum") + ";");
+            context[0] = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>(), new HashMap<>(), dispatcher, null);
+            worker.processRequest(context[0]);
+            String response = output.toString(StandardCharsets.UTF_8);
+            assertTrue(response.contains("Content-Type: text/plain"), response);
+            assertTrue(response.endsWith("\r\n\r\nbefore;/private/calc.smscr:3;after"), response);
+        }
+    }
+
+    private static String execute(IWebWorker worker, Map<String, String> parameters) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(parameters), new HashMap<>(), new ArrayList<>());
+        worker.processRequest(context);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static class EchoWorker implements IWebWorker {
+        private int calls;
+
+        @Override
+        public void processRequest(RequestContext context) throws Exception {
+            context.write(++calls + ":a=" + context.getParameter("a") + ";b=" + context.getParameter("b"));
+        }
+    }
+
+    private static class DispatchingWorker implements IWebWorker {
+        @Override
+        public void processRequest(RequestContext context) throws Exception {
+            context.setMimeType("text/plain");
+            context.write("before;");
+            context.setTemporaryParameter("sum", "3");
+            context.getDispatcher().dispatchRequest("/private/calc.smscr");
+            context.write("after");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package hr.fer.zemris.java.webserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventStreamTest {
+    @Test
+    public void testEncode() {
+        assertEquals("data: hello\n\n", encode(null, null, "hello"));
+        assertEquals("id: 7\nevent: tick\ndata: a\ndata: b\ndata: \ndata: c\n\n", encode("7", "tick", "a\nb\r\n\rc"));
+        assertEquals("data: \n\n", encode(null, null, ""));
+        assertThrows(IllegalArgumentException.class, () -> EventStream.encode("1\n2", null, "x"));
+        assertThrows(IllegalArgumentException.class, () -> EventStream.encode(null, "a\rb", "x"));
+    }
+
+    @Test
+    public void testWritesEventsAndHeartbeatsUntilClosed() throws InterruptedException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CountDownLatch ended = new CountDownLatch(1);
+        CountDownLatch listened = new CountDownLatch(1);
+        EventStream events = new EventStream(output, 4, 50, ended::countDown);
+        events.onClose(listened::countDown);
+        events.start(Executors.defaultThreadFactory());
+
+        assertTrue(events.send("first"));
+        Thread.sleep(150);
+        assertTrue(events.send("tick", "second"));
+        events.close();
+        assertFalse(events.isOpen());
+        assertFalse(events.send("ignored"));
+
+        assertTrue(ended.await(1, TimeUnit.SECONDS));
+        assertTrue(listened.await(1, TimeUnit.SECONDS));
+        String written = output.toString(StandardCharsets.UTF_8);
+        assertTrue(written.startsWith("data: first\n\n:\n\n"));
+        assertTrue(written.endsWith("event: tick\ndata: second\n\n"));
+    }
+
+    @Test
+    public void testSlowClientIsDisconnected() throws InterruptedException {
+        CountDownLatch ended = new CountDownLatch(1);
+        EventStream events = new EventStream(new ByteArrayOutputStream(), 2, 1000, ended::countDown);
+        assertTrue(events.send("1"));
+        assertTrue(events.send("2"));
+        assertFalse(events.send("3"));
+        assertFalse(events.isOpen());
+        events.start(Executors.defaultThreadFactory());
+        assertTrue(ended.await(1, TimeUnit.SECONDS));
+    }
+
+    private static String encode(String id, String event, String data) {
+        return new String(EventStream.encode(id, event, data), StandardCharsets.UTF_8);
+    }
+}
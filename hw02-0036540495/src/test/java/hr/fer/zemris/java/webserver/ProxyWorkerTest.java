@@ -0,0 +1,106 @@
+package hr.fer.zemris.java.webserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyWorkerTest {
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n\r\nok";
+
+    private static final String TRUNCATED = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n";
+
+    private ServerSocket upstream;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @AfterEach
+    public void closeUpstream() throws IOException {
+        if (upstream != null) {
+            upstream.close();
+        }
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        ProxyWorker proxy = startUpstream(List.of(List.of(OK)));
+        String response = execute(proxy);
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"), response);
+        assertTrue(response.endsWith("\r\n\r\nok"), response);
+    }
+
+    @Test
+    public void testUpstreamClosingInHeaderGivesBadGateway() throws Exception {
+        ProxyWorker proxy = startUpstream(List.of(List.of(TRUNCATED)));
+        assertTrue(execute(proxy).startsWith("HTTP/1.1 502 Bad Gateway"));
+    }
+
+    @Test
+    public void testReusedConnectionClosedInHeaderIsRetried() throws Exception {
+        // the first connection answers one request and drops the second one in the middle of its header
+        ProxyWorker proxy = startUpstream(List.of(List.of(OK, TRUNCATED), List.of(OK)));
+        assertTrue(execute(proxy).endsWith("\r\n\r\nok"));
+        String response = execute(proxy);
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"), response);
+        assertTrue(response.endsWith("\r\n\r\nok"), response);
+        assertEquals(2, connections.get());
+    }
+
+    /**
+     * Starts an upstream server that answers the requests of every accepted connection with the given responses
+     * (in order), closing the connection after the last one.
+     */
+    private ProxyWorker startUpstream(List<List<String>> responses) throws IOException {
+        upstream = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            for (List<String> connectionResponses : responses) {
+                try (Socket socket = upstream.accept()) {
+                    connections.incrementAndGet();
+                    InputStream in = socket.getInputStream();
+                    for (String response : connectionResponses) {
+                        readRequestHeader(in);
+                        socket.getOutputStream().write(response.getBytes(StandardCharsets.ISO_8859_1));
+                        socket.getOutputStream().flush();
+                    }
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new ProxyWorker("/api", "127.0.0.1", upstream.getLocalPort(), null, 2000, 4, 30000, 1 << 20);
+    }
+
+    private static void readRequestHeader(InputStream in) throws IOException {
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Request header not received.");
+            }
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+    }
+
+    private static String execute(ProxyWorker proxy) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        context.setRequest("GET", InputStream.nullInputStream());
+        context.setRequestTarget("/api/data", "", List.of("GET /api/data HTTP/1.1", "Host: localhost"));
+        proxy.processRequest(context);
+        return output.toString(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,58 @@
+package hr.fer.zemris.java.webserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+    private static final InetAddress FIRST = InetAddress.getLoopbackAddress();
+
+    @Test
+    public void testBurstIsAllowed() {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        assertEquals(0, limiter.tryAcquire(FIRST));
+        assertEquals(0, limiter.tryAcquire(FIRST));
+        assertEquals(0, limiter.tryAcquire(FIRST));
+        assertTrue(limiter.tryAcquire(FIRST) > 0);
+        assertEquals(1, limiter.getLimited());
+    }
+
+    @Test
+    public void testClientsHaveSeparateBuckets() throws Exception {
+        InetAddress second = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.tryAcquire(FIRST));
+        assertTrue(limiter.tryAcquire(FIRST) > 0);
+        assertEquals(0, limiter.tryAcquire(second));
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(100, 1);
+        assertEquals(0, limiter.tryAcquire(FIRST));
+        long wait = limiter.tryAcquire(FIRST);
+        assertTrue(wait > 0 && wait <= 10);
+        Thread.sleep(20);
+        assertEquals(0, limiter.tryAcquire(FIRST));
+    }
+
+    @Test
+    public void testEvictIdle() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, 1);
+        limiter.tryAcquire(FIRST);
+        assertEquals(1, limiter.size());
+        Thread.sleep(10);
+        limiter.evictIdle();
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void testParse() {
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.parse("0 5"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.parse("1 2 3"));
+        assertThrows(NumberFormatException.class, () -> RateLimiter.parse("fast"));
+        assertNotNull(RateLimiter.parse(" 2.5 "));
+    }
+}
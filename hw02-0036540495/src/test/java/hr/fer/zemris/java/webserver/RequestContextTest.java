@@ -0,0 +1,28 @@
+package hr.fer.zemris.java.webserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestContextTest {
+    @Test
+    public void testHeaderCharactersOutsideLatin1() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestContext context = new RequestContext(output, new HashMap<>(), new HashMap<>(), new ArrayList<>());
+        context.addHeader("X-Name", "IvićĊX-Injected: 1");
+        context.addRCCookie(new RequestContext.RCCookie("name", "ČaĊc", null, "/", null, false));
+        context.write("body");
+
+        String response = output.toString(StandardCharsets.ISO_8859_1);
+        String header = response.substring(0, response.indexOf("\r\n\r\n"));
+        assertTrue(header.contains("X-Name: Ivi??X-Injected: 1\r\n"), header);
+        assertTrue(header.contains("Set-Cookie: name=\"?a?c\""), header);
+        assertFalse(header.contains("\rX-Injected") || header.contains("\nX-Injected"), header);
+        assertTrue(response.endsWith("\r\n\r\nbody"));
+    }
+}
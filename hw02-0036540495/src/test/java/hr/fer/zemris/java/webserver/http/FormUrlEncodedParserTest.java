@@ -0,0 +1,71 @@
+package hr.fer.zemris.java.webserver.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FormUrlEncodedParserTest {
+    @Test
+    public void testDecoding() {
+        Map<String, String> params = new LinkedHashMap<>();
+        FormUrlEncodedParser.parse("name=Ivo+Ivi%C4%87&empty=&eq=a=b", params::put);
+        assertEquals(Map.of("name", "Ivo Ivić", "empty", "", "eq", "a=b"), params);
+    }
+
+    @Test
+    public void testPiecesSplitInsideEscape() {
+        Map<String, String> params = new LinkedHashMap<>();
+        FormUrlEncodedParser parser = new FormUrlEncodedParser(params::put);
+        byte[] data = "a=%C4%87&b=2".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < data.length; i++) {
+            parser.feed(data, i, 1);
+        }
+        parser.finish();
+        assertEquals(Map.of("a", "ć", "b", "2"), params);
+    }
+
+    @Test
+    public void testSurrogatePairSplitBetweenPieces() {
+        Map<String, String> params = new LinkedHashMap<>();
+        FormUrlEncodedParser parser = new FormUrlEncodedParser(params::put);
+        String emoji = "\uD83D\uDE00";
+        parser.feed("a=x" + emoji.charAt(0));
+        parser.feed(emoji.charAt(1) + "y&b=ć" + emoji);
+        parser.finish();
+        assertEquals(Map.of("a", "x" + emoji + "y", "b", "ć" + emoji), params);
+
+        params.clear();
+        parser.feed("a=" + emoji.charAt(0));
+        parser.finish();
+        assertEquals(Map.of("a", "?"), params);
+    }
+
+    @Test
+    public void testInvalidData() {
+        assertThrows(IllegalArgumentException.class, () -> FormUrlEncodedParser.parse("a&b=1", (n, v) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> FormUrlEncodedParser.parse("=1", (n, v) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> FormUrlEncodedParser.parse("a=%2", (n, v) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> FormUrlEncodedParser.parse("a=%zz", (n, v) -> {}));
+    }
+
+    @Test
+    public void testChunkedBody() throws IOException {
+        String chunked = "4;ext=1\r\nWiki\r\n5\r\npedia\r\n0\r\nTrailer: x\r\n\r\nNEXT";
+        InputStream in = new ByteArrayInputStream(chunked.getBytes(StandardCharsets.US_ASCII));
+        assertEquals("Wikipedia", new String(new ChunkedInputStream(in, 100).readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals("NEXT", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testChunkedBodyTooLarge() {
+        InputStream in = new ByteArrayInputStream("10\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(RequestBodyTooLargeException.class, () -> new ChunkedInputStream(in, 15).readAllBytes());
+    }
+}
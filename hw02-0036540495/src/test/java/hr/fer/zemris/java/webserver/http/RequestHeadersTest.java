@@ -0,0 +1,28 @@
+package hr.fer.zemris.java.webserver.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestHeadersTest {
+    @Test
+    public void testCookie() {
+        assertEquals("abc", RequestHeaders.cookie("Cookie: sid=abc", 7, "sid"));
+        assertEquals("abc", RequestHeaders.cookie("Cookie: theme=dark; sid=\"abc\"; x=1", 7, "sid"));
+        assertEquals("a=b", RequestHeaders.cookie("Cookie: sid = a=b ;", 7, "sid"));
+        assertEquals("", RequestHeaders.cookie("Cookie: sid=", 7, "sid"));
+        assertEquals("2", RequestHeaders.cookie("Cookie: flag; sidx=1; sid=2", 7, "sid"));
+        assertNull(RequestHeaders.cookie("Cookie: SID=1; sid; xsid=2", 7, "sid"));
+        assertNull(RequestHeaders.cookie("Cookie:", 7, "sid"));
+    }
+
+    @Test
+    public void testCookieFromHeaderLines() {
+        List<String> lines = List.of("GET / HTTP/1.1", "Host: localhost", "cookie: theme=dark", "Cookie: sid=abc; sid=def");
+        assertEquals("abc", RequestHeaders.cookie(lines, "sid"));
+        assertEquals("dark", RequestHeaders.cookie(lines, "theme"));
+        assertNull(RequestHeaders.cookie(List.of("GET /?Cookie:sid=1 HTTP/1.1"), "sid"));
+    }
+}
@@ -0,0 +1,90 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HpackTest {
+    private static final List<HeaderField> FIRST = List.of(
+            new HeaderField(":method", "GET"), new HeaderField(":scheme", "http"),
+            new HeaderField(":path", "/"), new HeaderField(":authority", "www.example.com"));
+    private static final List<HeaderField> SECOND = List.of(
+            new HeaderField(":method", "GET"), new HeaderField(":scheme", "http"),
+            new HeaderField(":path", "/"), new HeaderField(":authority", "www.example.com"),
+            new HeaderField("cache-control", "no-cache"));
+    private static final List<HeaderField> THIRD = List.of(
+            new HeaderField(":method", "GET"), new HeaderField(":scheme", "https"),
+            new HeaderField(":path", "/index.html"), new HeaderField(":authority", "www.example.com"),
+            new HeaderField("custom-key", "custom-value"));
+
+    @Test
+    public void testRequestsWithoutHuffman() throws Http2Exception {
+        // RFC 7541, Appendix C.3
+        HpackDecoder decoder = new HpackDecoder(4096, 65536);
+        assertEquals(FIRST, decode(decoder, "828684410f7777772e6578616d706c652e636f6d"));
+        assertEquals(SECOND, decode(decoder, "828684be58086e6f2d6361636865"));
+        assertEquals(THIRD, decode(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565"));
+    }
+
+    @Test
+    public void testRequestsWithHuffman() throws Http2Exception {
+        // RFC 7541, Appendix C.4
+        HpackDecoder decoder = new HpackDecoder(4096, 65536);
+        assertEquals(FIRST, decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(SECOND, decode(decoder, "828684be5886a8eb10649cbf"));
+        assertEquals(THIRD, decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+    }
+
+    @Test
+    public void testInvalidBlocks() {
+        HpackDecoder decoder = new HpackDecoder(4096, 65536);
+        // index outside of both tables
+        assertThrows(Http2Exception.class, () -> decode(decoder, "ff00"));
+        // Huffman string padded with a zero bit
+        assertThrows(Http2Exception.class, () -> decode(decoder, "0081fe0161"));
+        // table size update larger than allowed
+        assertThrows(Http2Exception.class, () -> decode(decoder, "3fe21f"));
+    }
+
+    @Test
+    public void testHeaderListTooLarge() {
+        HpackDecoder decoder = new HpackDecoder(4096, 40);
+        Http2Exception e = assertThrows(Http2Exception.class,
+                () -> decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(Http2ErrorCode.ENHANCE_YOUR_CALM, e.getError());
+    }
+
+    @Test
+    public void testEncoderRoundTrip() throws Http2Exception {
+        HpackEncoder encoder = new HpackEncoder(4096);
+        HpackDecoder decoder = new HpackDecoder(4096, 65536);
+        List<HeaderField> response = List.of(
+                new HeaderField(":status", "200"), new HeaderField("content-type", "text/html; charset=UTF-8"),
+                new HeaderField("set-cookie", "sid=\"ABC\"; Path=/; HttpOnly"), new HeaderField("x-note", "café"));
+
+        byte[] first = encode(encoder, response);
+        byte[] second = encode(encoder, response);
+        assertEquals(response, decoder.decode(first, 0, first.length));
+        assertEquals(response, decoder.decode(second, 0, second.length));
+        assertTrue(second.length < first.length);
+
+        encoder.setMaxTableSize(0);
+        byte[] third = encode(encoder, response);
+        assertEquals(response, decoder.decode(third, 0, third.length));
+    }
+
+    private static List<HeaderField> decode(HpackDecoder decoder, String hex) throws Http2Exception {
+        byte[] block = HexFormat.of().parseHex(hex);
+        return decoder.decode(block, 0, block.length);
+    }
+
+    private static byte[] encode(HpackEncoder encoder, List<HeaderField> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(fields, out);
+        return out.toByteArray();
+    }
+}
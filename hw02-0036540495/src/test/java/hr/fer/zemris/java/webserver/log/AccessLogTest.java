@@ -0,0 +1,83 @@
+package hr.fer.zemris.java.webserver.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecordsAreWritten() throws Exception {
+        Path file = directory.resolve("access.log");
+        AccessLog log = new AccessLog(file, 16, 1 << 20, 2);
+        log.start();
+        assertTrue(log.log("127.0.0.1", "GET / HTTP/1.1", 200, 10, 5_000));
+        assertTrue(log.log("127.0.0.1", "GET /a HTTP/1.1", 404, 0, 1_000));
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith("\"GET / HTTP/1.1\" 200 10 5us"));
+        assertTrue(lines.get(1).endsWith("\"GET /a HTTP/1.1\" 404 0 1us"));
+        assertEquals(2, log.getWritten());
+    }
+
+    @Test
+    public void testRecordLargerThanBatch() throws Exception {
+        Path file = directory.resolve("access.log");
+        AccessLog log = new AccessLog(file, 16, 1 << 20, 2);
+        log.start();
+        String target = "/" + "x".repeat(100_000);
+        log.log("127.0.0.1", "GET / HTTP/1.1", 200, 10, 5_000);
+        log.log("127.0.0.1", "GET " + target + " HTTP/1.1", 414, 0, 1_000);
+        log.log("127.0.0.1", "GET /a HTTP/1.1", 404, 0, 1_000);
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(1).contains("\"GET " + target + " HTTP/1.1\" 414"));
+        assertTrue(lines.get(2).contains("\"GET /a HTTP/1.1\" 404"));
+        assertEquals(3, log.getWritten());
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    public void testWritingResumesAfterError() throws Exception {
+        Path file = directory.resolve("access.log");
+        // rotation fails while the rotated file is a non-empty directory
+        Path blocker = Files.createDirectories(directory.resolve("access.log.1"));
+        Files.writeString(blocker.resolve("file"), "x");
+        AccessLog log = new AccessLog(file, 16, 100, 1);
+        log.start();
+        log.log("127.0.0.1", "GET /first HTTP/1.1", 200, 10, 5_000);
+        for (int i = 0; i < 200 && log.getWritten() == 0; i++) {
+            Thread.sleep(10);
+        }
+        log.log("127.0.0.1", "GET /second HTTP/1.1", 200, 10, 5_000);
+        for (int i = 0; i < 200 && log.getDropped() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, log.getDropped());
+        assertTrue(log.getErrors() >= 1);
+
+        Files.delete(blocker.resolve("file"));
+        Files.delete(blocker);
+        log.log("127.0.0.1", "GET /third HTTP/1.1", 200, 10, 5_000);
+        for (int i = 0; i < 500 && log.getWritten() < 2; i++) {
+            Thread.sleep(10);
+        }
+        log.close();
+
+        assertEquals(2, log.getWritten());
+        assertFalse(log.isFailing());
+        assertTrue(Files.readString(directory.resolve("access.log.1")).contains("GET /first"));
+        assertTrue(Files.readString(file).contains("GET /third"));
+    }
+}